@@ -0,0 +1,34 @@
+package socket.conconexion.benchmark;
+
+import socket.conconexion.cliente.ClienteSubastaAuxiliar;
+
+/**
+ * Pruebas del análisis de mensajes en el cliente a partir de un String
+ * (el camino sobre bytes se mide en BancoCodec)
+ * @author Sistema de Subasta
+ */
+final class BancoCliente {
+    static final String RESPUESTA =
+        "RESPUESTA:PROPUESTA_ALTA:192.168.1.20:1500.50:TIEMPO:87:TU_PROPUESTA:GANANDO:POSICION:1:PETICION:42";
+    static final String ACTUALIZACION = "PROPUESTA_ALTA:192.168.1.20:1500.50:TIEMPO:87:SEC:123";
+
+    private BancoCliente() {
+    }
+
+    static void registrar(BancoPruebas banco) {
+        banco.agregar("BancoCliente.parsearEstado", null, null, 1, 1000, hilos -> (hilo, veces) -> {
+            long suma = 0;
+            for (int i = 0; i < veces; i++) {
+                suma += ClienteSubastaAuxiliar.parsearEstado(RESPUESTA).montoPropuestaMasAlta;
+            }
+            return suma;
+        });
+        banco.agregar("BancoCliente.parsearActualizacion", null, null, 1, 1000, hilos -> (hilo, veces) -> {
+            long suma = 0;
+            for (int i = 0; i < veces; i++) {
+                suma += ClienteSubastaAuxiliar.parsearActualizacion(ACTUALIZACION).montoLider;
+            }
+            return suma;
+        });
+    }
+}
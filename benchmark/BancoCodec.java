@@ -0,0 +1,151 @@
+package socket.conconexion.benchmark;
+
+import socket.conconexion.servidor.Monto;
+import socket.conconexion.servidor.ProtocoloTexto;
+import socket.conconexion.servidor.ServidorSubasta;
+import socket.conconexion.servidor.SesionSubasta;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pruebas del protocolo de texto por mensaje, cada una por los dos
+ * caminos (parámetro "camino"): con Strings, como se hacía antes de
+ * ProtocoloTexto, y con el codec sobre buffers reutilizados. La columna
+ * B/op muestra la basura que deja cada mensaje.
+ * @author Sistema de Subasta
+ */
+final class BancoCodec {
+    private static final byte[] RESPUESTA = bytes(BancoCliente.RESPUESTA);
+    private static final byte[] ACTUALIZACION = bytes("UPDATE:" + BancoCliente.ACTUALIZACION);
+    private static final String STRING = "String";
+    private static final String BYTES = "bytes";
+
+    // Cada prueba del servidor usa una subasta nueva del registro estático
+    private static final AtomicLong subastas = new AtomicLong(1000);
+
+    private BancoCodec() {
+    }
+
+    static void registrar(BancoPruebas banco) {
+        // Cliente: propuesta que sale y respuestas que llegan
+        banco.agregar("BancoCodec.codificarPropuesta", "camino", STRING, 1, 1000, hilos -> (hilo, veces) -> {
+            long longitud = 0;
+            for (int i = 0; i < veces; i++) {
+                String linea = "PROPUESTA:" + (i + 1) + ":" + Monto.formatear(150050 + i) + "\n";
+                longitud += linea.getBytes(StandardCharsets.UTF_8).length;
+            }
+            return longitud;
+        });
+        banco.agregar("BancoCodec.codificarPropuesta", "camino", BYTES, 1, 1000, hilos -> {
+            ByteBuffer salida = ByteBuffer.allocate(ProtocoloTexto.LONGITUD_NOTIFICACION);
+            return (hilo, veces) -> {
+                long longitud = 0;
+                for (int i = 0; i < veces; i++) {
+                    salida.clear();
+                    ProtocoloTexto.escribirPropuesta(salida, i + 1, 150050 + i);
+                    longitud += salida.position();
+                }
+                return longitud;
+            };
+        });
+        banco.agregar("BancoCodec.decodificarRespuesta", "camino", STRING, 1, 1000, hilos -> (hilo, veces) -> {
+            long suma = 0;
+            for (int i = 0; i < veces; i++) {
+                suma += decodificarRespuestaConString(RESPUESTA);
+            }
+            return suma;
+        });
+        banco.agregar("BancoCodec.decodificarRespuesta", "camino", BYTES, 1, 1000,
+                      hilos -> decodificar(RESPUESTA));
+        banco.agregar("BancoCodec.decodificarActualizacion", "camino", STRING, 1, 1000, hilos -> (hilo, veces) -> {
+            long suma = 0;
+            for (int i = 0; i < veces; i++) {
+                suma += decodificarActualizacionConString(ACTUALIZACION);
+            }
+            return suma;
+        });
+        banco.agregar("BancoCodec.decodificarActualizacion", "camino", BYTES, 1, 1000,
+                      hilos -> decodificar(ACTUALIZACION));
+
+        // Servidor: de los bytes de la propuesta a los de su respuesta
+        banco.agregar("BancoCodec.atenderPropuesta", "camino", STRING, 1, 1000,
+                      hilos -> atenderPropuesta(false));
+        banco.agregar("BancoCodec.atenderPropuesta", "camino", BYTES, 1, 1000,
+                      hilos -> atenderPropuesta(true));
+    }
+
+    private static BancoPruebas.Cuerpo decodificar(byte[] linea) {
+        ByteBuffer entrada = ByteBuffer.wrap(linea);
+        ProtocoloTexto.Mensaje mensaje = new ProtocoloTexto.Mensaje();
+        return (hilo, veces) -> {
+            long suma = 0;
+            for (int i = 0; i < veces; i++) {
+                ProtocoloTexto.decodificar(entrada, mensaje);
+                suma += mensaje.monto + mensaje.peticion;
+            }
+            return suma;
+        };
+    }
+
+    /**
+     * Lo que hacía el cliente con cada RESPUESTA: String de la linea,
+     * sufijo de petición con substring y campos con split
+     */
+    private static long decodificarRespuestaConString(byte[] linea) {
+        String mensaje = new String(linea, StandardCharsets.UTF_8);
+        int sufijo = mensaje.lastIndexOf(":PETICION:");
+        long peticion = Long.parseLong(mensaje.substring(sufijo + 10));
+        String[] partes = mensaje.substring(10, sufijo).split(":");
+        return Monto.parsear(partes[2]) + Long.parseLong(partes[4]) + peticion;
+    }
+
+    private static long decodificarActualizacionConString(byte[] linea) {
+        String mensaje = new String(linea, StandardCharsets.UTF_8);
+        String[] partes = mensaje.substring(7).split(":");
+        return Monto.parsear(partes[2]) + Long.parseLong(partes[4]) + Long.parseLong(partes[6]);
+    }
+
+    /**
+     * Una sesión de la subasta real puja montos crecientes con número de
+     * petición. Con Strings: la linea pasa a String, procesarMensaje
+     * construye la respuesta y se codifica para enviarla. Con bytes: se
+     * decodifica en su buffer y la respuesta se escribe en otro reutilizado.
+     */
+    private static BancoPruebas.Cuerpo atenderPropuesta(boolean conCodec) {
+        ServidorSubasta.getLimitador().configurar(0, 0, 0, 0);
+        SesionSubasta sesion = new SesionFalsa("10.0.2.1");
+        ServidorSubasta.getRegistro().unir(sesion, subastas.incrementAndGet());
+        ByteBuffer entrada = ByteBuffer.allocate(ProtocoloTexto.LONGITUD_MAXIMA_PETICION);
+        ByteBuffer respuesta = ByteBuffer.allocate(ProtocoloTexto.LONGITUD_NOTIFICACION);
+        ProtocoloTexto.Mensaje mensaje = new ProtocoloTexto.Mensaje();
+        long[] peticion = {0};
+        return (hilo, veces) -> {
+            long longitud = 0;
+            for (int i = 0; i < veces; i++) {
+                long numero = ++peticion[0];
+                // La linea tal como llega del socket
+                entrada.clear();
+                ProtocoloTexto.escribirPropuesta(entrada, numero, 100 + numero);
+                entrada.flip().limit(entrada.limit() - 1);
+
+                if (conCodec) {
+                    ProtocoloTexto.decodificar(entrada, mensaje);
+                    respuesta.clear();
+                    ServidorSubasta.procesarPropuesta(sesion, mensaje, respuesta);
+                    longitud += respuesta.position();
+                } else {
+                    String linea = new String(entrada.array(), 0, entrada.limit(), StandardCharsets.UTF_8);
+                    String texto = ServidorSubasta.procesarMensaje(sesion, linea);
+                    longitud += (texto + "\n").getBytes(StandardCharsets.UTF_8).length;
+                }
+            }
+            return longitud;
+        };
+    }
+
+    private static byte[] bytes(String texto) {
+        return texto.getBytes(StandardCharsets.UTF_8);
+    }
+}
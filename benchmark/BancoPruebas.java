@@ -0,0 +1,459 @@
+package socket.conconexion.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+
+import socket.conconexion.servidor.Bitacora;
+
+/**
+ * Banco de microbenchmarks de las rutas calientes de la subasta, al estilo
+ * de JMH pero sin dependencias (el proyecto se compila con javac a secas).
+ * Cada prueba se calienta y después se mide en varias iteraciones de
+ * duración fija con uno o más hilos; el bucle de cada prueba vive en su
+ * propio cuerpo para que el JIT lo compile por separado. Los resultados se
+ * guardan en JSON con el formato de JMH (-rf json) para comparar dos
+ * ejecuciones con las mismas herramientas, y opcionalmente en CSV.
+ * <p>
+ * Además de ops/s se mide la memoria asignada por operación (B/op, como
+ * el perfilador gc de JMH) con los contadores por hilo de la JVM; así se
+ * ve cuanta basura deja cada mensaje aunque el rendimiento no cambie.
+ * <p>
+ * La bitácora del servidor queda en nivel AVISO y durante la medición
+ * System.out se desvía a un flujo que descarta lo escrito, para que la
+ * consola no distorsione el resultado.
+ * <p>
+ * Uso: java socket.conconexion.benchmark.BancoPruebas [--clave=valor ...]
+ * <pre>
+ * --filtro=regex        solo las pruebas cuyo nombre contiene la expresión
+ * --calentamiento=3     iteraciones de calentamiento
+ * --mediciones=5        iteraciones medidas
+ * --iteracion-ms=1000   duración de cada iteración
+ * --hilos=1,2,4,...,64  hilos de las pruebas con contención
+ * --salida=resultados-benchmark.json
+ * --csv=archivo         además, una fila por prueba
+ * </pre>
+ * @author Sistema de Subasta
+ */
+public class BancoPruebas {
+    // z de un intervalo de confianza del 99,9 % (aproximación normal)
+    private static final double Z_999 = 3.291;
+
+    /**
+     * Cuerpo de una prueba: ejecuta la operación "veces" veces desde el
+     * hilo indicado y devuelve un valor que depende del trabajo hecho (el
+     * banco lo acumula para que el JIT no elimine el bucle). Al cerrarlo
+     * solo libera recursos de E/S (sockets, archivos).
+     */
+    @FunctionalInterface
+    public interface Cuerpo extends AutoCloseable {
+        long ejecutar(int hilo, int veces) throws Exception;
+
+        @Override
+        default void close() throws IOException {
+        }
+    }
+
+    /**
+     * Prepara el estado de una prueba para el número de hilos indicado
+     */
+    @FunctionalInterface
+    public interface Fabrica {
+        Cuerpo crear(int hilos) throws Exception;
+    }
+
+    private static final class Prueba {
+        final String nombre;
+        final String parametro;
+        final String valor;
+        final int hilos;
+        final int lote;
+        final Fabrica fabrica;
+        final List<Double> muestras = new ArrayList<>(); // operaciones por segundo
+        final List<Double> bytes = new ArrayList<>();    // bytes asignados por operación
+
+        Prueba(String nombre, String parametro, String valor, int hilos, int lote, Fabrica fabrica) {
+            this.nombre = nombre;
+            this.parametro = parametro;
+            this.valor = valor;
+            this.hilos = hilos;
+            this.lote = lote;
+            this.fabrica = fabrica;
+        }
+
+        String etiqueta() {
+            return nombre + (parametro == null ? "" : " " + parametro + "=" + valor) +
+                   " hilos=" + hilos;
+        }
+
+        double media() {
+            double suma = 0;
+            for (double muestra : muestras) {
+                suma += muestra;
+            }
+            return muestras.isEmpty() ? 0 : suma / muestras.size();
+        }
+
+        double error() {
+            if (muestras.size() < 2) {
+                return Double.NaN;
+            }
+            double media = media();
+            double suma = 0;
+            for (double muestra : muestras) {
+                suma += (muestra - media) * (muestra - media);
+            }
+            return Z_999 * Math.sqrt(suma / (muestras.size() - 1)) / Math.sqrt(muestras.size());
+        }
+
+        /**
+         * Bytes asignados por operación, o NaN si la JVM no los mide
+         */
+        double bytesPorOperacion() {
+            double suma = 0;
+            for (double muestra : bytes) {
+                suma += muestra;
+            }
+            return bytes.isEmpty() ? Double.NaN : suma / bytes.size();
+        }
+    }
+
+    private final List<Prueba> pruebas = new ArrayList<>();
+    private final PrintStream consola = System.out;
+    private final PrintStream descarte = new PrintStream(OutputStream.nullOutputStream());
+    private final com.sun.management.ThreadMXBean memoria = medidorDeMemoria();
+    private double ultimosBytes = Double.NaN;
+    private volatile long sumidero;
+    private volatile boolean detenido;
+
+    // Configuración
+    private Pattern filtro = null;
+    private int calentamiento = 3;
+    private int mediciones = 5;
+    private long iteracionMs = 1000;
+    private int[] hilosContencion = {1, 2, 4, 8, 16, 32, 64};
+    private String salida = "resultados-benchmark.json";
+    private String csv = null;
+
+    /**
+     * Añade una prueba; "parametro" y "valor" pueden ser null. "lote" es
+     * cuantas operaciones ejecuta el cuerpo entre comprobaciones del reloj.
+     */
+    public void agregar(String nombre, String parametro, String valor, int hilos, int lote, Fabrica fabrica) {
+        pruebas.add(new Prueba(nombre, parametro, valor, hilos, lote, fabrica));
+    }
+
+    int[] getHilosContencion() {
+        return hilosContencion;
+    }
+
+    public static void main(String[] args) throws Exception {
+        BancoPruebas banco = new BancoPruebas();
+        try {
+            for (String arg : args) {
+                if (!arg.startsWith("--")) {
+                    throw new IllegalArgumentException("Opcion invalida: " + arg);
+                }
+                int igual = arg.indexOf('=');
+                String clave = (igual < 0) ? arg.substring(2) : arg.substring(2, igual);
+                String valor = (igual < 0) ? "" : arg.substring(igual + 1);
+                banco.aplicarOpcion(clave, valor);
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println("[ERROR] " + e.getMessage());
+            System.exit(1);
+        }
+
+        Bitacora.configurar(Bitacora.Nivel.AVISO, Bitacora.Formato.TEXTO, null, 0, 0);
+
+        BancoSubasta.registrar(banco);
+        BancoCliente.registrar(banco);
+        BancoCodec.registrar(banco);
+        BancoSocket.registrar(banco);
+
+        banco.ejecutar();
+        // Las subastas de las pruebas dejan tareas en la rueda compartida
+        System.exit(0);
+    }
+
+    private void aplicarOpcion(String clave, String valor) {
+        switch (clave) {
+            case "filtro":
+                filtro = Pattern.compile(valor);
+                break;
+            case "calentamiento":
+                calentamiento = Integer.parseInt(valor);
+                if (calentamiento < 0) {
+                    throw new IllegalArgumentException("--calentamiento no puede ser negativo");
+                }
+                break;
+            case "mediciones":
+                mediciones = Integer.parseInt(valor);
+                if (mediciones < 1) {
+                    throw new IllegalArgumentException("--mediciones debe ser mayor que 0");
+                }
+                break;
+            case "iteracion-ms":
+                iteracionMs = Long.parseLong(valor);
+                if (iteracionMs < 1) {
+                    throw new IllegalArgumentException("--iteracion-ms debe ser mayor que 0");
+                }
+                break;
+            case "hilos": {
+                String[] partes = valor.split(",");
+                hilosContencion = new int[partes.length];
+                for (int i = 0; i < partes.length; i++) {
+                    hilosContencion[i] = Integer.parseInt(partes[i].trim());
+                    if (hilosContencion[i] < 1) {
+                        throw new IllegalArgumentException("--hilos debe ser mayor que 0");
+                    }
+                }
+                break;
+            }
+            case "salida":
+                salida = valor;
+                break;
+            case "csv":
+                csv = valor;
+                break;
+            default:
+                throw new IllegalArgumentException("Opcion desconocida: --" + clave);
+        }
+    }
+
+    private void ejecutar() throws Exception {
+        List<Prueba> elegidas = new ArrayList<>();
+        for (Prueba prueba : pruebas) {
+            if (filtro == null || filtro.matcher(prueba.etiqueta()).find()) {
+                elegidas.add(prueba);
+            }
+        }
+        consola.println("[BANCO] " + elegidas.size() + " pruebas, " + calentamiento +
+                        " x " + iteracionMs + " ms de calentamiento y " + mediciones +
+                        " x " + iteracionMs + " ms medidos cada una");
+
+        for (Prueba prueba : elegidas) {
+            consola.println("[BANCO] " + prueba.etiqueta());
+            System.setOut(descarte);
+            try (Cuerpo cuerpo = prueba.fabrica.crear(prueba.hilos)) {
+                for (int i = 0; i < calentamiento; i++) {
+                    double porSegundo = iteracion(prueba, cuerpo);
+                    consola.printf(Locale.ROOT, "  calentamiento %d: %s%n", i + 1, formatear(porSegundo, prueba.hilos));
+                }
+                for (int i = 0; i < mediciones; i++) {
+                    double porSegundo = iteracion(prueba, cuerpo);
+                    prueba.muestras.add(porSegundo);
+                    if (!Double.isNaN(ultimosBytes)) {
+                        prueba.bytes.add(ultimosBytes);
+                    }
+                    consola.printf(Locale.ROOT, "  iteracion %d:     %s%n", i + 1, formatear(porSegundo, prueba.hilos));
+                }
+            } finally {
+                System.setOut(consola);
+            }
+        }
+
+        consola.println();
+        consola.println("=== RESULTADOS ===");
+        for (Prueba prueba : elegidas) {
+            consola.printf(Locale.ROOT, "%-62s %16.1f +- %-12.1f ops/s  %12.1f ns/op  %10.1f B/op%n",
+                           prueba.etiqueta(), prueba.media(),
+                           Double.isNaN(prueba.error()) ? 0 : prueba.error(),
+                           prueba.hilos * 1e9 / prueba.media(), prueba.bytesPorOperacion());
+        }
+
+        escribirJson(elegidas);
+        consola.println("[BANCO] Resultados en " + salida);
+        if (csv != null) {
+            escribirCsv(elegidas);
+            consola.println("[BANCO] CSV en " + csv);
+        }
+    }
+
+    /**
+     * Una iteración: todos los hilos ejecutan lotes del cuerpo hasta que se
+     * cumple el tiempo. Deja en ultimosBytes lo que asignaron por operación.
+     * @return operaciones por segundo entre todos los hilos
+     */
+    private double iteracion(Prueba prueba, Cuerpo cuerpo) throws Exception {
+        CountDownLatch salida = new CountDownLatch(1);
+        long[] operaciones = new long[prueba.hilos];
+        long[] asignados = new long[prueba.hilos];
+        AtomicReference<Exception> fallo = new AtomicReference<>();
+        Thread[] hilos = new Thread[prueba.hilos];
+        detenido = false;
+
+        for (int h = 0; h < prueba.hilos; h++) {
+            int hilo = h;
+            hilos[h] = new Thread(() -> {
+                long hechas = 0;
+                long acumulado = 0;
+                long asignadosAntes = bytesAsignados();
+                try {
+                    salida.await();
+                    while (!detenido) {
+                        acumulado += cuerpo.ejecutar(hilo, prueba.lote);
+                        hechas += prueba.lote;
+                    }
+                } catch (Exception e) {
+                    fallo.compareAndSet(null, e);
+                }
+                asignados[hilo] = bytesAsignados() - asignadosAntes;
+                operaciones[hilo] = hechas;
+                sumidero += acumulado;
+            }, "banco-" + h);
+            hilos[h].start();
+        }
+
+        long inicio = System.nanoTime();
+        salida.countDown();
+        Thread.sleep(iteracionMs);
+        detenido = true;
+        for (Thread hilo : hilos) {
+            hilo.join();
+        }
+        long fin = System.nanoTime();
+
+        if (fallo.get() != null) {
+            throw fallo.get();
+        }
+        long total = 0;
+        long bytes = 0;
+        for (int h = 0; h < prueba.hilos; h++) {
+            total += operaciones[h];
+            bytes += asignados[h];
+        }
+        ultimosBytes = (memoria == null || total == 0) ? Double.NaN : (double) bytes / total;
+        return total * 1e9 / (fin - inicio);
+    }
+
+    /**
+     * Contadores de memoria asignada por hilo (HotSpot y derivadas), o
+     * null si la JVM no los tiene
+     */
+    private static com.sun.management.ThreadMXBean medidorDeMemoria() {
+        try {
+            if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean medidor =
+                    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+                if (medidor.isThreadAllocatedMemorySupported()) {
+                    medidor.setThreadAllocatedMemoryEnabled(true);
+                    return medidor;
+                }
+            }
+        } catch (LinkageError | UnsupportedOperationException e) {
+            // Sin el módulo jdk.management: se mide solo el rendimiento
+        }
+        return null;
+    }
+
+    private long bytesAsignados() {
+        return memoria == null ? 0 : memoria.getCurrentThreadAllocatedBytes();
+    }
+
+    private static String formatear(double porSegundo, int hilos) {
+        return String.format(Locale.ROOT, "%.1f ops/s (%.1f ns/op)", porSegundo, hilos * 1e9 / porSegundo);
+    }
+
+    /**
+     * Resultados con el formato de JMH (-rf json): modo "thrpt" en ops/s
+     */
+    private void escribirJson(List<Prueba> elegidas) throws IOException {
+        String jvm = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        StringBuilder sb = new StringBuilder("[\n");
+        for (int i = 0; i < elegidas.size(); i++) {
+            Prueba prueba = elegidas.get(i);
+            double media = prueba.media();
+            double error = prueba.error();
+            sb.append("    {\n");
+            campo(sb, "benchmark", "socket.conconexion.benchmark." + prueba.nombre, true);
+            campo(sb, "mode", "thrpt", true);
+            sb.append("        \"threads\" : ").append(prueba.hilos).append(",\n");
+            sb.append("        \"forks\" : 1,\n");
+            campo(sb, "jvm", jvm, true);
+            campo(sb, "jdkVersion", System.getProperty("java.version"), true);
+            campo(sb, "vmName", System.getProperty("java.vm.name"), true);
+            sb.append("        \"warmupIterations\" : ").append(calentamiento).append(",\n");
+            campo(sb, "warmupTime", iteracionMs + " ms", true);
+            sb.append("        \"measurementIterations\" : ").append(mediciones).append(",\n");
+            campo(sb, "measurementTime", iteracionMs + " ms", true);
+            if (prueba.parametro != null) {
+                sb.append("        \"params\" : {\n    ");
+                campo(sb, prueba.parametro, prueba.valor, false);
+                sb.append("        },\n");
+            }
+            sb.append("        \"primaryMetric\" : {\n");
+            sb.append("            \"score\" : ").append(numero(media)).append(",\n");
+            sb.append("            \"scoreError\" : ").append(Double.isNaN(error) ? "\"NaN\"" : numero(error)).append(",\n");
+            sb.append("            \"scoreConfidence\" : [ ")
+              .append(numero(Double.isNaN(error) ? media : media - error)).append(", ")
+              .append(numero(Double.isNaN(error) ? media : media + error)).append(" ],\n");
+            sb.append("            \"scoreUnit\" : \"ops/s\",\n");
+            sb.append("            \"rawData\" : [\n                [\n");
+            for (int m = 0; m < prueba.muestras.size(); m++) {
+                sb.append("                    ").append(numero(prueba.muestras.get(m)))
+                  .append(m + 1 < prueba.muestras.size() ? ",\n" : "\n");
+            }
+            sb.append("                ]\n            ]\n        },\n");
+            double bytes = prueba.bytesPorOperacion();
+            if (Double.isNaN(bytes)) {
+                sb.append("        \"secondaryMetrics\" : {\n        }\n");
+            } else {
+                // Mismo nombre y unidad que el perfilador gc de JMH
+                sb.append("        \"secondaryMetrics\" : {\n");
+                sb.append("            \"\u00b7gc.alloc.rate.norm\" : {\n");
+                sb.append("                \"score\" : ").append(numero(bytes)).append(",\n");
+                sb.append("                \"scoreUnit\" : \"B/op\",\n");
+                sb.append("                \"rawData\" : [\n                    [\n");
+                for (int m = 0; m < prueba.bytes.size(); m++) {
+                    sb.append("                        ").append(numero(prueba.bytes.get(m)))
+                      .append(m + 1 < prueba.bytes.size() ? ",\n" : "\n");
+                }
+                sb.append("                    ]\n                ]\n            }\n        }\n");
+            }
+            sb.append(i + 1 < elegidas.size() ? "    },\n" : "    }\n");
+        }
+        sb.append("]\n");
+        Files.write(Paths.get(salida), sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void campo(StringBuilder sb, String clave, String valor, boolean coma) {
+        sb.append("        \"").append(escapar(clave)).append("\" : \"").append(escapar(valor))
+          .append(coma ? "\",\n" : "\"\n");
+    }
+
+    private static String escapar(String texto) {
+        return texto.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private static String numero(double valor) {
+        return String.format(Locale.ROOT, "%.3f", valor);
+    }
+
+    private void escribirCsv(List<Prueba> elegidas) throws IOException {
+        try (PrintWriter filas = new PrintWriter(Files.newBufferedWriter(Paths.get(csv)))) {
+            filas.println("prueba,parametro,valor,hilos,ops_s,error_ops_s,ns_op,bytes_op,muestras");
+            for (Prueba prueba : elegidas) {
+                double error = prueba.error();
+                double bytes = prueba.bytesPorOperacion();
+                filas.printf(Locale.ROOT, "%s,%s,%s,%d,%.3f,%s,%.3f,%s,%d%n", prueba.nombre,
+                             prueba.parametro == null ? "" : prueba.parametro,
+                             prueba.valor == null ? "" : prueba.valor, prueba.hilos,
+                             prueba.media(), Double.isNaN(error) ? "" : numero(error),
+                             prueba.hilos * 1e9 / prueba.media(),
+                             Double.isNaN(bytes) ? "" : numero(bytes), prueba.muestras.size());
+            }
+        }
+    }
+}
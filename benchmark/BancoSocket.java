@@ -0,0 +1,121 @@
+package socket.conconexion.benchmark;
+
+import socket.conconexion.servidor.MiSocketStream;
+import socket.conconexion.servidor.ProtocoloBinario;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+
+/**
+ * Pruebas de MiSocketStream por loopback: ida y vuelta de una linea de
+ * texto y de una trama binaria contra un eco que usa la misma clase
+ * @author Sistema de Subasta
+ */
+final class BancoSocket {
+
+    private BancoSocket() {
+    }
+
+    static void registrar(BancoPruebas banco) {
+        banco.agregar("BancoSocket.lineaIdaYVuelta", null, null, 1, 100, hilos -> new Conexiones(hilos, false));
+        banco.agregar("BancoSocket.tramaIdaYVuelta", null, null, 1, 100, hilos -> new Conexiones(hilos, true));
+    }
+
+    /**
+     * Una conexión por hilo, cada una con su hilo de eco
+     */
+    private static final class Conexiones implements BancoPruebas.Cuerpo {
+        private final boolean binario;
+        private final ServerSocket aceptador;
+        private final MiSocketStream[] clientes;
+        private final ByteBuffer[] tramas;
+        private final ByteBuffer[] cuerpos;
+
+        Conexiones(int hilos, boolean binario) throws IOException {
+            this.binario = binario;
+            this.aceptador = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            this.clientes = new MiSocketStream[hilos];
+            this.tramas = new ByteBuffer[hilos];
+            this.cuerpos = new ByteBuffer[hilos];
+            for (int i = 0; i < hilos; i++) {
+                clientes[i] = new MiSocketStream(InetAddress.getLoopbackAddress().getHostAddress(),
+                                                 aceptador.getLocalPort());
+                MiSocketStream eco = new MiSocketStream(aceptador.accept());
+                Thread hilo = new Thread(() -> reflejar(eco), "eco-" + i);
+                hilo.setDaemon(true);
+                hilo.start();
+
+                tramas[i] = ByteBuffer.allocate(ProtocoloBinario.LONGITUD_NOTIFICACION);
+                ProtocoloBinario.escribirPropuesta(tramas[i], 1, 42, 150050);
+                tramas[i].flip();
+                cuerpos[i] = ByteBuffer.allocate(ProtocoloBinario.LONGITUD_MAXIMA);
+            }
+        }
+
+        @Override
+        public long ejecutar(int hilo, int veces) throws IOException {
+            MiSocketStream cliente = clientes[hilo];
+            long recibidos = 0;
+            if (binario) {
+                ByteBuffer trama = tramas[hilo];
+                ByteBuffer cuerpo = cuerpos[hilo];
+                for (int i = 0; i < veces; i++) {
+                    trama.position(0);
+                    cliente.enviaTrama(trama);
+                    if (!cliente.recibeTrama(cuerpo)) {
+                        throw new IOException("El eco cerro la conexion");
+                    }
+                    recibidos += cuerpo.remaining();
+                }
+            } else {
+                for (int i = 0; i < veces; i++) {
+                    cliente.enviaMensaje(BancoCliente.RESPUESTA);
+                    String linea = cliente.recibeMensaje();
+                    if (linea == null) {
+                        throw new IOException("El eco cerro la conexion");
+                    }
+                    recibidos += linea.length();
+                }
+            }
+            return recibidos;
+        }
+
+        private void reflejar(MiSocketStream eco) {
+            try {
+                if (binario) {
+                    ByteBuffer cuerpo = ByteBuffer.allocate(ProtocoloBinario.LONGITUD_MAXIMA);
+                    ByteBuffer respuesta = ByteBuffer.allocate(ProtocoloBinario.PREFIJO +
+                                                               ProtocoloBinario.LONGITUD_MAXIMA);
+                    while (eco.recibeTrama(cuerpo)) {
+                        respuesta.clear();
+                        respuesta.putShort((short) cuerpo.remaining()).put(cuerpo).flip();
+                        eco.enviaTrama(respuesta);
+                    }
+                } else {
+                    String linea;
+                    while ((linea = eco.recibeMensaje()) != null) {
+                        eco.enviaMensaje(linea);
+                    }
+                }
+            } catch (IOException e) {
+                // Conexión cerrada al terminar la prueba
+            } finally {
+                try {
+                    eco.close();
+                } catch (IOException e) {
+                    // Ya estaba cerrada
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (MiSocketStream cliente : clientes) {
+                cliente.close();
+            }
+            aceptador.close();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package socket.conconexion.benchmark;
+
+import socket.conconexion.servidor.LibroPropuestas;
+import socket.conconexion.servidor.RegistroSubastas;
+import socket.conconexion.servidor.SesionSubasta;
+import socket.conconexion.servidor.Subasta;
+
+import java.util.Random;
+
+/**
+ * Pruebas del lado del servidor: el líder de la subasta (lock-free, con
+ * contención de 1 a 64 hilos), su lectura y la elección del ganador al
+ * cerrar con 10, 1.000 y 100.000 postores
+ * @author Sistema de Subasta
+ */
+final class BancoSubasta {
+    private static final int[] POSTORES = {10, 1000, 100000};
+
+    private BancoSubasta() {
+    }
+
+    static void registrar(BancoPruebas banco) {
+        for (int hilos : banco.getHilosContencion()) {
+            banco.agregar("BancoSubasta.actualizarPropuestaMasAlta", null, null, hilos, 1000,
+                          BancoSubasta::actualizarPropuestaMasAlta);
+        }
+        banco.agregar("BancoSubasta.obtenerPropuestaMasAlta", null, null, 1, 1000,
+                      BancoSubasta::obtenerPropuestaMasAlta);
+        for (int postores : POSTORES) {
+            banco.agregar("BancoSubasta.elegirGanador", "postores", String.valueOf(postores), 1,
+                          postores >= 100000 ? 100 : 1000, hilos -> elegirGanador(postores));
+        }
+    }
+
+    /**
+     * Subasta real, abierta por un participante sin conexión
+     */
+    private static Subasta nuevaSubasta() {
+        return RegistroSubastas.crear().unir(new SesionFalsa("10.0.0.1"), 1);
+    }
+
+    /**
+     * Todos los hilos pujan montos que crecen con el reloj (intercalados por
+     * hilo), como postores que suben la oferta a la vez: compiten por el
+     * compareAndSet y las propuestas que llegan tarde se descartan sin
+     * escribir
+     */
+    private static BancoPruebas.Cuerpo actualizarPropuestaMasAlta(int hilos) {
+        Subasta subasta = nuevaSubasta();
+        long origen = System.nanoTime();
+        String[] ips = new String[hilos];
+        for (int i = 0; i < hilos; i++) {
+            ips[i] = "10.0.1." + (i + 1);
+        }
+        return (hilo, veces) -> {
+            String ip = ips[hilo];
+            long ganadas = 0;
+            for (int i = 0; i < veces; i++) {
+                long monto = (System.nanoTime() - origen) * hilos + hilo + 1;
+                if (subasta.actualizarPropuestaMasAlta(monto, monto, ip)) {
+                    ganadas++;
+                }
+            }
+            return ganadas;
+        };
+    }
+
+    private static BancoPruebas.Cuerpo obtenerPropuestaMasAlta(int hilos) {
+        Subasta subasta = nuevaSubasta();
+        subasta.actualizarPropuestaMasAlta(150050, 1, "192.168.1.20");
+        return (hilo, veces) -> {
+            long longitud = 0;
+            for (int i = 0; i < veces; i++) {
+                longitud += subasta.obtenerPropuestaMasAlta().length();
+            }
+            return longitud;
+        };
+    }
+
+    /**
+     * Lo que hace la subasta al cerrar para anunciar el resultado: ganador,
+     * monto ganador y los mejores del ranking
+     */
+    private static BancoPruebas.Cuerpo elegirGanador(int postores) {
+        LibroPropuestas libro = new LibroPropuestas();
+        Random aleatorio = new Random(42);
+        for (int i = 0; i < postores; i++) {
+            SesionSubasta postor = new SesionFalsa("10." + (i >> 16) + "." + ((i >> 8) & 0xFF) + "." + (i & 0xFF));
+            libro.registrar(postor, 100 + aleatorio.nextInt(1_000_000), i + 1);
+        }
+        StringBuilder sb = new StringBuilder(512);
+        return (hilo, veces) -> {
+            long resultado = 0;
+            for (int i = 0; i < veces; i++) {
+                SesionSubasta ganador = libro.getGanador();
+                long monto = libro.getMontoGanador();
+                sb.setLength(0);
+                libro.escribirRanking(sb, 10);
+                resultado += monto + sb.length() + ganador.getIpCliente().length();
+            }
+            return resultado;
+        };
+    }
+}
@@ -0,0 +1,91 @@
+package socket.conconexion.benchmark;
+
+import socket.conconexion.servidor.IdentidadSesion;
+import socket.conconexion.servidor.LimitadorPropuestas;
+import socket.conconexion.servidor.MensajeDifundido;
+import socket.conconexion.servidor.SesionSubasta;
+import socket.conconexion.servidor.Subasta;
+
+/**
+ * Participante sin conexión para las pruebas: guarda su estado como una
+ * sesión real y descarta los envíos
+ * @author Sistema de Subasta
+ */
+class SesionFalsa implements SesionSubasta {
+    private final String ipCliente;
+    private volatile long propuesta;
+    private volatile Subasta subasta;
+    private volatile LimitadorPropuestas.CuboTokens cubo;
+    private volatile IdentidadSesion identidad = new IdentidadSesion();
+
+    SesionFalsa(String ip) {
+        this.ipCliente = ip;
+    }
+
+    @Override
+    public void notificarInicioSubasta(long idSubasta, long tiempoRestante) {
+    }
+
+    @Override
+    public void enviarActualizacion(MensajeDifundido mensaje) {
+    }
+
+    @Override
+    public void enviarResultado(MensajeDifundido resultado) {
+    }
+
+    @Override
+    public void cerrarConexion() {
+    }
+
+    // Getters
+    @Override
+    public int getProfundidadSalida() {
+        return 0;
+    }
+
+    @Override
+    public long getPropuesta() {
+        return propuesta;
+    }
+
+    @Override
+    public void setPropuesta(long propuesta) {
+        this.propuesta = propuesta;
+    }
+
+    @Override
+    public Subasta getSubasta() {
+        return subasta;
+    }
+
+    @Override
+    public void setSubasta(Subasta subasta) {
+        this.subasta = subasta;
+    }
+
+    @Override
+    public LimitadorPropuestas.CuboTokens getCuboPropuestas() {
+        return cubo;
+    }
+
+    @Override
+    public void setCuboPropuestas(LimitadorPropuestas.CuboTokens cubo) {
+        this.cubo = cubo;
+    }
+
+    @Override
+    public IdentidadSesion getIdentidad() {
+        return identidad;
+    }
+
+    @Override
+    public void setIdentidad(IdentidadSesion identidad) {
+        this.identidad = identidad;
+    }
+
+    @Override
+    public String getIpCliente() {
+        return ipCliente;
+    }
+}
@@ -1,8 +1,8 @@
 package socket.conconexion.cliente;
 
 import java.io.*;
-import java.util.Timer;
-import java.util.TimerTask;
+import socket.conconexion.servidor.Monto;
+import socket.conconexion.servidor.RuedaTemporizadores;
 
 /**
  * Cliente de Subasta - Lógica de presentación
@@ -12,7 +12,7 @@ import java.util.TimerTask;
 public class ClienteSubasta {
     private static final int INTERVALO_PROPUESTA = 10; // segundos entre propuestas
     private static volatile boolean puedeOfertar = true;
-    private static Timer temporizador;
+    private static RuedaTemporizadores.Tarea temporizador;
 
     public static void main(String[] args) {
         InputStreamReader is = new InputStreamReader(System.in);
@@ -34,15 +34,27 @@ public class ClienteSubasta {
             if (numPuerto.length() == 0)
                 numPuerto = "8080";
 
+            // Solicitar subasta
+            System.out.print("ID de la subasta (Enter para la subasta por defecto): ");
+            String idSubasta = br.readLine();
+            long id = 0;
+            if (idSubasta.trim().length() > 0) {
+                try {
+                    id = Long.parseLong(idSubasta.trim());
+                } catch (NumberFormatException e) {
+                    System.out.println("ID invalido, se usara la subasta por defecto.");
+                }
+            }
+
             System.out.println("-------------------------------------------");
             System.out.println("Conectando al servidor de subasta...");
             System.out.println("-------------------------------------------");
 
             // Conectar al servidor
-            auxiliar = new ClienteSubastaAuxiliar(nombreMaquina, numPuerto);
+            auxiliar = new ClienteSubastaAuxiliar(nombreMaquina, numPuerto, id);
 
             // Solicitar primera propuesta
-            double propuesta = solicitarPropuesta(br, true);
+            long propuesta = solicitarPropuesta(br, true);
             if (propuesta <= 0) {
                 System.out.println("Error: La propuesta debe ser un numero positivo.");
                 return;
@@ -60,7 +72,7 @@ public class ClienteSubasta {
                 iniciarCuentaRegresiva();
 
                 // Solicitar nueva propuesta
-                System.out.print("\n Ingrese nueva propuesta (o 'x' para salir): $");
+                System.out.print("\n Ingrese nueva propuesta ('r' ranking, 'x' salir): $");
                 String input = br.readLine();
 
                 cancelarTemporizador();
@@ -71,6 +83,11 @@ public class ClienteSubasta {
                     break;
                 }
 
+                if (input.trim().equalsIgnoreCase("r")) {
+                    auxiliar.solicitarRanking();
+                    continue;
+                }
+
                 if (input.trim().equalsIgnoreCase("x")) {
                     System.out.println(" Saliendo de la subasta...");
                     continuar = false;
@@ -78,7 +95,7 @@ public class ClienteSubasta {
                 }
 
                 try {
-                    double nuevaPropuesta = Double.parseDouble(input.trim());
+                    long nuevaPropuesta = Monto.parsear(input);
                     if (nuevaPropuesta <= 0) {
                         System.out.println(" La propuesta debe ser mayor que 0. Intente nuevamente.");
                         continue;
@@ -126,7 +143,10 @@ public class ClienteSubasta {
         System.out.println("===========================================");
     }
 
-    private static double solicitarPropuesta(BufferedReader br, boolean esPrimera)
+    /**
+     * Lee una propuesta en dólares y la devuelve en centavos (-1 si es invalida)
+     */
+    private static long solicitarPropuesta(BufferedReader br, boolean esPrimera)
             throws IOException {
         String mensaje = esPrimera ?
             " Ingrese su propuesta inicial (en dólares): $" :
@@ -136,7 +156,7 @@ public class ClienteSubasta {
         String input = br.readLine();
 
         try {
-            return Double.parseDouble(input.trim());
+            return Monto.parsear(input);
         } catch (NumberFormatException e) {
             return -1;
         }
@@ -152,16 +172,15 @@ public class ClienteSubasta {
             return;
         }
 
-        System.out.println("   Propuesta mas alta: $" + estado.montoPropuestaMasAlta);
+        System.out.println("   Propuesta mas alta: $" + Monto.formatear(estado.montoPropuestaMasAlta));
         System.out.println("   IP líder: " + estado.ipPropuestaMasAlta);
         System.out.println("    Tiempo restante: " + estado.tiempoRestante + " segundos");
 
         if (estado.estoyGanando) {
             System.out.println("   ESTAS GANANDO LA SUBASTA!");
         } else {
-            double diferencia = estado.montoPropuestaMasAlta - estado.montoPropuestaMasAlta;
             System.out.println("    Estas perdiendo. Ofrece mas de $" +
-                             estado.montoPropuestaMasAlta);
+                             Monto.formatear(estado.montoPropuestaMasAlta));
         }
         System.out.println("-------------------------------------------");
     }
@@ -175,27 +194,25 @@ public class ClienteSubasta {
     }
 
     private static void iniciarCuentaRegresiva() {
-        temporizador = new Timer();
+        cancelarTemporizador();
         final int[] segundos = {INTERVALO_PROPUESTA};
 
-        temporizador.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                segundos[0]--;
-                if (segundos[0] > 0) {
-                    System.out.print("\r Espera " + segundos[0] + " segundos para ofertar... ");
-                } else {
-                    System.out.print("\r Puedes hacer otra oferta!                    \n");
-                    puedeOfertar = true;
-                    temporizador.cancel();
-                }
+        // Una tarea periódica en la rueda compartida, sin crear un hilo por cuenta
+        temporizador = RuedaTemporizadores.compartida().programarPeriodica(() -> {
+            segundos[0]--;
+            if (segundos[0] > 0) {
+                System.out.print("\r Espera " + segundos[0] + " segundos para ofertar... ");
+            } else {
+                System.out.print("\r Puedes hacer otra oferta!                    \n");
+                puedeOfertar = true;
+                cancelarTemporizador();
             }
         }, 1000, 1000);
     }
 
     private static void cancelarTemporizador() {
         if (temporizador != null) {
-            temporizador.cancel();
+            temporizador.cancelar();
             temporizador = null;
         }
     }
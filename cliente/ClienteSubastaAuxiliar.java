@@ -1,31 +1,100 @@
 package socket.conconexion.cliente;
 
 import socket.conconexion.servidor.MiSocketStream;
+import socket.conconexion.servidor.Monto;
+import socket.conconexion.servidor.ProtocoloBinario;
+import socket.conconexion.servidor.ProtocoloTexto;
+import socket.conconexion.servidor.RuedaTemporizadores;
 import java.net.*;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Cliente de Subasta - Lógica de aplicación
  * Maneja la comunicación con el servidor de subasta permitiendo multiples propuestas.
+ * Negocia el protocolo binario al conectar y, si el servidor no lo admite,
+ * sigue con el protocolo de texto.
+ * Las propuestas se pueden encadenar sin esperar la respuesta de la anterior:
+ * cada una lleva un numero de petición que el servidor devuelve, y la
+ * respuesta completa el CompletableFuture de esa propuesta.
+ * Al conectar pide un ID de sesión; si la conexión se pierde antes del
+ * resultado vuelve a conectar, reanuda la sesión (REANUDAR) y reenvía las
+ * propuestas que seguían en vuelo con su mismo numero de petición: el
+ * servidor no aplica dos veces las que ya había recibido.
+ * Contesta PONG a los PING del servidor, y si el servidor lleva un rato
+ * callado le envía un PING; sin noticias en SILENCIO_MAXIMO_MS da la
+ * conexión por perdida (aunque TCP no se haya enterado) y la reanuda.
  * @author Sistema de Subasta
  */
 public class ClienteSubastaAuxiliar {
-    private MiSocketStream miSocket;
+    private volatile MiSocketStream miSocket;
     private InetAddress maquinaServidora;
     private int puertoServidor;
-    private double miUltimaPropuesta = 0.0;
+    private long miUltimaPropuesta = 0; // en centavos
     private Thread hiloEscucha;
     private volatile boolean escuchando = true;
     private volatile boolean subastaActiva = true;
     private volatile String ultimaActualizacion = "";
-    private volatile String ultimaRespuestaPropuesta = null;
-    private final Object lockRespuesta = new Object();
+
+    // Propuestas en vuelo por numero de petición
+    private static final long ESPERA_RESPUESTA_MS = 10000;
+    private final Map<Long, PropuestaEnVuelo> enVuelo = new ConcurrentHashMap<>();
+    private final AtomicLong peticiones = new AtomicLong();
+
+    // Sesión que se reanuda al perder la conexión (null si el servidor no da IDs)
+    private static final int INTENTOS_REANUDAR = 5;
+    private static final long ESPERA_REANUDAR_MS = 500;
+    private volatile String idSesion;
+    private volatile boolean reanudando = false;
+
+    // Latidos: PING tras PING_MS sin recibir nada; conexión perdida tras SILENCIO_MAXIMO_MS
+    private static final long PING_MS = 15000;
+    private static final long SILENCIO_MAXIMO_MS = 45000;
+    private static final long REVISION_LATIDO_MS = 1000;
+    private volatile long ultimaRecepcion = System.currentTimeMillis();
+    private long ultimoPing = 0; // solo lo usa la tarea de latidos
+    private RuedaTemporizadores.Tarea tareaLatidos;
+
+    // Salida reutilizada: tramas del protocolo binario o lineas de texto
+    // ya codificadas
+    private boolean binario = false;
+    private final ByteBuffer tramaSalida = ByteBuffer.allocate(ProtocoloBinario.LONGITUD_NOTIFICACION);
+
+    // Numero del último cambio de líder recibido (UPDATE:...:SEC:n)
+    private volatile long ultimaSecuenciaLider = -1;
 
     /**
-     * Constructor que establece la conexión con el servidor
+     * Constructor que establece la conexión con el servidor y participa en
+     * la subasta por defecto
      */
     public ClienteSubastaAuxiliar(String nombreMaquina, String numPuerto)
             throws SocketException, UnknownHostException, IOException {
+        this(nombreMaquina, numPuerto, 0);
+    }
+
+    /**
+     * Constructor que establece la conexión con el servidor y se une a la
+     * subasta indicada (0 = subasta por defecto del servidor)
+     */
+    public ClienteSubastaAuxiliar(String nombreMaquina, String numPuerto, long idSubasta)
+            throws SocketException, UnknownHostException, IOException {
+        this(nombreMaquina, numPuerto, idSubasta, true);
+    }
+
+    /**
+     * Constructor completo; con usarBinario=false se habla solo texto
+     */
+    public ClienteSubastaAuxiliar(String nombreMaquina, String numPuerto, long idSubasta,
+                                  boolean usarBinario)
+            throws SocketException, UnknownHostException, IOException {
 
         this.maquinaServidora = InetAddress.getByName(nombreMaquina);
         this.puertoServidor = Integer.parseInt(numPuerto);
@@ -34,40 +103,306 @@ public class ClienteSubastaAuxiliar {
         this.miSocket = new MiSocketStream(nombreMaquina, this.puertoServidor);
         System.out.println("\nConectado al servidor de subasta: " +
                          nombreMaquina + ":" + puertoServidor);
+        localizarNodo(idSubasta > 0 ? idSubasta : 1);
+
+        if (usarBinario) {
+            negociarBinario();
+        }
+        pedirSesion();
 
         // Iniciar hilo de escucha para recibir actualizaciones periódicas
         iniciarHiloEscucha();
+
+        if (idSubasta > 0) {
+            if (binario) {
+                synchronized (tramaSalida) {
+                    tramaSalida.clear();
+                    ProtocoloBinario.escribirUnirse(tramaSalida, idSubasta);
+                    enviarTramaSalida();
+                }
+            } else {
+                synchronized (tramaSalida) {
+                    tramaSalida.clear();
+                    ProtocoloTexto.escribirUnirse(tramaSalida, idSubasta);
+                    enviarLineaSalida();
+                }
+            }
+        }
     }
 
     /**
-     * Envía una propuesta y recibe información actualizada del estado de la subasta
-     * @param propuesta Monto ofrecido en la subasta
-     * @return Información del estado actual de la subasta
+     * Pregunta dónde está la subasta (DONDE:&lt;id&gt;). Un servidor solo o el
+     * nodo dueño contestan "NODO:" y se sigue en la misma conexión; el
+     * enrutador de un cluster contesta NODO:&lt;host:puerto&gt; y se reconecta
+     * allí directamente.
      */
-    public EstadoSubasta enviarPropuesta(double propuesta)
-            throws SocketException, IOException {
+    private void localizarNodo(long idSubasta) throws IOException {
+        miSocket.enviaMensaje("DONDE:" + idSubasta);
+        String respuesta = miSocket.recibeMensaje();
+        if (respuesta == null || respuesta.startsWith("ERROR:")) {
+            miSocket.close();
+            throw new IOException(respuesta == null ? "El servidor cerró la conexión"
+                                                    : respuesta.substring(6));
+        }
+        if (!respuesta.startsWith("NODO:") || respuesta.length() == 5) {
+            return;
+        }
 
-        miUltimaPropuesta = propuesta;
+        String nodo = respuesta.substring(5);
+        int separador = nodo.lastIndexOf(':');
+        String host = nodo.substring(0, separador);
+        miSocket.close();
+        this.maquinaServidora = InetAddress.getByName(host);
+        this.puertoServidor = Integer.parseInt(nodo.substring(separador + 1));
+        this.miSocket = new MiSocketStream(host, puertoServidor);
+        System.out.println("Subasta " + idSubasta + " en el nodo " + nodo);
+    }
 
-        synchronized(lockRespuesta) {
-            ultimaRespuestaPropuesta = null;
+    /**
+     * Pide el protocolo binario; cualquier respuesta distinta del saludo
+     * deja la conexión en texto
+     */
+    private void negociarBinario() throws IOException {
+        miSocket.enviaMensaje(ProtocoloBinario.SALUDO);
+        String confirmacion = miSocket.recibeMensaje();
+        binario = ProtocoloBinario.SALUDO.equals(confirmacion);
+        System.out.println(binario ? "Protocolo: binario"
+                                   : "Protocolo: texto (el servidor no admite binario)");
+    }
 
-            // Enviar propuesta al servidor
-            miSocket.enviaMensaje(String.valueOf(propuesta));
+    /**
+     * Pide un ID de sesión para poder reanudarla; antes de arrancar el hilo
+     * de escucha, así que la respuesta se lee aquí. Un servidor que no da
+     * IDs contesta con un error y el cliente sigue sin poder reanudar.
+     */
+    private void pedirSesion() throws IOException {
+        if (binario) {
+            synchronized (tramaSalida) {
+                tramaSalida.clear();
+                ProtocoloBinario.escribirSimple(tramaSalida, ProtocoloBinario.SESION);
+                enviarTramaSalida();
+            }
+            ByteBuffer cuerpo = ByteBuffer.allocate(ProtocoloBinario.LONGITUD_MAXIMA);
+            ProtocoloBinario.Trama trama = new ProtocoloBinario.Trama();
+            if (miSocket.recibeTrama(cuerpo) && ProtocoloBinario.decodificar(cuerpo, trama) &&
+                    trama.tipo == ProtocoloBinario.ID_SESION) {
+                idSesion = ProtocoloBinario.leerTexto(trama.datos);
+            }
+        } else {
+            miSocket.enviaMensaje("SESION");
+            String respuesta = miSocket.recibeMensaje();
+            if (respuesta != null && respuesta.startsWith("SESION:")) {
+                idSesion = respuesta.substring(7);
+            }
+        }
+    }
 
-            // Esperar respuesta del hilo de escucha (maximo 10 segundos)
+    /**
+     * Tras perder la conexión vuelve a conectar al mismo servidor, reanuda
+     * la sesión y reenvía en orden las propuestas en vuelo. Se reintenta
+     * unas pocas veces con esperas crecientes.
+     * @return true si la sesión continúa en la conexión nueva
+     */
+    private boolean reanudar() {
+        if (idSesion == null) {
+            return false;
+        }
+        for (int intento = 1; intento <= INTENTOS_REANUDAR && escuchando; intento++) {
             try {
-                lockRespuesta.wait(10000);
+                Thread.sleep(ESPERA_REANUDAR_MS * intento);
             } catch (InterruptedException e) {
-                return new EstadoSubasta(false, "Timeout esperando respuesta", "", 0.0, 0, false);
+                return false;
+            }
+            System.out.println("\n[INFO] Reconectando (intento " + intento + " de " +
+                               INTENTOS_REANUDAR + ")...");
+            try {
+                synchronized (tramaSalida) {
+                    MiSocketStream anterior = miSocket;
+                    miSocket = new MiSocketStream(maquinaServidora.getHostAddress(), puertoServidor);
+                    anterior.close();
+                    if (binario && !reanudarBinario() || !binario && !reanudarTexto()) {
+                        return false;
+                    }
+                    // Las que ya se aplicaron vuelven con el estado actual
+                    for (PropuestaEnVuelo propuesta : new TreeMap<>(enVuelo).values()) {
+                        escribirPropuesta(propuesta.peticion, propuesta.monto);
+                    }
+                }
+                System.out.println("[INFO] Sesion reanudada");
+                return true;
+            } catch (IOException e) {
+                System.out.println("[INFO] No se pudo reconectar: " + e.getMessage());
             }
+        }
+        return false;
+    }
+
+    /**
+     * REANUDAR en texto; llamar con el lock de tramaSalida tomado
+     * @return false si el servidor no reconoce la sesión o la subasta terminó
+     */
+    private boolean reanudarTexto() throws IOException {
+        miSocket.enviaMensaje("REANUDAR:" + idSesion);
+        String respuesta = miSocket.recibeMensaje();
+        if (respuesta == null) {
+            throw new IOException("El servidor cerró la conexión");
+        }
+        if (!respuesta.startsWith("REANUDADA:")) {
+            System.out.println("[INFO] No se pudo reanudar: " + respuesta);
+            return false;
+        }
+        // REANUDADA:<id>:SUBASTA:<s>:TIEMPO:<t>:PETICION:<n>
+        String[] partes = respuesta.split(":");
+        return continuaSubasta(Long.parseLong(partes[3]));
+    }
 
-            if (ultimaRespuestaPropuesta == null) {
-                return new EstadoSubasta(false, "No se recibio respuesta del servidor", "", 0.0, 0, false);
+    /**
+     * Saludo binario y trama REANUDAR; llamar con el lock de tramaSalida tomado
+     */
+    private boolean reanudarBinario() throws IOException {
+        miSocket.enviaMensaje(ProtocoloBinario.SALUDO);
+        if (!ProtocoloBinario.SALUDO.equals(miSocket.recibeMensaje())) {
+            throw new IOException("El servidor ya no acepta el protocolo binario");
+        }
+        tramaSalida.clear();
+        ProtocoloBinario.escribirReanudar(tramaSalida, idSesion);
+        enviarTramaSalida();
+
+        ByteBuffer cuerpo = ByteBuffer.allocate(ProtocoloBinario.LONGITUD_MAXIMA);
+        ProtocoloBinario.Trama trama = new ProtocoloBinario.Trama();
+        if (!miSocket.recibeTrama(cuerpo) || !ProtocoloBinario.decodificar(cuerpo, trama)) {
+            throw new IOException("El servidor cerró la conexión");
+        }
+        if (trama.tipo != ProtocoloBinario.REANUDADA) {
+            System.out.println("[INFO] No se pudo reanudar: " +
+                (trama.tipo == ProtocoloBinario.ERROR ? ProtocoloBinario.leerError(trama) : "tipo " + trama.tipo));
+            return false;
+        }
+        return continuaSubasta(trama.idSubasta);
+    }
+
+    /**
+     * Sin subasta tras reanudar es que terminó mientras no había conexión
+     */
+    private boolean continuaSubasta(long idSubasta) {
+        if (idSubasta == 0) {
+            System.out.println("[INFO] La subasta termino mientras no habia conexion");
+            subastaActiva = false;
+            escuchando = false;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Envía tramaSalida ya escrita; llamar con su lock tomado
+     */
+    private void enviarTramaSalida() throws IOException {
+        tramaSalida.flip();
+        miSocket.enviaTrama(tramaSalida);
+    }
+
+    /**
+     * Envía la linea ya escrita en tramaSalida; llamar con su lock tomado
+     */
+    private void enviarLineaSalida() throws IOException {
+        tramaSalida.flip();
+        miSocket.enviaBuffer(tramaSalida);
+    }
+
+    /**
+     * Envía una propuesta y recibe información actualizada del estado de la subasta
+     * @param propuesta Monto ofrecido en la subasta, en centavos
+     * @return Información del estado actual de la subasta
+     */
+    public EstadoSubasta enviarPropuesta(long propuesta)
+            throws SocketException, IOException {
+        CompletableFuture<EstadoSubasta> respuesta = enviarPropuestaAsync(propuesta);
+        try {
+            return respuesta.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new EstadoSubasta(false, "Timeout esperando respuesta", "", 0, 0, false);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                return new EstadoSubasta(false, "No se recibio respuesta del servidor", "", 0, 0, false);
             }
+            return new EstadoSubasta(false, e.getCause().getMessage(), "", 0, 0, false);
+        }
+    }
+
+    /**
+     * Envía una propuesta sin esperar la respuesta; se pueden tener varias
+     * en vuelo en la misma conexión. El resultado se completa con el estado
+     * que responda el servidor (exito=false si la rechazó), o de forma
+     * excepcional con TimeoutException si no responde en 10 segundos o con
+     * IOException si se pierde la conexión.
+     * @param propuesta Monto ofrecido en la subasta, en centavos
+     */
+    public CompletableFuture<EstadoSubasta> enviarPropuestaAsync(long propuesta) throws IOException {
+        miUltimaPropuesta = propuesta;
+
+        // El numero se toma con el lock de salida: el servidor descarta como
+        // reenvío una petición que no supere a la última que aplicó
+        PropuestaEnVuelo enviada;
+        synchronized (tramaSalida) {
+            enviada = new PropuestaEnVuelo(peticiones.incrementAndGet(), propuesta);
+            enVuelo.put(enviada.peticion, enviada);
+            try {
+                escribirPropuesta(enviada.peticion, propuesta);
+            } catch (IOException e) {
+                enVuelo.remove(enviada.peticion);
+                enviada.respuesta.completeExceptionally(e);
+                throw e;
+            }
+        }
+
+        // La espera máxima es una tarea de la rueda compartida, no un hilo
+        CompletableFuture<EstadoSubasta> respuesta = enviada.respuesta;
+        RuedaTemporizadores.Tarea limite = RuedaTemporizadores.compartida().programar(() ->
+            respuesta.completeExceptionally(new TimeoutException(
+                "Sin respuesta a la propuesta " + enviada.peticion)), ESPERA_RESPUESTA_MS);
+        respuesta.whenComplete((estado, error) -> {
+            enVuelo.remove(enviada.peticion);
+            limite.cancelar();
+        });
+        return respuesta;
+    }
 
-            // Parsear respuesta
-            return parsearEstado(ultimaRespuestaPropuesta);
+    /**
+     * Envía una propuesta ya numerada; llamar con el lock de tramaSalida tomado
+     */
+    private void escribirPropuesta(long peticion, long propuesta) throws IOException {
+        tramaSalida.clear();
+        if (binario) {
+            ProtocoloBinario.escribirPropuesta(tramaSalida, 0, peticion, propuesta);
+            enviarTramaSalida();
+        } else {
+            ProtocoloTexto.escribirPropuesta(tramaSalida, peticion, propuesta);
+            enviarLineaSalida();
+        }
+    }
+
+    /**
+     * Propuestas enviadas que aun esperan respuesta
+     */
+    public int getPropuestasEnVuelo() {
+        return enVuelo.size();
+    }
+
+    /**
+     * Pide al servidor el ranking de la subasta; la respuesta la muestra el
+     * hilo de escucha cuando llega
+     */
+    public void solicitarRanking() throws IOException {
+        if (binario) {
+            synchronized (tramaSalida) {
+                tramaSalida.clear();
+                ProtocoloBinario.escribirPedidoRanking(tramaSalida, 10);
+                enviarTramaSalida();
+            }
+        } else {
+            miSocket.enviaMensaje("RANKING");
         }
     }
 
@@ -91,6 +426,10 @@ public class ClienteSubastaAuxiliar {
             return formatearResultadoFinal(ultimaActualizacion);
         }
 
+        if (binario) {
+            return "Resultado: no se recibio el resultado final";
+        }
+
         // Si no, intentar leer directamente
         String resultado = miSocket.recibeMensaje();
         return formatearResultadoFinal(resultado);
@@ -99,58 +438,73 @@ public class ClienteSubastaAuxiliar {
     /**
      * Parsea la respuesta del servidor sobre el estado actual
      */
-    private EstadoSubasta parsearEstado(String respuesta) {
-        try {
-            if (respuesta.startsWith("ERROR")) {
-                return new EstadoSubasta(false, respuesta, "", 0.0, 0, false);
-            }
-
-            // Remover prefijo RESPUESTA: si existe
-            if (respuesta.startsWith("RESPUESTA:")) {
-                respuesta = respuesta.substring(10); // Remover "RESPUESTA:"
-            }
-
-            // Formato: PROPUESTA_ALTA:ip:monto:TIEMPO:segundos:TU_PROPUESTA:estado
-            String[] partes = respuesta.split(":");
-
-            String ipMasAlta = partes[1];
-            double montoMasAlto = Double.parseDouble(partes[2]);
-            long tiempoRestante = Long.parseLong(partes[4]);
-            boolean estoyGanando = partes[6].equals("GANANDO");
-
-            return new EstadoSubasta(true, "", ipMasAlta, montoMasAlto,
-                                    tiempoRestante, estoyGanando);
+    public static EstadoSubasta parsearEstado(String respuesta) {
+        // Formato: [RESPUESTA:]PROPUESTA_ALTA:ip:monto:TIEMPO:segundos:TU_PROPUESTA:estado...
+        String linea = respuesta.startsWith("ERROR") || respuesta.startsWith("RESPUESTA:")
+            ? respuesta : "RESPUESTA:" + respuesta;
+        ProtocoloTexto.Mensaje mensaje = new ProtocoloTexto.Mensaje();
+        ProtocoloTexto.decodificar(ByteBuffer.wrap(linea.getBytes(StandardCharsets.UTF_8)), mensaje);
+        return estadoDe(mensaje, respuesta);
+    }
 
-        } catch (Exception e) {
-            return new EstadoSubasta(false, "Error al parsear respuesta: " + respuesta,
-                                    "", 0.0, 0, false);
+    /**
+     * Estado de una RESPUESTA o un ERROR ya decodificados
+     */
+    private static EstadoSubasta estadoDe(ProtocoloTexto.Mensaje mensaje, String original) {
+        switch (mensaje.tipo) {
+            case ProtocoloBinario.RESPUESTA:
+                return new EstadoSubasta(true, "", mensaje.getTexto(), mensaje.monto,
+                                         mensaje.tiempoRestante, mensaje.ganando);
+            case ProtocoloBinario.ERROR:
+                return new EstadoSubasta(false, "ERROR:" + mensaje.getTexto(), "", 0, 0, false);
+            default:
+                return new EstadoSubasta(false, "Error al parsear respuesta: " + original,
+                                         "", 0, 0, false);
         }
     }
 
     /**
-     * Formatea el resultado final de la subasta
+     * Linea GANADOR normalizada, la misma con los dos protocolos
+     */
+    private static String lineaGanador(String ipGanador, long monto, boolean heGanado) {
+        return "GANADOR:" + ipGanador + ":MONTO:" + Monto.formatear(monto) +
+               ":TU_PROPUESTA:" + (heGanado ? "GANADORA" : "PERDEDORA");
+    }
+
+    /**
+     * Formatea el resultado final de la subasta. Si ganó lo dice el
+     * servidor (TU_PROPUESTA:GANADORA): con dos propuestas del mismo monto
+     * gana la que llegó antes, así que comparar montos no basta.
      */
     private String formatearResultadoFinal(String resultado) {
         try {
-            // Formato: "GANADOR:IP:MONTO:cantidad"
-            String[] partes = resultado.split(":");
-            if (partes.length >= 4) {
-                String ipGanador = partes[1];
-                double montoGanador = Double.parseDouble(partes[3]);
+            // Formato: "GANADOR:IP:MONTO:cantidad:TU_PROPUESTA:GANADORA|PERDEDORA"
+            ProtocoloTexto.Mensaje mensaje = new ProtocoloTexto.Mensaje();
+            ProtocoloTexto.decodificar(ByteBuffer.wrap(resultado.getBytes(StandardCharsets.UTF_8)),
+                                       mensaje);
+            if (mensaje.tipo == ProtocoloBinario.GANADOR) {
+                String ipGanador = mensaje.getTexto();
+                long montoGanador = mensaje.monto;
 
                 StringBuilder sb = new StringBuilder();
                 sb.append("\n  Ganador: ").append(ipGanador).append("\n");
-                sb.append("  Monto ganador: $").append(montoGanador).append("\n");
-                sb.append("  Tu ultima propuesta: $").append(miUltimaPropuesta).append("\n\n");
+                sb.append("  Monto ganador: $");
+                Monto.formatear(sb, montoGanador).append("\n");
+                sb.append("  Tu ultima propuesta: $");
+                Monto.formatear(sb, miUltimaPropuesta).append("\n\n");
 
                 // Determinar si ganó o perdió
-                if (miUltimaPropuesta == montoGanador) {
+                if (mensaje.ganando) {
                     sb.append("  *** FELICIDADES! HAS GANADO LA SUBASTA! ***");
-                } else {
-                    double diferencia = montoGanador - miUltimaPropuesta;
+                } else if (miUltimaPropuesta < montoGanador) {
+                    long diferencia = montoGanador - miUltimaPropuesta;
                     sb.append("  Lo siento, no ganaste esta vez.");
-                    sb.append("\n  Te faltaron $").append(diferencia);
+                    sb.append("\n  Te faltaron $");
+                    Monto.formatear(sb, diferencia);
                     sb.append(" para ganar.");
+                } else {
+                    sb.append("  Lo siento, no ganaste esta vez.");
+                    sb.append("\n  Otra propuesta del mismo monto llego antes que la tuya.");
                 }
 
                 return sb.toString();
@@ -175,9 +529,13 @@ public class ClienteSubastaAuxiliar {
     public void cerrar() throws SocketException, IOException {
         escuchando = false;
         subastaActiva = false;
+        fallarEnVuelo(new IOException("Conexion cerrada"));
         if (hiloEscucha != null) {
             hiloEscucha.interrupt();
         }
+        if (tareaLatidos != null) {
+            tareaLatidos.cancelar();
+        }
         miSocket.close();
         System.out.println("\nConexion cerrada con el servidor.");
     }
@@ -187,87 +545,317 @@ public class ClienteSubastaAuxiliar {
      */
     private void iniciarHiloEscucha() {
         hiloEscucha = new Thread(() -> {
+            // Una conexión perdida antes del resultado se intenta reanudar
+            do {
+                try {
+                    if (binario) {
+                        escucharTramas();
+                    } else {
+                        escucharLineas();
+                    }
+                } catch (IOException e) {
+                    if (escuchando) {
+                        System.out.println("\nError en hilo de escucha: " + e.getMessage());
+                    }
+                }
+            } while (escuchando && reanudarConexion());
+            tareaLatidos.cancelar();
+            // Lo que sigue en vuelo ya no tendrá respuesta
+            fallarEnVuelo(new IOException("Conexion cerrada por el servidor"));
+        });
+        hiloEscucha.setDaemon(false); // No daemon para que no se cierre prematuramente
+        ultimaRecepcion = System.currentTimeMillis();
+        tareaLatidos = RuedaTemporizadores.compartida().programarPeriodica(this::vigilarConexion,
+            REVISION_LATIDO_MS, REVISION_LATIDO_MS);
+        hiloEscucha.start();
+    }
+
+    private boolean reanudarConexion() {
+        reanudando = true;
+        try {
+            return reanudar();
+        } finally {
+            ultimaRecepcion = System.currentTimeMillis();
+            reanudando = false;
+        }
+    }
+
+    /**
+     * Tarea de latidos (en la rueda compartida): PING si el servidor lleva
+     * PING_MS callado; si llega a SILENCIO_MAXIMO_MS se cierra el socket y
+     * el hilo de escucha intenta reanudar la sesión
+     */
+    private void vigilarConexion() {
+        if (reanudando) {
+            return;
+        }
+        long ahora = System.currentTimeMillis();
+        long silencio = ahora - ultimaRecepcion;
+        if (silencio >= SILENCIO_MAXIMO_MS) {
+            System.out.println("\n[INFO] El servidor no responde desde hace " + (silencio / 1000) + " s");
+            ultimaRecepcion = ahora;
+            try {
+                miSocket.close();
+            } catch (IOException e) {
+                // El hilo de escucha ya lo notará
+            }
+        } else if (silencio >= PING_MS && ahora - ultimoPing >= PING_MS) {
+            ultimoPing = ahora;
+            enviarLatido(ProtocoloBinario.PING);
+        }
+    }
+
+    /**
+     * PING o PONG; si falla, el hilo de escucha ya verá la conexión caída
+     */
+    private void enviarLatido(byte tipo) {
+        synchronized (tramaSalida) {
             try {
-                while (escuchando) {
-                    String mensaje = miSocket.recibeMensaje();
+                tramaSalida.clear();
+                if (binario) {
+                    ProtocoloBinario.escribirSimple(tramaSalida, tipo);
+                    enviarTramaSalida();
+                } else {
+                    ProtocoloTexto.escribirSimple(tramaSalida, tipo);
+                    enviarLineaSalida();
+                }
+            } catch (IOException e) {
+                // Se reanuda desde el hilo de escucha
+            }
+        }
+    }
 
-                    if (mensaje == null) {
-                        System.out.println("\n[INFO] Conexion cerrada por el servidor");
-                        break;
+    /**
+     * Bucle de escucha del protocolo de texto
+     */
+    private void escucharLineas() throws IOException {
+        ByteBuffer linea = ByteBuffer.allocate(ProtocoloTexto.LONGITUD_MAXIMA);
+        ProtocoloTexto.Mensaje mensaje = new ProtocoloTexto.Mensaje();
+
+        while (escuchando) {
+            if (!miSocket.recibeLinea(linea)) {
+                System.out.println("\n[INFO] Conexion cerrada por el servidor");
+                break;
+            }
+            ultimaRecepcion = System.currentTimeMillis();
+
+            // Manejar diferentes tipos de mensajes
+            ProtocoloTexto.decodificar(linea, mensaje);
+            switch (mensaje.tipo) {
+                case ProtocoloBinario.PING:
+                    enviarLatido(ProtocoloBinario.PONG);
+                    break;
+                case ProtocoloBinario.INICIADA:
+                    // La subasta ha comenzado
+                    mostrarInicioSubasta(mensaje.tiempoRestante,
+                        mensaje.idSubasta > 0 ? String.valueOf(mensaje.idSubasta) : null);
+                    break;
+                case ProtocoloBinario.ACTUALIZACION:
+                    // Actualización periódica (cada 5 segundos)
+                    mostrarActualizacion(mensaje.getTexto(), mensaje.monto,
+                                         mensaje.tiempoRestante, mensaje.secuencia);
+                    break;
+                case ProtocoloBinario.LATIDO:
+                    comprobarLatido(mensaje.secuencia);
+                    break;
+                case ProtocoloBinario.GANADOR:
+                    // El resultado final, con el monto normalizado
+                    ultimaActualizacion = lineaGanador(mensaje.getTexto(), mensaje.monto,
+                                                       mensaje.ganando);
+                    subastaActiva = false;
+                    escuchando = false;
+                    break;
+                case ProtocoloBinario.RESPUESTA:
+                case ProtocoloBinario.ERROR:
+                    // Respuesta a una propuesta del cliente, o error de otro pedido
+                    entregarRespuesta(mensaje.peticion, estadoDe(mensaje, null));
+                    break;
+                default:
+                    if (ProtocoloTexto.empiezaCon(linea, "RANKING:")) {
+                        procesarRanking(ProtocoloTexto.comoTexto(linea));
                     }
+                    break;
+            }
+        }
+    }
 
-                    // Manejar diferentes tipos de mensajes
-                    if (mensaje.startsWith("SUBASTA_INICIADA:")) {
-                        // La subasta ha comenzado
-                        procesarInicioSubasta(mensaje);
-                    } else if (mensaje.startsWith("UPDATE:")) {
-                        // Actualización periódica (cada 5 segundos)
-                        procesarActualizacion(mensaje.substring(7));
-                    } else if (mensaje.startsWith("GANADOR:")) {
-                        // El resultado final
-                        ultimaActualizacion = mensaje;
-                        subastaActiva = false;
-                        escuchando = false;
-                        break;
-                    } else if (mensaje.startsWith("RESPUESTA:") || mensaje.startsWith("ERROR:")) {
-                        // Respuesta a una propuesta del cliente
-                        synchronized(lockRespuesta) {
-                            ultimaRespuestaPropuesta = mensaje;
-                            lockRespuesta.notifyAll();
-                        }
+    /**
+     * Bucle de escucha del protocolo binario; la trama y su buffer se
+     * reutilizan en cada mensaje
+     */
+    private void escucharTramas() throws IOException {
+        ByteBuffer cuerpo = ByteBuffer.allocate(ProtocoloBinario.LONGITUD_MAXIMA);
+        ProtocoloBinario.Trama trama = new ProtocoloBinario.Trama();
+
+        while (escuchando) {
+            if (!miSocket.recibeTrama(cuerpo) || !ProtocoloBinario.decodificar(cuerpo, trama)) {
+                System.out.println("\n[INFO] Conexion cerrada por el servidor");
+                break;
+            }
+            ultimaRecepcion = System.currentTimeMillis();
+            ByteBuffer datos = trama.datos;
+
+            switch (trama.tipo) {
+                case ProtocoloBinario.PING:
+                    enviarLatido(ProtocoloBinario.PONG);
+                    break;
+                case ProtocoloBinario.INICIADA:
+                    mostrarInicioSubasta(datos.getInt(), String.valueOf(trama.idSubasta));
+                    break;
+                case ProtocoloBinario.ACTUALIZACION: {
+                    long tiempoRestante = datos.getInt();
+                    mostrarActualizacion(ProtocoloBinario.leerTexto(datos), trama.monto,
+                                         tiempoRestante, trama.secuencia);
+                    break;
+                }
+                case ProtocoloBinario.LATIDO:
+                    comprobarLatido(trama.secuencia);
+                    break;
+                case ProtocoloBinario.LISTA_RANKING: {
+                    int posicion = datos.getInt();
+                    int postores = datos.getInt();
+                    int cantidad = datos.getShort();
+                    System.out.println("\n[RANKING DE LA SUBASTA]");
+                    System.out.println("  Tu posicion: " + posicion + " de " + postores + " postores");
+                    for (int i = 0; i < cantidad; i++) {
+                        long monto = datos.getLong();
+                        System.out.println("  " + (i + 1) + ". " + ProtocoloBinario.leerTexto(datos) +
+                                         " - $" + Monto.formatear(monto));
                     }
+                    System.out.println("-------------------------------------------");
+                    break;
                 }
-            } catch (IOException e) {
-                if (escuchando) {
-                    System.out.println("\nError en hilo de escucha: " + e.getMessage());
+                case ProtocoloBinario.GANADOR:
+                    // Mismo formato que el protocolo de texto para el resultado
+                    ultimaActualizacion = lineaGanador(ProtocoloBinario.leerTexto(datos),
+                                                       trama.monto, trama.secuencia == 1);
+                    subastaActiva = false;
+                    escuchando = false;
+                    break;
+                case ProtocoloBinario.RESPUESTA: {
+                    long tiempoRestante = datos.getInt();
+                    boolean ganando = datos.get() == 1;
+                    datos.getInt(); // posición en el ranking
+                    entregarRespuesta(trama.secuencia, new EstadoSubasta(true, "",
+                        ProtocoloBinario.leerTexto(datos), trama.monto, tiempoRestante, ganando));
+                    break;
                 }
+                case ProtocoloBinario.ERROR:
+                    entregarRespuesta(trama.secuencia, new EstadoSubasta(false,
+                        "ERROR:" + ProtocoloBinario.leerError(trama), "", 0, 0, false));
+                    break;
+                default:
+                    break;
             }
-        });
-        hiloEscucha.setDaemon(false); // No daemon para que no se cierre prematuramente
-        hiloEscucha.start();
+        }
     }
 
     /**
-     * Procesa el mensaje de inicio de subasta
+     * Completa la propuesta con ese numero de petición. Un error sin
+     * petición (o de una que ya venció) es de otro pedido y solo se muestra.
      */
-    private void procesarInicioSubasta(String mensaje) {
-        try {
-            // Formato: SUBASTA_INICIADA:TIEMPO:segundos
-            String[] partes = mensaje.split(":");
-            if (partes.length >= 3) {
-                long tiempoRestante = Long.parseLong(partes[2]);
-
-                System.out.println("\n===========================================");
-                System.out.println("     LA SUBASTA HA INICIADO!");
-                System.out.println("===========================================");
-                System.out.println("  Tiempo de subasta: " + tiempoRestante + " segundos");
-                System.out.println("  Puedes hacer ofertas cada 10 segundos");
-                System.out.println("===========================================\n");
-            }
-        } catch (Exception e) {
-            System.out.println("Error al procesar inicio de subasta: " + e.getMessage());
+    private void entregarRespuesta(long peticion, EstadoSubasta estado) {
+        PropuestaEnVuelo propuesta = peticion > 0 ? enVuelo.get(peticion) : null;
+        if (propuesta != null) {
+            propuesta.respuesta.complete(estado);
+        } else if (!estado.exito) {
+            System.out.println("\n[SERVIDOR] " + estado.mensajeError);
+        }
+    }
+
+    private void fallarEnVuelo(IOException causa) {
+        for (PropuestaEnVuelo propuesta : enVuelo.values()) {
+            propuesta.respuesta.completeExceptionally(causa);
         }
     }
 
+    private void mostrarInicioSubasta(long tiempoRestante, String subasta) {
+        System.out.println("\n===========================================");
+        System.out.println("     LA SUBASTA HA INICIADO!");
+        if (subasta != null) {
+            System.out.println("  Subasta: #" + subasta);
+        }
+        System.out.println("===========================================");
+        System.out.println("  Tiempo de subasta: " + tiempoRestante + " segundos");
+        System.out.println("  Puedes hacer ofertas cada 10 segundos");
+        System.out.println("===========================================\n");
+    }
+
     /**
-     * Procesa y muestra una actualización periódica del servidor
+     * Parsea el cuerpo de un UPDATE (sin el prefijo "UPDATE:").
+     * @return null si le faltan campos
      */
-    private void procesarActualizacion(String update) {
-        try {
-            // Formato: PROPUESTA_ALTA:ip:monto:TIEMPO:segundos
-            String[] partes = update.split(":");
-            if (partes.length >= 5) {
-                String ipLider = partes[1];
-                double montoLider = Double.parseDouble(partes[2]);
-                long tiempoRestante = Long.parseLong(partes[4]);
-
-                System.out.println("\n[ACTUALIZACION DEL SERVIDOR]");
-                System.out.println("  Oferta ganadora: $" + montoLider + " (IP: " + ipLider + ")");
-                System.out.println("  Tiempo restante: " + tiempoRestante + " segundos");
-                System.out.println("-------------------------------------------");
+    public static Actualizacion parsearActualizacion(String update) {
+        // Formato: PROPUESTA_ALTA:ip:monto:TIEMPO:segundos[:SEC:n]
+        ProtocoloTexto.Mensaje mensaje = new ProtocoloTexto.Mensaje();
+        ProtocoloTexto.decodificar(ByteBuffer.wrap(("UPDATE:" + update).getBytes(StandardCharsets.UTF_8)),
+                                   mensaje);
+        if (mensaje.tipo != ProtocoloBinario.ACTUALIZACION) {
+            return null;
+        }
+        return new Actualizacion(mensaje.getTexto(), mensaje.monto, mensaje.tiempoRestante,
+                                 mensaje.secuencia);
+    }
+
+    /**
+     * Un latido con un cambio de líder posterior al último recibido indica
+     * que se perdió algún aviso
+     */
+    private void comprobarLatido(long secuencia) {
+        if (secuencia > ultimaSecuenciaLider && ultimaSecuenciaLider >= 0) {
+            System.out.println("\n[INFO] Hubo cambios de lider que no llegaron; pide el ranking con 'r'");
+            ultimaSecuenciaLider = secuencia;
+        }
+    }
+
+    private void mostrarActualizacion(String ipLider, long montoLider, long tiempoRestante,
+                                      long secuencia) {
+        // Los avisos llevan el numero de cambio de líder: uno atrasado se descarta
+        if (secuencia >= 0) {
+            if (secuencia < ultimaSecuenciaLider) {
+                return;
             }
-        } catch (Exception e) {
-            System.out.println("Error al procesar actualización: " + e.getMessage());
+            ultimaSecuenciaLider = secuencia;
+        }
+        System.out.println("\n[ACTUALIZACION DEL SERVIDOR]");
+        System.out.println("  Oferta ganadora: $" + Monto.formatear(montoLider) +
+                         " (IP: " + ipLider + ")");
+        System.out.println("  Tiempo restante: " + tiempoRestante + " segundos");
+        System.out.println("-------------------------------------------");
+    }
+
+    /**
+     * Muestra la respuesta a RANKING
+     */
+    private void procesarRanking(String mensaje) {
+        // Formato: RANKING:tu_posicion:postores:ip=monto,ip=monto,...
+        String[] partes = mensaje.split(":", 4);
+        if (partes.length < 4) {
+            return;
+        }
+
+        System.out.println("\n[RANKING DE LA SUBASTA]");
+        System.out.println("  Tu posicion: " + partes[1] + " de " + partes[2] + " postores");
+        String[] lideres = partes[3].isEmpty() ? new String[0] : partes[3].split(",");
+        for (int i = 0; i < lideres.length; i++) {
+            String[] lider = lideres[i].split("=");
+            System.out.println("  " + (i + 1) + ". " + lider[0] + " - $" + lider[1]);
+        }
+        System.out.println("-------------------------------------------");
+    }
+
+    /**
+     * Propuesta enviada que espera respuesta; guarda el monto para
+     * reenviarla al reanudar la sesión
+     */
+    private static final class PropuestaEnVuelo {
+        final long peticion;
+        final long monto;
+        final CompletableFuture<EstadoSubasta> respuesta = new CompletableFuture<>();
+
+        PropuestaEnVuelo(long peticion, long monto) {
+            this.peticion = peticion;
+            this.monto = monto;
         }
     }
 
@@ -278,11 +866,11 @@ public class ClienteSubastaAuxiliar {
         public final boolean exito;
         public final String mensajeError;
         public final String ipPropuestaMasAlta;
-        public final double montoPropuestaMasAlta;
+        public final long montoPropuestaMasAlta; // en centavos
         public final long tiempoRestante;
         public final boolean estoyGanando;
 
-        public EstadoSubasta(boolean exito, String error, String ip, double monto,
+        public EstadoSubasta(boolean exito, String error, String ip, long monto,
                            long tiempo, boolean ganando) {
             this.exito = exito;
             this.mensajeError = error;
@@ -292,4 +880,21 @@ public class ClienteSubastaAuxiliar {
             this.estoyGanando = ganando;
         }
     }
+
+    /**
+     * Líder anunciado en un UPDATE
+     */
+    public static class Actualizacion {
+        public final String ipLider;
+        public final long montoLider; // en centavos
+        public final long tiempoRestante;
+        public final long secuencia;  // -1 si el servidor no la envía
+
+        public Actualizacion(String ipLider, long montoLider, long tiempoRestante, long secuencia) {
+            this.ipLider = ipLider;
+            this.montoLider = montoLider;
+            this.tiempoRestante = tiempoRestante;
+            this.secuencia = secuencia;
+        }
+    }
 }
@@ -0,0 +1,781 @@
+package socket.conconexion.cliente;
+
+import socket.conconexion.servidor.Histograma;
+import socket.conconexion.servidor.ProtocoloBinario;
+import socket.conconexion.servidor.ProtocoloTexto;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Generador de carga sin interfaz: abre N postores simulados contra un
+ * ServidorSubasta y les hace pujar según un patrón de llegada, con el mismo
+ * protocolo que ClienteSubastaAuxiliar (binario o texto, con número de
+ * petición). Todos los postores se atienden desde unos pocos bucles NIO,
+ * de modo que miles de conexiones no necesitan miles de hilos.
+ * <p>
+ * Cada monto codifica el instante de envío (microsegundos desde el arranque
+ * multiplicados por POSTORES_MAXIMOS, más el número de postor): así cada
+ * propuesta supera a las anteriores y el retraso de un broadcast se calcula
+ * al recibir el UPDATE, sin guardar nada por propuesta.
+ * <p>
+ * Uso: java socket.conconexion.cliente.GeneradorCarga [--clave=valor ...]
+ * <pre>
+ * --host=localhost      --puerto=8080
+ * --postores=100        postores simulados (una conexión cada uno)
+ * --subastas=1          el postor i se une a la subasta (i % subastas) + 1
+ * --patron=constante    constante | final | inundacion
+ * --ritmo=1             propuestas por segundo de cada postor (llegadas de Poisson)
+ * --final-seg=10        patrón final: segundos antes del cierre en que empieza la avalancha
+ * --ritmo-final=20      patrón final: propuestas por segundo de cada postor durante la avalancha
+ * --en-vuelo=8          patrón inundacion: propuestas sin responder por postor
+ * --duracion-seg=30     duración de la prueba (termina antes si cierran todas las subastas)
+ * --binario=true        protocolo binario o de texto
+ * --hilos=2             bucles NIO del generador
+ * --informe-seg=5       cada cuánto se imprime el progreso
+ * --csv=archivo         escribe también una fila por intervalo
+ * </pre>
+ * El servidor aplica por defecto límites de ritmo por sesión y por IP; para
+ * medir el servidor y no el limitador, arrancarlo con --limite-sesion=0
+ * --limite-ip=0 (y con --max-sesiones suficiente en el motor bloqueante).
+ * @author Sistema de Subasta
+ */
+public class GeneradorCarga {
+    enum Patron {
+        CONSTANTE,   // Cada postor puja a "ritmo" propuestas por segundo
+        FINAL,       // Como CONSTANTE, y en los últimos segundos de la subasta a "ritmo-final"
+        INUNDACION   // Cada postor mantiene siempre "en-vuelo" propuestas sin responder
+    }
+
+    // El número de postor ocupa las cifras bajas del monto
+    private static final long POSTORES_MAXIMOS = 100000;
+    // Propuestas sin responder que se pueden seguir por postor (potencia de 2)
+    private static final int VENTANA_MAXIMA = 1024;
+    private static final int TAMANIO_SALIDA = 16384;
+
+    // Configuración
+    private String host = "localhost";
+    private int puerto = 8080;
+    private int postores = 100;
+    private int subastas = 1;
+    private Patron patron = Patron.CONSTANTE;
+    private double ritmo = 1;
+    private long finalSeg = 10;
+    private double ritmoFinal = 20;
+    private int enVuelo = 8;
+    private long duracionSeg = 30;
+    private boolean binario = true;
+    private int hilos = 2;
+    private long informeSeg = 5;
+    private String csv = null;
+
+    // Origen de tiempos de los montos
+    private final long inicio = System.nanoTime();
+    private volatile boolean terminado = false;
+
+    // Resultados
+    private final LongAdder conectados = new LongAdder();
+    private final LongAdder fallosConexion = new LongAdder();
+    private final LongAdder unidos = new LongAdder();
+    private final LongAdder desconectados = new LongAdder();
+    private final LongAdder subastasCerradas = new LongAdder();
+    private final LongAdder enviadas = new LongAdder();
+    private final LongAdder aceptadas = new LongAdder();
+    private final LongAdder rechazadasLimite = new LongAdder();
+    private final LongAdder errores = new LongAdder();
+    private final LongAdder saturadas = new LongAdder();
+    private final LongAdder actualizaciones = new LongAdder();
+    private final LongAdder latidos = new LongAdder();
+    private final Histograma latencia = new Histograma();        // microsegundos
+    private final Histograma latenciaIntervalo = new Histograma();
+    private final Histograma retraso = new Histograma();         // microsegundos
+    private final Histograma retrasoIntervalo = new Histograma();
+
+    /**
+     * Estado de un postor simulado; solo lo toca su bucle
+     */
+    private static final class Postor {
+        final int indice;
+        final long idSubasta;
+        final SocketChannel canal;
+        final ByteBuffer entrada = ByteBuffer.allocate(ProtocoloBinario.LONGITUD_MAXIMA);
+        final ByteBuffer salida = ByteBuffer.allocate(TAMANIO_SALIDA);
+        // Propuestas en vuelo: instante de envío y número, en la posición peticion % VENTANA_MAXIMA
+        final long[] enviadaEn = new long[VENTANA_MAXIMA];
+        final long[] peticionEn = new long[VENTANA_MAXIMA];
+        SelectionKey clave;
+        int sinResponder = 0;
+        long ultimaPeticion = 0;
+        long proximoEnvio;
+        long cierreSubasta = 0;   // nanoTime del cierre anunciado, 0 si aun no se sabe
+        boolean activo = true;
+
+        Postor(int indice, long idSubasta, SocketChannel canal) {
+            this.indice = indice;
+            this.idSubasta = idSubasta;
+            this.canal = canal;
+        }
+    }
+
+    /**
+     * Bucle NIO que atiende a una parte de los postores
+     */
+    private final class Bucle implements Runnable {
+        private final Selector selector;
+        private final ConcurrentLinkedQueue<Postor> altas = new ConcurrentLinkedQueue<>();
+        private final List<Postor> propios = new ArrayList<>();
+        private final PriorityQueue<Postor> agenda =
+            new PriorityQueue<>((a, b) -> Long.compare(a.proximoEnvio, b.proximoEnvio));
+        private final ProtocoloBinario.Trama trama = new ProtocoloBinario.Trama();
+        private final ProtocoloTexto.Mensaje mensaje = new ProtocoloTexto.Mensaje();
+
+        Bucle() throws IOException {
+            this.selector = Selector.open();
+        }
+
+        void agregar(Postor postor) {
+            altas.add(postor);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!terminado) {
+                    Postor alta;
+                    while ((alta = altas.poll()) != null) {
+                        registrar(alta);
+                    }
+
+                    long ahora = System.nanoTime();
+                    long esperaMs = agenda.isEmpty() ? 100
+                        : Math.min(100, (agenda.peek().proximoEnvio - ahora) / 1_000_000);
+                    if (esperaMs > 0) {
+                        selector.select(esperaMs);
+                    } else {
+                        selector.selectNow();
+                    }
+
+                    for (SelectionKey clave : selector.selectedKeys()) {
+                        Postor postor = (Postor) clave.attachment();
+                        if (clave.isValid() && clave.isWritable()) {
+                            vaciar(postor);
+                        }
+                        if (clave.isValid() && clave.isReadable()) {
+                            leer(postor);
+                        }
+                    }
+                    selector.selectedKeys().clear();
+
+                    ahora = System.nanoTime();
+                    while (!agenda.isEmpty() && agenda.peek().proximoEnvio <= ahora) {
+                        Postor postor = agenda.poll();
+                        if (postor.activo) {
+                            enviarPropuesta(postor, ahora);
+                            postor.proximoEnvio = ahora + siguienteIntervalo(postor, ahora);
+                            agenda.add(postor);
+                        }
+                    }
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                System.out.println("[ERROR] Bucle del generador: " + e.getMessage());
+            } finally {
+                for (Postor postor : propios) {
+                    cerrar(postor);
+                }
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    // Se cierra al terminar
+                }
+            }
+        }
+
+        private void registrar(Postor postor) throws IOException {
+            propios.add(postor);
+            postor.clave = postor.canal.register(selector, SelectionKey.OP_READ, postor);
+            if (binario) {
+                ProtocoloBinario.escribirUnirse(postor.salida, postor.idSubasta);
+            } else {
+                ProtocoloTexto.escribirUnirse(postor.salida, postor.idSubasta);
+            }
+            vaciar(postor);
+
+            if (patron != Patron.INUNDACION) {
+                // Primer envío repartido dentro del primer intervalo, para no pujar todos a la vez
+                long ahora = System.nanoTime();
+                double ritmoInicial = ritmo > 0 ? ritmo : 1;
+                postor.proximoEnvio = ahora +
+                    (long) (ThreadLocalRandom.current().nextDouble() * 1e9 / ritmoInicial);
+                agenda.add(postor);
+            }
+        }
+
+        /**
+         * Nanosegundos hasta la siguiente propuesta: exponencial (llegadas de
+         * Poisson) con el ritmo que toca según el patrón
+         */
+        private long siguienteIntervalo(Postor postor, long ahora) {
+            double ritmoActual = ritmo;
+            if (patron == Patron.FINAL && postor.cierreSubasta > 0) {
+                long inicioAvalancha = postor.cierreSubasta - finalSeg * 1_000_000_000L;
+                if (ahora >= inicioAvalancha) {
+                    ritmoActual = ritmoFinal;
+                } else if (ritmo <= 0) {
+                    return inicioAvalancha - ahora;
+                }
+            }
+            if (ritmoActual <= 0) {
+                return 100_000_000L;
+            }
+            double u = ThreadLocalRandom.current().nextDouble();
+            return (long) (-Math.log(1 - u) * 1e9 / ritmoActual);
+        }
+
+        private void enviarPropuesta(Postor postor, long ahora) {
+            if (postor.sinResponder >= VENTANA_MAXIMA || postor.salida.remaining() < 128) {
+                // El servidor no da abasto con este postor: se cuenta y se salta
+                saturadas.increment();
+                return;
+            }
+
+            long peticion = ++postor.ultimaPeticion;
+            long monto = ((ahora - inicio) / 1000) * POSTORES_MAXIMOS + postor.indice;
+            if (binario) {
+                ProtocoloBinario.escribirPropuesta(postor.salida, postor.idSubasta, peticion, monto);
+            } else {
+                ProtocoloTexto.escribirPropuesta(postor.salida, peticion, monto);
+            }
+
+            int posicion = (int) (peticion & (VENTANA_MAXIMA - 1));
+            postor.enviadaEn[posicion] = ahora;
+            postor.peticionEn[posicion] = peticion;
+            postor.sinResponder++;
+            enviadas.increment();
+            vaciar(postor);
+        }
+
+        /**
+         * Patrón inundación: completa la ventana de propuestas sin responder
+         */
+        private void inundar(Postor postor) {
+            long ahora = System.nanoTime();
+            while (postor.activo && postor.sinResponder < enVuelo && postor.salida.remaining() >= 128) {
+                enviarPropuesta(postor, ahora);
+            }
+        }
+
+        private void vaciar(Postor postor) {
+            try {
+                postor.salida.flip();
+                postor.canal.write(postor.salida);
+                boolean quedan = postor.salida.hasRemaining();
+                postor.salida.compact();
+                if (postor.clave.isValid()) {
+                    postor.clave.interestOps(quedan ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+                                                    : SelectionKey.OP_READ);
+                }
+            } catch (IOException e) {
+                desconectar(postor);
+            }
+        }
+
+        private void leer(Postor postor) {
+            int leidos;
+            try {
+                leidos = postor.canal.read(postor.entrada);
+            } catch (IOException e) {
+                leidos = -1;
+            }
+            if (leidos < 0) {
+                desconectar(postor);
+                return;
+            }
+
+            long ahora = System.nanoTime();
+            ByteBuffer entrada = postor.entrada;
+            entrada.flip();
+            if (binario) {
+                while (entrada.remaining() >= ProtocoloBinario.PREFIJO) {
+                    int longitud = entrada.getShort(entrada.position()) & 0xFFFF;
+                    if (entrada.remaining() < ProtocoloBinario.PREFIJO + longitud) {
+                        break;
+                    }
+                    int fin = entrada.position() + ProtocoloBinario.PREFIJO + longitud;
+                    int limite = entrada.limit();
+                    entrada.position(entrada.position() + ProtocoloBinario.PREFIJO).limit(fin);
+                    if (ProtocoloBinario.decodificar(entrada, trama)) {
+                        atenderTrama(postor, ahora);
+                    }
+                    entrada.limit(limite).position(fin);
+                }
+            } else {
+                // Cada linea se decodifica en el propio buffer de entrada
+                int inicioLinea = entrada.position();
+                int limite = entrada.limit();
+                for (int i = inicioLinea; i < limite; i++) {
+                    if (entrada.get(i) == '\n') {
+                        entrada.limit(i).position(inicioLinea);
+                        ProtocoloTexto.decodificar(entrada, mensaje);
+                        atenderMensaje(postor, entrada, ahora);
+                        entrada.limit(limite);
+                        inicioLinea = i + 1;
+                    }
+                }
+                entrada.position(inicioLinea);
+            }
+            entrada.compact();
+
+            if (patron == Patron.INUNDACION) {
+                inundar(postor);
+            }
+        }
+
+        private void atenderTrama(Postor postor, long ahora) {
+            switch (trama.tipo) {
+                case ProtocoloBinario.INICIADA:
+                    iniciada(postor, trama.datos.getInt(), ahora);
+                    break;
+                case ProtocoloBinario.RESPUESTA:
+                    completar(postor, trama.secuencia, ahora, true, false);
+                    break;
+                case ProtocoloBinario.ERROR:
+                    if (trama.secuencia > 0) {
+                        completar(postor, trama.secuencia, ahora, false,
+                                  ProtocoloBinario.leerError(trama).startsWith("LIMITE:"));
+                    }
+                    break;
+                case ProtocoloBinario.ACTUALIZACION:
+                    actualizacion(trama.monto, ahora);
+                    break;
+                case ProtocoloBinario.LATIDO:
+                    latidos.increment();
+                    break;
+                case ProtocoloBinario.PING:
+                    contestarPing(postor);
+                    break;
+                case ProtocoloBinario.GANADOR:
+                    cerrada(postor);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        /**
+         * Atiende la linea de texto ya decodificada en "mensaje"
+         */
+        private void atenderMensaje(Postor postor, ByteBuffer linea, long ahora) {
+            switch (mensaje.tipo) {
+                case ProtocoloBinario.ACTUALIZACION:
+                    actualizacion(mensaje.monto, ahora);
+                    break;
+                case ProtocoloBinario.RESPUESTA:
+                case ProtocoloBinario.ERROR:
+                    if (mensaje.peticion > 0) {
+                        boolean exito = mensaje.tipo == ProtocoloBinario.RESPUESTA;
+                        completar(postor, mensaje.peticion, ahora, exito, mensaje.esLimite());
+                    }
+                    break;
+                case ProtocoloBinario.INICIADA:
+                    iniciada(postor, mensaje.tiempoRestante, ahora);
+                    break;
+                case ProtocoloBinario.LATIDO:
+                    latidos.increment();
+                    break;
+                case ProtocoloBinario.PING:
+                    contestarPing(postor);
+                    break;
+                case ProtocoloBinario.GANADOR:
+                    cerrada(postor);
+                    break;
+                default:
+                    if (ProtocoloTexto.empiezaCon(linea, "UPDATE:")) {
+                        errores.increment();
+                    }
+                    break;
+            }
+        }
+
+        /**
+         * Un postor callado (poco ritmo) recibe PING del servidor: sin el
+         * PONG lo cerraría por inactividad
+         */
+        private void contestarPing(Postor postor) {
+            if (postor.salida.remaining() < 64) {
+                return;
+            }
+            if (binario) {
+                ProtocoloBinario.escribirSimple(postor.salida, ProtocoloBinario.PONG);
+            } else {
+                ProtocoloTexto.escribirSimple(postor.salida, ProtocoloBinario.PONG);
+            }
+            vaciar(postor);
+        }
+
+        private void iniciada(Postor postor, long segundosRestantes, long ahora) {
+            unidos.increment();
+            postor.cierreSubasta = ahora + segundosRestantes * 1_000_000_000L;
+            if (patron == Patron.INUNDACION) {
+                inundar(postor);
+            }
+        }
+
+        private void completar(Postor postor, long peticion, long ahora, boolean exito, boolean limite) {
+            int posicion = (int) (peticion & (VENTANA_MAXIMA - 1));
+            if (postor.peticionEn[posicion] != peticion) {
+                return;
+            }
+            long micros = (ahora - postor.enviadaEn[posicion]) / 1000;
+            postor.peticionEn[posicion] = 0;
+            postor.sinResponder--;
+            latencia.registrar(micros);
+            latenciaIntervalo.registrar(micros);
+            if (exito) {
+                aceptadas.increment();
+            } else if (limite) {
+                rechazadasLimite.increment();
+            } else {
+                errores.increment();
+            }
+        }
+
+        /**
+         * Retraso de un UPDATE: ahora menos el instante codificado en el monto
+         */
+        private void actualizacion(long monto, long ahora) {
+            actualizaciones.increment();
+            long micros = (ahora - inicio) / 1000 - monto / POSTORES_MAXIMOS;
+            if (micros >= 0) {
+                retraso.registrar(micros);
+                retrasoIntervalo.registrar(micros);
+            }
+        }
+
+        private void cerrada(Postor postor) {
+            if (postor.activo) {
+                postor.activo = false;
+                subastasCerradas.increment();
+            }
+        }
+
+        private void desconectar(Postor postor) {
+            if (postor.activo) {
+                postor.activo = false;
+                desconectados.increment();
+            }
+            cerrar(postor);
+        }
+
+        private void cerrar(Postor postor) {
+            if (postor.clave != null) {
+                postor.clave.cancel();
+            }
+            try {
+                postor.canal.close();
+            } catch (IOException e) {
+                // Ya estaba cerrado
+            }
+        }
+
+        int getSinResponder() {
+            int total = 0;
+            for (Postor postor : propios) {
+                total += postor.sinResponder;
+            }
+            return total;
+        }
+    }
+
+    public static void main(String[] args) {
+        GeneradorCarga generador = new GeneradorCarga();
+        try {
+            for (String arg : args) {
+                if (!arg.startsWith("--")) {
+                    throw new IllegalArgumentException("Opcion invalida: " + arg);
+                }
+                int igual = arg.indexOf('=');
+                String clave = (igual < 0) ? arg.substring(2) : arg.substring(2, igual);
+                String valor = (igual < 0) ? "" : arg.substring(igual + 1);
+                generador.aplicarOpcion(clave, valor);
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println("[ERROR] " + e.getMessage());
+            System.exit(1);
+        }
+
+        try {
+            generador.ejecutar();
+        } catch (IOException | InterruptedException e) {
+            System.out.println("[ERROR] " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private void aplicarOpcion(String clave, String valor) {
+        switch (clave) {
+            case "host":
+                host = valor;
+                break;
+            case "puerto":
+                puerto = Integer.parseInt(valor);
+                break;
+            case "postores":
+                postores = Integer.parseInt(valor);
+                if (postores < 1 || postores >= POSTORES_MAXIMOS) {
+                    throw new IllegalArgumentException("--postores debe estar entre 1 y " +
+                                                       (POSTORES_MAXIMOS - 1));
+                }
+                break;
+            case "subastas":
+                subastas = Integer.parseInt(valor);
+                if (subastas < 1) {
+                    throw new IllegalArgumentException("--subastas debe ser mayor que 0");
+                }
+                break;
+            case "patron":
+                patron = Patron.valueOf(valor.toUpperCase());
+                break;
+            case "ritmo":
+                ritmo = leerNoNegativo(clave, valor);
+                break;
+            case "final-seg":
+                finalSeg = (long) leerNoNegativo(clave, valor);
+                break;
+            case "ritmo-final":
+                ritmoFinal = leerNoNegativo(clave, valor);
+                break;
+            case "en-vuelo":
+                enVuelo = Integer.parseInt(valor);
+                if (enVuelo < 1 || enVuelo > VENTANA_MAXIMA) {
+                    throw new IllegalArgumentException("--en-vuelo debe estar entre 1 y " + VENTANA_MAXIMA);
+                }
+                break;
+            case "duracion-seg":
+                duracionSeg = (long) leerNoNegativo(clave, valor);
+                break;
+            case "binario":
+                binario = valor.isEmpty() || Boolean.parseBoolean(valor);
+                break;
+            case "hilos":
+                hilos = Integer.parseInt(valor);
+                if (hilos < 1) {
+                    throw new IllegalArgumentException("--hilos debe ser mayor que 0");
+                }
+                break;
+            case "informe-seg":
+                informeSeg = Math.max(1, (long) leerNoNegativo(clave, valor));
+                break;
+            case "csv":
+                csv = valor;
+                break;
+            default:
+                throw new IllegalArgumentException("Opcion desconocida: --" + clave);
+        }
+    }
+
+    private static double leerNoNegativo(String clave, String valor) {
+        double numero = Double.parseDouble(valor);
+        if (numero < 0) {
+            throw new IllegalArgumentException("--" + clave + " no puede ser negativo");
+        }
+        return numero;
+    }
+
+    /**
+     * Conecta a los postores, deja correr la prueba e imprime el informe
+     */
+    private void ejecutar() throws IOException, InterruptedException {
+        System.out.println("[CARGA] " + postores + " postores contra " + host + ":" + puerto +
+                           ", patron " + patron.name().toLowerCase() + ", protocolo " +
+                           (binario ? "binario" : "texto") + ", " + duracionSeg + " s");
+
+        Bucle[] bucles = new Bucle[hilos];
+        Thread[] hilosBucle = new Thread[hilos];
+        for (int i = 0; i < hilos; i++) {
+            bucles[i] = new Bucle();
+            hilosBucle[i] = new Thread(bucles[i], "carga-" + i);
+            hilosBucle[i].start();
+        }
+
+        // Conexión secuencial: no desborda la cola de aceptación del servidor
+        InetSocketAddress direccion = new InetSocketAddress(host, puerto);
+        long inicioConexion = System.nanoTime();
+        for (int i = 0; i < postores; i++) {
+            try {
+                SocketChannel canal = conectar(direccion);
+                bucles[i % hilos].agregar(new Postor(i, (i % subastas) + 1, canal));
+                conectados.increment();
+            } catch (IOException e) {
+                if (fallosConexion.sum() == 0) {
+                    System.out.println("[ERROR] No se pudo conectar: " + e.getMessage());
+                }
+                fallosConexion.increment();
+            }
+        }
+        System.out.println("[CARGA] " + conectados.sum() + " conectados en " +
+                           (System.nanoTime() - inicioConexion) / 1_000_000 + " ms" +
+                           (fallosConexion.sum() > 0 ? " (" + fallosConexion.sum() + " fallos)" : ""));
+
+        PrintWriter filas = null;
+        if (csv != null) {
+            filas = new PrintWriter(new FileWriter(csv));
+            filas.println("segundo,enviadas,aceptadas,limite,errores,propuestas_s," +
+                          "latencia_p50_us,latencia_p99_us,latencia_max_us," +
+                          "retraso_p50_us,retraso_p99_us,actualizaciones");
+        }
+
+        long inicioPrueba = System.nanoTime();
+        long fin = inicioPrueba + duracionSeg * 1_000_000_000L;
+        long siguienteInforme = inicioPrueba + informeSeg * 1_000_000_000L;
+        long enviadasAntes = 0;
+        long aceptadasAntes = 0;
+        long limiteAntes = 0;
+        long erroresAntes = 0;
+        long actualizacionesAntes = 0;
+        long informeAnterior = inicioPrueba;
+
+        while (System.nanoTime() < fin && activos() > 0) {
+            long ahora = System.nanoTime();
+            if (ahora < siguienteInforme) {
+                Thread.sleep(Math.min(100, (siguienteInforme - ahora) / 1_000_000 + 1));
+                continue;
+            }
+
+            double segundos = (ahora - informeAnterior) / 1e9;
+            long enviadasAhora = enviadas.sum();
+            long aceptadasAhora = aceptadas.sum();
+            long limiteAhora = rechazadasLimite.sum();
+            long erroresAhora = errores.sum();
+            long actualizacionesAhora = actualizaciones.sum();
+            double porSegundo = (aceptadasAhora + limiteAhora + erroresAhora -
+                                 aceptadasAntes - limiteAntes - erroresAntes) / segundos;
+            long transcurrido = (ahora - inicioPrueba) / 1_000_000_000L;
+
+            System.out.printf("[CARGA] %3d s: %.0f respuestas/s, enviadas %d, latencia p50 %s p99 %s, " +
+                              "retraso p50 %s p99 %s, limite %d, errores %d%n",
+                              transcurrido, porSegundo, enviadasAhora - enviadasAntes,
+                              ms(latenciaIntervalo.percentil(50)), ms(latenciaIntervalo.percentil(99)),
+                              ms(retrasoIntervalo.percentil(50)), ms(retrasoIntervalo.percentil(99)),
+                              limiteAhora - limiteAntes, erroresAhora - erroresAntes);
+            if (filas != null) {
+                filas.printf("%d,%d,%d,%d,%d,%.1f,%d,%d,%d,%d,%d,%d%n", transcurrido,
+                             enviadasAhora - enviadasAntes, aceptadasAhora - aceptadasAntes,
+                             limiteAhora - limiteAntes, erroresAhora - erroresAntes, porSegundo,
+                             latenciaIntervalo.percentil(50), latenciaIntervalo.percentil(99),
+                             latenciaIntervalo.getMaximo(), retrasoIntervalo.percentil(50),
+                             retrasoIntervalo.percentil(99), actualizacionesAhora - actualizacionesAntes);
+                filas.flush();
+            }
+
+            latenciaIntervalo.reiniciar();
+            retrasoIntervalo.reiniciar();
+            enviadasAntes = enviadasAhora;
+            aceptadasAntes = aceptadasAhora;
+            limiteAntes = limiteAhora;
+            erroresAntes = erroresAhora;
+            actualizacionesAntes = actualizacionesAhora;
+            informeAnterior = ahora;
+            siguienteInforme += informeSeg * 1_000_000_000L;
+        }
+
+        double duracion = (System.nanoTime() - inicioPrueba) / 1e9;
+        terminado = true;
+        int sinResponder = 0;
+        for (int i = 0; i < hilos; i++) {
+            bucles[i].selector.wakeup();
+            hilosBucle[i].join();
+            sinResponder += bucles[i].getSinResponder();
+        }
+        if (filas != null) {
+            filas.close();
+        }
+
+        informar(duracion, sinResponder);
+    }
+
+    private SocketChannel conectar(InetSocketAddress direccion) throws IOException {
+        SocketChannel canal = SocketChannel.open(direccion);
+        try {
+            canal.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            if (binario) {
+                // Saludo bloqueante antes de pasar el canal a su bucle
+                canal.write(ByteBuffer.wrap((ProtocoloBinario.SALUDO + "\n").getBytes(StandardCharsets.UTF_8)));
+                StringBuilder respuesta = new StringBuilder();
+                ByteBuffer unByte = ByteBuffer.allocate(1);
+                while (true) {
+                    unByte.clear();
+                    if (canal.read(unByte) < 0) {
+                        throw new IOException("El servidor cerro la conexion durante el saludo");
+                    }
+                    char c = (char) unByte.get(0);
+                    if (c == '\n') {
+                        break;
+                    }
+                    respuesta.append(c);
+                }
+                if (!respuesta.toString().trim().equals(ProtocoloBinario.SALUDO)) {
+                    throw new IOException("El servidor no acepta el protocolo binario: " + respuesta);
+                }
+            }
+            canal.configureBlocking(false);
+            return canal;
+        } catch (IOException e) {
+            canal.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Postores que siguen conectados y con la subasta abierta
+     */
+    private long activos() {
+        return conectados.sum() - desconectados.sum() - subastasCerradas.sum();
+    }
+
+    private void informar(double duracion, int sinResponder) {
+        long respondidas = aceptadas.sum() + rechazadasLimite.sum() + errores.sum();
+        System.out.println();
+        System.out.println("=== RESULTADO DE LA CARGA ===");
+        System.out.printf("Postores:        %d conectados, %d unidos, %d fallos de conexion, " +
+                          "%d desconectados, %d con la subasta cerrada%n",
+                          conectados.sum(), unidos.sum(), fallosConexion.sum(),
+                          desconectados.sum(), subastasCerradas.sum());
+        System.out.printf("Duracion:        %.1f s%n", duracion);
+        System.out.printf("Propuestas:      %d enviadas, %d respondidas, %d sin respuesta, " +
+                          "%d no enviadas por saturacion%n",
+                          enviadas.sum(), respondidas, sinResponder, saturadas.sum());
+        System.out.printf("Respuestas:      %d aceptadas, %d rechazadas por limite, %d otros errores%n",
+                          aceptadas.sum(), rechazadasLimite.sum(), errores.sum());
+        System.out.printf("Rendimiento:     %.0f respuestas/s%n", respondidas / duracion);
+        System.out.printf("Latencia (ms):   media %s  p50 %s  p90 %s  p99 %s  p99.9 %s  max %s%n",
+                          ms((long) latencia.getMedia()), ms(latencia.percentil(50)),
+                          ms(latencia.percentil(90)), ms(latencia.percentil(99)),
+                          ms(latencia.percentil(99.9)), ms(latencia.getMaximo()));
+        System.out.printf("Broadcast (ms):  media %s  p50 %s  p90 %s  p99 %s  p99.9 %s  max %s" +
+                          "  (%d UPDATE, %d LATIDO)%n",
+                          ms((long) retraso.getMedia()), ms(retraso.percentil(50)),
+                          ms(retraso.percentil(90)), ms(retraso.percentil(99)),
+                          ms(retraso.percentil(99.9)), ms(retraso.getMaximo()),
+                          actualizaciones.sum(), latidos.sum());
+    }
+
+    private static String ms(long micros) {
+        return String.format("%.2f", micros / 1000.0);
+    }
+}
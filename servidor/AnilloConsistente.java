@@ -0,0 +1,127 @@
+package socket.conconexion.servidor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Anillo de hash consistente que asigna cada ID de subasta a un nodo del
+ * cluster ("host:puerto"). Cada nodo ocupa varios puntos virtuales del
+ * anillo para repartir la carga; al entrar o salir un nodo solo cambian de
+ * dueño las subastas de los tramos que gana o pierde (≈ 1/N).
+ * Es inmutable: los cambios de miembros crean otro anillo, así que se puede
+ * consultar desde cualquier hilo sin bloqueo.
+ * @author Sistema de Subasta
+ */
+public final class AnilloConsistente {
+    public static final int VIRTUALES_POR_DEFECTO = 128;
+
+    private final int virtuales;
+    private final Set<String> nodos;
+    // Puntos ordenados y el nodo de cada uno
+    private final long[] puntos;
+    private final String[] duenios;
+
+    public AnilloConsistente(Collection<String> nodos, int virtuales) {
+        if (virtuales < 1) {
+            throw new IllegalArgumentException("Se necesita al menos un punto virtual por nodo");
+        }
+        this.virtuales = virtuales;
+        this.nodos = Collections.unmodifiableSet(new TreeSet<>(nodos));
+
+        long[] claves = new long[this.nodos.size() * virtuales];
+        String[] porClave = new String[claves.length];
+        int i = 0;
+        for (String nodo : this.nodos) {
+            for (int v = 0; v < virtuales; v++) {
+                claves[i] = hash(nodo + "#" + v);
+                porClave[i] = nodo;
+                i++;
+            }
+        }
+
+        // Ordenar los puntos arrastrando su nodo
+        Integer[] orden = new Integer[claves.length];
+        for (int k = 0; k < orden.length; k++) {
+            orden[k] = k;
+        }
+        Arrays.sort(orden, (a, b) -> Long.compare(claves[a], claves[b]));
+        this.puntos = new long[claves.length];
+        this.duenios = new String[claves.length];
+        for (int k = 0; k < orden.length; k++) {
+            puntos[k] = claves[orden[k]];
+            duenios[k] = porClave[orden[k]];
+        }
+    }
+
+    /**
+     * Nodo dueño de la subasta: el primer punto del anillo a partir de su
+     * hash, o null si el anillo está vacío
+     */
+    public String propietario(long idSubasta) {
+        if (puntos.length == 0) {
+            return null;
+        }
+        int posicion = Arrays.binarySearch(puntos, mezclar(idSubasta));
+        if (posicion < 0) {
+            posicion = -posicion - 1;
+        }
+        return duenios[posicion == puntos.length ? 0 : posicion];
+    }
+
+    /**
+     * Anillo con el nodo añadido (el mismo si ya estaba)
+     */
+    public AnilloConsistente con(String nodo) {
+        if (nodos.contains(nodo)) {
+            return this;
+        }
+        Set<String> nuevos = new TreeSet<>(nodos);
+        nuevos.add(nodo);
+        return new AnilloConsistente(nuevos, virtuales);
+    }
+
+    /**
+     * Anillo sin el nodo (el mismo si no estaba)
+     */
+    public AnilloConsistente sin(String nodo) {
+        if (!nodos.contains(nodo)) {
+            return this;
+        }
+        Set<String> nuevos = new TreeSet<>(nodos);
+        nuevos.remove(nodo);
+        return new AnilloConsistente(nuevos, virtuales);
+    }
+
+    public Set<String> getNodos() {
+        return nodos;
+    }
+
+    public boolean estaVacio() {
+        return nodos.isEmpty();
+    }
+
+    /**
+     * FNV-1a de 64 bits del texto, mezclado para repartir bien los puntos
+     */
+    private static long hash(String texto) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : texto.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        return mezclar(h);
+    }
+
+    /**
+     * Finalizador de SplitMix64: IDs consecutivos caen lejos en el anillo
+     */
+    private static long mezclar(long x) {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+}
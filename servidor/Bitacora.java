@@ -0,0 +1,400 @@
+package socket.conconexion.servidor;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Registro de eventos del servidor con niveles y escritura asíncrona.
+ *
+ * Los hilos de los clientes no escriben en la consola: copian la entrada en
+ * un anillo de casillas preasignadas (reservando su posición con un CAS) y
+ * vuelven. Un único hilo escritor vacía el anillo por lotes hacia la
+ * consola o hacia un archivo que rota al llegar a un tamaño. Si el anillo
+ * se llena, las entradas DEPURACION e INFO se descartan y se cuentan; las
+ * de AVISO y ERROR esperan a que haya sitio.
+ *
+ * Uso: Bitacora.info("NUEVA ALTA", "Subasta 3: $1200.00 de 10.0.0.7").
+ * Para mensajes caros de construir, comprobar antes Bitacora.depurando().
+ * @author Sistema de Subasta
+ */
+public final class Bitacora {
+
+    public enum Nivel {
+        DEPURACION, INFO, AVISO, ERROR
+    }
+
+    public enum Formato {
+        TEXTO,   // fecha nivel [hilo] [ETIQUETA] mensaje
+        JSON     // un objeto JSON por línea
+    }
+
+    private static final int CAPACIDAD = 1 << 14;  // Potencia de dos
+    private static final int MASCARA = CAPACIDAD - 1;
+    private static final long ESPERA_NANOS = 100_000_000L;
+    private static final DateTimeFormatter FECHA =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    /**
+     * Casilla del anillo. Los campos se escriben antes que "publicada" y el
+     * escritor sólo los lee después de ver su secuencia ahí.
+     */
+    private static final class Entrada {
+        volatile long publicada = -1;
+        long instante;
+        Nivel nivel;
+        String hilo;
+        String etiqueta;
+        String mensaje;
+    }
+
+    private static final Entrada[] anillo = new Entrada[CAPACIDAD];
+    private static final AtomicLong siguiente = new AtomicLong();  // Próxima posición a reservar
+    private static volatile long consumida = 0;                    // Posiciones ya escritas
+    private static final LongAdder descartadas = new LongAdder();
+    private static volatile boolean durmiendo = false;
+    private static volatile boolean cerrando = false;
+
+    private static volatile Nivel nivelMinimo = Nivel.INFO;
+    private static volatile Formato formato = Formato.TEXTO;
+    private static volatile Destino destinoNuevo = null;
+
+    // Se captura al cargar la clase por si alguien redirige System.out después
+    private static final PrintStream consola = System.out;
+    private static final Thread escritor;
+
+    static {
+        for (int i = 0; i < CAPACIDAD; i++) {
+            anillo[i] = new Entrada();
+        }
+        escritor = new Thread(Bitacora::escribirSiempre, "bitacora");
+        escritor.setDaemon(true);
+        escritor.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Bitacora::cerrar, "bitacora-cierre"));
+    }
+
+    private Bitacora() {
+    }
+
+    /**
+     * Cambia el nivel, el formato y el destino (null = consola). Los
+     * archivos rotan a "archivo.1", "archivo.2"... al pasar de maxBytes.
+     */
+    public static void configurar(Nivel nivel, Formato formato, String archivo,
+                                  long maxBytes, int archivos) throws IOException {
+        Bitacora.nivelMinimo = nivel;
+        Bitacora.formato = formato;
+        destinoNuevo = (archivo == null)
+                ? new Destino(consola, null, 0, 0)
+                : Destino.abrirArchivo(new File(archivo), maxBytes, archivos);
+        LockSupport.unpark(escritor);
+    }
+
+    public static boolean activo(Nivel nivel) {
+        return nivel.ordinal() >= nivelMinimo.ordinal();
+    }
+
+    public static boolean depurando() {
+        return nivelMinimo == Nivel.DEPURACION;
+    }
+
+    public static void depuracion(String etiqueta, String mensaje) {
+        publicar(Nivel.DEPURACION, etiqueta, mensaje);
+    }
+
+    public static void info(String etiqueta, String mensaje) {
+        publicar(Nivel.INFO, etiqueta, mensaje);
+    }
+
+    public static void aviso(String etiqueta, String mensaje) {
+        publicar(Nivel.AVISO, etiqueta, mensaje);
+    }
+
+    public static void error(String etiqueta, String mensaje) {
+        publicar(Nivel.ERROR, etiqueta, mensaje);
+    }
+
+    /**
+     * Error con la traza de la excepción a continuación del mensaje
+     */
+    public static void error(String etiqueta, String mensaje, Throwable causa) {
+        StringWriter traza = new StringWriter();
+        causa.printStackTrace(new PrintWriter(traza));
+        publicar(Nivel.ERROR, etiqueta, mensaje + System.lineSeparator() + traza.toString().trim());
+    }
+
+    /**
+     * Entradas perdidas desde el arranque por tener el anillo lleno
+     */
+    public static long getDescartadas() {
+        return descartadas.sum();
+    }
+
+    private static void publicar(Nivel nivel, String etiqueta, String mensaje) {
+        if (nivel.ordinal() < nivelMinimo.ordinal()) {
+            return;
+        }
+
+        long posicion;
+        while (true) {
+            posicion = siguiente.get();
+            if (posicion - consumida >= CAPACIDAD) {
+                if (nivel.ordinal() < Nivel.AVISO.ordinal()) {
+                    descartadas.increment();
+                    return;
+                }
+                LockSupport.unpark(escritor);
+                Thread.yield();
+                continue;
+            }
+            if (siguiente.compareAndSet(posicion, posicion + 1)) {
+                break;
+            }
+        }
+
+        Entrada entrada = anillo[(int) posicion & MASCARA];
+        entrada.instante = System.currentTimeMillis();
+        entrada.nivel = nivel;
+        entrada.hilo = Thread.currentThread().getName();
+        entrada.etiqueta = etiqueta;
+        entrada.mensaje = mensaje;
+        entrada.publicada = posicion;
+
+        if (durmiendo) {
+            LockSupport.unpark(escritor);
+        }
+    }
+
+    /**
+     * Bucle del hilo escritor: vacía el anillo en un lote y lo vuelca de
+     * una vez; si no hay nada, se duerme hasta que alguien publique.
+     */
+    private static void escribirSiempre() {
+        Destino destino = new Destino(consola, null, 0, 0);
+        StringBuilder lote = new StringBuilder(64 * 1024);
+        long leida = consumida;
+        long descartadasAvisadas = 0;
+
+        while (true) {
+            Destino nuevo = destinoNuevo;
+            if (nuevo != null) {
+                destinoNuevo = null;
+                volcar(destino, lote);
+                if (destino.esArchivo()) {
+                    destino.cerrar();
+                }
+                destino = nuevo;
+            }
+
+            Entrada entrada = anillo[(int) leida & MASCARA];
+            if (entrada.publicada == leida) {
+                formatear(entrada, lote);
+                entrada.hilo = null;
+                entrada.etiqueta = null;
+                entrada.mensaje = null;
+                leida++;
+                consumida = leida;
+                if (lote.length() >= 32 * 1024) {
+                    volcar(destino, lote);
+                }
+                continue;
+            }
+
+            long perdidas = descartadas.sum();
+            if (perdidas > descartadasAvisadas) {
+                Entrada aviso = new Entrada();
+                aviso.instante = System.currentTimeMillis();
+                aviso.nivel = Nivel.AVISO;
+                aviso.hilo = "bitacora";
+                aviso.etiqueta = "BITACORA";
+                aviso.mensaje = (perdidas - descartadasAvisadas) + " entradas descartadas por anillo lleno";
+                formatear(aviso, lote);
+                descartadasAvisadas = perdidas;
+            }
+            volcar(destino, lote);
+
+            if (cerrando) {
+                destino.cerrar();
+                return;
+            }
+
+            durmiendo = true;
+            if (anillo[(int) leida & MASCARA].publicada != leida && destinoNuevo == null) {
+                LockSupport.parkNanos(ESPERA_NANOS);
+            }
+            durmiendo = false;
+        }
+    }
+
+    /**
+     * Al apagar la JVM se deja que el escritor vacíe lo pendiente
+     */
+    private static void cerrar() {
+        cerrando = true;
+        LockSupport.unpark(escritor);
+        try {
+            escritor.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void volcar(Destino destino, StringBuilder lote) {
+        if (lote.length() == 0) {
+            return;
+        }
+        try {
+            destino.escribir(lote.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            consola.println("[BITACORA] No se pudo escribir: " + e.getMessage());
+        }
+        lote.setLength(0);
+    }
+
+    private static void formatear(Entrada entrada, StringBuilder sb) {
+        if (formato == Formato.JSON) {
+            sb.append("{\"fecha\":\"").append(FECHA.format(Instant.ofEpochMilli(entrada.instante)))
+              .append("\",\"nivel\":\"").append(entrada.nivel)
+              .append("\",\"hilo\":");
+            json(entrada.hilo, sb);
+            if (entrada.etiqueta != null) {
+                sb.append(",\"etiqueta\":");
+                json(entrada.etiqueta, sb);
+            }
+            sb.append(",\"mensaje\":");
+            json(entrada.mensaje, sb);
+            sb.append("}\n");
+            return;
+        }
+
+        FECHA.formatTo(Instant.ofEpochMilli(entrada.instante), sb);
+        sb.append(' ').append(entrada.nivel);
+        for (int i = entrada.nivel.name().length(); i < 10; i++) {
+            sb.append(' ');
+        }
+        sb.append(" [").append(entrada.hilo).append("] ");
+        if (entrada.etiqueta != null) {
+            sb.append('[').append(entrada.etiqueta).append("] ");
+        }
+        sb.append(entrada.mensaje).append('\n');
+    }
+
+    private static void json(String texto, StringBuilder sb) {
+        sb.append('"');
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+
+    /**
+     * Consola o archivo rotativo. Sólo lo usa el hilo escritor.
+     */
+    private static final class Destino {
+        private OutputStream salida;
+        private final File archivo;
+        private final long maxBytes;
+        private final int archivos;
+        private long escritos;
+
+        private Destino(OutputStream salida, File archivo, long maxBytes, int archivos) {
+            this.salida = salida;
+            this.archivo = archivo;
+            this.maxBytes = maxBytes;
+            this.archivos = archivos;
+            this.escritos = (archivo == null) ? 0 : archivo.length();
+        }
+
+        static Destino abrirArchivo(File archivo, long maxBytes, int archivos) throws IOException {
+            return new Destino(abrir(archivo), archivo, maxBytes, archivos);
+        }
+
+        private static OutputStream abrir(File archivo) throws IOException {
+            return new BufferedOutputStream(new FileOutputStream(archivo, true), 64 * 1024);
+        }
+
+        boolean esArchivo() {
+            return archivo != null;
+        }
+
+        void escribir(byte[] bytes) throws IOException {
+            if (archivo != null && escritos > 0 && escritos + bytes.length > maxBytes) {
+                rotar();
+            }
+            salida.write(bytes);
+            salida.flush();
+            escritos += bytes.length;
+        }
+
+        /**
+         * archivo.(n-1) -> archivo.n, ..., archivo -> archivo.1; el más viejo se borra
+         */
+        private void rotar() throws IOException {
+            salida.close();
+            File ultimo = new File(archivo.getPath() + "." + archivos);
+            if (ultimo.exists() && !ultimo.delete()) {
+                throw new IOException("No se pudo borrar " + ultimo);
+            }
+            for (int i = archivos - 1; i >= 1; i--) {
+                File viejo = new File(archivo.getPath() + "." + i);
+                if (viejo.exists()) {
+                    viejo.renameTo(new File(archivo.getPath() + "." + (i + 1)));
+                }
+            }
+            if (archivos > 0) {
+                archivo.renameTo(new File(archivo.getPath() + ".1"));
+            } else {
+                archivo.delete();
+            }
+            salida = abrir(archivo);
+            escritos = 0;
+        }
+
+        void cerrar() {
+            try {
+                if (archivo != null) {
+                    salida.close();
+                } else {
+                    salida.flush();
+                }
+            } catch (IOException e) {
+                consola.println("[BITACORA] Error al cerrar: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package socket.conconexion.servidor;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Cola de salida acotada de una sesión. Los hilos que difunden o responden
+ * solo encolan y nunca esperan al socket; el escritor de la sesión la vacía.
+ * Cuando la cola esta llena se aplica la política configurada. Las
+ * actualizaciones de estado (UPDATE, LATIDO) son "reemplazables": una más
+ * nueva deja obsoleta a la anterior. Las respuestas, el inicio y el
+ * resultado nunca se descartan.
+ * @author Sistema de Subasta
+ */
+class ColaSalida {
+    // Qué hacer con un cliente que no lee al ritmo de los broadcasts
+    enum Politica {
+        DESCARTAR_VIEJOS,  // Llena: se descarta la actualización más antigua
+        SOLO_ULTIMO,       // Siempre: solo se guarda la actualización más reciente
+        DESCONECTAR        // Llena: se cierra la conexión
+    }
+
+    private static final class Pendiente {
+        final ByteBuffer datos;
+        final boolean reemplazable;
+
+        Pendiente(ByteBuffer datos, boolean reemplazable) {
+            this.datos = datos;
+            this.reemplazable = reemplazable;
+        }
+    }
+
+    private final ArrayDeque<Pendiente> pendientes = new ArrayDeque<>();
+    private final int capacidad;
+    private final Politica politica;
+    private long descartados = 0;
+    private boolean desbordada = false;
+    private boolean cerrada = false;
+
+    ColaSalida(int capacidad, Politica politica) {
+        this.capacidad = capacidad;
+        this.politica = politica;
+    }
+
+    /**
+     * Encola un mensaje según la política.
+     * @return false si la cola ya está cerrada (el mensaje no saldrá), o si
+     *         se desbordó y la conexión debe cerrarse (estaDesbordada())
+     */
+    synchronized boolean ofrecer(ByteBuffer datos, boolean reemplazable) {
+        if (cerrada || desbordada) {
+            return false;
+        }
+
+        if (reemplazable && politica == Politica.SOLO_ULTIMO) {
+            descartados += quitarReemplazables(pendientes.size());
+        }
+
+        if (pendientes.size() >= capacidad) {
+            if (politica == Politica.DESCONECTAR) {
+                desbordada = true;
+                pendientes.clear();
+                return false;
+            }
+            if (quitarReemplazables(1) == 1) {
+                descartados++;
+            } else if (reemplazable) {
+                // Solo hay mensajes que no se pueden perder: se pierde este
+                descartados++;
+                return true;
+            } else {
+                desbordada = true;
+                pendientes.clear();
+                return false;
+            }
+        }
+
+        pendientes.add(new Pendiente(datos, reemplazable));
+        notifyAll();
+        return true;
+    }
+
+    private int quitarReemplazables(int maximo) {
+        int quitados = 0;
+        Iterator<Pendiente> it = pendientes.iterator();
+        while (quitados < maximo && it.hasNext()) {
+            if (it.next().reemplazable) {
+                it.remove();
+                quitados++;
+            }
+        }
+        return quitados;
+    }
+
+    /**
+     * Saca el siguiente mensaje, o null si no hay
+     */
+    synchronized ByteBuffer sacar() {
+        Pendiente pendiente = pendientes.poll();
+        return pendiente == null ? null : pendiente.datos;
+    }
+
+    /**
+     * Saca el siguiente mensaje esperando a que llegue; encolar, cerrar y
+     * vaciar despiertan al que espera
+     * @return el mensaje, o null si la cola está cerrada y no queda nada
+     */
+    synchronized ByteBuffer esperar() throws InterruptedException {
+        while (pendientes.isEmpty() && !cerrada) {
+            wait();
+        }
+        return sacar();
+    }
+
+    /**
+     * No se encolará nada más: el escritor envía lo pendiente y termina
+     */
+    synchronized void cerrar() {
+        cerrada = true;
+        notifyAll();
+    }
+
+    /**
+     * La conexión se cerró sin esperar al escritor: descarta lo pendiente y
+     * cierra la cola
+     */
+    synchronized void vaciar() {
+        pendientes.clear();
+        cerrada = true;
+        notifyAll();
+    }
+
+    synchronized boolean estaVacia() {
+        return pendientes.isEmpty();
+    }
+
+    /**
+     * Mensajes esperando a salir por el socket
+     */
+    synchronized int getProfundidad() {
+        return pendientes.size();
+    }
+
+    /**
+     * Actualizaciones descartadas por la política desde que se abrió
+     */
+    synchronized long getDescartados() {
+        return descartados;
+    }
+
+    synchronized boolean estaDesbordada() {
+        return desbordada;
+    }
+}
@@ -0,0 +1,495 @@
+package socket.conconexion.servidor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Opciones de arranque del servidor de subasta.
+ * Acepta el puerto como argumento posicional (compatible con la forma
+ * original "ServidorSubasta 8080") y opciones de la forma --clave=valor.
+ * @author Sistema de Subasta
+ */
+public class ConfiguracionServidor {
+    // Motor de red que atiende a los participantes
+    public enum Motor {
+        BLOQUEANTE,  // Un hilo por cliente bloqueado en MiSocketStream
+        NIO          // Pocos bucles de eventos con Selector/SocketChannel
+    }
+
+    // Cuándo se avisa del líder a los participantes
+    public enum Broadcast {
+        PERIODICO,   // El estado completo cada 5 segundos
+        EVENTOS      // Un delta numerado al cambiar el líder y latidos si no hay cambios
+    }
+
+    private int puerto;
+    private Motor motor = Motor.BLOQUEANTE;
+    private int hilosNio = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private EjecutorSesiones.Tipo ejecutor = EjecutorSesiones.Tipo.PLATAFORMA;
+    private int maxSesiones = 1000;
+    private String diario = null;
+    private long diarioFsyncMs = 10;
+    private int diarioFsyncLote = 256;
+    private long diarioInstantaneaSeg = 300;
+    private Broadcast broadcast = Broadcast.PERIODICO;
+    private long broadcastVentanaMs = 50;
+    private long latidoMs = 5000;
+    private int colaSalida = 256;
+    private ColaSalida.Politica politicaSalida = ColaSalida.Politica.DESCARTAR_VIEJOS;
+    private long antisnipingSeg = 0;
+    private double limiteSesion = 5;
+    private double rafagaSesion = 10;
+    private double limiteIp = 100;
+    private double rafagaIp = 200;
+    private long antisnipingExtensionSeg = 30;
+    private int metricasPuerto = 0;
+    private Bitacora.Nivel logNivel = Bitacora.Nivel.INFO;
+    private Bitacora.Formato logFormato = Bitacora.Formato.TEXTO;
+    private String logArchivo = null;
+    private long logMaxMb = 50;
+    private int logArchivos = 5;
+    private String cluster = null;
+    private String anunciar = null;
+    private long drenadoSeg = 300;
+    private int replicacionPuerto = 0;
+    // El flujo lleva todo el estado de las subastas: por defecto solo respaldos locales
+    private String replicacionInterfaz = "127.0.0.1";
+    private List<String> replicaDe = null;
+    private long relevoMs = 3000;
+    private long reanudacionSeg = 60;
+    // Desactivados: un cliente de texto que no conoce PING se cerraría por
+    // no contestarlo
+    private long pingSeg = 0;
+    private long inactividadSeg = 0;
+
+    private ConfiguracionServidor(int puertoPorDefecto) {
+        this.puerto = puertoPorDefecto;
+    }
+
+    /**
+     * Construye la configuración a partir de los argumentos de main
+     */
+    public static ConfiguracionServidor desdeArgumentos(String[] args) {
+        return desdeArgumentos(args, 8080);
+    }
+
+    /**
+     * Igual que desdeArgumentos(args) pero con otro puerto por defecto
+     * (lo usan los servidores Echo)
+     */
+    public static ConfiguracionServidor desdeArgumentos(String[] args, int puertoPorDefecto) {
+        ConfiguracionServidor config = new ConfiguracionServidor(puertoPorDefecto);
+
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                config.puerto = Integer.parseInt(arg);
+                continue;
+            }
+
+            int igual = arg.indexOf('=');
+            String clave = (igual < 0) ? arg.substring(2) : arg.substring(2, igual);
+            String valor = (igual < 0) ? "" : arg.substring(igual + 1);
+            config.aplicarOpcion(clave, valor);
+        }
+
+        return config;
+    }
+
+    private void aplicarOpcion(String clave, String valor) {
+        switch (clave) {
+            case "motor":
+                motor = Motor.valueOf(valor.toUpperCase());
+                break;
+            case "hilos-nio":
+                hilosNio = Integer.parseInt(valor);
+                if (hilosNio < 1) {
+                    throw new IllegalArgumentException("--hilos-nio debe ser mayor que 0");
+                }
+                break;
+            case "ejecutor":
+                ejecutor = EjecutorSesiones.Tipo.valueOf(valor.toUpperCase());
+                break;
+            case "max-sesiones":
+                maxSesiones = Integer.parseInt(valor);
+                if (maxSesiones < 1) {
+                    throw new IllegalArgumentException("--max-sesiones debe ser mayor que 0");
+                }
+                break;
+            case "diario":
+                diario = valor;
+                break;
+            case "diario-fsync-ms":
+                diarioFsyncMs = Long.parseLong(valor);
+                break;
+            case "diario-fsync-lote":
+                diarioFsyncLote = Integer.parseInt(valor);
+                if (diarioFsyncLote < 1) {
+                    throw new IllegalArgumentException("--diario-fsync-lote debe ser mayor que 0");
+                }
+                break;
+            case "diario-instantanea-seg":
+                diarioInstantaneaSeg = Long.parseLong(valor);
+                if (diarioInstantaneaSeg < 0) {
+                    throw new IllegalArgumentException("--diario-instantanea-seg no puede ser negativo");
+                }
+                break;
+            case "broadcast":
+                broadcast = Broadcast.valueOf(valor.toUpperCase());
+                break;
+            case "broadcast-ventana-ms":
+                broadcastVentanaMs = Long.parseLong(valor);
+                if (broadcastVentanaMs < 0) {
+                    throw new IllegalArgumentException("--broadcast-ventana-ms no puede ser negativo");
+                }
+                break;
+            case "latido-ms":
+                latidoMs = Long.parseLong(valor);
+                if (latidoMs < 1) {
+                    throw new IllegalArgumentException("--latido-ms debe ser mayor que 0");
+                }
+                break;
+            case "cola-salida":
+                colaSalida = Integer.parseInt(valor);
+                if (colaSalida < 1) {
+                    throw new IllegalArgumentException("--cola-salida debe ser mayor que 0");
+                }
+                break;
+            case "politica-salida":
+                politicaSalida = ColaSalida.Politica.valueOf(valor.toUpperCase().replace('-', '_'));
+                break;
+            case "antisniping-seg":
+                antisnipingSeg = Long.parseLong(valor);
+                if (antisnipingSeg < 0) {
+                    throw new IllegalArgumentException("--antisniping-seg no puede ser negativo");
+                }
+                break;
+            case "antisniping-extension-seg":
+                antisnipingExtensionSeg = Long.parseLong(valor);
+                if (antisnipingExtensionSeg < 1) {
+                    throw new IllegalArgumentException("--antisniping-extension-seg debe ser mayor que 0");
+                }
+                break;
+            case "limite-sesion":
+                limiteSesion = leerNoNegativo(clave, valor);
+                break;
+            case "rafaga-sesion":
+                rafagaSesion = leerNoNegativo(clave, valor);
+                break;
+            case "limite-ip":
+                limiteIp = leerNoNegativo(clave, valor);
+                break;
+            case "rafaga-ip":
+                rafagaIp = leerNoNegativo(clave, valor);
+                break;
+            case "metricas-puerto":
+                metricasPuerto = Integer.parseInt(valor);
+                if (metricasPuerto < 0 || metricasPuerto > 65535) {
+                    throw new IllegalArgumentException("--metricas-puerto debe estar entre 0 y 65535");
+                }
+                break;
+            case "log-nivel":
+                logNivel = Bitacora.Nivel.valueOf(valor.toUpperCase());
+                break;
+            case "log-formato":
+                logFormato = Bitacora.Formato.valueOf(valor.toUpperCase());
+                break;
+            case "log-archivo":
+                logArchivo = valor;
+                break;
+            case "log-max-mb":
+                logMaxMb = Long.parseLong(valor);
+                if (logMaxMb < 1) {
+                    throw new IllegalArgumentException("--log-max-mb debe ser mayor que 0");
+                }
+                break;
+            case "log-archivos":
+                logArchivos = Integer.parseInt(valor);
+                if (logArchivos < 0) {
+                    throw new IllegalArgumentException("--log-archivos no puede ser negativo");
+                }
+                break;
+            case "cluster":
+                cluster = valor;
+                break;
+            case "anunciar":
+                anunciar = valor;
+                break;
+            case "drenado-seg":
+                drenadoSeg = Long.parseLong(valor);
+                if (drenadoSeg < 0) {
+                    throw new IllegalArgumentException("--drenado-seg no puede ser negativo");
+                }
+                break;
+            case "replicacion-puerto":
+                replicacionPuerto = Integer.parseInt(valor);
+                if (replicacionPuerto < 0 || replicacionPuerto > 65535) {
+                    throw new IllegalArgumentException("--replicacion-puerto debe estar entre 0 y 65535");
+                }
+                break;
+            case "replicacion-interfaz":
+                if (valor.isEmpty()) {
+                    throw new IllegalArgumentException("--replicacion-interfaz no puede estar vacio");
+                }
+                replicacionInterfaz = valor;
+                break;
+            case "replica-de":
+                replicaDe = new ArrayList<>();
+                for (String fuente : valor.split(",")) {
+                    if (fuente.trim().lastIndexOf(':') <= 0) {
+                        throw new IllegalArgumentException("--replica-de debe ser host:puerto[,host:puerto...]");
+                    }
+                    replicaDe.add(fuente.trim());
+                }
+                break;
+            case "relevo-ms":
+                relevoMs = Long.parseLong(valor);
+                if (relevoMs < 1) {
+                    throw new IllegalArgumentException("--relevo-ms debe ser mayor que 0");
+                }
+                break;
+            case "reanudacion-seg":
+                reanudacionSeg = Long.parseLong(valor);
+                if (reanudacionSeg < 0) {
+                    throw new IllegalArgumentException("--reanudacion-seg no puede ser negativo");
+                }
+                break;
+            case "ping-seg":
+                pingSeg = Long.parseLong(valor);
+                if (pingSeg < 0) {
+                    throw new IllegalArgumentException("--ping-seg no puede ser negativo");
+                }
+                break;
+            case "inactividad-seg":
+                inactividadSeg = Long.parseLong(valor);
+                if (inactividadSeg < 0) {
+                    throw new IllegalArgumentException("--inactividad-seg no puede ser negativo");
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Opcion desconocida: --" + clave);
+        }
+    }
+
+    private static double leerNoNegativo(String clave, String valor) {
+        double numero = Double.parseDouble(valor);
+        if (numero < 0) {
+            throw new IllegalArgumentException("--" + clave + " no puede ser negativo");
+        }
+        return numero;
+    }
+
+    // Getters
+    public int getPuerto() {
+        return puerto;
+    }
+
+    public Motor getMotor() {
+        return motor;
+    }
+
+    public int getHilosNio() {
+        return hilosNio;
+    }
+
+    public EjecutorSesiones.Tipo getEjecutor() {
+        return ejecutor;
+    }
+
+    public int getMaxSesiones() {
+        return maxSesiones;
+    }
+
+    /**
+     * Archivo del diario de propuestas, o null si no se usa
+     */
+    public String getDiario() {
+        return diario;
+    }
+
+    public long getDiarioFsyncMs() {
+        return diarioFsyncMs;
+    }
+
+    public int getDiarioFsyncLote() {
+        return diarioFsyncLote;
+    }
+
+    /**
+     * Segundos entre instantáneas del diario (0 = sin instantáneas)
+     */
+    public long getDiarioInstantaneaSeg() {
+        return diarioInstantaneaSeg;
+    }
+
+    public Broadcast getBroadcast() {
+        return broadcast;
+    }
+
+    /**
+     * Ventana en la que se agrupan los cambios de líder antes de avisar
+     */
+    public long getBroadcastVentanaMs() {
+        return broadcastVentanaMs;
+    }
+
+    /**
+     * Tiempo sin cambios tras el que se envía un latido
+     */
+    public long getLatidoMs() {
+        return latidoMs;
+    }
+
+    /**
+     * Mensajes máximos en la cola de salida de cada cliente
+     */
+    public int getColaSalida() {
+        return colaSalida;
+    }
+
+    public ColaSalida.Politica getPoliticaSalida() {
+        return politicaSalida;
+    }
+
+    /**
+     * Segundos finales en los que una nueva alta retrasa el plazo (0 = sin anti-sniping)
+     */
+    public long getAntisnipingSeg() {
+        return antisnipingSeg;
+    }
+
+    public long getAntisnipingExtensionSeg() {
+        return antisnipingExtensionSeg;
+    }
+
+    /**
+     * Propuestas por segundo de cada sesión (0 = sin límite)
+     */
+    public double getLimiteSesion() {
+        return limiteSesion;
+    }
+
+    public double getRafagaSesion() {
+        return rafagaSesion;
+    }
+
+    /**
+     * Propuestas por segundo de cada IP, sumando sus conexiones (0 = sin límite)
+     */
+    public double getLimiteIp() {
+        return limiteIp;
+    }
+
+    public double getRafagaIp() {
+        return rafagaIp;
+    }
+
+    /**
+     * Puerto local del endpoint HTTP de métricas (0 = desactivado)
+     */
+    public int getMetricasPuerto() {
+        return metricasPuerto;
+    }
+
+    public Bitacora.Nivel getLogNivel() {
+        return logNivel;
+    }
+
+    public Bitacora.Formato getLogFormato() {
+        return logFormato;
+    }
+
+    /**
+     * Archivo de la bitácora, o null para escribir en la consola
+     */
+    public String getLogArchivo() {
+        return logArchivo;
+    }
+
+    /**
+     * Tamaño en MB a partir del cual rota el archivo de la bitácora
+     */
+    public long getLogMaxMb() {
+        return logMaxMb;
+    }
+
+    /**
+     * Archivos rotados que se conservan (archivo.1 ... archivo.N)
+     */
+    public int getLogArchivos() {
+        return logArchivos;
+    }
+
+    /**
+     * Enrutador del cluster ("host:puerto") al que se une el nodo, o null
+     * si el servidor funciona solo
+     */
+    public String getCluster() {
+        return cluster;
+    }
+
+    /**
+     * Dirección con la que el nodo se anuncia al enrutador
+     */
+    public String getAnunciar() {
+        return anunciar != null ? anunciar : "localhost:" + puerto;
+    }
+
+    /**
+     * Segundos que espera el nodo al apagarse a que cierren sus subastas
+     */
+    public long getDrenadoSeg() {
+        return drenadoSeg;
+    }
+
+    /**
+     * Puerto en el que se aceptan servidores de respaldo (0 = sin replicación)
+     */
+    public int getReplicacionPuerto() {
+        return replicacionPuerto;
+    }
+
+    /**
+     * Dirección en la que escucha el puerto de replicación
+     */
+    public String getReplicacionInterfaz() {
+        return replicacionInterfaz;
+    }
+
+    /**
+     * Puertos de replicación que sigue este servidor como respaldo, en
+     * orden de preferencia, o null si es un primario
+     */
+    public List<String> getReplicaDe() {
+        return replicaDe;
+    }
+
+    /**
+     * Milisegundos sin ninguna fuente tras los que el respaldo toma el relevo
+     */
+    public long getRelevoMs() {
+        return relevoMs;
+    }
+
+    /**
+     * Segundos que una sesión con ID se puede reanudar tras perder la conexión
+     */
+    public long getReanudacionSeg() {
+        return reanudacionSeg;
+    }
+
+    /**
+     * Segundos sin recibir nada de una conexión tras los que se le envía
+     * un PING (0 = nunca)
+     */
+    public long getPingSeg() {
+        return pingSeg;
+    }
+
+    /**
+     * Segundos sin recibir nada (ni el PONG) tras los que se cierra una
+     * conexión (0 = nunca)
+     */
+    public long getInactividadSeg() {
+        return inactividadSeg;
+    }
+}
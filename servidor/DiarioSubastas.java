@@ -0,0 +1,656 @@
+package socket.conconexion.servidor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.CRC32;
+
+/**
+ * Diario de solo escritura con los eventos de las subastas (inicio,
+ * propuesta aceptada, plazo extendido y fin). Los hilos de las sesiones solo codifican el
+ * registro y lo encolan; un hilo escritor los agrupa, los escribe con un
+ * FileChannel y hace fsync cada "lote" registros o cada "fsyncMs"
+ * milisegundos, lo que ocurra antes (group commit).
+ * El diario se guarda en segmentos numerados ("&lt;archivo&gt;.000001", ...).
+ * Cada cierto tiempo se toma una instantánea del estado de las subastas
+ * (InstantaneaSubastas): se abre un segmento nuevo, se captura el estado y
+ * se borran los segmentos que la instantánea ya cubre.
+ * Al arrancar se carga la instantánea y se releen solo los segmentos
+ * posteriores para reanudar las subastas abiertas con su plazo original.
+ * Con replicación cada registro se entrega también, tal cual, a
+ * ReplicadorSubastas, que lo envía a los servidores de respaldo.
+ * <pre>
+ * registro  = longitud:int crc32:int datos
+ * datos     = tipo:byte idSubasta:long ...
+ * INICIO    = numero:int tiempoInicio:long duracion:long
+ * PROPUESTA = secuencia:long monto:long longitudIp:short ip(UTF-8)
+ *             [longitudSesion:short huellaSesion(UTF-8) peticion:long] [numero:int]
+ * PLAZO     = duracion:long [numero:int] (nueva duración total tras un anti-sniping)
+ * FIN       = [numero:int]
+ * </pre>
+ * Un ID se reutiliza en cada ronda, así que PROPUESTA, PLAZO y FIN llevan
+ * el numero de la ronda (el de su INICIO): un registro de una ronda
+ * anterior que llegue tarde no toca a la abierta. Los registros escritos
+ * antes de llevarlo se aplican a la abierta con ese ID.
+ * La huella SHA-256 del ID de sesión (vacía si el postor no pidió ID) y su
+ * última petición aplicada permiten reanudarla tras un reinicio o un
+ * relevo; los registros escritos antes de existir no las llevan. Nunca se
+ * escribe el ID: quien lo presenta toma el lugar del postor, y el diario y
+ * la replicación no deben bastar para hacerlo.
+ * @author Sistema de Subasta
+ */
+public class DiarioSubastas {
+    static final byte INICIO = 1;
+    static final byte PROPUESTA = 2;
+    static final byte FIN = 3;
+    static final byte PLAZO = 4;
+
+    static final int CABECERA = 8; // longitud + crc32
+    static final int TAMANIO_MAXIMO_REGISTRO = 1024;
+    private static final int TAMANIO_BUFFER_ESCRITURA = 256 * 1024;
+    private static final long ESPERA_ROTACION_MS = 10000;
+
+    // Marca en la cola: todo lo encolado después va al segmento siguiente
+    private static final byte[] ROTACION = new byte[0];
+
+    private final Path base;
+    private final RegistroSubastas registro;
+    private final long fsyncMs;
+    private final int lote;
+    private final LinkedBlockingQueue<byte[]> pendientes = new LinkedBlockingQueue<>();
+    private final LinkedBlockingQueue<CompletableFuture<Long>> rotaciones = new LinkedBlockingQueue<>();
+    private final Thread escritor;
+    private volatile boolean activo = true;
+    // Respaldos a los que se envía cada registro (null = sin replicación)
+    private volatile ReplicadorSubastas replicador;
+
+    // Segmento en escritura; solo lo cambia el hilo escritor
+    private volatile FileChannel canal;
+    private volatile long segmentoActual;
+    private RuedaTemporizadores.Tarea tareaInstantaneas;
+
+    // Diario que no escribe nada (servidor sin --diario)
+    private static final DiarioSubastas DESACTIVADO = new DiarioSubastas();
+
+    private DiarioSubastas() {
+        this.base = null;
+        this.registro = null;
+        this.fsyncMs = 0;
+        this.lote = 0;
+        this.escritor = null;
+    }
+
+    private DiarioSubastas(Path base, RegistroSubastas registro, long fsyncMs, int lote) {
+        this.base = base;
+        this.registro = registro;
+        this.fsyncMs = fsyncMs;
+        this.lote = lote;
+        this.escritor = new Thread(this::escribirPendientes, "diario-escritor");
+        this.escritor.setDaemon(true);
+    }
+
+    public static DiarioSubastas desactivado() {
+        return DESACTIVADO;
+    }
+
+    /**
+     * Abre el diario, lo instala en el registro, reanuda las subastas que
+     * quedaron abiertas (instantánea + segmentos posteriores) y empieza a
+     * escribir al final del último segmento.
+     * El diario se instala antes de releer para que el FIN de una subasta
+     * cuyo plazo venció con el servidor caído también quede registrado.
+     */
+    public static DiarioSubastas abrir(Path archivo, long fsyncMs, int lote,
+                                       RegistroSubastas registro) throws IOException {
+        DiarioSubastas diario = new DiarioSubastas(archivo, registro, fsyncMs, lote);
+        // La replicación ya instalada sigue con el diario nuevo
+        diario.replicador = registro.getDiario().replicador;
+        registro.setDiario(diario);
+
+        long ultimoSegmento = diario.recuperar();
+        diario.segmentoActual = ultimoSegmento;
+        diario.canal = FileChannel.open(diario.archivoSegmento(ultimoSegmento),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+        // Lo encolado durante la recuperación se escribe a partir de aquí
+        diario.escritor.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(diario::cerrar, "diario-cierre"));
+        Bitacora.info("DIARIO", archivo + " segmento " + ultimoSegmento +
+                              " (fsync cada " + lote + " registros o " + fsyncMs + " ms)");
+        return diario;
+    }
+
+    public boolean estaActivo() {
+        return base != null;
+    }
+
+    /**
+     * Envía desde ahora cada registro también al replicador. Sin --diario
+     * se instala un diario que no escribe en disco y solo replica.
+     */
+    static void replicar(RegistroSubastas registro, ReplicadorSubastas replicador) {
+        DiarioSubastas diario = registro.getDiario();
+        if (diario == DESACTIVADO) {
+            diario = new DiarioSubastas();
+            registro.setDiario(diario);
+        }
+        diario.replicador = replicador;
+    }
+
+    /**
+     * Registra el inicio de una subasta
+     */
+    public void registrarInicio(long idSubasta, int numero, long tiempoInicio, long duracion) {
+        if (base == null && replicador == null) {
+            return;
+        }
+        encolar(inicio(idSubasta, numero, tiempoInicio, duracion));
+    }
+
+    /**
+     * Registra una propuesta aceptada; no espera a que llegue al disco
+     */
+    public void registrarPropuesta(long idSubasta, int numero, long secuencia, long monto, String ip,
+                                   String huellaSesion, long peticion) {
+        if (base == null && replicador == null) {
+            return;
+        }
+        encolar(propuesta(idSubasta, numero, secuencia, monto, ip, huellaSesion, peticion));
+    }
+
+    /**
+     * Registra la nueva duración total de una subasta extendida
+     */
+    public void registrarPlazo(long idSubasta, int numero, long duracion) {
+        if (base == null && replicador == null) {
+            return;
+        }
+        ByteBuffer datos = ByteBuffer.allocate(1 + 8 + 8 + 4);
+        datos.put(PLAZO).putLong(idSubasta).putLong(duracion).putInt(numero);
+        encolar(enmarcar(datos));
+    }
+
+    /**
+     * Registra la finalización de una subasta
+     */
+    public void registrarFin(long idSubasta, int numero) {
+        if (base == null && replicador == null) {
+            return;
+        }
+        ByteBuffer datos = ByteBuffer.allocate(1 + 8 + 4);
+        datos.put(FIN).putLong(idSubasta).putInt(numero);
+        encolar(enmarcar(datos));
+    }
+
+    private void encolar(byte[] registro) {
+        ReplicadorSubastas respaldos = replicador;
+        if (respaldos != null) {
+            respaldos.enviar(registro);
+        }
+        if (base != null) {
+            pendientes.add(registro);
+        }
+    }
+
+    static byte[] inicio(long idSubasta, int numero, long tiempoInicio, long duracion) {
+        ByteBuffer datos = ByteBuffer.allocate(1 + 8 + 4 + 8 + 8);
+        datos.put(INICIO).putLong(idSubasta).putInt(numero).putLong(tiempoInicio).putLong(duracion);
+        return enmarcar(datos);
+    }
+
+    static byte[] propuesta(long idSubasta, int numero, long secuencia, long monto, String ip,
+                            String sesion, long peticion) {
+        byte[] ipBytes = ip.getBytes(StandardCharsets.UTF_8);
+        byte[] sesionBytes = sesion == null ? new byte[0] : sesion.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer datos = ByteBuffer.allocate(1 + 8 + 8 + 8 + 2 + ipBytes.length +
+                                               2 + sesionBytes.length + 8 + 4);
+        datos.put(PROPUESTA).putLong(idSubasta).putLong(secuencia).putLong(monto)
+             .putShort((short) ipBytes.length).put(ipBytes)
+             .putShort((short) sesionBytes.length).put(sesionBytes).putLong(peticion)
+             .putInt(numero);
+        return enmarcar(datos);
+    }
+
+    /**
+     * Añade la cabecera (longitud y crc32) a los datos de un registro
+     */
+    static byte[] enmarcar(ByteBuffer datos) {
+        byte[] contenido = datos.array();
+        CRC32 crc = new CRC32();
+        crc.update(contenido);
+
+        byte[] registro = new byte[CABECERA + contenido.length];
+        ByteBuffer.wrap(registro).putInt(contenido.length).putInt((int) crc.getValue()).put(contenido);
+        return registro;
+    }
+
+    /**
+     * Registros que recrean una subasta abierta: su inicio con el plazo
+     * actual y sus propuestas
+     */
+    static void codificar(SubastaRecuperada subasta, List<byte[]> destino) {
+        destino.add(inicio(subasta.id, subasta.numero, subasta.tiempoInicio, subasta.duracion));
+        for (int i = 0; i < subasta.numeroPropuestas; i++) {
+            destino.add(propuesta(subasta.id, subasta.numero, subasta.secuencias[i], subasta.montos[i], subasta.ips[i],
+                                  subasta.sesiones[i], subasta.peticiones[i]));
+        }
+    }
+
+    /**
+     * Toma una instantánea cada intervaloMs milisegundos. La tarea de la
+     * rueda solo lanza un hilo: la instantánea escribe en disco y espera la
+     * rotación, y no debe retener el hilo de la rueda.
+     */
+    public void programarInstantaneas(long intervaloMs) {
+        if (base == null || intervaloMs <= 0) {
+            return;
+        }
+        tareaInstantaneas = RuedaTemporizadores.compartida().programarPeriodica(() -> {
+            Thread hilo = new Thread(() -> {
+                try {
+                    tomarInstantanea();
+                } catch (IOException e) {
+                    Bitacora.error("ERROR", "Tomando instantanea: " + e.getMessage());
+                }
+            }, "diario-instantanea");
+            hilo.setDaemon(true);
+            hilo.start();
+        }, intervaloMs, intervaloMs);
+    }
+
+    /**
+     * Guarda el estado de todas las subastas y borra los segmentos que
+     * quedan cubiertos. Las propuestas siguen entrando mientras tanto: la
+     * rotación solo encola una marca, y cada subasta se copia bajo su
+     * propio cerrojo. Una propuesta que llegue al segmento nuevo y ya esté
+     * en la instantánea se vuelve a aplicar sin efecto al recuperar.
+     */
+    public synchronized void tomarInstantanea() throws IOException {
+        if (base == null || !activo) {
+            return;
+        }
+        long inicio = System.currentTimeMillis();
+
+        // Todo lo encolado antes de la marca ya está aplicado en memoria
+        CompletableFuture<Long> rotacion = new CompletableFuture<>();
+        rotaciones.add(rotacion);
+        pendientes.add(ROTACION);
+
+        int ultimoNumero = registro.getUltimoNumero();
+        List<SubastaRecuperada> subastas = registro.capturar();
+
+        long segmentoInicial;
+        try {
+            segmentoInicial = rotacion.get(ESPERA_ROTACION_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IOException("No se pudo rotar el segmento del diario", e);
+        }
+
+        InstantaneaSubastas instantanea =
+            new InstantaneaSubastas(segmentoInicial, ultimoNumero, subastas);
+        instantanea.escribir(archivoInstantanea());
+        int borrados = eliminarSegmentosAnteriores(segmentoInicial);
+
+        Bitacora.info("DIARIO", "Instantanea: " + subastas.size() + " subastas, " +
+                              borrados + " segmentos compactados (" +
+                              (System.currentTimeMillis() - inicio) + " ms)");
+    }
+
+    /**
+     * Hilo escritor: agrupa lo encolado, escribe y hace fsync por lotes
+     */
+    private void escribirPendientes() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(TAMANIO_BUFFER_ESCRITURA);
+        List<byte[]> grupo = new ArrayList<>();
+        int sinFsync = 0;
+        long ultimoFsync = System.currentTimeMillis();
+
+        while (activo || !pendientes.isEmpty()) {
+            try {
+                byte[] primero = (sinFsync > 0)
+                    ? pendientes.poll(Math.max(1, fsyncMs), TimeUnit.MILLISECONDS)
+                    : pendientes.poll(500, TimeUnit.MILLISECONDS);
+
+                if (primero != null) {
+                    grupo.add(primero);
+                    pendientes.drainTo(grupo);
+                    for (byte[] registro : grupo) {
+                        if (registro == ROTACION) {
+                            vaciar(buffer);
+                            rotar();
+                            sinFsync = 0;
+                            continue;
+                        }
+                        if (buffer.remaining() < registro.length) {
+                            vaciar(buffer);
+                        }
+                        buffer.put(registro);
+                        sinFsync++;
+                    }
+                    vaciar(buffer);
+                    grupo.clear();
+                }
+
+                long ahora = System.currentTimeMillis();
+                if (sinFsync > 0 && (sinFsync >= lote || ahora - ultimoFsync >= fsyncMs)) {
+                    canal.force(false);
+                    sinFsync = 0;
+                    ultimoFsync = ahora;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (IOException e) {
+                Bitacora.error("ERROR", "Escribiendo diario: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Cierra el segmento actual con fsync y abre el siguiente (hilo escritor)
+     */
+    private void rotar() throws IOException {
+        CompletableFuture<Long> rotacion = rotaciones.poll();
+        try {
+            canal.force(false);
+            canal.close();
+            long siguiente = segmentoActual + 1;
+            canal = FileChannel.open(archivoSegmento(siguiente),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            segmentoActual = siguiente;
+            if (rotacion != null) {
+                rotacion.complete(siguiente);
+            }
+        } catch (IOException e) {
+            if (rotacion != null) {
+                rotacion.completeExceptionally(e);
+            }
+            throw e;
+        }
+    }
+
+    private void vaciar(ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            canal.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Escribe lo pendiente, hace fsync y cierra el archivo
+     */
+    public void cerrar() {
+        if (base == null || !activo) {
+            return;
+        }
+        activo = false;
+        if (tareaInstantaneas != null) {
+            tareaInstantaneas.cancelar();
+        }
+        try {
+            escritor.join(5000);
+            canal.force(false);
+            canal.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            Bitacora.error("ERROR", "Cerrando diario: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Carga la instantánea, relee los segmentos posteriores y reanuda las
+     * subastas abiertas.
+     * @return número del último segmento, donde se seguirá escribiendo
+     */
+    private long recuperar() throws IOException {
+        Map<Long, SubastaRecuperada> abiertas = new LinkedHashMap<>();
+        int numeroMaximo = 0;
+        long segmentoInicial = 1;
+
+        InstantaneaSubastas instantanea = InstantaneaSubastas.leer(archivoInstantanea());
+        if (instantanea != null) {
+            segmentoInicial = instantanea.segmentoInicial;
+            numeroMaximo = instantanea.ultimoNumero;
+            for (SubastaRecuperada subasta : instantanea.subastas) {
+                abiertas.put(subasta.id, subasta);
+            }
+            Bitacora.info("DIARIO", "Instantanea cargada: " + abiertas.size() +
+                                  " subastas, segmentos desde " + segmentoInicial);
+            // Restos de una compactación interrumpida
+            eliminarSegmentosAnteriores(segmentoInicial);
+        }
+
+        long registros = 0;
+        long ultimoSegmento = segmentoInicial;
+        for (long segmento : listarSegmentos()) {
+            if (segmento < segmentoInicial) {
+                continue;
+            }
+            try (FileChannel lectura = FileChannel.open(archivoSegmento(segmento),
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long[] contador = new long[1];
+                numeroMaximo = Math.max(numeroMaximo,
+                    releerSegmento(lectura, abiertas, contador));
+                registros += contador[0];
+            }
+            ultimoSegmento = segmento;
+        }
+
+        registro.reanudarNumeracion(numeroMaximo);
+        for (SubastaRecuperada subasta : abiertas.values()) {
+            // Las que ya llegaron por replicación (relevo de un respaldo) son más recientes
+            if (registro.obtener(subasta.id) == null) {
+                registro.restaurar(subasta);
+            }
+        }
+
+        if (instantanea != null || registros > 0) {
+            Bitacora.info("DIARIO", registros + " registros releidos, " +
+                                  abiertas.size() + " subastas reanudadas");
+        }
+        return ultimoSegmento;
+    }
+
+    /**
+     * Aplica los registros válidos de un segmento y descarta un registro
+     * incompleto al final (escritura cortada por la caída).
+     * @return mayor número de sesión visto en el segmento
+     */
+    private static int releerSegmento(FileChannel canal, Map<Long, SubastaRecuperada> abiertas,
+                                      long[] registros) throws IOException {
+        int numeroMaximo = 0;
+        ByteBuffer cabecera = ByteBuffer.allocate(CABECERA);
+        long posicion = 0;
+        long tamanio = canal.size();
+
+        while (posicion + CABECERA <= tamanio) {
+            cabecera.clear();
+            canal.read(cabecera, posicion);
+            cabecera.flip();
+            int longitud = cabecera.getInt();
+            int crcEsperado = cabecera.getInt();
+            if (longitud <= 0 || longitud > TAMANIO_MAXIMO_REGISTRO ||
+                    posicion + CABECERA + longitud > tamanio) {
+                break;
+            }
+
+            ByteBuffer datos = ByteBuffer.allocate(longitud);
+            canal.read(datos, posicion + CABECERA);
+            CRC32 crc = new CRC32();
+            crc.update(datos.array());
+            if ((int) crc.getValue() != crcEsperado) {
+                break;
+            }
+            datos.flip();
+
+            numeroMaximo = Math.max(numeroMaximo, aplicar(datos, abiertas));
+            registros[0]++;
+            posicion += CABECERA + longitud;
+        }
+
+        if (posicion < tamanio) {
+            Bitacora.aviso("DIARIO", "Registro incompleto al final, se descartan " +
+                                  (tamanio - posicion) + " bytes");
+            canal.truncate(posicion);
+        }
+        return numeroMaximo;
+    }
+
+    /**
+     * Aplica los datos de un registro (sin cabecera) al estado de las
+     * subastas abiertas; los tipos desconocidos se ignoran.
+     * @return número de sesión si es un INICIO, 0 si no
+     */
+    static int aplicar(ByteBuffer datos, Map<Long, SubastaRecuperada> abiertas) {
+        byte tipo = datos.get();
+        long idSubasta = datos.getLong();
+        if (tipo == INICIO) {
+            SubastaRecuperada subasta = new SubastaRecuperada(
+                idSubasta, datos.getInt(), datos.getLong(), datos.getLong());
+            abiertas.put(idSubasta, subasta);
+            return subasta.numero;
+        } else if (tipo == PROPUESTA) {
+            long secuencia = datos.getLong();
+            long monto = datos.getLong();
+            byte[] ip = new byte[datos.getShort()];
+            datos.get(ip);
+            String sesion = null;
+            long peticion = 0;
+            if (datos.remaining() >= 2 + 8) {
+                byte[] bytesSesion = new byte[datos.getShort()];
+                datos.get(bytesSesion);
+                sesion = bytesSesion.length == 0 ? null : new String(bytesSesion, StandardCharsets.UTF_8);
+                peticion = datos.getLong();
+            }
+            SubastaRecuperada subasta = deLaRonda(abiertas.get(idSubasta), numeroFinal(datos));
+            if (subasta != null) {
+                subasta.agregarPropuesta(secuencia, monto, new String(ip, StandardCharsets.UTF_8),
+                                         sesion, peticion);
+            }
+        } else if (tipo == PLAZO) {
+            long duracion = datos.getLong();
+            SubastaRecuperada subasta = deLaRonda(abiertas.get(idSubasta), numeroFinal(datos));
+            if (subasta != null) {
+                subasta.duracion = Math.max(subasta.duracion, duracion);
+            }
+        } else if (tipo == FIN) {
+            if (deLaRonda(abiertas.get(idSubasta), numeroFinal(datos)) != null) {
+                abiertas.remove(idSubasta);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Numero de ronda al final de un PROPUESTA, PLAZO o FIN; 0 si el
+     * registro es anterior a llevarlo (las rondas empiezan en 1)
+     */
+    private static int numeroFinal(ByteBuffer datos) {
+        return datos.remaining() >= 4 ? datos.getInt() : 0;
+    }
+
+    /**
+     * La subasta abierta si el registro es de su ronda (o no dice de cuál),
+     * null si es de otra
+     */
+    private static SubastaRecuperada deLaRonda(SubastaRecuperada subasta, int numero) {
+        return subasta != null && (numero == 0 || subasta.numero == numero) ? subasta : null;
+    }
+
+    private Path archivoSegmento(long segmento) {
+        return base.resolveSibling(base.getFileName() + String.format(".%06d", segmento));
+    }
+
+    private Path archivoInstantanea() {
+        return base.resolveSibling(base.getFileName() + ".instantanea");
+    }
+
+    /**
+     * Números de los segmentos existentes, en orden
+     */
+    private List<Long> listarSegmentos() throws IOException {
+        List<Long> segmentos = new ArrayList<>();
+        Path directorio = base.toAbsolutePath().getParent();
+        String prefijo = base.getFileName() + ".";
+        try (DirectoryStream<Path> archivos = Files.newDirectoryStream(directorio, prefijo + "*")) {
+            for (Path archivo : archivos) {
+                String sufijo = archivo.getFileName().toString().substring(prefijo.length());
+                if (!sufijo.isEmpty() && sufijo.chars().allMatch(Character::isDigit)) {
+                    segmentos.add(Long.parseLong(sufijo));
+                }
+            }
+        }
+        Collections.sort(segmentos);
+        return segmentos;
+    }
+
+    private int eliminarSegmentosAnteriores(long segmento) throws IOException {
+        int borrados = 0;
+        for (long anterior : listarSegmentos()) {
+            if (anterior < segmento && Files.deleteIfExists(archivoSegmento(anterior))) {
+                borrados++;
+            }
+        }
+        return borrados;
+    }
+
+    /**
+     * Estado de una subasta abierta reconstruido desde el diario o
+     * capturado para una instantánea
+     */
+    static class SubastaRecuperada {
+        final long id;
+        final int numero;
+        final long tiempoInicio;
+        long duracion;
+        long[] secuencias = new long[16];
+        long[] montos = new long[16];
+        String[] ips = new String[16];
+        // Huella del ID de sesión del postor (null si no pidió) y su última petición
+        String[] sesiones = new String[16];
+        long[] peticiones = new long[16];
+        int numeroPropuestas = 0;
+        // Ultimo numero de secuencia asignado (puede no tener propuesta)
+        long ultimaSecuencia = 0;
+
+        SubastaRecuperada(long id, int numero, long tiempoInicio, long duracion) {
+            this.id = id;
+            this.numero = numero;
+            this.tiempoInicio = tiempoInicio;
+            this.duracion = duracion;
+        }
+
+        void agregarPropuesta(long secuencia, long monto, String ip, String sesion, long peticion) {
+            if (numeroPropuestas == montos.length) {
+                secuencias = Arrays.copyOf(secuencias, numeroPropuestas * 2);
+                montos = Arrays.copyOf(montos, numeroPropuestas * 2);
+                ips = Arrays.copyOf(ips, numeroPropuestas * 2);
+                sesiones = Arrays.copyOf(sesiones, numeroPropuestas * 2);
+                peticiones = Arrays.copyOf(peticiones, numeroPropuestas * 2);
+            }
+            secuencias[numeroPropuestas] = secuencia;
+            montos[numeroPropuestas] = monto;
+            ips[numeroPropuestas] = ip;
+            sesiones[numeroPropuestas] = sesion;
+            peticiones[numeroPropuestas] = peticion;
+            numeroPropuestas++;
+            ultimaSecuencia = Math.max(ultimaSecuencia, secuencia);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package socket.conconexion.servidor;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fabrica de ejecutores para las sesiones bloqueantes (HiloClienteSubasta,
+ * HiloServidorEcho). El código de cada sesión sigue siendo bloqueante sobre
+ * MiSocketStream; solo cambia qué hilo lo ejecuta.
+ * @author Sistema de Subasta
+ */
+public class EjecutorSesiones {
+    // Estrategia de ejecución de las sesiones
+    public enum Tipo {
+        PLATAFORMA,  // Un hilo de plataforma nuevo por conexión (comportamiento original)
+        POOL,        // Pools acotados de sesiones y de escritores; se rechazan conexiones cuando se llenan
+        VIRTUAL      // Un hilo virtual por conexión (JDK 21+)
+    }
+
+    private EjecutorSesiones() {
+    }
+
+    /**
+     * Crea el ejecutor indicado.
+     * @param maxSesiones tamaño del pool (solo para POOL)
+     * @param prefijo prefijo de nombre de los hilos
+     */
+    public static Executor crear(Tipo tipo, int maxSesiones, String prefijo) {
+        switch (tipo) {
+            case POOL:
+                return crearPool(maxSesiones, prefijo, false);
+            case VIRTUAL:
+                return crearVirtual();
+            case PLATAFORMA:
+            default:
+                AtomicInteger contador = new AtomicInteger();
+                return tarea -> new Thread(tarea, prefijo + "-" + contador.incrementAndGet()).start();
+        }
+    }
+
+    /**
+     * Pool de tamaño fijo sin cola: si todos los hilos estan ocupados la
+     * tarea se rechaza con RejectedExecutionException en lugar de esperar
+     */
+    private static Executor crearPool(int maxSesiones, String prefijo, boolean daemon) {
+        AtomicInteger contador = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(
+            maxSesiones, maxSesiones, 60, TimeUnit.SECONDS,
+            new SynchronousQueue<>(),
+            tarea -> {
+                Thread hilo = new Thread(tarea, prefijo + "-" + contador.incrementAndGet());
+                hilo.setDaemon(daemon);
+                return hilo;
+            },
+            new ThreadPoolExecutor.AbortPolicy()
+        );
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor se busca por reflexión para
+     * que el proyecto siga compilando con JDK 17
+     */
+    private static Executor crearVirtual() {
+        try {
+            return (Executor) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor")
+                .invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Los hilos virtuales requieren JDK 21 o superior");
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No se pudo crear el ejecutor virtual: " + e);
+        }
+    }
+
+    /**
+     * Ejecutor de los escritores de las colas de salida. Cada sesión
+     * bloqueante tiene el suyo, así que ocupa dos hilos: el que lee y el que
+     * escribe. Con VIRTUAL son hilos virtuales; con POOL, un segundo pool
+     * de maxSesiones hilos daemon que también rechaza cuando está lleno (en
+     * total, como mucho el doble de hilos que --max-sesiones); con
+     * PLATAFORMA, un hilo daemon nuevo por sesión.
+     * @param maxSesiones tamaño del pool (solo para POOL)
+     */
+    public static Executor crearEscritores(Tipo tipo, int maxSesiones, String prefijo) {
+        if (tipo == Tipo.VIRTUAL) {
+            return crearVirtual();
+        }
+        if (tipo == Tipo.POOL) {
+            return crearPool(maxSesiones, prefijo, true);
+        }
+        AtomicInteger contador = new AtomicInteger();
+        return tarea -> {
+            Thread hilo = new Thread(tarea, prefijo + "-" + contador.incrementAndGet());
+            hilo.setDaemon(true);
+            hilo.start();
+        };
+    }
+
+    /**
+     * Ejecuta la sesión; devuelve false si el ejecutor la rechazó por estar lleno
+     */
+    public static boolean ejecutar(Executor ejecutor, Runnable sesion) {
+        try {
+            ejecutor.execute(sesion);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+}
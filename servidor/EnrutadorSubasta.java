@@ -0,0 +1,857 @@
+package socket.conconexion.servidor;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Puerta de entrada de un cluster de servidores de subasta. Cada ID de
+ * subasta pertenece a un nodo (un ServidorSubasta) según un anillo de hash
+ * consistente; el enrutador lee el primer mensaje del cliente (UNIRSE, una
+ * propuesta, o la primera trama tras el saludo binario), elige el nodo y a
+ * partir de ahí reenvía los bytes en los dos sentidos, o bien contesta
+ * NODO:&lt;host:puerto&gt; para que el cliente se conecte directamente.
+ * <p>
+ * Cada segundo se pide SUBASTAS a cada nodo: es a la vez la comprobación de
+ * que sigue vivo y la lista de subastas abiertas. Una subasta abierta queda
+ * fijada a su nodo aunque el anillo cambie, así que al entrar o salir nodos
+ * las subastas en curso terminan donde empezaron y solo la siguiente ronda
+ * de ese ID va al nuevo dueño. Un nodo que sale (CLUSTER:BAJA) deja de
+ * recibir subastas nuevas y se retira del todo cuando cierra la última.
+ * <p>
+ * Un sondeo fallido no basta para dar un nodo por caído: hacen falta
+ * --fallos-caida seguidos. Un nodo caído sale del anillo (los IDs nuevos van
+ * a otro) pero sus subastas abiertas siguen fijadas a él y se contesta ERROR
+ * a quien las pida, en vez de abrir otra subasta con el mismo ID en otro
+ * nodo. Se sueltan cuando el nodo vuelve sin ellas, cuando se le da de baja
+ * (CLUSTER:BAJA) o tras --retencion-seg caído. Una fijación solo pasa a otro
+ * nodo que tenga la subasta abierta (un respaldo que tomó el relevo) si el
+ * que la tenía está caído.
+ * <p>
+ * Al reenviar, la primera linea hacia el nodo es REENVIADO:&lt;clave&gt;:&lt;ip&gt;
+ * con la IP del cliente, para que el límite por IP, el ranking y el líder
+ * no vean a todos los clientes con la IP del enrutador. El nodo solo la
+ * acepta con la clave de su alta, así que un cliente no puede hacerse pasar
+ * por otra IP; un nodo que solo se conoce por --nodos no dio clave y ve la
+ * IP del enrutador.
+ * <p>
+ * Las órdenes CLUSTER cambian quién recibe las subastas, así que no se
+ * aceptan en el puerto de los clientes sino en uno de administración
+ * (--admin), que por defecto solo escucha en la propia máquina.
+ * <pre>
+ * Cliente -> enrutador (primera linea)
+ * DONDE:&lt;id&gt;            -> NODO:&lt;host:puerto&gt; (y cierra)
+ * SUBASTAS              -> SUBASTAS:&lt;id&gt;,... de todo el cluster
+ *
+ * Nodo u operador -> puerto de administración
+ * CLUSTER:ALTA:&lt;host:puerto&gt;:CLAVE:&lt;clave&gt; -> OK:ALTA:... (lo envía el nodo al arrancar)
+ * CLUSTER:BAJA:&lt;host:puerto&gt;  -> OK:BAJA:...:&lt;abiertas&gt; (al apagarse)
+ * CLUSTER:SALIR:&lt;host:puerto&gt; -> OK:SALIR:&lt;abiertas&gt; (se la pasa al nodo con su clave:
+ *                          drena y sale)
+ * CLUSTER:NODOS         -> NODOS:&lt;host:puerto&gt;=&lt;estado&gt;:&lt;abiertas&gt;,...
+ * </pre>
+ * Uso: java socket.conconexion.servidor.EnrutadorSubasta [--clave=valor ...]
+ * <pre>
+ * --puerto=9090
+ * --admin=127.0.0.1:9091   dirección de las órdenes CLUSTER (la de --cluster en los nodos)
+ * --nodos=localhost:8081,localhost:8082   nodos conocidos al arrancar (los demás se anuncian)
+ * --modo=reenviar       reenviar | redirigir
+ * --virtuales=128       puntos del anillo por nodo
+ * --sondeo-ms=1000      cada cuánto se consulta a los nodos
+ * --fallos-caida=3      sondeos fallidos seguidos para dar un nodo por caído
+ * --retencion-seg=300   cuánto conserva un nodo caído sus subastas fijadas (0 = hasta su baja)
+ * --ejecutor=plataforma plataforma | virtual, hilos de las conexiones reenviadas
+ * --log-nivel=info
+ * </pre>
+ * @author Sistema de Subasta
+ */
+public class EnrutadorSubasta {
+    enum Modo {
+        REENVIAR,   // El enrutador lleva el tráfico entre cliente y nodo
+        REDIRIGIR   // Contesta NODO:<host:puerto> y el cliente se conecta al nodo
+    }
+
+    private static final int ESPERA_CONEXION_MS = 2000;
+    private static final int TAMANIO_REENVIO = 8192;
+
+    /**
+     * Nodo del cluster y su estado según el último sondeo
+     */
+    private static final class Nodo {
+        final String direccion;
+        final String host;
+        final int puerto;
+        volatile boolean vivo = false;
+        volatile boolean saliendo = false;
+        volatile Set<Long> abiertas = Collections.emptySet();
+        // Clave que dio el nodo en su alta; null si solo se conoce por --nodos
+        volatile String clave;
+        // Sondeos fallidos seguidos y desde cuándo está caído (nanoTime); con el lock de "nodos"
+        int fallosSeguidos = 0;
+        long caidoDesde = 0;
+        // Conexión del sondeo (solo la usa quien tiene el lock del nodo)
+        MiSocketStream sonda;
+
+        Nodo(String direccion) {
+            int separador = direccion.lastIndexOf(':');
+            if (separador <= 0) {
+                throw new IllegalArgumentException("Nodo invalido (host:puerto): " + direccion);
+            }
+            this.direccion = direccion;
+            this.host = direccion.substring(0, separador);
+            this.puerto = Integer.parseInt(direccion.substring(separador + 1));
+        }
+
+        String estado() {
+            return saliendo ? "SALIENDO" : vivo ? "ACTIVO" : "CAIDO";
+        }
+    }
+
+    /**
+     * Subasta abierta fijada a un nodo, y desde cuándo (nanoTime)
+     */
+    private static final class Fijacion {
+        final Nodo nodo;
+        final long desde;
+
+        Fijacion(Nodo nodo, long desde) {
+            this.nodo = nodo;
+            this.desde = desde;
+        }
+    }
+
+    // Configuración
+    private int puerto = 9090;
+    private InetSocketAddress admin = new InetSocketAddress("127.0.0.1", 9091);
+    private Modo modo = Modo.REENVIAR;
+    private int virtuales = AnilloConsistente.VIRTUALES_POR_DEFECTO;
+    private long sondeoMs = 1000;
+    private int fallosCaida = 3;
+    private long retencionSeg = 300;
+    private EjecutorSesiones.Tipo ejecutor = EjecutorSesiones.Tipo.PLATAFORMA;
+    private Bitacora.Nivel logNivel = Bitacora.Nivel.INFO;
+    private final Set<String> nodosIniciales = new TreeSet<>();
+
+    // Miembros y anillo de los nodos activos; los cambios se hacen con el lock de "nodos"
+    private final Map<String, Nodo> nodos = new ConcurrentHashMap<>();
+    private volatile AnilloConsistente anillo;
+    private final Map<Long, Fijacion> fijadas = new ConcurrentHashMap<>();
+
+    private Executor ejecutorConexiones;
+    private Executor ejecutorReenvios;
+
+    public static void main(String[] args) {
+        EnrutadorSubasta enrutador = new EnrutadorSubasta();
+        try {
+            for (String arg : args) {
+                if (!arg.startsWith("--")) {
+                    throw new IllegalArgumentException("Opcion invalida: " + arg);
+                }
+                int igual = arg.indexOf('=');
+                String clave = (igual < 0) ? arg.substring(2) : arg.substring(2, igual);
+                String valor = (igual < 0) ? "" : arg.substring(igual + 1);
+                enrutador.aplicarOpcion(clave, valor);
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println("[ERROR] " + e.getMessage());
+            System.exit(1);
+        }
+
+        try {
+            enrutador.ejecutar();
+        } catch (Exception e) {
+            Bitacora.error("ERROR", "Arrancando el enrutador: " + e.getMessage(), e);
+        }
+    }
+
+    private void aplicarOpcion(String clave, String valor) {
+        switch (clave) {
+            case "puerto":
+                puerto = Integer.parseInt(valor);
+                break;
+            case "admin": {
+                int separador = valor.lastIndexOf(':');
+                if (separador <= 0) {
+                    throw new IllegalArgumentException("--admin debe ser host:puerto");
+                }
+                admin = new InetSocketAddress(valor.substring(0, separador),
+                                              Integer.parseInt(valor.substring(separador + 1)));
+                break;
+            }
+            case "nodos":
+                for (String nodo : valor.split(",")) {
+                    if (!nodo.trim().isEmpty()) {
+                        nodosIniciales.add(new Nodo(nodo.trim()).direccion);
+                    }
+                }
+                break;
+            case "modo":
+                modo = Modo.valueOf(valor.toUpperCase());
+                break;
+            case "virtuales":
+                virtuales = Integer.parseInt(valor);
+                if (virtuales < 1) {
+                    throw new IllegalArgumentException("--virtuales debe ser mayor que 0");
+                }
+                break;
+            case "sondeo-ms":
+                sondeoMs = Long.parseLong(valor);
+                if (sondeoMs < 1) {
+                    throw new IllegalArgumentException("--sondeo-ms debe ser mayor que 0");
+                }
+                break;
+            case "fallos-caida":
+                fallosCaida = Integer.parseInt(valor);
+                if (fallosCaida < 1) {
+                    throw new IllegalArgumentException("--fallos-caida debe ser mayor que 0");
+                }
+                break;
+            case "retencion-seg":
+                retencionSeg = Long.parseLong(valor);
+                if (retencionSeg < 0) {
+                    throw new IllegalArgumentException("--retencion-seg no puede ser negativo");
+                }
+                break;
+            case "ejecutor":
+                ejecutor = EjecutorSesiones.Tipo.valueOf(valor.toUpperCase());
+                if (ejecutor == EjecutorSesiones.Tipo.POOL) {
+                    throw new IllegalArgumentException("--ejecutor del enrutador: plataforma o virtual");
+                }
+                break;
+            case "log-nivel":
+                logNivel = Bitacora.Nivel.valueOf(valor.toUpperCase());
+                break;
+            default:
+                throw new IllegalArgumentException("Opcion desconocida: --" + clave);
+        }
+    }
+
+    private void ejecutar() throws IOException {
+        Bitacora.configurar(logNivel, Bitacora.Formato.TEXTO, null, 0, 0);
+        anillo = new AnilloConsistente(Collections.emptySet(), virtuales);
+        ejecutorConexiones = EjecutorSesiones.crear(ejecutor, 0, "enrutador-conexion");
+        ejecutorReenvios = EjecutorSesiones.crearEscritores(ejecutor, 0, "enrutador-reenvio");
+
+        for (String direccion : nodosIniciales) {
+            nodos.put(direccion, new Nodo(direccion));
+        }
+        sondearTodos();
+
+        Thread sondeo = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(sondeoMs);
+                    sondearTodos();
+                } catch (InterruptedException e) {
+                    return;
+                } catch (RuntimeException e) {
+                    Bitacora.error("CLUSTER", "Fallo en el sondeo de nodos", e);
+                }
+            }
+        }, "enrutador-sondeo");
+        sondeo.setDaemon(true);
+        sondeo.start();
+
+        ServerSocket socketAdmin = new ServerSocket();
+        socketAdmin.bind(admin);
+        Thread administracion = new Thread(() -> {
+            while (true) {
+                try {
+                    Socket conexion = socketAdmin.accept();
+                    ejecutorConexiones.execute(() -> atenderAdmin(conexion));
+                } catch (IOException e) {
+                    Bitacora.error("CLUSTER", "Aceptando en el puerto de administracion", e);
+                    return;
+                }
+            }
+        }, "enrutador-admin");
+        administracion.setDaemon(true);
+        administracion.start();
+
+        ServerSocket socketConexion = new ServerSocket(puerto);
+        Bitacora.info("INICIO", "Enrutador de subastas en puerto " + puerto + ", modo " + modo +
+                      ", administracion en " + admin.getHostString() + ":" + admin.getPort() +
+                      ", nodos " + anillo.getNodos());
+        while (true) {
+            Socket cliente = socketConexion.accept();
+            ejecutorConexiones.execute(() -> atender(cliente));
+        }
+    }
+
+    // Miembros del cluster
+
+    private void sondearTodos() {
+        for (Nodo nodo : nodos.values()) {
+            sondear(nodo);
+        }
+    }
+
+    /**
+     * Pide SUBASTAS al nodo, actualiza sus subastas fijadas y lo mete o saca
+     * del anillo según responda
+     */
+    private void sondear(Nodo nodo) {
+        long inicio = System.nanoTime();
+        Set<Long> abiertas = consultar(nodo);
+
+        synchronized (nodos) {
+            if (abiertas == null) {
+                nodo.fallosSeguidos++;
+                if (nodo.vivo && nodo.fallosSeguidos < fallosCaida) {
+                    // Puede ser una pausa pasajera: sigue en el anillo y con sus subastas
+                    return;
+                }
+                if (nodo.vivo) {
+                    nodo.vivo = false;
+                    nodo.caidoDesde = inicio;
+                    anillo = anillo.sin(nodo.direccion);
+                    if (!nodo.saliendo) {
+                        Bitacora.error("CLUSTER", "Nodo " + nodo.direccion + " no responde tras " +
+                                       nodo.fallosSeguidos + " sondeos; sus subastas " + nodo.abiertas +
+                                       " contestan ERROR hasta que vuelva o se le dé de baja");
+                    }
+                }
+                // Un nodo que sale termina el proceso al cerrar su última subasta
+                if (nodo.saliendo) {
+                    soltar(nodo);
+                    nodos.remove(nodo.direccion, nodo);
+                    Bitacora.info("CLUSTER", "Nodo " + nodo.direccion + " ha salido del cluster");
+                } else if (retencionSeg > 0 && nodo.caidoDesde != 0 &&
+                           inicio - nodo.caidoDesde >= retencionSeg * 1_000_000_000L) {
+                    Bitacora.aviso("CLUSTER", "Nodo " + nodo.direccion + " lleva " + retencionSeg +
+                                   " s caído; se sueltan sus subastas " + nodo.abiertas);
+                    soltar(nodo);
+                    nodo.caidoDesde = 0;
+                }
+                return;
+            }
+
+            nodo.fallosSeguidos = 0;
+            nodo.caidoDesde = 0;
+            nodo.abiertas = abiertas;
+            for (Long id : abiertas) {
+                Fijacion actual = fijadas.get(id);
+                if (actual == null || (actual.nodo != nodo && !actual.nodo.vivo)) {
+                    fijadas.put(id, new Fijacion(nodo, inicio));
+                } else if (actual.nodo != nodo) {
+                    // Abierta en dos nodos vivos: se queda en el primero, sin ir y venir
+                    Bitacora.aviso("CLUSTER", "Subasta " + id + " abierta en " + actual.nodo.direccion +
+                                   " y en " + nodo.direccion + "; sigue en " + actual.nodo.direccion);
+                }
+            }
+            // Las fijadas antes del sondeo que ya no están abiertas se sueltan
+            fijadas.entrySet().removeIf(entrada -> entrada.getValue().nodo == nodo &&
+                entrada.getValue().desde < inicio && !abiertas.contains(entrada.getKey()));
+
+            if (!nodo.vivo) {
+                nodo.vivo = true;
+                if (!nodo.saliendo) {
+                    anillo = anillo.con(nodo.direccion);
+                }
+                Bitacora.info("CLUSTER", "Nodo " + nodo.direccion + " activo (" + abiertas.size() +
+                              " subastas abiertas); anillo: " + anillo.getNodos());
+            }
+            if (nodo.saliendo && abiertas.isEmpty()) {
+                nodos.remove(nodo.direccion, nodo);
+                cerrarSonda(nodo);
+                Bitacora.info("CLUSTER", "Nodo " + nodo.direccion + " sin subastas abiertas: retirado del cluster");
+            }
+        }
+    }
+
+    /**
+     * Suelta las subastas fijadas al nodo (con el lock de "nodos"); las
+     * siguientes peticiones de esos IDs van al dueño según el anillo
+     */
+    private void soltar(Nodo nodo) {
+        fijadas.values().removeIf(fijacion -> fijacion.nodo == nodo);
+        nodo.abiertas = Collections.emptySet();
+    }
+
+    /**
+     * Subastas abiertas del nodo, o null si no responde
+     */
+    private Set<Long> consultar(Nodo nodo) {
+        synchronized (nodo) {
+            try {
+                if (nodo.sonda == null) {
+                    Socket socket = new Socket();
+                    socket.connect(new InetSocketAddress(nodo.host, nodo.puerto), ESPERA_CONEXION_MS);
+                    socket.setSoTimeout(ESPERA_CONEXION_MS);
+                    nodo.sonda = new MiSocketStream(socket);
+                }
+                nodo.sonda.enviaMensaje("SUBASTAS");
+                String respuesta = nodo.sonda.recibeMensaje();
+                if (respuesta == null || !respuesta.startsWith("SUBASTAS:")) {
+                    throw new IOException("Respuesta inesperada: " + respuesta);
+                }
+                Set<Long> abiertas = new HashSet<>();
+                for (String id : respuesta.substring(9).split(",")) {
+                    if (!id.isEmpty()) {
+                        abiertas.add(Long.parseLong(id));
+                    }
+                }
+                return abiertas;
+            } catch (IOException | NumberFormatException e) {
+                if (nodo.vivo && !nodo.saliendo) {
+                    Bitacora.aviso("CLUSTER", "Sondeo de " + nodo.direccion + ": " + e.getMessage());
+                }
+                cerrarSonda(nodo);
+                return null;
+            }
+        }
+    }
+
+    private static void cerrarSonda(Nodo nodo) {
+        synchronized (nodo) {
+            if (nodo.sonda != null) {
+                try {
+                    nodo.sonda.close();
+                } catch (IOException e) {
+                    // Ya estaba cerrada
+                }
+                nodo.sonda = null;
+            }
+        }
+    }
+
+    /**
+     * Atiende CLUSTER:ALTA, CLUSTER:BAJA, CLUSTER:SALIR y CLUSTER:NODOS
+     */
+    private String administrar(String orden) {
+        if (orden.equals("CLUSTER:NODOS")) {
+            StringBuilder sb = new StringBuilder("NODOS:");
+            for (String direccion : new TreeSet<>(nodos.keySet())) {
+                Nodo nodo = nodos.get(direccion);
+                if (nodo == null) {
+                    continue;
+                }
+                if (sb.length() > 6) {
+                    sb.append(',');
+                }
+                sb.append(nodo.direccion).append('=').append(nodo.estado())
+                  .append(':').append(nodo.abiertas.size());
+            }
+            return sb.toString();
+        }
+
+        Nodo nodo;
+        try {
+            if (orden.startsWith("CLUSTER:ALTA:")) {
+                String alta = orden.substring(13);
+                int separadorClave = alta.indexOf(":CLAVE:");
+                String clave = separadorClave < 0 ? null : alta.substring(separadorClave + 7);
+                nodo = new Nodo(separadorClave < 0 ? alta : alta.substring(0, separadorClave));
+                synchronized (nodos) {
+                    Nodo existente = nodos.putIfAbsent(nodo.direccion, nodo);
+                    if (existente != null) {
+                        nodo = existente;
+                        if (nodo.saliendo) {
+                            nodo.saliendo = false;
+                            if (nodo.vivo) {
+                                anillo = anillo.con(nodo.direccion);
+                            }
+                        }
+                    }
+                    // Un nodo reiniciado trae una clave nueva
+                    if (clave != null) {
+                        nodo.clave = clave;
+                    }
+                }
+                Bitacora.info("CLUSTER", "Alta de " + nodo.direccion);
+                sondear(nodo);
+                return nodo.vivo ? "OK:ALTA:" + nodo.direccion
+                                 : "ERROR:No se pudo conectar con " + nodo.direccion;
+            }
+            if (orden.startsWith("CLUSTER:BAJA:")) {
+                nodo = nodos.get(new Nodo(orden.substring(13)).direccion);
+                if (nodo == null) {
+                    return "ERROR:Nodo desconocido: " + orden.substring(13);
+                }
+                synchronized (nodos) {
+                    if (!nodo.vivo) {
+                        // Baja de un nodo caído: confirma que no volverá y suelta sus subastas
+                        Bitacora.aviso("CLUSTER", "Baja de " + nodo.direccion + ", que no responde; se sueltan " +
+                                       "sus subastas " + nodo.abiertas);
+                        soltar(nodo);
+                        nodos.remove(nodo.direccion, nodo);
+                        cerrarSonda(nodo);
+                        return "OK:BAJA:" + nodo.direccion + ":0";
+                    }
+                    nodo.saliendo = true;
+                    anillo = anillo.sin(nodo.direccion);
+                }
+                Bitacora.info("CLUSTER", "Baja de " + nodo.direccion + ": termina sus " +
+                              nodo.abiertas.size() + " subastas abiertas y sale; anillo: " +
+                              anillo.getNodos());
+                return "OK:BAJA:" + nodo.direccion + ":" + nodo.abiertas.size();
+            }
+            if (orden.startsWith("CLUSTER:SALIR:")) {
+                nodo = nodos.get(new Nodo(orden.substring(14)).direccion);
+                if (nodo == null) {
+                    return "ERROR:Nodo desconocido: " + orden.substring(14);
+                }
+                return pedirSalida(nodo);
+            }
+        } catch (IllegalArgumentException e) {
+            return "ERROR:" + e.getMessage();
+        }
+        return "ERROR:Orden desconocida: " + orden;
+    }
+
+    /**
+     * Pasa CLUSTER:SALIR al nodo con la clave de su alta; el nodo drena y
+     * se da de baja él mismo
+     */
+    private static String pedirSalida(Nodo nodo) {
+        String clave = nodo.clave;
+        if (clave == null) {
+            return "ERROR:El nodo " + nodo.direccion + " no se anuncio con clave; usa CLUSTER:BAJA";
+        }
+        Socket socket = null;
+        try {
+            socket = conectar(nodo, false, null);
+            socket.setSoTimeout(ESPERA_CONEXION_MS);
+            MiSocketStream conexion = new MiSocketStream(socket);
+            conexion.enviaMensaje("CLUSTER:SALIR:" + clave);
+            String respuesta = conexion.recibeMensaje();
+            Bitacora.info("CLUSTER", "Salida de " + nodo.direccion + ": " + respuesta);
+            return respuesta == null ? "ERROR:El nodo " + nodo.direccion + " cerro la conexion" : respuesta;
+        } catch (IOException e) {
+            return "ERROR:No se pudo conectar con " + nodo.direccion + ": " + e.getMessage();
+        } finally {
+            cerrar(socket);
+        }
+    }
+
+    /**
+     * Nodo de la subasta: el que la tiene abierta (aunque esté caído), o el
+     * dueño según el anillo (y entonces queda fijada allí). null si no hay
+     * nodos activos.
+     */
+    private Nodo destino(long idSubasta) {
+        Fijacion fijacion = fijadas.get(idSubasta);
+        if (fijacion != null) {
+            return fijacion.nodo;
+        }
+        String direccion = anillo.propietario(idSubasta);
+        Nodo nodo = direccion == null ? null : nodos.get(direccion);
+        if (nodo != null) {
+            fijadas.put(idSubasta, new Fijacion(nodo, System.nanoTime()));
+        }
+        return nodo;
+    }
+
+    private Set<Long> subastasAbiertas() {
+        return new TreeSet<>(fijadas.keySet());
+    }
+
+    // Conexiones de los clientes
+
+    /**
+     * Lee hasta saber a qué subasta va el cliente y lo pasa a su nodo
+     */
+    private void atender(Socket cliente) {
+        Socket socketNodo = null;
+        boolean reenviando = false;
+        try {
+            cliente.setTcpNoDelay(true);
+            InputStream entrada = new BufferedInputStream(cliente.getInputStream(), TAMANIO_REENVIO);
+            OutputStream salida = cliente.getOutputStream();
+            byte[] linea = new byte[ProtocoloTexto.LONGITUD_MAXIMA_PETICION];
+            ByteBuffer trama = ByteBuffer.allocate(ProtocoloBinario.LONGITUD_MAXIMA);
+            ProtocoloTexto.Mensaje mensaje = new ProtocoloTexto.Mensaje();
+            ProtocoloBinario.Trama decodificada = new ProtocoloBinario.Trama();
+            boolean binario = false;
+            long idSubasta = RegistroSubastas.SUBASTA_POR_DEFECTO;
+            byte[] primero;
+
+            // Primer mensaje que dice a qué subasta va; lo demás se contesta aquí
+            while (true) {
+                if (binario) {
+                    if (!leerTrama(entrada, trama)) {
+                        return;
+                    }
+                    ByteBuffer cuerpo = trama.duplicate();
+                    cuerpo.position(ProtocoloBinario.PREFIJO);
+                    if (!ProtocoloBinario.decodificar(cuerpo, decodificada) ||
+                            decodificada.tipo == ProtocoloBinario.FIN) {
+                        return;
+                    }
+                    if (decodificada.tipo == ProtocoloBinario.SUBASTAS) {
+                        ByteBuffer respuesta = ByteBuffer.allocate(ProtocoloBinario.LONGITUD_MAXIMA);
+                        ProtocoloBinario.escribirSubastas(respuesta, subastasAbiertas());
+                        salida.write(respuesta.array(), 0, respuesta.position());
+                        continue;
+                    }
+                    if ((decodificada.tipo == ProtocoloBinario.UNIRSE ||
+                         decodificada.tipo == ProtocoloBinario.PROPUESTA) && decodificada.idSubasta > 0) {
+                        idSubasta = decodificada.idSubasta;
+                    }
+                    primero = new byte[trama.limit()];
+                    trama.get(0, primero);
+                    break;
+                }
+
+                int longitud = leerLinea(entrada, linea);
+                if (longitud < 0) {
+                    return;
+                }
+                ByteBuffer vista = ByteBuffer.wrap(linea, 0, longitud);
+                String texto = null;
+                if (ProtocoloTexto.empiezaCon(vista, "CLUSTER:") || ProtocoloTexto.empiezaCon(vista, "DONDE:") ||
+                        ProtocoloTexto.empiezaCon(vista, "SUBASTAS")) {
+                    texto = ProtocoloTexto.comoTexto(vista).trim();
+                }
+                if (texto != null && texto.startsWith("CLUSTER:")) {
+                    escribirLinea(salida, "ERROR:Las ordenes CLUSTER van al puerto de administracion");
+                    return;
+                }
+                if (texto != null && texto.startsWith("DONDE:")) {
+                    escribirLinea(salida, responderDonde(texto.substring(6)));
+                    return;
+                }
+                if ("SUBASTAS".equals(texto)) {
+                    StringBuilder sb = new StringBuilder("SUBASTAS:");
+                    for (Long id : subastasAbiertas()) {
+                        sb.append(sb.length() > 9 ? "," : "").append(id);
+                    }
+                    escribirLinea(salida, sb.toString());
+                    continue;
+                }
+
+                ProtocoloTexto.decodificar(vista, mensaje);
+                if (mensaje.tipo == ProtocoloBinario.FIN) {
+                    return;
+                }
+                if (mensaje.tipo == ProtocoloTexto.SALUDO) {
+                    escribirLinea(salida, ProtocoloBinario.SALUDO);
+                    binario = true;
+                    continue;
+                }
+                if (mensaje.tipo == ProtocoloBinario.UNIRSE && mensaje.idSubasta > 0) {
+                    idSubasta = mensaje.idSubasta;
+                }
+                primero = new byte[longitud + 1];
+                System.arraycopy(linea, 0, primero, 0, longitud);
+                primero[longitud] = '\n';
+                break;
+            }
+
+            Nodo nodo = destino(idSubasta);
+            if (nodo == null || !nodo.vivo || modo == Modo.REDIRIGIR) {
+                String texto = nodo == null ? "ERROR:Ningun nodo disponible para la subasta " + idSubasta
+                             : !nodo.vivo ? "ERROR:" + noResponde(nodo, idSubasta)
+                             : "NODO:" + nodo.direccion;
+                if (binario) {
+                    ByteBuffer respuesta = ByteBuffer.allocate(ProtocoloBinario.LONGITUD_NOTIFICACION);
+                    ProtocoloBinario.escribirError(respuesta, idSubasta, 0,
+                                                   texto.startsWith("ERROR:") ? texto.substring(6) : texto);
+                    salida.write(respuesta.array(), 0, respuesta.position());
+                } else {
+                    escribirLinea(salida, texto);
+                }
+                return;
+            }
+
+            socketNodo = conectar(nodo, binario, cliente.getInetAddress().getHostAddress());
+            OutputStream haciaNodo = socketNodo.getOutputStream();
+            haciaNodo.write(primero);
+            Bitacora.depuracion("REENVIO", cliente.getInetAddress().getHostAddress() +
+                                " -> subasta " + idSubasta + " en " + nodo.direccion);
+
+            Socket nodoFinal = socketNodo;
+            ejecutorReenvios.execute(() -> reenviar(nodoFinal, cliente, false));
+            socketNodo = null;
+            reenviando = true;
+            reenviar(cliente, nodoFinal, true);
+
+        } catch (IOException e) {
+            Bitacora.depuracion("REENVIO", "Conexion de " + cliente.getInetAddress().getHostAddress() +
+                                " terminada: " + e.getMessage());
+        } finally {
+            // Si la conexión no llegó a reenviarse se cierra aquí
+            if (socketNodo != null || !reenviando) {
+                cerrar(socketNodo);
+                cerrar(cliente);
+            }
+        }
+    }
+
+    /**
+     * Una orden CLUSTER por conexión del puerto de administración
+     */
+    private void atenderAdmin(Socket conexion) {
+        try {
+            conexion.setSoTimeout(ESPERA_CONEXION_MS);
+            byte[] linea = new byte[ProtocoloTexto.LONGITUD_MAXIMA_PETICION];
+            int longitud = leerLinea(conexion.getInputStream(), linea);
+            if (longitud >= 0) {
+                String orden = new String(linea, 0, longitud, StandardCharsets.UTF_8).trim();
+                escribirLinea(conexion.getOutputStream(), orden.startsWith("CLUSTER:") ? administrar(orden)
+                                                          : "ERROR:Orden desconocida: " + orden);
+            }
+        } catch (IOException e) {
+            Bitacora.depuracion("CLUSTER", "Conexion de administracion de " +
+                                conexion.getInetAddress().getHostAddress() + " terminada: " + e.getMessage());
+        } finally {
+            cerrar(conexion);
+        }
+    }
+
+    private String responderDonde(String id) {
+        try {
+            long idSubasta = Long.parseLong(id.trim());
+            Nodo nodo = destino(idSubasta);
+            return nodo == null ? "ERROR:Ningun nodo disponible"
+                 : !nodo.vivo ? "ERROR:" + noResponde(nodo, idSubasta)
+                 : "NODO:" + nodo.direccion;
+        } catch (NumberFormatException e) {
+            return "ERROR:ID de subasta invalido";
+        }
+    }
+
+    private static String noResponde(Nodo nodo, long idSubasta) {
+        return "El nodo " + nodo.direccion + " de la subasta " + idSubasta + " no responde";
+    }
+
+    /**
+     * Abre la conexión con el nodo, le pasa la IP del cliente si el nodo dio
+     * clave y, si el cliente pidió el protocolo binario, repite el saludo (la
+     * confirmación ya se la dio el enrutador)
+     * @param ipCliente null en las conexiones propias del enrutador
+     */
+    private static Socket conectar(Nodo nodo, boolean binario, String ipCliente) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(nodo.host, nodo.puerto), ESPERA_CONEXION_MS);
+            socket.setTcpNoDelay(true);
+            String clave = nodo.clave;
+            if (ipCliente != null && clave != null) {
+                socket.getOutputStream().write((ServidorSubasta.REENVIADO + clave + ":" + ipCliente + "\n")
+                                               .getBytes(StandardCharsets.UTF_8));
+            }
+            if (binario) {
+                socket.getOutputStream().write((ProtocoloBinario.SALUDO + "\n").getBytes(StandardCharsets.UTF_8));
+                byte[] confirmacion = new byte[ProtocoloBinario.SALUDO.length() + 2];
+                int longitud = leerLinea(socket.getInputStream(), confirmacion);
+                if (longitud < 0 || !new String(confirmacion, 0, longitud, StandardCharsets.UTF_8)
+                                        .trim().equals(ProtocoloBinario.SALUDO)) {
+                    throw new IOException("El nodo " + nodo.direccion + " no acepta el protocolo binario");
+                }
+            }
+            return socket;
+        } catch (IOException e) {
+            cerrar(socket);
+            throw e;
+        }
+    }
+
+    /**
+     * Copia los bytes de un socket al otro hasta que uno se cierra. Si el
+     * cliente deja de enviar se cierra solo la escritura hacia el nodo, que
+     * aun puede mandar el resultado; cualquier otro fin cierra ambos.
+     */
+    private static void reenviar(Socket origen, Socket destino, boolean desdeCliente) {
+        byte[] buffer = new byte[TAMANIO_REENVIO];
+        try {
+            InputStream entrada = origen.getInputStream();
+            OutputStream salida = destino.getOutputStream();
+            int leidos;
+            while ((leidos = entrada.read(buffer)) >= 0) {
+                salida.write(buffer, 0, leidos);
+            }
+            if (desdeCliente) {
+                destino.shutdownOutput();
+                return;
+            }
+        } catch (IOException e) {
+            // Uno de los dos extremos se cerró
+        }
+        cerrar(origen);
+        cerrar(destino);
+    }
+
+    /**
+     * Lee una linea sin el fin de linea (ni el '\r')
+     * @return su longitud, o -1 si la conexión se cerró antes
+     */
+    private static int leerLinea(InputStream entrada, byte[] linea) throws IOException {
+        int longitud = 0;
+        while (true) {
+            int b = entrada.read();
+            if (b < 0) {
+                return -1;
+            }
+            if (b == '\n') {
+                return (longitud > 0 && linea[longitud - 1] == '\r') ? longitud - 1 : longitud;
+            }
+            if (longitud == linea.length) {
+                throw new IOException("Linea demasiado larga");
+            }
+            linea[longitud++] = (byte) b;
+        }
+    }
+
+    /**
+     * Lee una trama completa, con su prefijo, en "trama" (position 0,
+     * limit al final)
+     * @return false si la conexión se cerró antes
+     */
+    private static boolean leerTrama(InputStream entrada, ByteBuffer trama) throws IOException {
+        byte[] bytes = trama.array();
+        if (!leerCompleto(entrada, bytes, 0, ProtocoloBinario.PREFIJO)) {
+            return false;
+        }
+        int longitud = ((bytes[0] & 0xFF) << 8) | (bytes[1] & 0xFF);
+        if (longitud > bytes.length - ProtocoloBinario.PREFIJO) {
+            throw new IOException("Trama demasiado larga: " + longitud);
+        }
+        if (!leerCompleto(entrada, bytes, ProtocoloBinario.PREFIJO, longitud)) {
+            throw new EOFException("Trama incompleta");
+        }
+        trama.clear().limit(ProtocoloBinario.PREFIJO + longitud);
+        return true;
+    }
+
+    private static boolean leerCompleto(InputStream entrada, byte[] destino, int desde, int cantidad)
+            throws IOException {
+        while (cantidad > 0) {
+            int leidos = entrada.read(destino, desde, cantidad);
+            if (leidos < 0) {
+                return false;
+            }
+            desde += leidos;
+            cantidad -= leidos;
+        }
+        return true;
+    }
+
+    private static void escribirLinea(OutputStream salida, String linea) throws IOException {
+        salida.write((linea + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void cerrar(Socket socket) {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Ya estaba cerrado
+            }
+        }
+    }
+}
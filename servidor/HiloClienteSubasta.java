@@ -1,148 +1,412 @@
 package socket.conconexion.servidor;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Hilo que maneja la conexión con un cliente de subasta individual.
  * Permite multiples propuestas del mismo cliente hasta que la subasta finalice.
+ * Nada escribe en el socket directamente: las respuestas y los broadcasts
+ * se encolan en la cola de salida acotada y un escritor propio de la sesión
+ * la vacía, de modo que un cliente lento no frena a quien difunde.
+ * Cada linea o trama recibida cuenta como actividad para el vigilante de
+ * inactividad, que cierra la conexión si el cliente deja de responder.
  * @author Sistema de Subasta
  */
-public class HiloClienteSubasta implements Runnable {
+public class HiloClienteSubasta implements Runnable, SesionSubasta, VigilanteInactividad.Conexion {
     private MiSocketStream miSocket;
-    private String ipCliente;
-    private double propuesta;
+    // La del enrutador se sustituye por la del cliente si la conexión llega reenviada
+    private volatile String ipCliente;
+    private boolean primeraLinea = true;
+    private volatile long propuesta;
+    private volatile Subasta subasta;
+    private LimitadorPropuestas.CuboTokens cuboPropuestas;
+    private volatile IdentidadSesion identidad = new IdentidadSesion();
     private volatile boolean resultadoEnviado = false;
+    private volatile boolean retirado = false;
     private CountDownLatch latch = new CountDownLatch(1);
 
-    public HiloClienteSubasta(MiSocketStream socket, String ip) {
+    // Cola de salida y ejecutor de su escritor
+    private final ColaSalida salida;
+    private final Executor ejecutorEscritor;
+    private final AtomicBoolean socketCerrado = new AtomicBoolean(false);
+    private final VigilanteInactividad.Actividad actividad = new VigilanteInactividad.Actividad();
+
+    // Protocolo binario (tras el saludo); los buffers son de este hilo
+    private volatile boolean binario = false;
+    private ByteBuffer entradaTrama;
+    private ByteBuffer respuestaTrama;
+    private final ProtocoloBinario.Trama trama = new ProtocoloBinario.Trama();
+
+    // Protocolo de texto: la linea se decodifica en su buffer, sin Strings
+    private final ByteBuffer lineaEntrada = ByteBuffer.allocate(ProtocoloTexto.LONGITUD_MAXIMA_PETICION);
+    private final ByteBuffer respuestaTexto = ByteBuffer.allocate(ProtocoloTexto.LONGITUD_NOTIFICACION);
+    private final ProtocoloTexto.Mensaje mensaje = new ProtocoloTexto.Mensaje();
+
+    public HiloClienteSubasta(MiSocketStream socket, String ip,
+                              ColaSalida salida, Executor ejecutorEscritor) {
         this.miSocket = socket;
         this.ipCliente = ip;
-        this.propuesta = 0.0;
+        this.propuesta = 0;
+        this.salida = salida;
+        this.ejecutorEscritor = ejecutorEscritor;
     }
 
     @Override
     public void run() {
+        // Con --ejecutor=pool los escritores también están acotados
+        if (!EjecutorSesiones.ejecutar(ejecutorEscritor, this::escribirPendientes)) {
+            Bitacora.aviso("RECHAZADO", "Servidor lleno (escritores): " + ipCliente);
+            rechazar("Servidor lleno");
+            return;
+        }
+        ServidorSubasta.getRegistro().getVigilante().registrar(this);
         try {
             // Loop para recibir multiples propuestas del mismo cliente
-            while (ServidorSubasta.estaActiva()) {
-                String mensajeRecibido = miSocket.recibeMensaje();
-
-                if (mensajeRecibido == null) {
-                    System.out.println("Cliente " + ipCliente + " desconectado.");
-                    break;
+            // hasta que termine la subasta a la que se unió
+            try {
+                while (subasta == null || subasta.estaActiva()) {
+                    if (binario ? !atenderTrama() : !atenderLinea()) {
+                        break;
+                    }
                 }
+            } finally {
+                // Desde aquí la sesión solo se puede continuar con REANUDAR
+                ServidorSubasta.getRegistro().getSesiones().desconectada(this);
+            }
 
-                System.out.println("Mensaje de " + ipCliente + ": " + mensajeRecibido);
+            // Tras FIN o al terminar la subasta solo queda esperar el resultado final
+            Subasta actual = subasta;
+            if (actual != null && (retirado || !actual.estaActiva())) {
+                // Ya no se lee de la conexión: no hay actividad que vigilar
+                ServidorSubasta.getRegistro().getVigilante().retirar(this);
+                Bitacora.depuracion("SESION", "Cliente " + ipCliente + " esperando resultado final...");
+                latch.await(); // Espera hasta que se llame enviarResultado()
+                return;
+            }
 
-                // Comando para terminar conexión
-                if (mensajeRecibido.trim().equals("FIN")) {
-                    System.out.println("Cliente " + ipCliente + " se retiró de la subasta.");
-                    break;
-                }
+        } catch (InterruptedException e) {
+            Bitacora.info("SESION", "Cliente " + ipCliente + " interrumpido.");
+        } catch (IOException e) {
+            // Con el socket ya cerrado aquí (p. ej. al reanudarse en otra conexión) no es un error
+            if (!socketCerrado.get()) {
+                Bitacora.aviso("SESION", "Error de I/O con cliente " + ipCliente + ": " + e.getMessage());
+            }
+        } catch (Exception e) {
+            Bitacora.error("SESION", "Error con cliente " + ipCliente + ": " + e.getMessage());
+        }
+        abandonar();
+    }
 
-                try {
-                    double nuevaPropuesta = Double.parseDouble(mensajeRecibido.trim());
+    /**
+     * El cliente se desconectó (o falló su conexión) sin FIN: nadie va a
+     * liberar el latch, así que el hilo no espera el resultado. Deja de
+     * recibir los broadcasts de su subasta y se cierra el socket.
+     */
+    private void abandonar() {
+        Subasta actual = subasta;
+        if (actual != null) {
+            actual.retirar(this);
+        }
+        cerrarSocket();
+    }
 
-                    if (nuevaPropuesta <= 0) {
-                        miSocket.enviaMensaje("ERROR:La propuesta debe ser mayor que 0");
-                        continue;
-                    }
+    /**
+     * Lee y atiende una linea del protocolo de texto. Las propuestas se
+     * decodifican y responden sobre bytes; el resto pasa a procesarMensaje.
+     * @return false si el cliente se desconectó o envió FIN
+     */
+    private boolean atenderLinea() throws IOException {
+        if (!miSocket.recibeLinea(lineaEntrada)) {
+            Bitacora.info("SESION", "Cliente " + ipCliente + " desconectado.");
+            return false;
+        }
+        actividad.recibido();
+
+        if (Bitacora.depurando()) {
+            Bitacora.depuracion("MENSAJE", "Mensaje de " + ipCliente + ": " +
+                                ProtocoloTexto.comoTexto(lineaEntrada));
+        }
+
+        // El enrutador antepone la IP real del cliente; no se contesta
+        if (primeraLinea) {
+            primeraLinea = false;
+            if (ProtocoloTexto.empiezaCon(lineaEntrada, ServidorSubasta.REENVIADO)) {
+                String ip = ServidorSubasta.ipReenviada(ProtocoloTexto.comoTexto(lineaEntrada), ipCliente);
+                if (ip == null) {
+                    return false;
+                }
+                ipCliente = ip;
+                return true;
+            }
+        }
 
-                    // Actualizar la propuesta del cliente
-                    propuesta = nuevaPropuesta;
-                    System.out.println("Cliente " + ipCliente + " ofrece: $" + propuesta);
+        ProtocoloTexto.decodificar(lineaEntrada, mensaje);
+        switch (mensaje.tipo) {
+            // Comando para terminar conexión
+            case ProtocoloBinario.FIN:
+                Bitacora.info("SESION", "Cliente " + ipCliente + " se retiró de la subasta.");
+                retirado = true;
+                return false;
 
-                    // Actualizar la propuesta mas alta del servidor
-                    boolean esLaMasAlta = ServidorSubasta.actualizarPropuestaMasAlta(
-                        nuevaPropuesta, ipCliente);
+            case ProtocoloBinario.PING:
+                enviar(MensajeDifundido.PONG.paraFlujo(false), false);
+                return true;
 
-                    // Enviar respuesta con la propuesta mas alta actual y tiempo restante
-                    // Usamos prefijo RESPUESTA: para diferenciar de los UPDATEs periódicos
-                    String respuesta = "RESPUESTA:" + ServidorSubasta.obtenerPropuestaMasAlta() +
-                                     ":TIEMPO:" + ServidorSubasta.getTiempoRestante() +
-                                     ":TU_PROPUESTA:" + (esLaMasAlta ? "GANANDO" : "PERDIENDO");
+            // Solo cuenta como actividad
+            case ProtocoloBinario.PONG:
+                return true;
 
-                    miSocket.enviaMensaje(respuesta);
+            case ProtocoloBinario.PROPUESTA:
+                respuestaTexto.clear();
+                ServidorSubasta.procesarPropuesta(this, mensaje, respuestaTexto);
+                respuestaTexto.flip();
+                ByteBuffer copia = ByteBuffer.allocate(respuestaTexto.remaining());
+                copia.put(respuestaTexto).flip();
+                enviar(copia, false);
+                return true;
 
-                } catch (NumberFormatException e) {
-                    System.out.println("Error: Propuesta invalida de " + ipCliente);
-                    miSocket.enviaMensaje("ERROR:Propuesta invalida. Debe ser un numero.");
+            // Negociación del protocolo binario, antes de unirse
+            case ProtocoloTexto.SALUDO:
+                if (subasta == null) {
+                    enviar(ProtocoloBinario.SALUDO);
+                    entradaTrama = ByteBuffer.allocate(ProtocoloBinario.LONGITUD_MAXIMA);
+                    respuestaTrama = ByteBuffer.allocate(ProtocoloBinario.LONGITUD_MAXIMA);
+                    binario = true;
+                    Bitacora.info("SESION", "Cliente " + ipCliente + " usa el protocolo binario");
+                    return true;
                 }
-            }
+                break;
 
-            // Esperar el resultado final de la subasta
-            System.out.println("Cliente " + ipCliente + " esperando resultado final...");
-            latch.await(); // Espera hasta que se llame enviarResultado()
+            default:
+                break;
+        }
 
-        } catch (InterruptedException e) {
-            System.out.println("Cliente " + ipCliente + " interrumpido.");
-        } catch (IOException e) {
-            System.out.println("Error de I/O con cliente " + ipCliente + ": " + e.getMessage());
-        } catch (Exception e) {
-            System.out.println("Error con cliente " + ipCliente + ": " + e.getMessage());
+        String respuesta = ServidorSubasta.procesarMensaje(this, ProtocoloTexto.comoTexto(lineaEntrada));
+        if (respuesta != null) {
+            enviar(respuesta);
         }
+        return true;
     }
 
     /**
-     * Envía el resultado final de la subasta al cliente
+     * Lee y atiende una trama del protocolo binario
+     * @return false si el cliente se desconectó o envió FIN
+     */
+    private boolean atenderTrama() throws IOException {
+        if (!miSocket.recibeTrama(entradaTrama) ||
+                !ProtocoloBinario.decodificar(entradaTrama, trama)) {
+            Bitacora.info("SESION", "Cliente " + ipCliente + " desconectado.");
+            return false;
+        }
+        actividad.recibido();
+        if (trama.tipo == ProtocoloBinario.FIN) {
+            Bitacora.info("SESION", "Cliente " + ipCliente + " se retiró de la subasta.");
+            retirado = true;
+            return false;
+        }
+
+        respuestaTrama.clear();
+        if (ServidorSubasta.procesarTrama(this, trama, respuestaTrama)) {
+            respuestaTrama.flip();
+            ByteBuffer copia = ByteBuffer.allocate(respuestaTrama.remaining());
+            copia.put(respuestaTrama).flip();
+            enviar(copia, false);
+        }
+        return true;
+    }
+
+    /**
+     * Escritor de la sesión: envía lo encolado hasta que se cierra la cola
+     * (y queda vacía) o falla el socket
      */
-    public void enviarResultado(String mensaje) {
+    private void escribirPendientes() {
         try {
-            if (!resultadoEnviado) {
-                miSocket.enviaMensaje(mensaje);
-                resultadoEnviado = true;
-                latch.countDown(); // Libera el await()
-                System.out.println("Resultado enviado a " + ipCliente);
+            ByteBuffer datos;
+            while ((datos = salida.esperar()) != null) {
+                miSocket.enviaBuffer(datos);
             }
+        } catch (InterruptedException e) {
+            Bitacora.aviso("SESION", "Escritor de " + ipCliente + " interrumpido.");
         } catch (IOException e) {
-            System.out.println("Error al enviar resultado a " + ipCliente + ": " + e.getMessage());
+            if (!socketCerrado.get()) {
+                Bitacora.aviso("SESION", "Error de I/O con cliente " + ipCliente + ": " + e.getMessage());
+            }
+        }
+        cerrarSocket();
+    }
+
+    private void enviar(String mensaje) {
+        enviar(ByteBuffer.wrap((mensaje + "\n").getBytes(StandardCharsets.UTF_8)), false);
+    }
+
+    /**
+     * Encola bytes ya codificados; si la cola se desborda el cliente es
+     * demasiado lento y se cierra el socket sin esperar al escritor
+     */
+    private void enviar(ByteBuffer datos, boolean reemplazable) {
+        if (!salida.ofrecer(datos, reemplazable) && salida.estaDesbordada() && !socketCerrado.get()) {
+            Bitacora.aviso("LENTO", "Cliente " + ipCliente +
+                                  " desconectado: cola de salida desbordada");
+            ServidorSubasta.getRegistro().getMetricas().desconexionPorLentitud();
+            latch.countDown();
+            cerrarSocket();
+        }
+    }
+
+    private void cerrarSocket() {
+        if (socketCerrado.compareAndSet(false, true)) {
+            ServidorSubasta.getRegistro().getMetricas().sesionCerrada();
+            ServidorSubasta.getRegistro().getVigilante().retirar(this);
+            salida.vaciar();
+            try {
+                miSocket.close();
+            } catch (IOException e) {
+                Bitacora.aviso("SESION", "Error al cerrar conexión con " + ipCliente);
+            }
         }
     }
 
     /**
-     * Envía una actualización periódica de la oferta ganadora al cliente
+     * Rechaza la conexión antes de atenderla (por ejemplo, servidor lleno).
+     * El escritor aun no existe: se escribe directamente y se cierra.
      */
-    public void enviarActualizacion(String mensaje) {
+    public void rechazar(String motivo) {
         try {
-            miSocket.enviaMensaje("UPDATE:" + mensaje);
+            miSocket.enviaMensaje("ERROR:" + motivo);
         } catch (IOException e) {
-            System.out.println("Error al enviar actualización a " + ipCliente + ": " + e.getMessage());
+            Bitacora.aviso("SESION", "Error al rechazar a " + ipCliente + ": " + e.getMessage());
         }
+        latch.countDown();
+        cerrarSocket();
+    }
+
+    /**
+     * Envía el resultado final de la subasta al cliente
+     */
+    @Override
+    public void enviarResultado(MensajeDifundido resultado) {
+        if (!resultadoEnviado) {
+            resultadoEnviado = true;
+            enviar(resultado.paraFlujo(binario), false);
+            latch.countDown(); // Libera el await()
+            Bitacora.depuracion("SESION", "Resultado enviado a " + ipCliente);
+        }
+    }
+
+    /**
+     * Envía una actualización de la oferta ganadora (o un latido) al cliente;
+     * una más nueva puede reemplazarla en la cola
+     */
+    @Override
+    public void enviarActualizacion(MensajeDifundido mensaje) {
+        enviar(mensaje.paraFlujo(binario), true);
     }
 
     /**
      * Notifica al cliente que la subasta ha iniciado
      */
-    public void notificarInicioSubasta(long tiempoRestante) {
-        try {
-            miSocket.enviaMensaje("SUBASTA_INICIADA:TIEMPO:" + tiempoRestante);
-            System.out.println("Cliente " + ipCliente + " notificado: subasta iniciada");
-        } catch (IOException e) {
-            System.out.println("Error al notificar inicio a " + ipCliente + ": " + e.getMessage());
+    @Override
+    public void notificarInicioSubasta(long idSubasta, long tiempoRestante) {
+        if (binario) {
+            ByteBuffer inicio = ByteBuffer.allocate(ProtocoloBinario.LONGITUD_NOTIFICACION);
+            ProtocoloBinario.escribirIniciada(inicio, idSubasta, tiempoRestante);
+            inicio.flip();
+            enviar(inicio, false);
+        } else {
+            ByteBuffer inicio = ByteBuffer.allocate(ProtocoloTexto.LONGITUD_NOTIFICACION);
+            ProtocoloTexto.escribirIniciada(inicio, idSubasta, tiempoRestante);
+            inicio.flip();
+            enviar(inicio, false);
         }
+        Bitacora.depuracion("SESION", "Cliente " + ipCliente + " notificado: subasta iniciada");
+    }
+
+    @Override
+    public void enviarPing() {
+        enviar(MensajeDifundido.PING.paraFlujo(binario), false);
+    }
+
+    /**
+     * El cliente no envió nada en el plazo de inactividad: se cierra sin
+     * esperar a la cola de salida, y el hilo lector (o el que espera el
+     * resultado) termina y libera la sesión
+     */
+    @Override
+    public void cerrarPorInactividad() {
+        latch.countDown();
+        abandonar();
     }
 
     /**
-     * Cierra la conexión con el cliente
+     * Cierra la conexión con el cliente cuando el escritor termine de
+     * enviar lo que ya estaba encolado
      */
+    @Override
     public void cerrarConexion() {
-        try {
-            if (!resultadoEnviado) {
-                latch.countDown(); // Libera el await() si aun no se envió resultado
-            }
-            miSocket.close();
-            System.out.println("Conexión cerrada con " + ipCliente);
-        } catch (IOException e) {
-            System.out.println("Error al cerrar conexión con " + ipCliente);
+        if (!resultadoEnviado) {
+            latch.countDown(); // Libera el await() si aun no se envió resultado
         }
+        salida.cerrar();
+        Bitacora.depuracion("SESION", "Conexión cerrada con " + ipCliente);
     }
 
     // Getters
-    public double getPropuesta() {
+    @Override
+    public VigilanteInactividad.Actividad getActividad() {
+        return actividad;
+    }
+
+    @Override
+    public int getProfundidadSalida() {
+        return salida.getProfundidad();
+    }
+
+    @Override
+    public long getPropuesta() {
         return propuesta;
     }
 
+    @Override
+    public void setPropuesta(long propuesta) {
+        this.propuesta = propuesta;
+    }
+
+    @Override
+    public Subasta getSubasta() {
+        return subasta;
+    }
+
+    @Override
+    public void setSubasta(Subasta subasta) {
+        this.subasta = subasta;
+    }
+
+    @Override
+    public LimitadorPropuestas.CuboTokens getCuboPropuestas() {
+        return cuboPropuestas;
+    }
+
+    @Override
+    public void setCuboPropuestas(LimitadorPropuestas.CuboTokens cubo) {
+        this.cuboPropuestas = cubo;
+    }
+
+    @Override
+    public IdentidadSesion getIdentidad() {
+        return identidad;
+    }
+
+    @Override
+    public void setIdentidad(IdentidadSesion identidad) {
+        this.identidad = identidad;
+    }
+
+    @Override
     public String getIpCliente() {
         return ipCliente;
     }
@@ -0,0 +1,130 @@
+package socket.conconexion.servidor;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de valores no negativos (latencias en microsegundos, tamaños)
+ * con precisión relativa fija, al estilo de HdrHistogram: los valores
+ * menores que 64 se cuentan exactos y los demás en cubetas de 1/64 de su
+ * potencia de dos (error menor del 1,6 %). Ocupa siempre lo mismo, se
+ * puede registrar desde varios hilos sin bloqueo y no crea objetos.
+ * @author Sistema de Subasta
+ */
+public class Histograma {
+    private static final int BITS_SUBCUBETA = 6;
+    private static final int SUBCUBETAS = 1 << BITS_SUBCUBETA;
+    private static final int CUBETAS = 64 - BITS_SUBCUBETA + 1;
+
+    private final AtomicLongArray cuentas = new AtomicLongArray(CUBETAS * SUBCUBETAS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder suma = new LongAdder();
+    private final AtomicLong maximo = new AtomicLong();
+
+    /**
+     * Registra un valor; los negativos cuentan como 0
+     */
+    public void registrar(long valor) {
+        if (valor < 0) {
+            valor = 0;
+        }
+        cuentas.incrementAndGet(indice(valor));
+        total.increment();
+        suma.add(valor);
+        if (valor > maximo.get()) {
+            maximo.accumulateAndGet(valor, Math::max);
+        }
+    }
+
+    /**
+     * Valor por debajo del cual queda el porcentaje indicado de registros
+     * (por ejemplo 99.9), o 0 si no hay ninguno
+     */
+    public long percentil(double porcentaje) {
+        long registros = getCuenta();
+        if (registros == 0) {
+            return 0;
+        }
+        long objetivo = Math.max(1, (long) Math.ceil(registros * porcentaje / 100.0));
+        long acumulado = 0;
+        for (int i = 0; i < cuentas.length(); i++) {
+            acumulado += cuentas.get(i);
+            if (acumulado >= objetivo) {
+                return Math.min(maximoDeCubeta(i), getMaximo());
+            }
+        }
+        return getMaximo();
+    }
+
+    public long getCuenta() {
+        return total.sum();
+    }
+
+    public long getMaximo() {
+        return maximo.get();
+    }
+
+    /**
+     * Suma de todos los valores registrados
+     */
+    public long getSuma() {
+        return suma.sum();
+    }
+
+    public double getMedia() {
+        long registros = getCuenta();
+        return registros == 0 ? 0 : (double) suma.sum() / registros;
+    }
+
+    /**
+     * Suma a este histograma los registros de otro
+     */
+    public void sumar(Histograma otro) {
+        for (int i = 0; i < cuentas.length(); i++) {
+            long cuenta = otro.cuentas.get(i);
+            if (cuenta > 0) {
+                cuentas.addAndGet(i, cuenta);
+            }
+        }
+        total.add(otro.total.sum());
+        suma.add(otro.suma.sum());
+        maximo.accumulateAndGet(otro.getMaximo(), Math::max);
+    }
+
+    /**
+     * Vacía el histograma (para medir por intervalos). Los registros que
+     * lleguen mientras tanto pueden quedar en uno u otro intervalo.
+     */
+    public void reiniciar() {
+        for (int i = 0; i < cuentas.length(); i++) {
+            cuentas.set(i, 0);
+        }
+        total.reset();
+        suma.reset();
+        maximo.set(0);
+    }
+
+    private static int indice(long valor) {
+        if (valor < SUBCUBETAS) {
+            return (int) valor;
+        }
+        int exponente = 63 - Long.numberOfLeadingZeros(valor);
+        int desplazamiento = exponente - BITS_SUBCUBETA;
+        int mantisa = (int) (valor >>> desplazamiento) - SUBCUBETAS;
+        return (desplazamiento + 1) * SUBCUBETAS + mantisa;
+    }
+
+    /**
+     * Mayor valor que cae en la cubeta
+     */
+    private static long maximoDeCubeta(int indice) {
+        int cubeta = indice / SUBCUBETAS;
+        int subcubeta = indice % SUBCUBETAS;
+        if (cubeta == 0) {
+            return subcubeta;
+        }
+        long inicio = (long) (SUBCUBETAS + subcubeta) << (cubeta - 1);
+        return inicio + (1L << (cubeta - 1)) - 1;
+    }
+}
@@ -0,0 +1,156 @@
+package socket.conconexion.servidor;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Identidad de un participante, separada de la conexión que lo atiende: el
+ * ID de sesión que le entrega el servidor (SESION) y el numero de la última
+ * petición de propuesta aplicada. Al reanudar (REANUDAR:&lt;id&gt;) la conexión
+ * nueva adopta esta misma identidad, así que conserva su lugar en la
+ * subasta y una propuesta reenviada tras reconectar no se aplica dos veces.
+ * El ID solo se genera si el cliente lo pide; las propuestas se numeran
+ * igual aunque no lo pida.
+ * <p>
+ * Quien presenta el ID toma el lugar del participante, así que fuera de la
+ * memoria (diario, instantáneas, replicación) solo se guarda su huella
+ * SHA-256. Una identidad recuperada de ahí no conoce su ID hasta que el
+ * participante lo presenta al reanudar.
+ * @author Sistema de Subasta
+ */
+public final class IdentidadSesion {
+    private static final SecureRandom ALEATORIO = new SecureRandom();
+    private static final int BYTES_ID = 16;
+
+    private volatile String id;
+    private volatile String huella;
+    private final AtomicLong ultimaPeticion;
+
+    // Conexión que la atiende y desde cuándo está sin conexión (0 = conectada)
+    private volatile SesionSubasta conexion;
+    private volatile long desconectadaDesde = 0;
+
+    public IdentidadSesion() {
+        this(null, 0);
+    }
+
+    /**
+     * Identidad recuperada del diario: solo se conoce la huella de su ID
+     * (null si el postor no pidió ID)
+     */
+    IdentidadSesion(String huella, long ultimaPeticion) {
+        this.huella = huella;
+        this.ultimaPeticion = new AtomicLong(ultimaPeticion);
+    }
+
+    /**
+     * Las peticiones de una sesión son crecientes: un numero que no supera
+     * al último aplicado es un reenvío y no se vuelve a aplicar. Las
+     * propuestas sin numero (0) siempre se aplican.
+     * @return true si esa petición ya se aplicó
+     */
+    public boolean peticionAplicada(long peticion) {
+        return peticion > 0 && peticion <= ultimaPeticion.get();
+    }
+
+    /**
+     * Anota la petición de una propuesta aplicada. Solo cuando se aplicó:
+     * una rechazada (límite, monto inválido, subasta cerrada) se puede
+     * reintentar con el mismo numero.
+     */
+    public void registrarPeticion(long peticion) {
+        if (peticion > 0) {
+            ultimaPeticion.accumulateAndGet(peticion, Math::max);
+        }
+    }
+
+    /**
+     * Numero de la última petición aplicada (0 si ninguna)
+     */
+    public long getUltimaPeticion() {
+        return ultimaPeticion.get();
+    }
+
+    /**
+     * ID de sesión, o null si el cliente no lo ha pedido (o si la identidad
+     * se recuperó del diario y aún no se ha reanudado)
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Huella SHA-256 del ID, la que se guarda en el diario y se replica;
+     * null si la sesión no tiene ID
+     */
+    public String getHuella() {
+        return huella;
+    }
+
+    /**
+     * Huella SHA-256 de un ID de sesión, en hexadecimal
+     */
+    static String huella(String id) {
+        try {
+            byte[] resumen = MessageDigest.getInstance("SHA-256").digest(id.getBytes(StandardCharsets.UTF_8));
+            return hexadecimal(resumen);
+        } catch (NoSuchAlgorithmException e) {
+            // Toda JVM trae SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Genera el ID la primera vez; es aleatorio porque quien lo presenta
+     * toma el lugar del participante
+     */
+    synchronized String asignarId() {
+        if (id == null) {
+            byte[] bytes = new byte[BYTES_ID];
+            ALEATORIO.nextBytes(bytes);
+            id = hexadecimal(bytes);
+            huella = huella(id);
+        }
+        return id;
+    }
+
+    /**
+     * El participante presentó el ID de esta identidad al reanudar (ya se
+     * comprobó que su huella coincide); una recuperada del diario vuelve
+     * a conocerlo
+     */
+    synchronized void confirmarId(String id) {
+        if (this.id == null) {
+            this.id = id;
+        }
+    }
+
+    private static String hexadecimal(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16))
+              .append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    SesionSubasta getConexion() {
+        return conexion;
+    }
+
+    void conectar(SesionSubasta conexion) {
+        this.conexion = conexion;
+        this.desconectadaDesde = 0;
+    }
+
+    void desconectar(long ahora) {
+        this.desconectadaDesde = ahora;
+    }
+
+    long getDesconectadaDesde() {
+        return desconectadaDesde;
+    }
+}
@@ -0,0 +1,168 @@
+package socket.conconexion.servidor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Instantánea binaria del estado de las subastas abiertas: plazo, último
+ * numero de secuencia y la mejor propuesta de cada postor (con ella se
+ * reconstruyen el líder, el ranking y los participantes). Sustituye a los
+ * segmentos del diario anteriores a "segmentoInicial", de modo que el
+ * arranque depende del tamaño del estado y no de la historia completa.
+ * Se escribe en un archivo temporal, se hace fsync y se renombra.
+ * <pre>
+ * archivo   = magico:int version:int longitud:int crc32:int datos
+ * datos     = segmentoInicial:long ultimoNumero:int subastas:int subasta*
+ * subasta   = id:long numero:int tiempoInicio:long duracion:long
+ *             ultimaSecuencia:long postores:int postor*
+ * postor    = secuencia:long monto:long longitudIp:short ip(UTF-8)
+ *             longitudSesion:short huellaSesion(UTF-8) peticion:long
+ * </pre>
+ * La versión 1, sin sesión ni petición, se sigue leyendo.
+ * @author Sistema de Subasta
+ */
+class InstantaneaSubastas {
+    private static final int MAGICO = 0x53554249; // "SUBI"
+    private static final int VERSION = 2;
+    private static final int CABECERA = 16;
+
+    // Primer segmento del diario que hay que releer tras cargarla
+    final long segmentoInicial;
+    // Mayor numero de sesión asignado al tomarla
+    final int ultimoNumero;
+    final List<DiarioSubastas.SubastaRecuperada> subastas;
+
+    InstantaneaSubastas(long segmentoInicial, int ultimoNumero,
+                        List<DiarioSubastas.SubastaRecuperada> subastas) {
+        this.segmentoInicial = segmentoInicial;
+        this.ultimoNumero = ultimoNumero;
+        this.subastas = subastas;
+    }
+
+    /**
+     * Escribe la instantánea de forma atómica sobre el archivo indicado
+     */
+    void escribir(Path archivo) throws IOException {
+        int tamanio = 8 + 4 + 4;
+        List<byte[][]> ipsPorSubasta = new ArrayList<>(subastas.size());
+        List<byte[][]> sesionesPorSubasta = new ArrayList<>(subastas.size());
+        for (DiarioSubastas.SubastaRecuperada subasta : subastas) {
+            byte[][] ips = new byte[subasta.numeroPropuestas][];
+            byte[][] sesiones = new byte[subasta.numeroPropuestas][];
+            tamanio += 8 + 4 + 8 + 8 + 8 + 4;
+            for (int i = 0; i < subasta.numeroPropuestas; i++) {
+                ips[i] = subasta.ips[i].getBytes(StandardCharsets.UTF_8);
+                sesiones[i] = subasta.sesiones[i] == null ? new byte[0]
+                    : subasta.sesiones[i].getBytes(StandardCharsets.UTF_8);
+                tamanio += 8 + 8 + 2 + ips[i].length + 2 + sesiones[i].length + 8;
+            }
+            ipsPorSubasta.add(ips);
+            sesionesPorSubasta.add(sesiones);
+        }
+
+        ByteBuffer datos = ByteBuffer.allocate(tamanio);
+        datos.putLong(segmentoInicial).putInt(ultimoNumero).putInt(subastas.size());
+        for (int s = 0; s < subastas.size(); s++) {
+            DiarioSubastas.SubastaRecuperada subasta = subastas.get(s);
+            byte[][] ips = ipsPorSubasta.get(s);
+            byte[][] sesiones = sesionesPorSubasta.get(s);
+            datos.putLong(subasta.id).putInt(subasta.numero)
+                 .putLong(subasta.tiempoInicio).putLong(subasta.duracion)
+                 .putLong(subasta.ultimaSecuencia).putInt(subasta.numeroPropuestas);
+            for (int i = 0; i < subasta.numeroPropuestas; i++) {
+                datos.putLong(subasta.secuencias[i]).putLong(subasta.montos[i])
+                     .putShort((short) ips[i].length).put(ips[i])
+                     .putShort((short) sesiones[i].length).put(sesiones[i])
+                     .putLong(subasta.peticiones[i]);
+            }
+        }
+        datos.flip();
+
+        CRC32 crc = new CRC32();
+        crc.update(datos.array());
+        ByteBuffer cabecera = ByteBuffer.allocate(CABECERA);
+        cabecera.putInt(MAGICO).putInt(VERSION).putInt(tamanio).putInt((int) crc.getValue());
+        cabecera.flip();
+
+        Path temporal = archivo.resolveSibling(archivo.getFileName() + ".tmp");
+        try (FileChannel canal = FileChannel.open(temporal, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (cabecera.hasRemaining()) {
+                canal.write(cabecera);
+            }
+            while (datos.hasRemaining()) {
+                canal.write(datos);
+            }
+            canal.force(true);
+        }
+        Files.move(temporal, archivo, StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Lee una instantánea, o devuelve null si no existe.
+     * Una instantánea dañada es un error: los segmentos que cubría ya no están.
+     */
+    static InstantaneaSubastas leer(Path archivo) throws IOException {
+        if (!Files.exists(archivo)) {
+            return null;
+        }
+        ByteBuffer contenido = ByteBuffer.wrap(Files.readAllBytes(archivo));
+        if (contenido.remaining() < CABECERA || contenido.getInt() != MAGICO) {
+            throw new IOException("Instantanea no reconocida: " + archivo);
+        }
+        int version = contenido.getInt();
+        if (version != 1 && version != VERSION) {
+            throw new IOException("Version de instantanea no soportada: " + version);
+        }
+        int longitud = contenido.getInt();
+        int crcEsperado = contenido.getInt();
+        if (longitud != contenido.remaining()) {
+            throw new IOException("Instantanea incompleta: " + archivo);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(contenido.array(), CABECERA, longitud);
+        if ((int) crc.getValue() != crcEsperado) {
+            throw new IOException("Instantanea dañada: " + archivo);
+        }
+
+        long segmentoInicial = contenido.getLong();
+        int ultimoNumero = contenido.getInt();
+        int numeroSubastas = contenido.getInt();
+        List<DiarioSubastas.SubastaRecuperada> subastas = new ArrayList<>(numeroSubastas);
+        for (int s = 0; s < numeroSubastas; s++) {
+            DiarioSubastas.SubastaRecuperada subasta = new DiarioSubastas.SubastaRecuperada(
+                contenido.getLong(), contenido.getInt(), contenido.getLong(), contenido.getLong());
+            long ultimaSecuencia = contenido.getLong();
+            int postores = contenido.getInt();
+            for (int i = 0; i < postores; i++) {
+                long secuencia = contenido.getLong();
+                long monto = contenido.getLong();
+                byte[] ip = new byte[contenido.getShort()];
+                contenido.get(ip);
+                String sesion = null;
+                long peticion = 0;
+                if (version >= 2) {
+                    byte[] bytesSesion = new byte[contenido.getShort()];
+                    contenido.get(bytesSesion);
+                    sesion = bytesSesion.length == 0 ? null : new String(bytesSesion, StandardCharsets.UTF_8);
+                    peticion = contenido.getLong();
+                }
+                subasta.agregarPropuesta(secuencia, monto, new String(ip, StandardCharsets.UTF_8),
+                                         sesion, peticion);
+            }
+            subasta.ultimaSecuencia = Math.max(subasta.ultimaSecuencia, ultimaSecuencia);
+            subastas.add(subasta);
+        }
+        return new InstantaneaSubastas(segmentoInicial, ultimoNumero, subastas);
+    }
+}
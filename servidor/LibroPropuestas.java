@@ -0,0 +1,165 @@
+package socket.conconexion.servidor;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Libro de propuestas de una subasta: guarda el historial completo en orden
+ * de llegada (en arreglos de primitivos) y mantiene incrementalmente el
+ * ranking de postores por su mejor propuesta. El ganador y la posición de
+ * un postor se obtienen en O(log n) sin recorrer a los participantes; los
+ * empates los gana la propuesta con menor numero de secuencia del servidor.
+ * @author Sistema de Subasta
+ */
+public class LibroPropuestas {
+    private static final int CAPACIDAD_INICIAL = 64;
+
+    // Historial en orden de llegada: montos (centavos), secuencias y postor
+    private long[] montos = new long[CAPACIDAD_INICIAL];
+    private long[] secuencias = new long[CAPACIDAD_INICIAL];
+    private int[] postoresHistorial = new int[CAPACIDAD_INICIAL];
+    private int numeroPropuestas = 0;
+
+    // Postores: indice denso por sesión y su nodo en el ranking
+    private final Map<SesionSubasta, Integer> indicePostor = new IdentityHashMap<>();
+    private SesionSubasta[] postores = new SesionSubasta[CAPACIDAD_INICIAL];
+    private RankingPropuestas.Nodo[] nodos = new RankingPropuestas.Nodo[CAPACIDAD_INICIAL];
+    private final RankingPropuestas ranking = new RankingPropuestas();
+
+    // Visitante del ranking con el postor y su mejor monto
+    interface VisitantePostor {
+        void visitar(int posicion, SesionSubasta postor, long monto);
+    }
+
+    /**
+     * Registra una propuesta aceptada y actualiza el ranking si es la mejor
+     * del postor.
+     * @return posición del postor en el ranking tras la propuesta (1 = primero)
+     */
+    public synchronized int registrar(SesionSubasta postor, long monto, long secuencia) {
+        int indice = indiceDe(postor);
+
+        if (numeroPropuestas == montos.length) {
+            int capacidad = montos.length * 2;
+            montos = Arrays.copyOf(montos, capacidad);
+            secuencias = Arrays.copyOf(secuencias, capacidad);
+            postoresHistorial = Arrays.copyOf(postoresHistorial, capacidad);
+        }
+        montos[numeroPropuestas] = monto;
+        secuencias[numeroPropuestas] = secuencia;
+        postoresHistorial[numeroPropuestas] = indice;
+        numeroPropuestas++;
+
+        RankingPropuestas.Nodo nodo = nodos[indice];
+        if (nodo == null) {
+            nodo = ranking.crearNodo(indice);
+            nodos[indice] = nodo;
+            ranking.insertar(nodo, monto, secuencia);
+        } else if (RankingPropuestas.comparar(monto, secuencia, nodo.monto, nodo.secuencia) < 0) {
+            ranking.eliminar(nodo);
+            ranking.insertar(nodo, monto, secuencia);
+        }
+
+        return ranking.posicion(nodo);
+    }
+
+    private int indiceDe(SesionSubasta postor) {
+        Integer indice = indicePostor.get(postor);
+        if (indice != null) {
+            return indice;
+        }
+
+        int nuevo = indicePostor.size();
+        if (nuevo == postores.length) {
+            postores = Arrays.copyOf(postores, nuevo * 2);
+            nodos = Arrays.copyOf(nodos, nuevo * 2);
+        }
+        postores[nuevo] = postor;
+        indicePostor.put(postor, nuevo);
+        return nuevo;
+    }
+
+    /**
+     * La conexión nueva de un participante que reanudó su sesión ocupa el
+     * lugar de la anterior, con su historial y su posición
+     */
+    public synchronized void reemplazar(SesionSubasta anterior, SesionSubasta nueva) {
+        Integer indice = indicePostor.remove(anterior);
+        if (indice != null) {
+            indicePostor.put(nueva, indice);
+            postores[indice] = nueva;
+        }
+    }
+
+    /**
+     * Postor con la mejor propuesta, o null si no hubo propuestas
+     */
+    public synchronized SesionSubasta getGanador() {
+        RankingPropuestas.Nodo primero = ranking.primero();
+        return primero == null ? null : postores[primero.postor];
+    }
+
+    /**
+     * Monto de la mejor propuesta en centavos (0 si no hubo propuestas)
+     */
+    public synchronized long getMontoGanador() {
+        RankingPropuestas.Nodo primero = ranking.primero();
+        return primero == null ? 0 : primero.monto;
+    }
+
+    /**
+     * Posición del postor en el ranking (1 = primero, 0 si no ha ofertado)
+     */
+    public synchronized int getPosicion(SesionSubasta postor) {
+        Integer indice = indicePostor.get(postor);
+        return indice == null ? 0 : ranking.posicion(nodos[indice]);
+    }
+
+    /**
+     * Escribe los k primeros postores como "&lt;ip&gt;=&lt;monto&gt;" separados por comas
+     */
+    public synchronized StringBuilder escribirRanking(StringBuilder sb, int k) {
+        recorrerRanking(k, (posicion, postor, monto) -> {
+            if (posicion > 1) {
+                sb.append(',');
+            }
+            sb.append(postor.getIpCliente()).append('=');
+            Monto.formatear(sb, monto);
+        });
+        return sb;
+    }
+
+    /**
+     * Recorre los k primeros postores en orden
+     * @return cuantos se visitaron
+     */
+    public synchronized int recorrerRanking(int k, VisitantePostor visitante) {
+        int[] visitados = new int[1];
+        ranking.recorrer(k, (posicion, nodo) -> {
+            visitante.visitar(posicion, postores[nodo.postor], nodo.monto);
+            visitados[0] = posicion;
+        });
+        return visitados[0];
+    }
+
+    /**
+     * Copia la mejor propuesta de cada postor (para una instantánea)
+     */
+    public synchronized void exportar(DiarioSubastas.SubastaRecuperada destino) {
+        ranking.recorrer(Integer.MAX_VALUE, (posicion, nodo) -> {
+            SesionSubasta postor = postores[nodo.postor];
+            IdentidadSesion identidad = postor.getIdentidad();
+            destino.agregarPropuesta(nodo.secuencia, nodo.monto, postor.getIpCliente(),
+                                     identidad.getHuella(), identidad.getUltimaPeticion());
+        });
+    }
+
+    public synchronized int getNumeroPropuestas() {
+        return numeroPropuestas;
+    }
+
+    public synchronized int getNumeroPostores() {
+        return ranking.tamanio();
+    }
+}
@@ -0,0 +1,178 @@
+package socket.conconexion.servidor;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limita el ritmo de propuestas con cubos de tokens: uno por sesión y otro
+ * por IP de origen (compartido por todas las conexiones de esa IP). Se
+ * consulta antes de que la propuesta llegue a la subasta, de modo que una
+ * propuesta rechazada no numera, no toca el líder ni el libro, no va al
+ * diario y no se imprime. Los rechazos se cuentan y se resumen en el log
+ * cada INTERVALO_RESUMEN_MS.
+ * @author Sistema de Subasta
+ */
+public class LimitadorPropuestas {
+    private static final long INTERVALO_RESUMEN_MS = 10000;
+    private static final long INTERVALO_LIMPIEZA_MS = 60000;
+
+    /**
+     * Cubo de tokens: se rellena a "porSegundo" tokens por segundo hasta
+     * "rafaga"; cada propuesta gasta uno
+     */
+    public static final class CuboTokens {
+        private final double rafaga;
+        private final double porNano;
+        private double tokens;
+        private long ultimaRecarga;
+
+        CuboTokens(double porSegundo, double rafaga) {
+            this.rafaga = rafaga;
+            this.porNano = porSegundo / 1e9;
+            this.tokens = rafaga;
+            this.ultimaRecarga = System.nanoTime();
+        }
+
+        synchronized boolean tomar(long ahora) {
+            recargar(ahora);
+            if (tokens < 1) {
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        }
+
+        synchronized void devolver() {
+            tokens = Math.min(rafaga, tokens + 1);
+        }
+
+        /**
+         * Milisegundos hasta que haya un token
+         */
+        synchronized long getEsperaMs(long ahora) {
+            recargar(ahora);
+            return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / porNano / 1e6);
+        }
+
+        synchronized boolean estaLleno(long ahora) {
+            recargar(ahora);
+            return tokens >= rafaga;
+        }
+
+        private void recargar(long ahora) {
+            tokens = Math.min(rafaga, tokens + (ahora - ultimaRecarga) * porNano);
+            ultimaRecarga = ahora;
+        }
+    }
+
+    private volatile double porSegundoSesion = 5;
+    private volatile double rafagaSesion = 10;
+    private volatile double porSegundoIp = 100;
+    private volatile double rafagaIp = 200;
+
+    private final ConcurrentHashMap<String, CuboTokens> cubosIp = new ConcurrentHashMap<>();
+
+    // Contadores desde el arranque
+    private final LongAdder admitidas = new LongAdder();
+    private final LongAdder rechazadasSesion = new LongAdder();
+    private final LongAdder rechazadasIp = new LongAdder();
+    private final AtomicLong rechazadasResumidas = new AtomicLong();
+
+    /**
+     * Ritmo (propuestas por segundo) y ráfaga de cada cubo; un ritmo 0
+     * desactiva ese límite
+     */
+    public void configurar(double porSegundoSesion, double rafagaSesion,
+                           double porSegundoIp, double rafagaIp) {
+        this.porSegundoSesion = porSegundoSesion;
+        this.rafagaSesion = Math.max(1, rafagaSesion);
+        this.porSegundoIp = porSegundoIp;
+        this.rafagaIp = Math.max(1, rafagaIp);
+    }
+
+    /**
+     * Programa el resumen de rechazos y la limpieza de los cubos de IP
+     * que ya se rellenaron (IPs sin actividad reciente)
+     */
+    public void iniciar() {
+        RuedaTemporizadores rueda = RuedaTemporizadores.compartida();
+        rueda.programarPeriodica(this::resumir, INTERVALO_RESUMEN_MS, INTERVALO_RESUMEN_MS);
+        rueda.programarPeriodica(() -> {
+            long ahora = System.nanoTime();
+            cubosIp.values().removeIf(cubo -> cubo.estaLleno(ahora));
+        }, INTERVALO_LIMPIEZA_MS, INTERVALO_LIMPIEZA_MS);
+    }
+
+    /**
+     * Gasta un token de la sesión y otro de su IP.
+     * @return 0 si la propuesta se admite, o los milisegundos que el
+     *         participante debería esperar antes de reintentar
+     */
+    public long admitir(SesionSubasta sesion) {
+        long ahora = System.nanoTime();
+
+        CuboTokens cuboSesion = null;
+        if (porSegundoSesion > 0) {
+            cuboSesion = sesion.getCuboPropuestas();
+            if (cuboSesion == null) {
+                // Cada sesión procesa sus mensajes en un solo hilo
+                cuboSesion = new CuboTokens(porSegundoSesion, rafagaSesion);
+                sesion.setCuboPropuestas(cuboSesion);
+            }
+            if (!cuboSesion.tomar(ahora)) {
+                rechazadasSesion.increment();
+                return Math.max(1, cuboSesion.getEsperaMs(ahora));
+            }
+        }
+
+        if (porSegundoIp > 0) {
+            CuboTokens cuboIp = cubosIp.computeIfAbsent(sesion.getIpCliente(),
+                ip -> new CuboTokens(porSegundoIp, rafagaIp));
+            if (!cuboIp.tomar(ahora)) {
+                if (cuboSesion != null) {
+                    cuboSesion.devolver();
+                }
+                rechazadasIp.increment();
+                return Math.max(1, cuboIp.getEsperaMs(ahora));
+            }
+        }
+
+        admitidas.increment();
+        return 0;
+    }
+
+    private void resumir() {
+        long rechazadas = getRechazadas();
+        long nuevas = rechazadas - rechazadasResumidas.getAndSet(rechazadas);
+        if (nuevas > 0) {
+            Bitacora.info("LIMITE", nuevas + " propuestas rechazadas en " +
+                                  (INTERVALO_RESUMEN_MS / 1000) + " s (total: sesion " +
+                                  rechazadasSesion.sum() + ", ip " + rechazadasIp.sum() +
+                                  "; admitidas " + admitidas.sum() + ")");
+        }
+    }
+
+    public long getAdmitidas() {
+        return admitidas.sum();
+    }
+
+    public long getRechazadasSesion() {
+        return rechazadasSesion.sum();
+    }
+
+    public long getRechazadasIp() {
+        return rechazadasIp.sum();
+    }
+
+    public long getRechazadas() {
+        return rechazadasSesion.sum() + rechazadasIp.sum();
+    }
+
+    /**
+     * IPs con un cubo activo
+     */
+    public int getIpsActivas() {
+        return cubosIp.size();
+    }
+}
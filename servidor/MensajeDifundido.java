@@ -0,0 +1,92 @@
+package socket.conconexion.servidor;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Mensaje de broadcast codificado una sola vez para todos los destinatarios:
+ * la linea de texto y la trama binaria se construyen al crearlo y cada
+ * sesión escribe esos mismos bytes en su conexión, cada una con su propia
+ * posición. Las sesiones NIO los reciben como buffers de solo lectura; las
+ * bloqueantes, como vistas con el arreglo accesible para que MiSocketStream
+ * lo escriba sin copiarlo.
+ * @author Sistema de Subasta
+ */
+public final class MensajeDifundido {
+    // Latidos de la conexión: siempre los mismos bytes
+    static final MensajeDifundido PING = simple(ProtocoloBinario.PING);
+    static final MensajeDifundido PONG = simple(ProtocoloBinario.PONG);
+
+    private final byte[] texto;
+    private final byte[] trama;
+    private final ByteBuffer textoSoloLectura;
+    private final ByteBuffer tramaSoloLectura;
+
+    private MensajeDifundido(ByteBuffer lineaEscrita, ByteBuffer tramaEscrita) {
+        this.texto = Arrays.copyOf(lineaEscrita.array(), lineaEscrita.position());
+        this.trama = Arrays.copyOf(tramaEscrita.array(), tramaEscrita.position());
+        this.textoSoloLectura = ByteBuffer.wrap(texto).asReadOnlyBuffer();
+        this.tramaSoloLectura = ByteBuffer.wrap(trama).asReadOnlyBuffer();
+    }
+
+    /**
+     * UPDATE con el líder actual
+     */
+    static MensajeDifundido actualizacion(long idSubasta, PropuestaLider lider, long tiempoRestante) {
+        ByteBuffer trama = ByteBuffer.allocate(ProtocoloBinario.LONGITUD_NOTIFICACION);
+        ProtocoloBinario.escribirActualizacion(trama, idSubasta, lider, tiempoRestante);
+        ByteBuffer linea = ByteBuffer.allocate(ProtocoloTexto.LONGITUD_NOTIFICACION);
+        ProtocoloTexto.escribirActualizacion(linea, lider.getIp(), lider.getMonto(),
+                                             tiempoRestante, lider.getSecuencia());
+        return new MensajeDifundido(linea, trama);
+    }
+
+    /**
+     * LATIDO del broadcast por eventos
+     */
+    static MensajeDifundido latido(long idSubasta, long secuencia, long tiempoRestante) {
+        ByteBuffer trama = ByteBuffer.allocate(ProtocoloBinario.LONGITUD_NOTIFICACION);
+        ProtocoloBinario.escribirLatido(trama, idSubasta, secuencia, tiempoRestante);
+        ByteBuffer linea = ByteBuffer.allocate(ProtocoloTexto.LONGITUD_NOTIFICACION);
+        ProtocoloTexto.escribirLatido(linea, secuencia, tiempoRestante);
+        return new MensajeDifundido(linea, trama);
+    }
+
+    /**
+     * GANADOR al finalizar la subasta; hay uno para el ganador y otro para
+     * el resto de participantes
+     */
+    static MensajeDifundido ganador(long idSubasta, String ipGanador, long montoGanador,
+                                    boolean paraGanador) {
+        ByteBuffer trama = ByteBuffer.allocate(ProtocoloBinario.LONGITUD_NOTIFICACION);
+        ProtocoloBinario.escribirGanador(trama, idSubasta, ipGanador, montoGanador, paraGanador);
+        ByteBuffer linea = ByteBuffer.allocate(ProtocoloTexto.LONGITUD_NOTIFICACION);
+        ProtocoloTexto.escribirGanador(linea, ipGanador, montoGanador, paraGanador);
+        return new MensajeDifundido(linea, trama);
+    }
+
+    private static MensajeDifundido simple(byte tipo) {
+        ByteBuffer trama = ByteBuffer.allocate(ProtocoloBinario.PREFIJO + ProtocoloBinario.CUERPO_FIJO);
+        ProtocoloBinario.escribirSimple(trama, tipo);
+        ByteBuffer linea = ByteBuffer.allocate(8);
+        ProtocoloTexto.escribirSimple(linea, tipo);
+        return new MensajeDifundido(linea, trama);
+    }
+
+    /**
+     * Vista de solo lectura con posición propia para un canal; comparte
+     * los bytes con el resto de destinatarios
+     */
+    ByteBuffer paraCanal(boolean binario) {
+        return (binario ? tramaSoloLectura : textoSoloLectura).duplicate();
+    }
+
+    /**
+     * Vista con posición propia sobre los mismos bytes, con el arreglo
+     * accesible para escribirlo tal cual en un OutputStream. Quien la
+     * recibe solo la lee.
+     */
+    ByteBuffer paraFlujo(boolean binario) {
+        return ByteBuffer.wrap(binario ? trama : texto);
+    }
+}
@@ -0,0 +1,381 @@
+package socket.conconexion.servidor;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Métricas del servidor: contadores (LongAdder, sin contención entre
+ * hilos) e histogramas de latencia con precisión relativa fija. Registrar
+ * un valor no toma cerrojos ni crea objetos, así que se puede hacer en la
+ * ruta de cada propuesta. Se publican por JMX (MetricasServidorMBean) y,
+ * con --metricas-puerto, como texto en http://127.0.0.1:puerto/metricas
+ * en el formato de exposición de Prometheus.
+ * @author Sistema de Subasta
+ */
+public class MetricasServidor implements MetricasServidorMBean {
+    public static final String NOMBRE_JMX = "socket.conconexion:type=MetricasServidor";
+    // Las propuestas de los últimos segundos de una subasta se miden aparte
+    static final long SEGUNDOS_FINALES = 10;
+    private static final long INTERVALO_RITMO_MS = 1000;
+
+    private final RegistroSubastas registro;
+
+    // Sesiones
+    private final AtomicInteger sesionesActivas = new AtomicInteger();
+    private final LongAdder sesionesTotales = new LongAdder();
+    private final LongAdder desconexionesPorLentitud = new LongAdder();
+    private final LongAdder sesionesReanudadas = new LongAdder();
+    private final LongAdder desconexionesPorInactividad = new LongAdder();
+
+    // Propuestas
+    private final LongAdder propuestasAceptadas = new LongAdder();
+    private final LongAdder propuestasInvalidas = new LongAdder();
+    private final LongAdder propuestasLimitadas = new LongAdder();
+    private final LongAdder propuestasRepetidas = new LongAdder();
+    private final Histograma latenciaPropuesta = new Histograma();       // microsegundos
+    private final Histograma latenciaPropuestaFinal = new Histograma();  // microsegundos
+
+    // Broadcast
+    private final LongAdder difusiones = new LongAdder();
+    private final LongAdder mensajesDifundidos = new LongAdder();
+    private final Histograma duracionDifusion = new Histograma();        // microsegundos
+    private final Histograma colaSalida = new Histograma();              // mensajes
+
+    // Propuestas por segundo de cada subasta: {total en la muestra anterior, ritmo}
+    private final Map<Subasta, long[]> ritmos = new ConcurrentHashMap<>();
+    private volatile long propuestasPorSegundo = 0;
+
+    MetricasServidor(RegistroSubastas registro) {
+        this.registro = registro;
+    }
+
+    /**
+     * Registra el MBean, programa el cálculo del ritmo de propuestas y, si
+     * el puerto no es 0, abre el endpoint HTTP local
+     */
+    public void publicar(int puertoHttp) throws IOException {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(NOMBRE_JMX));
+        } catch (JMException e) {
+            Bitacora.aviso("METRICAS", "No se pudo registrar el MBean: " + e.getMessage());
+        }
+
+        RuedaTemporizadores.compartida().programarPeriodica(
+            this::muestrearRitmos, INTERVALO_RITMO_MS, INTERVALO_RITMO_MS);
+
+        if (puertoHttp > 0) {
+            HttpServer http = HttpServer.create(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), puertoHttp), 0);
+            http.createContext("/metricas", this::atenderHttp);
+            http.start();
+            Bitacora.info("METRICAS", "http://127.0.0.1:" + puertoHttp + "/metricas");
+        }
+    }
+
+    private void atenderHttp(HttpExchange intercambio) throws IOException {
+        byte[] cuerpo = getTexto().getBytes(StandardCharsets.UTF_8);
+        intercambio.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        intercambio.sendResponseHeaders(200, cuerpo.length);
+        try (OutputStream salida = intercambio.getResponseBody()) {
+            salida.write(cuerpo);
+        }
+    }
+
+    /**
+     * Cada segundo: propuestas aceptadas desde la muestra anterior en cada
+     * subasta abierta (las cerradas dejan de contar)
+     */
+    private void muestrearRitmos() {
+        long total = 0;
+        for (Subasta subasta : registro.getSubastas()) {
+            long propuestas = subasta.getPropuestasRecibidas();
+            long[] muestra = ritmos.computeIfAbsent(subasta, s -> new long[] {propuestas, 0});
+            muestra[1] = propuestas - muestra[0];
+            muestra[0] = propuestas;
+            total += muestra[1];
+        }
+        ritmos.keySet().removeIf(subasta -> !subasta.estaActiva());
+        propuestasPorSegundo = total;
+    }
+
+    // Registro desde el servidor
+
+    void sesionAbierta() {
+        sesionesActivas.incrementAndGet();
+        sesionesTotales.increment();
+    }
+
+    void sesionCerrada() {
+        sesionesActivas.decrementAndGet();
+    }
+
+    void desconexionPorLentitud() {
+        desconexionesPorLentitud.increment();
+    }
+
+    void sesionReanudada() {
+        sesionesReanudadas.increment();
+    }
+
+    void desconexionPorInactividad() {
+        desconexionesPorInactividad.increment();
+    }
+
+    /**
+     * Propuesta atendida por la subasta; "inicio" es el nanoTime en que la
+     * sesión la entregó al servidor
+     */
+    void propuestaAtendida(Subasta subasta, long inicio, boolean aceptada) {
+        long micros = (System.nanoTime() - inicio) / 1000;
+        latenciaPropuesta.registrar(micros);
+        if (subasta.estaActiva() && subasta.getTiempoRestante() < SEGUNDOS_FINALES) {
+            latenciaPropuestaFinal.registrar(micros);
+        }
+        if (aceptada) {
+            propuestasAceptadas.increment();
+        } else {
+            propuestasInvalidas.increment();
+        }
+    }
+
+    void propuestaLimitada() {
+        propuestasLimitadas.increment();
+    }
+
+    /**
+     * Propuesta reenviada que ya se había aplicado; se respondió sin aplicarla
+     */
+    void propuestaRepetida() {
+        propuestasRepetidas.increment();
+    }
+
+    /**
+     * Un broadcast encolado en todos los participantes de una subasta
+     */
+    void difusion(long inicio, int destinatarios, int colaMaxima) {
+        difusiones.increment();
+        mensajesDifundidos.add(destinatarios);
+        duracionDifusion.registrar((System.nanoTime() - inicio) / 1000);
+        colaSalida.registrar(colaMaxima);
+    }
+
+    // MBean
+
+    @Override
+    public int getSesionesActivas() {
+        return sesionesActivas.get();
+    }
+
+    @Override
+    public long getSesionesTotales() {
+        return sesionesTotales.sum();
+    }
+
+    @Override
+    public long getDesconexionesPorLentitud() {
+        return desconexionesPorLentitud.sum();
+    }
+
+    @Override
+    public long getDesconexionesPorInactividad() {
+        return desconexionesPorInactividad.sum();
+    }
+
+    @Override
+    public long getSesionesReanudadas() {
+        return sesionesReanudadas.sum();
+    }
+
+    @Override
+    public long getBitacoraDescartadas() {
+        return Bitacora.getDescartadas();
+    }
+
+    @Override
+    public int getSubastasAbiertas() {
+        return registro.getNumeroSubastas();
+    }
+
+    @Override
+    public long getPropuestasAceptadas() {
+        return propuestasAceptadas.sum();
+    }
+
+    @Override
+    public long getPropuestasInvalidas() {
+        return propuestasInvalidas.sum();
+    }
+
+    @Override
+    public long getPropuestasLimitadas() {
+        return propuestasLimitadas.sum();
+    }
+
+    @Override
+    public long getPropuestasRepetidas() {
+        return propuestasRepetidas.sum();
+    }
+
+    @Override
+    public long getPropuestasPorSegundo() {
+        return propuestasPorSegundo;
+    }
+
+    @Override
+    public long getLatenciaPropuestaP50Us() {
+        return latenciaPropuesta.percentil(50);
+    }
+
+    @Override
+    public long getLatenciaPropuestaP99Us() {
+        return latenciaPropuesta.percentil(99);
+    }
+
+    @Override
+    public long getLatenciaPropuestaP999Us() {
+        return latenciaPropuesta.percentil(99.9);
+    }
+
+    @Override
+    public long getLatenciaPropuestaMaxUs() {
+        return latenciaPropuesta.getMaximo();
+    }
+
+    @Override
+    public long getLatenciaPropuestaFinalP99Us() {
+        return latenciaPropuestaFinal.percentil(99);
+    }
+
+    @Override
+    public long getDifusiones() {
+        return difusiones.sum();
+    }
+
+    @Override
+    public long getDifusionP50Us() {
+        return duracionDifusion.percentil(50);
+    }
+
+    @Override
+    public long getDifusionP99Us() {
+        return duracionDifusion.percentil(99);
+    }
+
+    @Override
+    public long getDifusionMaxUs() {
+        return duracionDifusion.getMaximo();
+    }
+
+    @Override
+    public long getColaSalidaP99() {
+        return colaSalida.percentil(99);
+    }
+
+    @Override
+    public long getColaSalidaMax() {
+        return colaSalida.getMaximo();
+    }
+
+    @Override
+    public void reiniciarHistogramas() {
+        latenciaPropuesta.reiniciar();
+        latenciaPropuestaFinal.reiniciar();
+        duracionDifusion.reiniciar();
+        colaSalida.reiniciar();
+    }
+
+    @Override
+    public String getTexto() {
+        StringBuilder sb = new StringBuilder(4096);
+        valor(sb, "subasta_sesiones_activas", "gauge", "Sesiones conectadas", sesionesActivas.get());
+        valor(sb, "subasta_sesiones_total", "counter", "Sesiones aceptadas desde el arranque",
+              sesionesTotales.sum());
+        valor(sb, "subasta_desconexiones_lentitud_total", "counter",
+              "Clientes desconectados por desbordar su cola de salida", desconexionesPorLentitud.sum());
+        valor(sb, "subasta_desconexiones_inactividad_total", "counter",
+              "Clientes desconectados por no enviar nada (ni el PONG) en el plazo de inactividad",
+              desconexionesPorInactividad.sum());
+        valor(sb, "subasta_sesiones_reanudadas_total", "counter",
+              "Conexiones que reanudaron una sesión anterior (REANUDAR)", sesionesReanudadas.sum());
+        valor(sb, "subasta_sesiones_reanudables", "gauge",
+              "Sesiones con ID conectadas o dentro del plazo para reanudar",
+              registro.getSesiones().getNumero());
+        valor(sb, "subasta_bitacora_descartadas_total", "counter",
+              "Entradas de la bitácora descartadas por tener el anillo lleno", Bitacora.getDescartadas());
+        valor(sb, "subasta_subastas_abiertas", "gauge", "Subastas abiertas", registro.getNumeroSubastas());
+
+        sb.append("# HELP subasta_propuestas_total Propuestas atendidas por resultado\n");
+        sb.append("# TYPE subasta_propuestas_total counter\n");
+        sb.append("subasta_propuestas_total{resultado=\"aceptada\"} ").append(propuestasAceptadas.sum()).append('\n');
+        sb.append("subasta_propuestas_total{resultado=\"invalida\"} ").append(propuestasInvalidas.sum()).append('\n');
+        sb.append("subasta_propuestas_total{resultado=\"limite\"} ").append(propuestasLimitadas.sum()).append('\n');
+        sb.append("subasta_propuestas_total{resultado=\"repetida\"} ").append(propuestasRepetidas.sum()).append('\n');
+        valor(sb, "subasta_propuestas_por_segundo", "gauge",
+              "Propuestas aceptadas en el último segundo", propuestasPorSegundo);
+
+        resumen(sb, "subasta_latencia_propuesta_us",
+                "Microsegundos desde que la sesión entrega la propuesta hasta que la respuesta está lista",
+                latenciaPropuesta);
+        resumen(sb, "subasta_latencia_propuesta_final_us",
+                "Igual, solo en los últimos " + SEGUNDOS_FINALES + " segundos de cada subasta",
+                latenciaPropuestaFinal);
+
+        valor(sb, "subasta_difusiones_total", "counter", "Broadcasts (UPDATE o LATIDO) enviados",
+              difusiones.sum());
+        valor(sb, "subasta_mensajes_difundidos_total", "counter", "Mensajes encolados por los broadcasts",
+              mensajesDifundidos.sum());
+        resumen(sb, "subasta_difusion_us", "Microsegundos en encolar un broadcast a todos los participantes",
+                duracionDifusion);
+        resumen(sb, "subasta_cola_salida", "Cola de salida más profunda de la subasta en cada broadcast",
+                colaSalida);
+
+        sb.append("# HELP subasta_por_id Estado de cada subasta abierta\n");
+        sb.append("# TYPE subasta_por_id gauge\n");
+        for (Subasta subasta : registro.getSubastas()) {
+            String id = "{subasta=\"" + subasta.getId() + "\"";
+            long[] muestra = ritmos.get(subasta);
+            sb.append("subasta_por_id").append(id).append(",dato=\"participantes\"} ")
+              .append(subasta.getNumeroParticipantes()).append('\n');
+            sb.append("subasta_por_id").append(id).append(",dato=\"propuestas\"} ")
+              .append(subasta.getPropuestasRecibidas()).append('\n');
+            sb.append("subasta_por_id").append(id).append(",dato=\"propuestas_por_segundo\"} ")
+              .append(muestra == null ? 0 : muestra[1]).append('\n');
+            sb.append("subasta_por_id").append(id).append(",dato=\"tiempo_restante_seg\"} ")
+              .append(subasta.getTiempoRestante()).append('\n');
+            sb.append("subasta_por_id").append(id).append(",dato=\"cola_salida_max\"} ")
+              .append(subasta.getColaSalidaMaxima()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static void valor(StringBuilder sb, String nombre, String tipo, String ayuda, long valor) {
+        sb.append("# HELP ").append(nombre).append(' ').append(ayuda).append('\n');
+        sb.append("# TYPE ").append(nombre).append(' ').append(tipo).append('\n');
+        sb.append(nombre).append(' ').append(valor).append('\n');
+    }
+
+    private static void resumen(StringBuilder sb, String nombre, String ayuda, Histograma histograma) {
+        sb.append("# HELP ").append(nombre).append(' ').append(ayuda).append('\n');
+        sb.append("# TYPE ").append(nombre).append(" summary\n");
+        for (String cuantil : new String[] {"0.5", "0.9", "0.99", "0.999", "1"}) {
+            long valor = cuantil.equals("1") ? histograma.getMaximo()
+                                             : histograma.percentil(Double.parseDouble(cuantil) * 100);
+            sb.append(nombre).append("{quantile=\"").append(cuantil).append("\"} ").append(valor).append('\n');
+        }
+        sb.append(nombre).append("_sum ").append(histograma.getSuma()).append('\n');
+        sb.append(nombre).append("_count ").append(histograma.getCuenta()).append('\n');
+    }
+}
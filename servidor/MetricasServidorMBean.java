@@ -0,0 +1,85 @@
+package socket.conconexion.servidor;
+
+/**
+ * Vista JMX de las métricas del servidor (MBean estándar). Las latencias
+ * están en microsegundos y se acumulan desde el arranque o desde el
+ * último reiniciarHistogramas().
+ * @author Sistema de Subasta
+ */
+public interface MetricasServidorMBean {
+
+    // Sesiones
+    int getSesionesActivas();
+
+    long getSesionesTotales();
+
+    long getDesconexionesPorLentitud();
+
+    /**
+     * Conexiones cerradas por no recibir nada en --inactividad-seg
+     */
+    long getDesconexionesPorInactividad();
+
+    /**
+     * Conexiones que continuaron una sesión anterior con REANUDAR
+     */
+    long getSesionesReanudadas();
+
+    /**
+     * Entradas de la bitácora perdidas por tener el anillo lleno
+     */
+    long getBitacoraDescartadas();
+
+    // Subastas y propuestas
+    int getSubastasAbiertas();
+
+    long getPropuestasAceptadas();
+
+    long getPropuestasInvalidas();
+
+    long getPropuestasLimitadas();
+
+    /**
+     * Propuestas reenviadas tras reconectar que ya se habían aplicado
+     */
+    long getPropuestasRepetidas();
+
+    /**
+     * Propuestas aceptadas en el último segundo, sumando todas las subastas
+     */
+    long getPropuestasPorSegundo();
+
+    // Latencia propuesta -> respuesta
+    long getLatenciaPropuestaP50Us();
+
+    long getLatenciaPropuestaP99Us();
+
+    long getLatenciaPropuestaP999Us();
+
+    long getLatenciaPropuestaMaxUs();
+
+    /**
+     * p99 de las propuestas que llegaron en los últimos segundos de su subasta
+     */
+    long getLatenciaPropuestaFinalP99Us();
+
+    // Broadcast
+    long getDifusiones();
+
+    long getDifusionP50Us();
+
+    long getDifusionP99Us();
+
+    long getDifusionMaxUs();
+
+    long getColaSalidaP99();
+
+    long getColaSalidaMax();
+
+    /**
+     * Todas las métricas en el formato de texto del endpoint HTTP
+     */
+    String getTexto();
+
+    void reiniciarHistogramas();
+}
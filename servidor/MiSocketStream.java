@@ -2,6 +2,9 @@ package socket.conconexion.servidor;
 
 import java.net.*;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 /**
  *    Una clase de envoltura de Socket que contiene 
@@ -10,8 +13,21 @@ import java.io.*;
  */
 public class MiSocketStream extends Socket {
 	private Socket socket;
-    private BufferedReader entrada;
     private PrintWriter salida;
+    // Flujo crudo para las tramas del protocolo binario y las lineas ya codificadas
+    private OutputStream salidaBinaria;
+    private byte[] copia;
+    // Entrada con buffer propio: las lineas y las tramas salen del mismo
+    // buffer, así que no se pierden bytes al cambiar de protocolo.
+    // recibeMensaje admite lineas de hasta 1 MB (respuestas largas como
+    // SUBASTAS o RANKING); recibeLinea, lo que quepa en su destino.
+    private static final int LONGITUD_MAXIMA_LINEA = 1 << 20;
+    private InputStream entradaCruda;
+    private final byte[] bufferEntrada = new byte[8192];
+    private int inicioEntrada = 0;
+    private int finEntrada = 0;
+    private byte[] linea = new byte[256];
+    private final byte[] prefijoTrama = new byte[2];
 
    public MiSocketStream(String maquinaAceptadora, int puertoAceptador ) 
     		throws SocketException, IOException{
@@ -25,15 +41,15 @@ public class MiSocketStream extends Socket {
     }
 
     private void establecerFlujos( ) throws IOException{
-    	// obtiene un flujo de salida para leer del socket de datos
-    	InputStream flujoEntrada = socket.getInputStream();
-    	entrada = new BufferedReader(new InputStreamReader(flujoEntrada));
+    	// obtiene un flujo de entrada para leer del socket de datos
+    	entradaCruda = socket.getInputStream();
     	OutputStream flujoSalida = socket.getOutputStream();
     	// crea un objeto PrintWriter para salida en modo caracter
     	salida = new PrintWriter(new OutputStreamWriter(flujoSalida));
+    	salidaBinaria = flujoSalida;
     }
 
-    public void enviaMensaje(String mensaje) throws IOException {
+    public synchronized void enviaMensaje(String mensaje) throws IOException {
     	salida.println(mensaje);
     	// La subsiguiente llamada al método flush es necesaria para que
     	// los datos se escriban en el flujo de datos del socket antes
@@ -43,8 +59,154 @@ public class MiSocketStream extends Socket {
 
     public String recibeMensaje( ) throws IOException {
     	// lee una línea del flujo de datos
-    	String mensaje = entrada.readLine( );
-    	return mensaje;
+    	int longitud = leerLinea(LONGITUD_MAXIMA_LINEA);
+    	if (longitud < 0) {
+    		return null;
+    	}
+    	return new String(linea, 0, longitud, StandardCharsets.UTF_8);
     } // fin de recibeMensaje
 
+    /**
+     * Lee la siguiente linea, sin el fin de linea, en "destino"
+     * (reutilizable) y la deja lista para decodificar; no crea objetos.
+     * Una linea que no cabe en "destino" se rechaza en cuanto lo supera,
+     * sin acumularla: el servidor lee con un destino del tamaño máximo de
+     * una petición.
+     * @return false si el otro extremo cerró la conexión
+     */
+    public boolean recibeLinea(ByteBuffer destino) throws IOException {
+    	int longitud = leerLinea(destino.capacity());
+    	if (longitud < 0) {
+    		return false;
+    	}
+    	destino.clear();
+    	destino.put(linea, 0, longitud).flip();
+    	return true;
+    } // fin de recibeLinea
+
+    /**
+     * Copia la siguiente linea en "linea" (sin '\n' ni el '\r' previo)
+     * @param maximo longitud máxima de la linea, contando el '\r'
+     * @return su longitud, o -1 si la conexión se cerró antes
+     */
+    private int leerLinea(int maximo) throws IOException {
+    	int longitud = 0;
+    	while (true) {
+    		if (inicioEntrada == finEntrada && !llenarEntrada()) {
+    			return longitud > 0 ? longitud : -1;
+    		}
+    		int fin = inicioEntrada;
+    		while (fin < finEntrada && bufferEntrada[fin] != '\n') {
+    			fin++;
+    		}
+    		int tramo = fin - inicioEntrada;
+    		if (longitud + tramo > maximo) {
+    			throw new IOException("Linea demasiado larga: mas de " + maximo + " bytes");
+    		}
+    		if (longitud + tramo > linea.length) {
+    			linea = Arrays.copyOf(linea, Math.max(linea.length * 2, longitud + tramo));
+    		}
+    		System.arraycopy(bufferEntrada, inicioEntrada, linea, longitud, tramo);
+    		longitud += tramo;
+    		if (fin < finEntrada) {
+    			inicioEntrada = fin + 1;
+    			return (longitud > 0 && linea[longitud - 1] == '\r') ? longitud - 1 : longitud;
+    		}
+    		inicioEntrada = finEntrada;
+    	}
+    } // fin de leerLinea
+
+    private boolean llenarEntrada( ) throws IOException {
+    	int leidos = entradaCruda.read(bufferEntrada, 0, bufferEntrada.length);
+    	if (leidos <= 0) {
+    		return false;
+    	}
+    	inicioEntrada = 0;
+    	finEntrada = leidos;
+    	return true;
+    } // fin de llenarEntrada
+
+    /**
+     * Copia exactamente "cantidad" bytes de la entrada
+     * @return false si la conexión se cerró antes
+     */
+    private boolean leerCompleto(byte[] destino, int desde, int cantidad) throws IOException {
+    	while (cantidad > 0) {
+    		if (inicioEntrada == finEntrada && !llenarEntrada()) {
+    			return false;
+    		}
+    		int tramo = Math.min(cantidad, finEntrada - inicioEntrada);
+    		System.arraycopy(bufferEntrada, inicioEntrada, destino, desde, tramo);
+    		inicioEntrada += tramo;
+    		desde += tramo;
+    		cantidad -= tramo;
+    	}
+    	return true;
+    } // fin de leerCompleto
+
+    /**
+     * Envía bytes ya codificados (una linea con su fin o una trama) sin
+     * volver a codificarlos. Si el buffer deja ver su arreglo (también los
+     * broadcasts, vía MensajeDifundido.paraFlujo) se escribe directamente;
+     * uno de solo lectura o directo se copia por tramos a un arreglo propio.
+     */
+    public synchronized void enviaBuffer(ByteBuffer datos) throws IOException {
+    	if (datos.hasArray()) {
+    		salidaBinaria.write(datos.array(), datos.arrayOffset() + datos.position(),
+    		                    datos.remaining());
+    		datos.position(datos.limit());
+    	} else {
+    		if (copia == null) {
+    			copia = new byte[8192];
+    		}
+    		while (datos.hasRemaining()) {
+    			int tramo = Math.min(datos.remaining(), copia.length);
+    			datos.get(copia, 0, tramo);
+    			salidaBinaria.write(copia, 0, tramo);
+    		}
+    	}
+    	salidaBinaria.flush();
+    } // fin de enviaBuffer
+
+    /**
+     * Envía una o varias tramas ya codificadas (de position a limit)
+     */
+    public synchronized void enviaTrama(ByteBuffer tramas) throws IOException {
+    	salidaBinaria.write(tramas.array(), tramas.arrayOffset() + tramas.position(),
+    	                    tramas.remaining());
+    	salidaBinaria.flush();
+    	tramas.position(tramas.limit());
+    } // fin de enviaTrama
+
+    /**
+     * Lee el cuerpo de la siguiente trama en "cuerpo" (reutilizable) y lo
+     * deja listo para decodificar.
+     * @return false si el otro extremo cerró la conexión
+     */
+    public boolean recibeTrama(ByteBuffer cuerpo) throws IOException {
+    	if (!leerCompleto(prefijoTrama, 0, 2)) {
+    		return false;
+    	}
+    	int longitud = ((prefijoTrama[0] & 0xFF) << 8) | (prefijoTrama[1] & 0xFF);
+    	if (longitud > cuerpo.capacity()) {
+    		throw new IOException("Trama demasiado larga: " + longitud);
+    	}
+    	cuerpo.clear();
+    	if (!leerCompleto(cuerpo.array(), cuerpo.arrayOffset(), longitud)) {
+    		throw new EOFException("Trama incompleta");
+    	}
+    	cuerpo.limit(longitud);
+    	return true;
+    } // fin de recibeTrama
+
+    /**
+     * Cierra el socket de datos envuelto (el heredado de Socket nunca se
+     * conecta); desbloquea las lecturas y escrituras pendientes
+     */
+    @Override
+    public void close() throws IOException {
+    	socket.close();
+    	super.close();
+    } // fin de close
+
 } //fin de class
\ No newline at end of file
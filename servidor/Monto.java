@@ -0,0 +1,106 @@
+package socket.conconexion.servidor;
+
+/**
+ * Montos de dinero en punto fijo: se guardan como long en centavos para
+ * comparar propuestas de forma exacta y sin objetos en el camino caliente.
+ * En el protocolo de texto se escriben con dos decimales ("150.25").
+ * @author Sistema de Subasta
+ */
+public final class Monto {
+    public static final int CENTAVOS_POR_UNIDAD = 100;
+
+    // Limite para que unidades * 100 + centavos no desborde un long
+    private static final long MAXIMO_UNIDADES = Long.MAX_VALUE / CENTAVOS_POR_UNIDAD - 1;
+
+    private Monto() {
+    }
+
+    /**
+     * Convierte un texto como "150", "150.5" o " 150.25 " a centavos sin
+     * crear objetos intermedios. Admite como maximo dos decimales.
+     * @throws NumberFormatException si el texto no es un monto valido
+     */
+    public static long parsear(CharSequence texto) {
+        int inicio = 0;
+        int fin = texto.length();
+        while (inicio < fin && texto.charAt(inicio) <= ' ') {
+            inicio++;
+        }
+        while (fin > inicio && texto.charAt(fin - 1) <= ' ') {
+            fin--;
+        }
+        return parsear(texto, inicio, fin);
+    }
+
+    /**
+     * Igual que parsear(texto) sobre texto[inicio, fin), sin espacios
+     */
+    public static long parsear(CharSequence texto, int inicio, int fin) {
+        boolean negativo = false;
+        if (inicio < fin && (texto.charAt(inicio) == '-' || texto.charAt(inicio) == '+')) {
+            negativo = texto.charAt(inicio) == '-';
+            inicio++;
+        }
+
+        long unidades = 0;
+        long centavos = 0;
+        int digitosEnteros = 0;
+        int decimales = -1; // -1 mientras no aparezca el punto
+
+        for (int i = inicio; i < fin; i++) {
+            char c = texto.charAt(i);
+            if (c == '.' && decimales < 0) {
+                decimales = 0;
+            } else if (c >= '0' && c <= '9') {
+                if (decimales < 0) {
+                    unidades = unidades * 10 + (c - '0');
+                    digitosEnteros++;
+                    if (unidades > MAXIMO_UNIDADES) {
+                        throw new NumberFormatException("Monto demasiado grande");
+                    }
+                } else if (decimales < 2) {
+                    centavos = centavos * 10 + (c - '0');
+                    decimales++;
+                } else if (c != '0') {
+                    // Se admiten ceros de relleno ("150.500") pero no fracciones de centavo
+                    throw new NumberFormatException("Maximo dos decimales");
+                }
+            } else {
+                throw new NumberFormatException("Monto invalido");
+            }
+        }
+
+        if (digitosEnteros == 0 && decimales <= 0) {
+            throw new NumberFormatException("Monto invalido");
+        }
+        if (decimales == 1) {
+            centavos *= 10;
+        }
+
+        long total = unidades * CENTAVOS_POR_UNIDAD + centavos;
+        return negativo ? -total : total;
+    }
+
+    /**
+     * Escribe el monto con dos decimales al final del StringBuilder
+     */
+    public static StringBuilder formatear(StringBuilder sb, long centavos) {
+        if (centavos < 0) {
+            sb.append('-');
+            centavos = -centavos;
+        }
+        long resto = centavos % CENTAVOS_POR_UNIDAD;
+        sb.append(centavos / CENTAVOS_POR_UNIDAD).append('.');
+        if (resto < 10) {
+            sb.append('0');
+        }
+        return sb.append(resto);
+    }
+
+    /**
+     * Texto con dos decimales, por ejemplo 15025 -> "150.25"
+     */
+    public static String formatear(long centavos) {
+        return formatear(new StringBuilder(24), centavos).toString();
+    }
+}
@@ -0,0 +1,192 @@
+package socket.conconexion.servidor;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Motor de red basado en java.nio para el servidor de subasta.
+ * Un hilo aceptador reparte las conexiones entre un numero fijo de bucles
+ * de eventos; cada bucle atiende a todos sus clientes con un unico Selector,
+ * separa las lineas recibidas y las despacha a la misma logica de subasta
+ * que usa el motor bloqueante.
+ * @author Sistema de Subasta
+ */
+public class MotorNioSubasta {
+    private static final int TAMANIO_BUFFER_LECTURA = 16 * 1024;
+
+    private final int puerto;
+    private final BucleEventos[] bucles;
+    private final AtomicInteger siguienteBucle = new AtomicInteger();
+    private ServerSocketChannel canalServidor;
+
+    public MotorNioSubasta(int puerto, int numeroBucles) throws IOException {
+        this.puerto = puerto;
+        this.bucles = new BucleEventos[numeroBucles];
+        for (int i = 0; i < numeroBucles; i++) {
+            bucles[i] = new BucleEventos("nio-bucle-" + i);
+        }
+    }
+
+    /**
+     * Abre el puerto y arranca los bucles de eventos y el hilo aceptador
+     */
+    public void iniciar() throws IOException {
+        canalServidor = ServerSocketChannel.open();
+        canalServidor.bind(new InetSocketAddress(puerto), 1024);
+
+        for (BucleEventos bucle : bucles) {
+            bucle.iniciar();
+        }
+
+        Thread hiloAceptador = new Thread(this::aceptarConexiones, "nio-aceptador");
+        hiloAceptador.start();
+
+        Bitacora.info("NIO", bucles.length + " bucles de eventos en puerto " + puerto);
+    }
+
+    /**
+     * Acepta conexiones (bloqueante) y las asigna por turnos a los bucles
+     */
+    private void aceptarConexiones() {
+        while (canalServidor.isOpen()) {
+            try {
+                SocketChannel canal = canalServidor.accept();
+                canal.configureBlocking(false);
+                canal.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+                String ipCliente = ((InetSocketAddress) canal.getRemoteAddress())
+                    .getAddress().getHostAddress();
+                Bitacora.info("NUEVO CLIENTE", "Conectado: " + ipCliente);
+                ServidorSubasta.getRegistro().getMetricas().sesionAbierta();
+
+                BucleEventos bucle = bucles[Math.floorMod(siguienteBucle.getAndIncrement(), bucles.length)];
+                SesionNio sesion = new SesionNio(canal, bucle, ipCliente,
+                    ServidorSubasta.getRegistro().crearColaSalida());
+                ServidorSubasta.getRegistro().getVigilante().registrar(sesion);
+
+                // La sesión elige su subasta con el primer mensaje
+                bucle.registrar(sesion);
+
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (IOException e) {
+                Bitacora.error("ERROR", "Aceptando conexion: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Detiene el aceptador y los bucles de eventos
+     */
+    public void detener() throws IOException {
+        canalServidor.close();
+        for (BucleEventos bucle : bucles) {
+            bucle.detener();
+        }
+    }
+
+    /**
+     * Bucle de eventos: un hilo, un Selector y una cola de tareas que otros
+     * hilos usan para registrar canales o pedir que se vacíe una cola de salida.
+     */
+    static class BucleEventos implements Runnable {
+        private final Selector selector;
+        private final Thread hilo;
+        private final Queue<Runnable> tareas = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean despertado = new AtomicBoolean(false);
+        // Buffer de lectura compartido por todas las sesiones del bucle
+        private final ByteBuffer lectura = ByteBuffer.allocateDirect(TAMANIO_BUFFER_LECTURA);
+        private volatile boolean activo = true;
+
+        BucleEventos(String nombre) throws IOException {
+            this.selector = Selector.open();
+            this.hilo = new Thread(this, nombre);
+        }
+
+        void iniciar() {
+            hilo.start();
+        }
+
+        void detener() {
+            activo = false;
+            selector.wakeup();
+        }
+
+        /**
+         * Encola una tarea para ejecutarla en el hilo del bucle
+         */
+        void ejecutar(Runnable tarea) {
+            tareas.add(tarea);
+            // Un solo wakeup por vuelta del selector aunque lleguen muchas tareas
+            if (Thread.currentThread() != hilo && despertado.compareAndSet(false, true)) {
+                selector.wakeup();
+            }
+        }
+
+        void registrar(SesionNio sesion) {
+            ejecutar(() -> {
+                try {
+                    sesion.setClave(sesion.getCanal().register(selector, SelectionKey.OP_READ, sesion));
+                } catch (IOException e) {
+                    sesion.cerrarCanal();
+                }
+            });
+        }
+
+        @Override
+        public void run() {
+            while (activo) {
+                try {
+                    selector.select();
+                    despertado.set(false);
+                    ejecutarTareas();
+
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey clave = it.next();
+                        it.remove();
+
+                        SesionNio sesion = (SesionNio) clave.attachment();
+                        if (clave.isValid() && clave.isReadable()) {
+                            sesion.leer(lectura);
+                        }
+                        if (clave.isValid() && clave.isWritable()) {
+                            sesion.escribirPendiente();
+                        }
+                    }
+
+                    // Respuestas encoladas por este mismo hilo al procesar lecturas
+                    ejecutarTareas();
+                } catch (IOException e) {
+                    Bitacora.error("ERROR", "Bucle " + hilo.getName() + ": " + e.getMessage());
+                } catch (RuntimeException e) {
+                    Bitacora.error("ERROR", "Bucle " + hilo.getName() + ": " + e, e);
+                }
+            }
+
+            try {
+                for (SelectionKey clave : selector.keys()) {
+                    clave.channel().close();
+                }
+                selector.close();
+            } catch (IOException e) {
+                Bitacora.error("ERROR", "Cerrando selector: " + e.getMessage());
+            }
+        }
+
+        private void ejecutarTareas() {
+            Runnable tarea;
+            while ((tarea = tareas.poll()) != null) {
+                tarea.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package socket.conconexion.servidor;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+/**
+ * Pertenencia de un ServidorSubasta a un cluster: al arrancar se anuncia
+ * en el puerto de administración del enrutador (--cluster, CLUSTER:ALTA) y
+ * sigue reintentando en segundo plano hasta que lo acepte. Al recibir
+ * CLUSTER:SALIR el nodo deja de abrir subastas, avisa al enrutador
+ * (CLUSTER:BAJA) para que las nuevas vayan a otro nodo, espera a que
+ * cierren las abiertas y termina el proceso. Así ninguna subasta en curso
+ * se corta al sacar un nodo.
+ * <p>
+ * Con el alta el nodo da al enrutador una clave aleatoria que solo ellos
+ * dos conocen; CLUSTER:SALIR solo se acepta con esa clave. La IP de origen
+ * no sirve: las conexiones que reenvía el enrutador llegan todas desde la
+ * suya, y puede estar en la misma máquina.
+ * @author Sistema de Subasta
+ */
+final class NodoCluster {
+    private static final long REINTENTO_MS = 2000;
+    private static final long ESPERA_DRENADO_MS = 1000;
+
+    private static volatile NodoCluster actual;
+
+    private final String enrutadorHost;
+    private final int enrutadorPuerto;
+    private final String anunciada;
+    private final long drenadoMs;
+    private final RegistroSubastas registro;
+    private final String clave = nuevaClave();
+    private volatile boolean saliendo = false;
+
+    private NodoCluster(String enrutador, String anunciada, long drenadoMs, RegistroSubastas registro) {
+        int separador = enrutador.lastIndexOf(':');
+        if (separador <= 0) {
+            throw new IllegalArgumentException("--cluster debe ser host:puerto");
+        }
+        this.enrutadorHost = enrutador.substring(0, separador);
+        this.enrutadorPuerto = Integer.parseInt(enrutador.substring(separador + 1));
+        this.anunciada = anunciada;
+        this.drenadoMs = drenadoMs;
+        this.registro = registro;
+    }
+
+    /**
+     * Anuncia el nodo al enrutador; no bloquea si el enrutador aún no está
+     */
+    static void unirse(ConfiguracionServidor config, RegistroSubastas registro) {
+        NodoCluster nodo = new NodoCluster(config.getCluster(), config.getAnunciar(),
+                                           config.getDrenadoSeg() * 1000, registro);
+        actual = nodo;
+        Thread alta = new Thread(nodo::anunciar, "cluster-alta");
+        alta.setDaemon(true);
+        alta.start();
+    }
+
+    /**
+     * Empieza la salida ordenada del nodo (CLUSTER:SALIR:&lt;clave&gt;, que
+     * envía el enrutador)
+     * @return la respuesta para quien lo pidió
+     */
+    static String salir(String clave) {
+        NodoCluster nodo = actual;
+        if (nodo == null) {
+            return "ERROR:El servidor no forma parte de un cluster";
+        }
+        if (!claveValida(clave)) {
+            return "ERROR:Clave de cluster invalida";
+        }
+        synchronized (nodo) {
+            if (!nodo.saliendo) {
+                nodo.saliendo = true;
+                Thread salida = new Thread(nodo::drenar, "cluster-salida");
+                salida.start();
+            }
+        }
+        return "OK:SALIR:" + nodo.registro.getNumeroSubastas();
+    }
+
+    /**
+     * ¿Es la clave que este nodo dio al enrutador en su alta? Sin cluster
+     * no hay clave válida.
+     */
+    static boolean claveValida(String clave) {
+        NodoCluster nodo = actual;
+        return nodo != null && MessageDigest.isEqual(nodo.clave.getBytes(StandardCharsets.UTF_8),
+                                                     clave.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String nuevaClave() {
+        byte[] bytes = new byte[16];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder sb = new StringBuilder(32);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private void anunciar() {
+        boolean avisado = false;
+        while (!saliendo) {
+            try {
+                String respuesta = enviar("CLUSTER:ALTA:" + anunciada + ":CLAVE:" + clave);
+                if (respuesta != null && respuesta.startsWith("OK:")) {
+                    Bitacora.info("CLUSTER", "Nodo " + anunciada + " dado de alta en " +
+                                  enrutadorHost + ":" + enrutadorPuerto);
+                    return;
+                }
+                throw new IOException(String.valueOf(respuesta));
+            } catch (IOException e) {
+                if (!avisado) {
+                    Bitacora.aviso("CLUSTER", "Enrutador " + enrutadorHost + ":" + enrutadorPuerto +
+                                   " no disponible (" + e.getMessage() + "); se reintenta cada " +
+                                   REINTENTO_MS + " ms");
+                    avisado = true;
+                }
+            }
+            try {
+                Thread.sleep(REINTENTO_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Deja de abrir subastas, se da de baja y espera a que cierren las
+     * abiertas (o a que venza el plazo de drenado) antes de salir
+     */
+    private void drenar() {
+        registro.drenar();
+        try {
+            Bitacora.info("CLUSTER", "Baja en el enrutador: " + enviar("CLUSTER:BAJA:" + anunciada));
+        } catch (IOException e) {
+            Bitacora.aviso("CLUSTER", "No se pudo avisar de la baja al enrutador: " + e.getMessage());
+        }
+
+        long limite = System.currentTimeMillis() + drenadoMs;
+        int abiertas;
+        while ((abiertas = registro.getNumeroSubastas()) > 0 && System.currentTimeMillis() < limite) {
+            Bitacora.info("CLUSTER", "Drenando: " + abiertas + " subastas abiertas " + registro.getIds());
+            try {
+                Thread.sleep(ESPERA_DRENADO_MS);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        if (abiertas > 0) {
+            Bitacora.aviso("CLUSTER", "Plazo de drenado vencido con " + abiertas +
+                           " subastas abiertas: " + registro.getIds());
+        } else {
+            Bitacora.info("CLUSTER", "Nodo " + anunciada + " sin subastas abiertas; saliendo");
+        }
+        System.exit(0);
+    }
+
+    private String enviar(String orden) throws IOException {
+        MiSocketStream enrutador = new MiSocketStream(enrutadorHost, enrutadorPuerto);
+        try {
+            enrutador.enviaMensaje(orden);
+            return enrutador.recibeMensaje();
+        } finally {
+            enrutador.close();
+        }
+    }
+}
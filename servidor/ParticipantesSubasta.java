@@ -0,0 +1,57 @@
+package socket.conconexion.servidor;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Participantes conectados a una subasta, indexados por su identidad de
+ * sesión. Añadir y retirar son O(1) y no copian nada, así que la llegada de
+ * miles de postores al abrir la subasta no se encarece con cada uno; una
+ * conexión perdida se retira enseguida en vez de seguir recibiendo
+ * broadcasts hasta el final.
+ * Los broadcasts recorren el mapa sin copiarlo: el recorrido no falla si
+ * alguien entra o sale a la vez y ve a cada participante como mucho una vez.
+ * Al reanudar una sesión su conexión nueva ocupa la misma entrada.
+ * @author Sistema de Subasta
+ */
+final class ParticipantesSubasta implements Iterable<SesionSubasta> {
+    // La identidad se compara por referencia: el ID de sesión es opcional
+    private final ConcurrentMap<IdentidadSesion, SesionSubasta> conexiones = new ConcurrentHashMap<>();
+
+    /**
+     * Añade la conexión; si su identidad ya estaba (sesión reanudada),
+     * sustituye a la conexión anterior
+     */
+    void agregar(SesionSubasta sesion) {
+        conexiones.put(sesion.getIdentidad(), sesion);
+    }
+
+    /**
+     * Retira la conexión si sigue representando al participante; la de una
+     * sesión ya reanudada en otra conexión no retira a la nueva
+     */
+    void retirar(SesionSubasta sesion) {
+        conexiones.remove(sesion.getIdentidad(), sesion);
+    }
+
+    void vaciar() {
+        conexiones.clear();
+    }
+
+    boolean estaVacio() {
+        return conexiones.isEmpty();
+    }
+
+    int getNumero() {
+        return conexiones.size();
+    }
+
+    /**
+     * Recorrido sin copia, débilmente consistente
+     */
+    @Override
+    public Iterator<SesionSubasta> iterator() {
+        return conexiones.values().iterator();
+    }
+}
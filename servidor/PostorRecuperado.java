@@ -0,0 +1,87 @@
+package socket.conconexion.servidor;
+
+/**
+ * Postor reconstruido desde el diario o una instantánea al reiniciar el
+ * servidor. Conserva su IP, su última propuesta y su ID de sesión (si lo
+ * tenía) para el ranking, el ganador y para que el participante pueda
+ * reanudar, pero no tiene conexión: los envíos se descartan.
+ * @author Sistema de Subasta
+ */
+class PostorRecuperado implements SesionSubasta {
+    private final String ipCliente;
+    private volatile long propuesta;
+    private volatile Subasta subasta;
+    private volatile IdentidadSesion identidad;
+
+    PostorRecuperado(String ip, IdentidadSesion identidad) {
+        this.ipCliente = ip;
+        this.identidad = identidad;
+    }
+
+    @Override
+    public void notificarInicioSubasta(long idSubasta, long tiempoRestante) {
+    }
+
+    @Override
+    public void enviarActualizacion(MensajeDifundido mensaje) {
+    }
+
+    @Override
+    public void enviarResultado(MensajeDifundido resultado) {
+    }
+
+    @Override
+    public void cerrarConexion() {
+    }
+
+    // Getters
+    @Override
+    public int getProfundidadSalida() {
+        return 0;
+    }
+
+    @Override
+    public long getPropuesta() {
+        return propuesta;
+    }
+
+    @Override
+    public void setPropuesta(long propuesta) {
+        this.propuesta = propuesta;
+    }
+
+    @Override
+    public Subasta getSubasta() {
+        return subasta;
+    }
+
+    @Override
+    public void setSubasta(Subasta subasta) {
+        this.subasta = subasta;
+    }
+
+    // No envía propuestas nuevas: no necesita cubo de tokens
+    @Override
+    public LimitadorPropuestas.CuboTokens getCuboPropuestas() {
+        return null;
+    }
+
+    @Override
+    public void setCuboPropuestas(LimitadorPropuestas.CuboTokens cubo) {
+    }
+
+    @Override
+    public IdentidadSesion getIdentidad() {
+        return identidad;
+    }
+
+    @Override
+    public void setIdentidad(IdentidadSesion identidad) {
+        this.identidad = identidad;
+    }
+
+    @Override
+    public String getIpCliente() {
+        return ipCliente;
+    }
+}
@@ -0,0 +1,73 @@
+package socket.conconexion.servidor;
+
+/**
+ * Instantánea inmutable de la propuesta más alta de una subasta.
+ * Se publica con compareAndSet en un AtomicReference, así que los lectores
+ * nunca se bloquean y siempre ven monto, IP y texto del protocolo coherentes.
+ * @author Sistema de Subasta
+ */
+public final class PropuestaLider {
+    // Estado inicial de toda subasta: sin propuestas
+    public static final PropuestaLider NINGUNA = new PropuestaLider(0, "ninguno", 0, 0);
+
+    // Monto en centavos (ver Monto)
+    private final long monto;
+    private final String ip;
+    private final long secuencia;
+    // Numero de secuencia del servidor de la propuesta líder (desempate)
+    private final long secuenciaPropuesta;
+    // Forma "PROPUESTA_ALTA:<ip>:<monto>" ya construida para el protocolo
+    private final String textoProtocolo;
+
+    private PropuestaLider(long monto, String ip, long secuencia, long secuenciaPropuesta) {
+        this.monto = monto;
+        this.ip = ip;
+        this.secuencia = secuencia;
+        this.secuenciaPropuesta = secuenciaPropuesta;
+        this.textoProtocolo = Monto.formatear(
+            new StringBuilder(40).append("PROPUESTA_ALTA:").append(ip).append(':'), monto).toString();
+    }
+
+    /**
+     * Instantánea que sucede a esta con un nuevo líder
+     */
+    PropuestaLider siguiente(long nuevoMonto, String nuevaIp, long nuevaSecuenciaPropuesta) {
+        return new PropuestaLider(nuevoMonto, nuevaIp, secuencia + 1, nuevaSecuenciaPropuesta);
+    }
+
+    /**
+     * Indica si la propuesta (monto, secuenciaPropuesta) desplaza a este
+     * líder, con el mismo orden que el ranking del LibroPropuestas
+     */
+    boolean superadaPor(long otroMonto, long otraSecuenciaPropuesta) {
+        if (this == NINGUNA) {
+            return otroMonto > 0;
+        }
+        return RankingPropuestas.comparar(otroMonto, otraSecuenciaPropuesta,
+                                          monto, secuenciaPropuesta) < 0;
+    }
+
+    // Getters
+    public long getMonto() {
+        return monto;
+    }
+
+    public String getIp() {
+        return ip;
+    }
+
+    /**
+     * Número de cambios de líder desde el inicio de la subasta
+     */
+    public long getSecuencia() {
+        return secuencia;
+    }
+
+    public long getSecuenciaPropuesta() {
+        return secuenciaPropuesta;
+    }
+
+    public String getTextoProtocolo() {
+        return textoProtocolo;
+    }
+}
@@ -0,0 +1,259 @@
+package socket.conconexion.servidor;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+/**
+ * Protocolo binario con prefijo de longitud, alternativo al de lineas de
+ * texto. El cliente lo pide enviando la linea SALUDO como primer mensaje;
+ * si el servidor responde con la misma linea, ambos pasan a tramas binarias.
+ * Cualquier otra respuesta significa que el servidor solo habla texto.
+ * Tras el SALUDO el cliente no envía nada hasta recibir la confirmación, y
+ * el servidor no envía nada antes de la primera trama del cliente.
+ * <pre>
+ * trama  = longitud:short(sin signo) cuerpo
+ * cuerpo = tipo:byte idSubasta:long secuencia:long monto:long datos
+ *
+ * Cliente -> servidor
+ * UNIRSE         idSubasta
+ * PROPUESTA      idSubasta (0 = la actual o la por defecto), secuencia = nº de
+ *                petición que se devuelve en la respuesta, monto en centavos
+ * RANKING        datos = k:short
+ * SUBASTAS, FIN, SESION  (sin datos)
+ * REANUDAR       datos = idSesion (antes de unirse)
+ *
+ * En ambos sentidos
+ * PING, PONG     (sin datos) PING pide un PONG: quien lleva un rato sin
+ *                recibir nada comprueba que el otro extremo sigue vivo
+ *
+ * Servidor -> cliente
+ * INICIADA       datos = tiempo:int
+ * RESPUESTA      secuencia = petición, monto = líder,
+ *                datos = tiempo:int ganando:byte posicion:int ipLider
+ * ACTUALIZACION  secuencia = cambios de líder, monto = líder, datos = tiempo:int ipLider
+ * GANADOR        secuencia = 1 si el destinatario es el ganador, 0 si no,
+ *                monto, datos = ipGanador
+ * LISTA_RANKING  datos = posicion:int postores:int n:short (monto:long ip)*
+ * LISTA_SUBASTAS datos = n:short (idSubasta:long)*
+ * ERROR          secuencia = petición, datos = texto UTF-8 hasta el final
+ * LATIDO         secuencia = último cambio de líder avisado, datos = tiempo:int
+ * ID_SESION      datos = idSesion
+ * REANUDADA      idSubasta (0 = ya no está en ninguna), secuencia = última
+ *                petición aplicada, datos = tiempo:int idSesion
+ *
+ * ip = longitud:byte UTF-8
+ * </pre>
+ * @author Sistema de Subasta
+ */
+public final class ProtocoloBinario {
+    // Linea de texto con la que se negocia el protocolo
+    public static final String SALUDO = "PROTOCOLO:BINARIO";
+
+    public static final int PREFIJO = 2;
+    public static final int CUERPO_FIJO = 1 + 8 + 8 + 8;
+    public static final int LONGITUD_MAXIMA = 16384;
+    // Cabe cualquier trama salvo las listas y los errores largos
+    public static final int LONGITUD_NOTIFICACION = PREFIJO + CUERPO_FIJO + 16 + 256;
+
+    // Cliente -> servidor
+    public static final byte UNIRSE = 1;
+    public static final byte PROPUESTA = 2;
+    public static final byte RANKING = 3;
+    public static final byte SUBASTAS = 4;
+    public static final byte FIN = 5;
+    // 6 es ProtocoloTexto.SALUDO
+    public static final byte SESION = 7;
+    public static final byte REANUDAR = 8;
+
+    // En ambos sentidos
+    public static final byte PING = 9;
+    public static final byte PONG = 10;
+
+    // Servidor -> cliente
+    public static final byte INICIADA = 16;
+    public static final byte RESPUESTA = 17;
+    public static final byte ACTUALIZACION = 18;
+    public static final byte GANADOR = 19;
+    public static final byte LISTA_RANKING = 20;
+    public static final byte LISTA_SUBASTAS = 21;
+    public static final byte ERROR = 22;
+    public static final byte LATIDO = 23;
+    public static final byte ID_SESION = 24;
+    public static final byte REANUDADA = 25;
+
+    private ProtocoloBinario() {
+    }
+
+    /**
+     * Trama decodificada. Se reutiliza de un mensaje a otro para no crear
+     * objetos al leer; "datos" apunta a la parte variable de la trama.
+     */
+    public static final class Trama {
+        public byte tipo;
+        public long idSubasta;
+        public long secuencia;
+        public long monto;
+        public ByteBuffer datos;
+    }
+
+    /**
+     * Decodifica el cuerpo de una trama (sin el prefijo de longitud).
+     * Los campos fijos se copian en "trama" y sus datos quedan en "cuerpo".
+     * @return false si el cuerpo es mas corto que la parte fija
+     */
+    public static boolean decodificar(ByteBuffer cuerpo, Trama trama) {
+        if (cuerpo.remaining() < CUERPO_FIJO) {
+            return false;
+        }
+        trama.tipo = cuerpo.get();
+        trama.idSubasta = cuerpo.getLong();
+        trama.secuencia = cuerpo.getLong();
+        trama.monto = cuerpo.getLong();
+        trama.datos = cuerpo;
+        return true;
+    }
+
+    /**
+     * Escribe el prefijo y la parte fija de una trama.
+     * @return posición del prefijo, para terminar()
+     */
+    public static int empezar(ByteBuffer destino, byte tipo, long idSubasta,
+                              long secuencia, long monto) {
+        int inicio = destino.position();
+        destino.putShort((short) 0).put(tipo).putLong(idSubasta).putLong(secuencia).putLong(monto);
+        return inicio;
+    }
+
+    /**
+     * Completa el prefijo de longitud de la trama empezada en "inicio"
+     */
+    public static void terminar(ByteBuffer destino, int inicio) {
+        destino.putShort(inicio, (short) (destino.position() - inicio - PREFIJO));
+    }
+
+    public static void escribirTexto(ByteBuffer destino, String texto) {
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        int longitud = Math.min(bytes.length, 255);
+        destino.put((byte) longitud).put(bytes, 0, longitud);
+    }
+
+    public static String leerTexto(ByteBuffer origen) {
+        byte[] bytes = new byte[origen.get() & 0xFF];
+        origen.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Tramas del cliente
+
+    public static void escribirUnirse(ByteBuffer destino, long idSubasta) {
+        terminar(destino, empezar(destino, UNIRSE, idSubasta, 0, 0));
+    }
+
+    public static void escribirPropuesta(ByteBuffer destino, long idSubasta,
+                                         long peticion, long monto) {
+        terminar(destino, empezar(destino, PROPUESTA, idSubasta, peticion, monto));
+    }
+
+    public static void escribirPedidoRanking(ByteBuffer destino, int k) {
+        int inicio = empezar(destino, RANKING, 0, 0, 0);
+        destino.putShort((short) k);
+        terminar(destino, inicio);
+    }
+
+    public static void escribirSimple(ByteBuffer destino, byte tipo) {
+        terminar(destino, empezar(destino, tipo, 0, 0, 0));
+    }
+
+    public static void escribirReanudar(ByteBuffer destino, String idSesion) {
+        int inicio = empezar(destino, REANUDAR, 0, 0, 0);
+        escribirTexto(destino, idSesion);
+        terminar(destino, inicio);
+    }
+
+    // Tramas del servidor
+
+    public static void escribirIniciada(ByteBuffer destino, long idSubasta, long tiempoRestante) {
+        int inicio = empezar(destino, INICIADA, idSubasta, 0, 0);
+        destino.putInt((int) tiempoRestante);
+        terminar(destino, inicio);
+    }
+
+    public static void escribirRespuesta(ByteBuffer destino, long idSubasta, long peticion,
+                                         Subasta.ResultadoPropuesta resultado) {
+        PropuestaLider lider = resultado.lider;
+        int inicio = empezar(destino, RESPUESTA, idSubasta, peticion, lider.getMonto());
+        destino.putInt((int) resultado.tiempoRestante)
+               .put((byte) (resultado.ganando ? 1 : 0))
+               .putInt(resultado.posicion);
+        escribirTexto(destino, lider.getIp());
+        terminar(destino, inicio);
+    }
+
+    public static void escribirActualizacion(ByteBuffer destino, long idSubasta,
+                                             PropuestaLider lider, long tiempoRestante) {
+        int inicio = empezar(destino, ACTUALIZACION, idSubasta, lider.getSecuencia(), lider.getMonto());
+        destino.putInt((int) tiempoRestante);
+        escribirTexto(destino, lider.getIp());
+        terminar(destino, inicio);
+    }
+
+    public static void escribirLatido(ByteBuffer destino, long idSubasta,
+                                      long secuencia, long tiempoRestante) {
+        int inicio = empezar(destino, LATIDO, idSubasta, secuencia, 0);
+        destino.putInt((int) tiempoRestante);
+        terminar(destino, inicio);
+    }
+
+    public static void escribirGanador(ByteBuffer destino, long idSubasta, String ipGanador,
+                                       long monto, boolean paraGanador) {
+        int inicio = empezar(destino, GANADOR, idSubasta, paraGanador ? 1 : 0, monto);
+        escribirTexto(destino, ipGanador);
+        terminar(destino, inicio);
+    }
+
+    public static void escribirIdSesion(ByteBuffer destino, String idSesion) {
+        int inicio = empezar(destino, ID_SESION, 0, 0, 0);
+        escribirTexto(destino, idSesion);
+        terminar(destino, inicio);
+    }
+
+    public static void escribirReanudada(ByteBuffer destino, long idSubasta, long peticion,
+                                         long tiempoRestante, String idSesion) {
+        int inicio = empezar(destino, REANUDADA, idSubasta, peticion, 0);
+        destino.putInt((int) tiempoRestante);
+        escribirTexto(destino, idSesion);
+        terminar(destino, inicio);
+    }
+
+    public static void escribirSubastas(ByteBuffer destino, Collection<Long> ids) {
+        int inicio = empezar(destino, LISTA_SUBASTAS, 0, 0, 0);
+        int posicionCantidad = destino.position();
+        destino.putShort((short) 0);
+        int cantidad = 0;
+        for (Long id : ids) {
+            if (destino.remaining() < 8 || cantidad == Short.MAX_VALUE) {
+                break;
+            }
+            destino.putLong(id);
+            cantidad++;
+        }
+        destino.putShort(posicionCantidad, (short) cantidad);
+        terminar(destino, inicio);
+    }
+
+    public static void escribirError(ByteBuffer destino, long idSubasta, long peticion, String texto) {
+        int inicio = empezar(destino, ERROR, idSubasta, peticion, 0);
+        destino.put(texto.getBytes(StandardCharsets.UTF_8));
+        terminar(destino, inicio);
+    }
+
+    /**
+     * Texto de una trama ERROR (lo que queda de sus datos)
+     */
+    public static String leerError(Trama trama) {
+        byte[] bytes = new byte[trama.datos.remaining()];
+        trama.datos.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
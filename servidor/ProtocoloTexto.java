@@ -0,0 +1,619 @@
+package socket.conconexion.servidor;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Codificación y análisis de las lineas del protocolo de texto directamente
+ * sobre bytes, compartidos por el servidor y los clientes. Se escribe en un
+ * ByteBuffer reutilizable y se lee de la linea recibida sin crear Strings,
+ * arreglos ni excepciones (salvo para lineas mal formadas): los números y
+ * montos se convierten dígito a dígito y la IP o el texto de un ERROR se
+ * quedan como un rango de la linea hasta que alguien pide el String.
+ * <pre>
+ * Cliente -> servidor
+ * PROPUESTA:&lt;n&gt;:&lt;monto&gt;   o &lt;monto&gt; a secas (n = 0)
+ * UNIRSE:&lt;id&gt;, FIN, PROTOCOLO:BINARIO
+ *
+ * En ambos sentidos
+ * PING, PONG
+ *
+ * Servidor -> cliente
+ * RESPUESTA:PROPUESTA_ALTA:&lt;ip&gt;:&lt;monto&gt;:TIEMPO:&lt;seg&gt;:TU_PROPUESTA:GANANDO|PERDIENDO:POSICION:&lt;p&gt;[:PETICION:&lt;n&gt;]
+ * UPDATE:PROPUESTA_ALTA:&lt;ip&gt;:&lt;monto&gt;:TIEMPO:&lt;seg&gt;[:SEC:&lt;n&gt;]
+ * LATIDO:SEC:&lt;n&gt;:TIEMPO:&lt;seg&gt;
+ * GANADOR:&lt;ip&gt;:MONTO:&lt;monto&gt;:TU_PROPUESTA:GANADORA|PERDEDORA
+ * SUBASTA_INICIADA:TIEMPO:&lt;seg&gt;[:SUBASTA:&lt;id&gt;]
+ * ERROR:&lt;texto&gt;[:PETICION:&lt;n&gt;]
+ * </pre>
+ * Los tipos decodificados son los mismos de ProtocoloBinario, más SALUDO.
+ * @author Sistema de Subasta
+ */
+public final class ProtocoloTexto {
+    // Linea del cliente que pide el protocolo binario (ProtocoloBinario.SALUDO)
+    public static final byte SALUDO = 6;
+    public static final byte DESCONOCIDO = 0;
+
+    // Lineas que envía un cliente; el servidor corta la conexión si llega una mas larga
+    public static final int LONGITUD_MAXIMA_PETICION = 1024;
+    // Cabe cualquier linea del servidor salvo RANKING y SUBASTAS largos
+    public static final int LONGITUD_NOTIFICACION = 512;
+    // Cualquier linea del servidor
+    public static final int LONGITUD_MAXIMA = 16384;
+
+    private static final byte[] PROPUESTA = ascii("PROPUESTA:");
+    private static final byte[] UNIRSE = ascii("UNIRSE:");
+    private static final byte[] FIN = ascii("FIN");
+    private static final byte[] SALUDO_BINARIO = ascii(ProtocoloBinario.SALUDO);
+    private static final byte[] PING = ascii("PING");
+    private static final byte[] PONG = ascii("PONG");
+    private static final byte[] RESPUESTA = ascii("RESPUESTA:PROPUESTA_ALTA:");
+    private static final byte[] ACTUALIZACION = ascii("UPDATE:PROPUESTA_ALTA:");
+    private static final byte[] LATIDO = ascii("LATIDO:SEC:");
+    private static final byte[] GANADOR = ascii("GANADOR:");
+    private static final byte[] INICIADA = ascii("SUBASTA_INICIADA:TIEMPO:");
+    private static final byte[] ERROR = ascii("ERROR:");
+    private static final byte[] LIMITE = ascii("LIMITE:");
+    private static final byte[] TIEMPO = ascii(":TIEMPO:");
+    private static final byte[] TU_PROPUESTA = ascii(":TU_PROPUESTA:");
+    private static final byte[] GANANDO = ascii("GANANDO");
+    private static final byte[] PERDIENDO = ascii("PERDIENDO");
+    private static final byte[] GANADORA = ascii("GANADORA");
+    private static final byte[] PERDEDORA = ascii("PERDEDORA");
+    private static final byte[] POSICION = ascii(":POSICION:");
+    private static final byte[] PETICION = ascii(":PETICION:");
+    private static final byte[] SEC = ascii(":SEC:");
+    private static final byte[] MONTO = ascii(":MONTO:");
+    private static final byte[] SUBASTA = ascii(":SUBASTA:");
+    private static final byte[] DEMASIADAS = ascii(":Demasiadas propuestas, reintenta en ");
+    private static final byte[] MS = ascii(" ms");
+    private static final byte[] MINIMO_LONG = ascii(String.valueOf(Long.MIN_VALUE));
+
+    private ProtocoloTexto() {
+    }
+
+    /**
+     * Linea decodificada. Se reutiliza de una linea a otra; la IP y el
+     * texto de un ERROR apuntan a los bytes de la linea, así que solo son
+     * válidos hasta que se vuelva a escribir en su buffer.
+     */
+    public static final class Mensaje {
+        public byte tipo;
+        public long peticion;        // 0 si la linea no lleva número de petición
+        public long idSubasta;       // SUBASTA_INICIADA; 0 si no lo lleva
+        public long monto;           // líder, ganador o propuesta, en centavos
+        public long tiempoRestante;
+        public long secuencia;       // UPDATE y LATIDO; -1 si no la lleva
+        public boolean ganando;      // RESPUESTA; en GANADOR, si el destinatario ganó
+        public int posicion;
+
+        private byte[] linea;
+        private int inicioTexto;
+        private int finTexto;
+        private final VistaAscii vista = new VistaAscii();
+
+        private void limpiar(byte[] bytes) {
+            tipo = DESCONOCIDO;
+            peticion = 0;
+            idSubasta = 0;
+            monto = 0;
+            tiempoRestante = 0;
+            secuencia = -1;
+            ganando = false;
+            posicion = 0;
+            linea = bytes;
+            inicioTexto = 0;
+            finTexto = 0;
+        }
+
+        /**
+         * IP del líder o del ganador, o texto de un ERROR (crea el String)
+         */
+        public String getTexto() {
+            return new String(linea, inicioTexto, finTexto - inicioTexto, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Indica si es un ERROR:LIMITE (propuesta rechazada por ritmo)
+         */
+        public boolean esLimite() {
+            return tipo == ProtocoloBinario.ERROR && empieza(linea, inicioTexto, finTexto, LIMITE);
+        }
+    }
+
+    /**
+     * Los bytes ASCII vistos como texto, para Monto.parsear
+     */
+    private static final class VistaAscii implements CharSequence {
+        private byte[] bytes;
+
+        VistaAscii sobre(byte[] bytes) {
+            this.bytes = bytes;
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return bytes.length;
+        }
+
+        @Override
+        public char charAt(int indice) {
+            return (char) (bytes[indice] & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int inicio, int fin) {
+            return new String(bytes, inicio, fin - inicio, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    // Lectura
+
+    /**
+     * Decodifica la linea entre position y limit de un buffer con arreglo
+     * (sin el fin de linea; se ignoran los espacios de los extremos). No
+     * mueve la posición del buffer.
+     * @return false si la linea no es ninguna de las conocidas o está mal
+     *         formada (mensaje.tipo queda en DESCONOCIDO)
+     */
+    public static boolean decodificar(ByteBuffer linea, Mensaje mensaje) {
+        byte[] b = linea.array();
+        int inicio = linea.arrayOffset() + linea.position();
+        int fin = linea.arrayOffset() + linea.limit();
+        while (inicio < fin && esEspacio(b[inicio])) {
+            inicio++;
+        }
+        while (fin > inicio && esEspacio(b[fin - 1])) {
+            fin--;
+        }
+
+        mensaje.limpiar(b);
+        try {
+            mensaje.tipo = decodificar(b, inicio, fin, mensaje);
+        } catch (NumberFormatException e) {
+            mensaje.tipo = DESCONOCIDO;
+        }
+        return mensaje.tipo != DESCONOCIDO;
+    }
+
+    private static byte decodificar(byte[] b, int inicio, int fin, Mensaje m) {
+        if (empieza(b, inicio, fin, RESPUESTA)) {
+            fin = quitarPeticion(b, inicio, fin, m);
+            int tiempo = leerLider(b, inicio + RESPUESTA.length, fin, m);
+            int estado = buscar(b, tiempo, fin, TU_PROPUESTA);
+            m.tiempoRestante = entero(b, tiempo + TIEMPO.length, estado);
+            estado += TU_PROPUESTA.length;
+            int posicion = buscar(b, estado, fin, POSICION);
+            int finEstado = posicion < 0 ? fin : posicion;
+            m.ganando = igual(b, estado, finEstado, GANANDO);
+            if (!m.ganando && !igual(b, estado, finEstado, PERDIENDO)) {
+                return DESCONOCIDO;
+            }
+            if (posicion >= 0) {
+                m.posicion = (int) entero(b, posicion + POSICION.length, fin);
+            }
+            return ProtocoloBinario.RESPUESTA;
+        }
+
+        if (empieza(b, inicio, fin, ACTUALIZACION)) {
+            int tiempo = leerLider(b, inicio + ACTUALIZACION.length, fin, m);
+            int secuencia = buscar(b, tiempo, fin, SEC);
+            m.tiempoRestante = entero(b, tiempo + TIEMPO.length, secuencia < 0 ? fin : secuencia);
+            if (secuencia >= 0) {
+                m.secuencia = entero(b, secuencia + SEC.length, fin);
+            }
+            return ProtocoloBinario.ACTUALIZACION;
+        }
+
+        if (empieza(b, inicio, fin, LATIDO)) {
+            int tiempo = buscar(b, inicio + LATIDO.length, fin, TIEMPO);
+            m.secuencia = entero(b, inicio + LATIDO.length, tiempo);
+            m.tiempoRestante = entero(b, tiempo + TIEMPO.length, fin);
+            return ProtocoloBinario.LATIDO;
+        }
+
+        if (empieza(b, inicio, fin, GANADOR)) {
+            int monto = buscarUltimo(b, inicio + GANADOR.length, fin, MONTO);
+            if (monto < 0) {
+                return DESCONOCIDO;
+            }
+            int estado = buscar(b, monto + MONTO.length, fin, TU_PROPUESTA);
+            m.inicioTexto = inicio + GANADOR.length;
+            m.finTexto = monto;
+            m.monto = monto(b, monto + MONTO.length, estado < 0 ? fin : estado, m);
+            if (estado >= 0) {
+                estado += TU_PROPUESTA.length;
+                m.ganando = igual(b, estado, fin, GANADORA);
+                if (!m.ganando && !igual(b, estado, fin, PERDEDORA)) {
+                    return DESCONOCIDO;
+                }
+            }
+            return ProtocoloBinario.GANADOR;
+        }
+
+        if (empieza(b, inicio, fin, INICIADA)) {
+            int subasta = buscar(b, inicio + INICIADA.length, fin, SUBASTA);
+            m.tiempoRestante = entero(b, inicio + INICIADA.length, subasta < 0 ? fin : subasta);
+            if (subasta >= 0) {
+                m.idSubasta = entero(b, subasta + SUBASTA.length, fin);
+            }
+            return ProtocoloBinario.INICIADA;
+        }
+
+        if (empieza(b, inicio, fin, ERROR)) {
+            m.inicioTexto = inicio + ERROR.length;
+            m.finTexto = quitarPeticion(b, m.inicioTexto, fin, m);
+            return ProtocoloBinario.ERROR;
+        }
+
+        if (empieza(b, inicio, fin, PROPUESTA)) {
+            int separador = buscar(b, inicio + PROPUESTA.length, fin, ':');
+            m.peticion = entero(b, inicio + PROPUESTA.length, separador);
+            m.monto = monto(b, separador + 1, fin, m);
+            return ProtocoloBinario.PROPUESTA;
+        }
+
+        if (empieza(b, inicio, fin, UNIRSE)) {
+            m.idSubasta = entero(b, inicio + UNIRSE.length, fin);
+            return ProtocoloBinario.UNIRSE;
+        }
+
+        if (igual(b, inicio, fin, FIN)) {
+            return ProtocoloBinario.FIN;
+        }
+
+        if (igual(b, inicio, fin, SALUDO_BINARIO)) {
+            return SALUDO;
+        }
+
+        if (igual(b, inicio, fin, PING)) {
+            return ProtocoloBinario.PING;
+        }
+
+        if (igual(b, inicio, fin, PONG)) {
+            return ProtocoloBinario.PONG;
+        }
+
+        // Un monto a secas es una propuesta sin número de petición
+        if (inicio < fin && (esDigito(b[inicio]) || b[inicio] == '.' ||
+                             b[inicio] == '-' || b[inicio] == '+')) {
+            m.monto = monto(b, inicio, fin, m);
+            return ProtocoloBinario.PROPUESTA;
+        }
+        return DESCONOCIDO;
+    }
+
+    /**
+     * "PROPUESTA_ALTA:&lt;ip&gt;:&lt;monto&gt;:TIEMPO:" desde "desde" (ya sin el
+     * prefijo); la IP puede llevar ':' (IPv6), así que el monto se busca
+     * hacia atrás desde :TIEMPO:
+     * @return posición de ":TIEMPO:"
+     */
+    private static int leerLider(byte[] b, int desde, int fin, Mensaje m) {
+        int tiempo = buscar(b, desde, fin, TIEMPO);
+        int separador = tiempo - 1;
+        while (separador >= desde && b[separador] != ':') {
+            separador--;
+        }
+        if (separador < desde) {
+            throw new NumberFormatException("Falta el monto del lider");
+        }
+        m.inicioTexto = desde;
+        m.finTexto = separador;
+        m.monto = monto(b, separador + 1, tiempo, m);
+        return tiempo;
+    }
+
+    /**
+     * Lee el ":PETICION:&lt;n&gt;" del final, si lo hay
+     * @return nuevo fin de la linea, sin el sufijo
+     */
+    private static int quitarPeticion(byte[] b, int inicio, int fin, Mensaje m) {
+        int sufijo = buscarUltimo(b, inicio, fin, PETICION);
+        if (sufijo < 0 || sufijo + PETICION.length == fin) {
+            return fin;
+        }
+        for (int i = sufijo + PETICION.length; i < fin; i++) {
+            if (!esDigito(b[i])) {
+                return fin;
+            }
+        }
+        m.peticion = entero(b, sufijo + PETICION.length, fin);
+        return sufijo;
+    }
+
+    private static long monto(byte[] b, int inicio, int fin, Mensaje m) {
+        while (inicio < fin && esEspacio(b[inicio])) {
+            inicio++;
+        }
+        while (fin > inicio && esEspacio(b[fin - 1])) {
+            fin--;
+        }
+        return Monto.parsear(m.vista.sobre(b), inicio, fin);
+    }
+
+    /**
+     * Entero no negativo en b[inicio, fin)
+     */
+    private static long entero(byte[] b, int inicio, int fin) {
+        if (inicio < 0 || inicio >= fin) {
+            throw new NumberFormatException("Falta un numero");
+        }
+        long valor = 0;
+        for (int i = inicio; i < fin; i++) {
+            if (!esDigito(b[i]) || valor > (Long.MAX_VALUE - 9) / 10) {
+                throw new NumberFormatException("Numero invalido");
+            }
+            valor = valor * 10 + (b[i] - '0');
+        }
+        return valor;
+    }
+
+    /**
+     * Indica si la linea entre position y limit empieza por el texto ASCII
+     * (para las lineas que no decodifica este codec, como RANKING:)
+     */
+    public static boolean empiezaCon(ByteBuffer linea, String prefijo) {
+        if (linea.remaining() < prefijo.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefijo.length(); i++) {
+            if (linea.get(linea.position() + i) != prefijo.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Texto de la linea entre position y limit, para los mensajes que se
+     * siguen tratando como String (sin mover la posición)
+     */
+    public static String comoTexto(ByteBuffer linea) {
+        return new String(linea.array(), linea.arrayOffset() + linea.position(),
+                          linea.remaining(), StandardCharsets.UTF_8);
+    }
+
+    // Escritura (cada método escribe una linea completa, con su '\n')
+
+    public static void escribirPropuesta(ByteBuffer destino, long peticion, long monto) {
+        destino.put(PROPUESTA);
+        escribirNumero(destino, peticion);
+        destino.put((byte) ':');
+        escribirMonto(destino, monto);
+        destino.put((byte) '\n');
+    }
+
+    public static void escribirUnirse(ByteBuffer destino, long idSubasta) {
+        destino.put(UNIRSE);
+        escribirNumero(destino, idSubasta);
+        destino.put((byte) '\n');
+    }
+
+    /**
+     * RESPUESTA a una propuesta; con peticion &lt;= 0 no se añade :PETICION:
+     */
+    public static void escribirRespuesta(ByteBuffer destino, String ipLider, long montoLider,
+                                         long tiempoRestante, boolean ganando, int posicion,
+                                         long peticion) {
+        destino.put(RESPUESTA);
+        escribirTexto(destino, ipLider);
+        destino.put((byte) ':');
+        escribirMonto(destino, montoLider);
+        destino.put(TIEMPO);
+        escribirNumero(destino, tiempoRestante);
+        destino.put(TU_PROPUESTA).put(ganando ? GANANDO : PERDIENDO).put(POSICION);
+        escribirNumero(destino, posicion);
+        escribirPeticion(destino, peticion);
+        destino.put((byte) '\n');
+    }
+
+    static void escribirRespuesta(ByteBuffer destino, Subasta.ResultadoPropuesta resultado, long peticion) {
+        escribirRespuesta(destino, resultado.lider.getIp(), resultado.lider.getMonto(),
+                          resultado.tiempoRestante, resultado.ganando, resultado.posicion, peticion);
+    }
+
+    public static void escribirActualizacion(ByteBuffer destino, String ipLider, long montoLider,
+                                             long tiempoRestante, long secuencia) {
+        destino.put(ACTUALIZACION);
+        escribirTexto(destino, ipLider);
+        destino.put((byte) ':');
+        escribirMonto(destino, montoLider);
+        destino.put(TIEMPO);
+        escribirNumero(destino, tiempoRestante);
+        destino.put(SEC);
+        escribirNumero(destino, secuencia);
+        destino.put((byte) '\n');
+    }
+
+    public static void escribirLatido(ByteBuffer destino, long secuencia, long tiempoRestante) {
+        destino.put(LATIDO);
+        escribirNumero(destino, secuencia);
+        destino.put(TIEMPO);
+        escribirNumero(destino, tiempoRestante);
+        destino.put((byte) '\n');
+    }
+
+    /**
+     * PING o PONG
+     */
+    public static void escribirSimple(ByteBuffer destino, byte tipo) {
+        destino.put(tipo == ProtocoloBinario.PING ? PING : PONG);
+        destino.put((byte) '\n');
+    }
+
+    /**
+     * GANADOR para un destinatario: TU_PROPUESTA dice si es él quien ganó
+     */
+    public static void escribirGanador(ByteBuffer destino, String ipGanador, long monto,
+                                       boolean paraGanador) {
+        destino.put(GANADOR);
+        escribirTexto(destino, ipGanador);
+        destino.put(MONTO);
+        escribirMonto(destino, monto);
+        destino.put(TU_PROPUESTA);
+        destino.put(paraGanador ? GANADORA : PERDEDORA);
+        destino.put((byte) '\n');
+    }
+
+    public static void escribirIniciada(ByteBuffer destino, long idSubasta, long tiempoRestante) {
+        destino.put(INICIADA);
+        escribirNumero(destino, tiempoRestante);
+        destino.put(SUBASTA);
+        escribirNumero(destino, idSubasta);
+        destino.put((byte) '\n');
+    }
+
+    /**
+     * ERROR con el texto indicado; con peticion &lt;= 0 no se añade :PETICION:
+     */
+    public static void escribirError(ByteBuffer destino, CharSequence texto, long peticion) {
+        destino.put(ERROR);
+        escribirTexto(destino, texto);
+        escribirPeticion(destino, peticion);
+        destino.put((byte) '\n');
+    }
+
+    /**
+     * ERROR:LIMITE:&lt;ms&gt;:... de una propuesta rechazada por ritmo
+     */
+    public static void escribirLimite(ByteBuffer destino, long esperaMs, long peticion) {
+        destino.put(ERROR).put(LIMITE);
+        escribirNumero(destino, esperaMs);
+        destino.put(DEMASIADAS);
+        escribirNumero(destino, esperaMs);
+        destino.put(MS);
+        escribirPeticion(destino, peticion);
+        destino.put((byte) '\n');
+    }
+
+    private static void escribirPeticion(ByteBuffer destino, long peticion) {
+        if (peticion > 0) {
+            destino.put(PETICION);
+            escribirNumero(destino, peticion);
+        }
+    }
+
+    /**
+     * Número en decimal, sin crear el String
+     */
+    public static void escribirNumero(ByteBuffer destino, long valor) {
+        if (valor == Long.MIN_VALUE) {
+            destino.put(MINIMO_LONG);
+            return;
+        }
+        if (valor < 0) {
+            destino.put((byte) '-');
+            valor = -valor;
+        }
+        int digitos = 1;
+        for (long resto = valor; resto >= 10; resto /= 10) {
+            digitos++;
+        }
+        int fin = destino.position() + digitos;
+        for (int i = fin - 1; i >= destino.position(); i--) {
+            destino.put(i, (byte) ('0' + valor % 10));
+            valor /= 10;
+        }
+        destino.position(fin);
+    }
+
+    /**
+     * Monto en centavos con dos decimales, como Monto.formatear
+     */
+    public static void escribirMonto(ByteBuffer destino, long centavos) {
+        if (centavos < 0) {
+            destino.put((byte) '-');
+            centavos = -centavos;
+        }
+        long resto = centavos % Monto.CENTAVOS_POR_UNIDAD;
+        escribirNumero(destino, centavos / Monto.CENTAVOS_POR_UNIDAD);
+        destino.put((byte) '.').put((byte) ('0' + resto / 10)).put((byte) ('0' + resto % 10));
+    }
+
+    /**
+     * Texto en UTF-8 sin pasar por getBytes (las IPs y los textos de error
+     * son ASCII casi siempre)
+     */
+    public static void escribirTexto(ByteBuffer destino, CharSequence texto) {
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (c < 0x80) {
+                destino.put((byte) c);
+            } else if (c < 0x800) {
+                destino.put((byte) (0xC0 | (c >> 6))).put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < texto.length() &&
+                       Character.isLowSurrogate(texto.charAt(i + 1))) {
+                int punto = Character.toCodePoint(c, texto.charAt(++i));
+                destino.put((byte) (0xF0 | (punto >> 18)))
+                       .put((byte) (0x80 | ((punto >> 12) & 0x3F)))
+                       .put((byte) (0x80 | ((punto >> 6) & 0x3F)))
+                       .put((byte) (0x80 | (punto & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                destino.put((byte) '?');
+            } else {
+                destino.put((byte) (0xE0 | (c >> 12)))
+                       .put((byte) (0x80 | ((c >> 6) & 0x3F)))
+                       .put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    // Utilidades sobre bytes
+
+    private static boolean empieza(byte[] b, int inicio, int fin, byte[] prefijo) {
+        return fin - inicio >= prefijo.length && igual(b, inicio, inicio + prefijo.length, prefijo);
+    }
+
+    private static boolean igual(byte[] b, int inicio, int fin, byte[] texto) {
+        if (fin - inicio != texto.length) {
+            return false;
+        }
+        for (int i = 0; i < texto.length; i++) {
+            if (b[inicio + i] != texto[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int buscar(byte[] b, int desde, int fin, byte[] marca) {
+        for (int i = desde; i <= fin - marca.length; i++) {
+            if (b[i] == marca[0] && igual(b, i, i + marca.length, marca)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int buscar(byte[] b, int desde, int fin, char c) {
+        for (int i = desde; i < fin; i++) {
+            if (b[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int buscarUltimo(byte[] b, int desde, int fin, byte[] marca) {
+        for (int i = fin - marca.length; i >= desde; i--) {
+            if (b[i] == marca[0] && igual(b, i, i + marca.length, marca)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean esDigito(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean esEspacio(byte b) {
+        return b >= 0 && b <= ' ';
+    }
+
+    private static byte[] ascii(String texto) {
+        return texto.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,222 @@
+package socket.conconexion.servidor;
+
+import java.util.Random;
+
+/**
+ * Ranking de postores ordenado por su mejor propuesta: monto descendente y,
+ * a igual monto, la propuesta que llegó antes (menor numero de secuencia).
+ * Es un treap con tamaños de subárbol, así que insertar, eliminar y
+ * consultar la posición de un postor cuestan O(log n) y los K primeros
+ * se recorren en O(K + log n). No es thread-safe: lo protege LibroPropuestas.
+ * @author Sistema de Subasta
+ */
+class RankingPropuestas {
+
+    /**
+     * Mejor propuesta de un postor dentro del árbol
+     */
+    static final class Nodo {
+        long monto;
+        long secuencia;
+        final int postor;
+        final int prioridad;
+        int tamanio = 1;
+        Nodo izq;
+        Nodo der;
+
+        Nodo(int postor, int prioridad) {
+            this.postor = postor;
+            this.prioridad = prioridad;
+        }
+    }
+
+    // Visitante para recorrer el ranking en orden sin crear listas
+    interface Visitante {
+        void visitar(int posicion, Nodo nodo);
+    }
+
+    private final Random aleatorio = new Random(0x5eed);
+    private Nodo raiz;
+    // Resultado de dividir(); evita crear objetos auxiliares al insertar
+    private Nodo divisionIzq;
+    private Nodo divisionDer;
+
+    /**
+     * Crea el nodo de un postor nuevo (aun fuera del árbol)
+     */
+    Nodo crearNodo(int postor) {
+        return new Nodo(postor, aleatorio.nextInt());
+    }
+
+    /**
+     * Inserta el nodo con su mejor propuesta
+     */
+    void insertar(Nodo nodo, long monto, long secuencia) {
+        nodo.monto = monto;
+        nodo.secuencia = secuencia;
+        nodo.izq = null;
+        nodo.der = null;
+        nodo.tamanio = 1;
+        raiz = insertar(raiz, nodo);
+    }
+
+    /**
+     * Quita el nodo del árbol (debe estar insertado)
+     */
+    void eliminar(Nodo nodo) {
+        raiz = eliminar(raiz, nodo.monto, nodo.secuencia);
+    }
+
+    /**
+     * Posición (1 = primero) que ocupa un nodo insertado
+     */
+    int posicion(Nodo nodo) {
+        int mejores = 0;
+        Nodo actual = raiz;
+        while (actual != null) {
+            int cmp = comparar(actual.monto, actual.secuencia, nodo.monto, nodo.secuencia);
+            if (cmp < 0) {
+                mejores += tamanio(actual.izq) + 1;
+                actual = actual.der;
+            } else if (cmp > 0) {
+                actual = actual.izq;
+            } else {
+                return mejores + tamanio(actual.izq) + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Primer nodo del ranking (el ganador actual), o null si esta vacío
+     */
+    Nodo primero() {
+        Nodo actual = raiz;
+        if (actual == null) {
+            return null;
+        }
+        while (actual.izq != null) {
+            actual = actual.izq;
+        }
+        return actual;
+    }
+
+    /**
+     * Recorre en orden los k primeros postores
+     */
+    void recorrer(int k, Visitante visitante) {
+        recorrer(raiz, k, visitante, 0);
+    }
+
+    int tamanio() {
+        return tamanio(raiz);
+    }
+
+    private int recorrer(Nodo nodo, int k, Visitante visitante, int visitados) {
+        if (nodo == null || visitados >= k) {
+            return visitados;
+        }
+        visitados = recorrer(nodo.izq, k, visitante, visitados);
+        if (visitados < k) {
+            visitados++;
+            visitante.visitar(visitados, nodo);
+            visitados = recorrer(nodo.der, k, visitante, visitados);
+        }
+        return visitados;
+    }
+
+    /**
+     * Orden del ranking: negativo si (montoA, secA) va antes que (montoB, secB)
+     */
+    static int comparar(long montoA, long secuenciaA, long montoB, long secuenciaB) {
+        if (montoA != montoB) {
+            return montoA > montoB ? -1 : 1;
+        }
+        return Long.compare(secuenciaA, secuenciaB);
+    }
+
+    private static int tamanio(Nodo nodo) {
+        return nodo == null ? 0 : nodo.tamanio;
+    }
+
+    private static void actualizar(Nodo nodo) {
+        nodo.tamanio = 1 + tamanio(nodo.izq) + tamanio(nodo.der);
+    }
+
+    private Nodo insertar(Nodo t, Nodo nuevo) {
+        if (t == null) {
+            return nuevo;
+        }
+        if (nuevo.prioridad > t.prioridad) {
+            dividir(t, nuevo.monto, nuevo.secuencia);
+            nuevo.izq = divisionIzq;
+            nuevo.der = divisionDer;
+            actualizar(nuevo);
+            return nuevo;
+        }
+        if (comparar(nuevo.monto, nuevo.secuencia, t.monto, t.secuencia) < 0) {
+            t.izq = insertar(t.izq, nuevo);
+        } else {
+            t.der = insertar(t.der, nuevo);
+        }
+        actualizar(t);
+        return t;
+    }
+
+    /**
+     * Divide t en los nodos anteriores a la clave (divisionIzq) y los
+     * posteriores (divisionDer)
+     */
+    private void dividir(Nodo t, long monto, long secuencia) {
+        if (t == null) {
+            divisionIzq = null;
+            divisionDer = null;
+            return;
+        }
+        if (comparar(t.monto, t.secuencia, monto, secuencia) < 0) {
+            dividir(t.der, monto, secuencia);
+            t.der = divisionIzq;
+            actualizar(t);
+            divisionIzq = t;
+        } else {
+            dividir(t.izq, monto, secuencia);
+            t.izq = divisionDer;
+            actualizar(t);
+            divisionDer = t;
+        }
+    }
+
+    private static Nodo unir(Nodo a, Nodo b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (a.prioridad > b.prioridad) {
+            a.der = unir(a.der, b);
+            actualizar(a);
+            return a;
+        }
+        b.izq = unir(a, b.izq);
+        actualizar(b);
+        return b;
+    }
+
+    private static Nodo eliminar(Nodo t, long monto, long secuencia) {
+        if (t == null) {
+            return null;
+        }
+        int cmp = comparar(monto, secuencia, t.monto, t.secuencia);
+        if (cmp == 0) {
+            return unir(t.izq, t.der);
+        }
+        if (cmp < 0) {
+            t.izq = eliminar(t.izq, monto, secuencia);
+        } else {
+            t.der = eliminar(t.der, monto, secuencia);
+        }
+        actualizar(t);
+        return t;
+    }
+}
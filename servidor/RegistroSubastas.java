@@ -0,0 +1,266 @@
+package socket.conconexion.servidor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Registro de las subastas en curso, indexadas por ID.
+ * Una subasta se crea cuando el primer cliente se une a su ID y se retira
+ * al finalizar, de modo que el siguiente cliente abre una sesión nueva.
+ * @author Sistema de Subasta
+ */
+public class RegistroSubastas {
+    // Subasta a la que se une un cliente que no envía UNIRSE (protocolo original)
+    public static final long SUBASTA_POR_DEFECTO = 1;
+
+    private final ConcurrentMap<Long, Subasta> subastas = new ConcurrentHashMap<>();
+    private final AtomicInteger numeroSubasta = new AtomicInteger();
+    private volatile DiarioSubastas diario = DiarioSubastas.desactivado();
+    private final SesionesReanudables sesiones = new SesionesReanudables();
+    // Las métricas leen el registro: las crea crear() una vez construido
+    private MetricasServidor metricas;
+    private VigilanteInactividad vigilante;
+
+    // Forma de avisar del líder en las subastas que se abran
+    private volatile ConfiguracionServidor.Broadcast broadcast = ConfiguracionServidor.Broadcast.PERIODICO;
+    private volatile long broadcastVentanaMs = 50;
+    private volatile long latidoMs = 5000;
+
+    // Anti-sniping: ventana final y extensión del plazo (0 = desactivado)
+    private volatile long antisnipingUltimosMs = 0;
+    private volatile long antisnipingExtensionMs = 0;
+
+    // Cola de salida de cada sesión nueva
+    private volatile int capacidadSalida = 256;
+    private volatile ColaSalida.Politica politicaSalida = ColaSalida.Politica.DESCARTAR_VIEJOS;
+
+    // El nodo sale del cluster: solo se admiten sesiones en las subastas abiertas
+    private volatile boolean drenando = false;
+
+    private RegistroSubastas() {
+    }
+
+    /**
+     * Crea un registro vacío con sus métricas y su vigilante de inactividad
+     */
+    public static RegistroSubastas crear() {
+        RegistroSubastas registro = new RegistroSubastas();
+        registro.metricas = new MetricasServidor(registro);
+        registro.vigilante = new VigilanteInactividad(registro.metricas);
+        return registro;
+    }
+
+    /**
+     * Une la sesión a la subasta indicada, creándola si no existe.
+     * Si la subasta encontrada ya no admite participantes se cierra (su
+     * plazo venció aunque la rueda no la haya finalizado aún) y se
+     * reintenta con una nueva: la ronda anterior registra su FIN y anuncia
+     * el ganador antes de que se abra la siguiente.
+     * @return la subasta, o null si el registro está drenando y esa subasta
+     *         no está abierta
+     */
+    public Subasta unir(SesionSubasta sesion, long idSubasta) {
+        while (true) {
+            Subasta subasta = drenando ? subastas.get(idSubasta)
+                : subastas.computeIfAbsent(idSubasta,
+                    id -> new Subasta(id, numeroSubasta.incrementAndGet(), this));
+            if (subasta == null) {
+                return null;
+            }
+
+            if (subasta.admitir(sesion)) {
+                return subasta;
+            }
+            subasta.vencerPlazo();
+            subastas.remove(idSubasta, subasta);
+        }
+    }
+
+    /**
+     * Vuelve a crear una subasta abierta leída del diario, con sus
+     * propuestas, su ranking y su plazo original. Los postores con ID de
+     * sesión se distinguen por su huella (y se pueden reanudar presentando
+     * el ID); los demás, por IP.
+     */
+    void restaurar(DiarioSubastas.SubastaRecuperada recuperada) {
+        Subasta subasta = new Subasta(recuperada.id, recuperada.numero, this);
+        Map<String, PostorRecuperado> postores = new HashMap<>();
+
+        for (int i = 0; i < recuperada.numeroPropuestas; i++) {
+            String sesion = recuperada.sesiones[i];
+            String ip = recuperada.ips[i];
+            PostorRecuperado postor = postores.computeIfAbsent(sesion != null ? sesion : ip,
+                clave -> new PostorRecuperado(ip, new IdentidadSesion(sesion, 0)));
+            postor.getIdentidad().registrarPeticion(recuperada.peticiones[i]);
+            subasta.restaurarPropuesta(postor, recuperada.montos[i], recuperada.secuencias[i]);
+        }
+        for (PostorRecuperado postor : postores.values()) {
+            if (postor.getIdentidad().getHuella() != null) {
+                sesiones.restaurar(postor);
+            }
+        }
+
+        subasta.restaurarSecuencia(recuperada.ultimaSecuencia);
+
+        subastas.put(recuperada.id, subasta);
+        subasta.reanudar(recuperada.tiempoInicio, recuperada.duracion);
+    }
+
+    /**
+     * Continúa la numeración de sesiones tras un reinicio
+     */
+    void reanudarNumeracion(int ultimoNumero) {
+        numeroSubasta.accumulateAndGet(ultimoNumero, Math::max);
+    }
+
+    int getUltimoNumero() {
+        return numeroSubasta.get();
+    }
+
+    /**
+     * Estado de las subastas activas para una instantánea; cada subasta se
+     * copia por separado, sin detener a las demás
+     */
+    List<DiarioSubastas.SubastaRecuperada> capturar() {
+        List<DiarioSubastas.SubastaRecuperada> estado = new ArrayList<>();
+        for (Subasta subasta : subastas.values()) {
+            DiarioSubastas.SubastaRecuperada copia = subasta.capturar();
+            if (copia != null) {
+                estado.add(copia);
+            }
+        }
+        return estado;
+    }
+
+    /**
+     * Retira una subasta finalizada (solo si sigue siendo la registrada)
+     */
+    void retirar(Subasta subasta) {
+        subastas.remove(subasta.getId(), subasta);
+    }
+
+    public Subasta obtener(long idSubasta) {
+        return subastas.get(idSubasta);
+    }
+
+    /**
+     * IDs de las subastas abiertas separados por comas
+     */
+    public String listar() {
+        StringBuilder sb = new StringBuilder();
+        for (Long id : subastas.keySet()) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(id);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Subastas abiertas en este momento
+     */
+    Collection<Subasta> getSubastas() {
+        return subastas.values();
+    }
+
+    /**
+     * IDs de las subastas abiertas (vista del mapa, sin copiar)
+     */
+    public Collection<Long> getIds() {
+        return subastas.keySet();
+    }
+
+    public DiarioSubastas getDiario() {
+        return diario;
+    }
+
+    public MetricasServidor getMetricas() {
+        return metricas;
+    }
+
+    /**
+     * Sesiones que se pueden reanudar por su ID
+     */
+    SesionesReanudables getSesiones() {
+        return sesiones;
+    }
+
+    /**
+     * Latidos y cierre de las conexiones inactivas
+     */
+    VigilanteInactividad getVigilante() {
+        return vigilante;
+    }
+
+    public void setDiario(DiarioSubastas diario) {
+        this.diario = diario;
+    }
+
+    public void configurarBroadcast(ConfiguracionServidor.Broadcast broadcast,
+                                    long ventanaMs, long latidoMs) {
+        this.broadcast = broadcast;
+        this.broadcastVentanaMs = ventanaMs;
+        this.latidoMs = latidoMs;
+    }
+
+    public ConfiguracionServidor.Broadcast getBroadcast() {
+        return broadcast;
+    }
+
+    public long getBroadcastVentanaMs() {
+        return broadcastVentanaMs;
+    }
+
+    public long getLatidoMs() {
+        return latidoMs;
+    }
+
+    public void configurarAntisniping(long ultimosMs, long extensionMs) {
+        this.antisnipingUltimosMs = ultimosMs;
+        this.antisnipingExtensionMs = extensionMs;
+    }
+
+    public long getAntisnipingUltimosMs() {
+        return antisnipingUltimosMs;
+    }
+
+    public long getAntisnipingExtensionMs() {
+        return antisnipingExtensionMs;
+    }
+
+    public void configurarSalida(int capacidad, ColaSalida.Politica politica) {
+        this.capacidadSalida = capacidad;
+        this.politicaSalida = politica;
+    }
+
+    /**
+     * Cola de salida para una sesión nueva, con la capacidad y la política
+     * configuradas
+     */
+    ColaSalida crearColaSalida() {
+        return new ColaSalida(capacidadSalida, politicaSalida);
+    }
+
+    /**
+     * Deja de abrir subastas: las abiertas siguen hasta su cierre y no se
+     * reinician. Lo usa el nodo de un cluster al apagarse.
+     */
+    public void drenar() {
+        drenando = true;
+    }
+
+    public boolean estaDrenando() {
+        return drenando;
+    }
+
+    public int getNumeroSubastas() {
+        return subastas.size();
+    }
+}
@@ -0,0 +1,210 @@
+package socket.conconexion.servidor;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Envía el diario de las subastas a los servidores de respaldo
+ * (RespaldoSubastas) conectados a --replicacion-puerto. Cada registro es el
+ * mismo que se escribe en el diario (INICIO, PROPUESTA, PLAZO, FIN con su
+ * longitud y crc32). Quien acepta una propuesta solo lo encola en la cola
+ * acotada de cada respaldo; el hilo emisor de cada uno agrupa lo pendiente
+ * y lo escribe de una vez, sin esperar confirmación, así que replicar no
+ * añade una ida y vuelta a la propuesta.
+ * Un respaldo lento o atascado solo retrasa a su propio emisor. Si su cola
+ * se llena (COLA_MAXIMA registros) se le desconecta: el primario no acumula
+ * memoria por él, y al reconectar recibe el estado completo de nuevo.
+ * Un respaldo recién conectado recibe primero el estado completo
+ * (INSTANTANEA y los registros que recrean cada subasta abierta) y después
+ * el flujo. Sin registros durante LATIDO_MS se envía un LATIDO para que el
+ * respaldo distinga un primario callado de uno caído.
+ * El flujo no lleva autenticación y contiene todo el estado de las
+ * subastas, así que por defecto solo escucha en 127.0.0.1
+ * (--replicacion-interfaz para respaldos en otras máquinas de una red
+ * interna).
+ * <pre>
+ * INSTANTANEA = (nada): el respaldo descarta su estado; sigue el completo
+ * LATIDO      = (nada)
+ * </pre>
+ * @author Sistema de Subasta
+ */
+final class ReplicadorSubastas {
+    static final byte LATIDO = 5;
+    static final byte INSTANTANEA = 6;
+
+    static final long LATIDO_MS = 200;
+    private static final int TAMANIO_BUFFER_ENVIO = 64 * 1024;
+    private static final int LOTE_MAXIMO = 4096;
+    // Registros pendientes por respaldo antes de darlo por rezagado
+    static final int COLA_MAXIMA = 64 * 1024;
+
+    private static final byte[] REGISTRO_LATIDO = registroVacio(LATIDO);
+    private static final byte[] REGISTRO_INSTANTANEA = registroVacio(INSTANTANEA);
+
+    // Se recorre en cada registro y cambia solo al conectar o perder un respaldo
+    private final List<Respaldo> respaldos = new CopyOnWriteArrayList<>();
+
+    // Registros que recrean el estado actual, para los respaldos nuevos
+    private volatile Supplier<List<byte[]>> estado;
+
+    private static final class Respaldo {
+        final Socket socket;
+        final String nombre;
+        final ArrayBlockingQueue<byte[]> pendientes = new ArrayBlockingQueue<>(COLA_MAXIMA);
+        final AtomicBoolean retirado = new AtomicBoolean(false);
+
+        Respaldo(Socket socket) {
+            this.socket = socket;
+            this.nombre = socket.getInetAddress().getHostAddress() + ":" + socket.getPort();
+        }
+    }
+
+    private ReplicadorSubastas(Supplier<List<byte[]>> estado) {
+        this.estado = estado;
+    }
+
+    /**
+     * Escucha respaldos en la interfaz y el puerto indicados
+     * @param estado registros que recrean el estado actual
+     */
+    static ReplicadorSubastas abrir(String interfaz, int puerto, Supplier<List<byte[]>> estado)
+            throws IOException {
+        ReplicadorSubastas replicador = new ReplicadorSubastas(estado);
+        ServerSocket socketRespaldos = new ServerSocket();
+        socketRespaldos.bind(new InetSocketAddress(interfaz, puerto));
+
+        Thread aceptador = new Thread(() -> replicador.aceptar(socketRespaldos), "replicacion-aceptador");
+        aceptador.setDaemon(true);
+        aceptador.start();
+
+        Bitacora.info("REPLICACION", "Respaldos en " + interfaz + ":" + puerto);
+        return replicador;
+    }
+
+    /**
+     * Estado de las subastas abiertas del registro, para cuando este
+     * servidor es el primario
+     */
+    static Supplier<List<byte[]>> estadoDe(RegistroSubastas registro) {
+        return () -> {
+            List<byte[]> registros = new ArrayList<>();
+            for (DiarioSubastas.SubastaRecuperada subasta : registro.capturar()) {
+                DiarioSubastas.codificar(subasta, registros);
+            }
+            return registros;
+        };
+    }
+
+    void setEstado(Supplier<List<byte[]>> estado) {
+        this.estado = estado;
+    }
+
+    /**
+     * Encola un registro para todos los respaldos; no bloquea. El respaldo
+     * cuya cola está llena se desconecta.
+     */
+    void enviar(byte[] registro) {
+        for (Respaldo respaldo : respaldos) {
+            if (!respaldo.pendientes.offer(registro)) {
+                retirar(respaldo, "se quedó " + COLA_MAXIMA + " registros atrás");
+            }
+        }
+    }
+
+    int getNumeroRespaldos() {
+        return respaldos.size();
+    }
+
+    private void aceptar(ServerSocket socketRespaldos) {
+        while (true) {
+            try {
+                Socket socket = socketRespaldos.accept();
+                socket.setTcpNoDelay(true);
+                // Se encola desde antes de capturar su estado: nada se pierde entre ambos
+                Respaldo respaldo = new Respaldo(socket);
+                respaldos.add(respaldo);
+                Thread emisor = new Thread(() -> emitir(respaldo), "replicacion-" + respaldo.nombre);
+                emisor.setDaemon(true);
+                emisor.start();
+            } catch (IOException e) {
+                Bitacora.error("REPLICACION", "Aceptando respaldo: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Hilo emisor de un respaldo: le da el estado y después le escribe por
+     * lotes lo encolado, o un LATIDO si no llega nada
+     */
+    private void emitir(Respaldo respaldo) {
+        List<byte[]> grupo = new ArrayList<>();
+        try {
+            OutputStream salida = new BufferedOutputStream(respaldo.socket.getOutputStream(),
+                                                           TAMANIO_BUFFER_ENVIO);
+            // El estado se captura después de encolarlo: lo que ya esté en la
+            // cola puede repetirse, y aplicarlo dos veces no cambia nada
+            List<byte[]> registros = estado.get();
+            salida.write(REGISTRO_INSTANTANEA);
+            for (byte[] registro : registros) {
+                salida.write(registro);
+            }
+            salida.flush();
+            Bitacora.info("REPLICACION", "Respaldo " + respaldo.nombre + " conectado (" +
+                          registros.size() + " registros de estado)");
+
+            while (!respaldo.retirado.get()) {
+                byte[] primero = respaldo.pendientes.poll(LATIDO_MS, TimeUnit.MILLISECONDS);
+                grupo.add(primero == null ? REGISTRO_LATIDO : primero);
+                respaldo.pendientes.drainTo(grupo, LOTE_MAXIMO);
+                for (byte[] registro : grupo) {
+                    salida.write(registro);
+                }
+                salida.flush();
+                grupo.clear();
+            }
+        } catch (IOException | RuntimeException e) {
+            retirar(respaldo, e.getMessage());
+        } catch (InterruptedException e) {
+            retirar(respaldo, "emisor interrumpido");
+        }
+    }
+
+    /**
+     * Deja de replicar a un respaldo; cerrar su socket desbloquea a su
+     * emisor si estaba escribiendo
+     */
+    private void retirar(Respaldo respaldo, String motivo) {
+        if (respaldo.retirado.compareAndSet(false, true)) {
+            respaldos.remove(respaldo);
+            respaldo.pendientes.clear();
+            Bitacora.aviso("REPLICACION", "Respaldo " + respaldo.nombre + " desconectado: " + motivo);
+            cerrar(respaldo.socket);
+        }
+    }
+
+    private static void cerrar(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Ya estaba cerrado
+        }
+    }
+
+    private static byte[] registroVacio(byte tipo) {
+        ByteBuffer datos = ByteBuffer.allocate(1 + 8);
+        datos.put(tipo).putLong(0);
+        return DiarioSubastas.enmarcar(datos);
+    }
+}
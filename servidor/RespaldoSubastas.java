@@ -0,0 +1,173 @@
+package socket.conconexion.servidor;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Servidor de respaldo (--replica-de): sigue el diario que envía el
+ * primario (ReplicadorSubastas) y mantiene en memoria el estado de sus
+ * subastas abiertas, igual que al releer el diario tras una caída. No
+ * atiende clientes mientras el primario responda.
+ * Si ninguna de sus fuentes responde durante --relevo-ms toma el relevo:
+ * reanuda las subastas con el mismo líder, ranking y plazo, y el servidor
+ * empieza a aceptar clientes.
+ * Las fuentes se prueban en orden, así que un segundo respaldo puede
+ * seguir al primero (que le reenvía lo que recibe) y, si ese cae, al
+ * primario: cuando el primario cae, el primer respaldo toma el relevo y
+ * los demás siguen conectados a él.
+ * @author Sistema de Subasta
+ */
+final class RespaldoSubastas {
+    private static final int ESPERA_CONEXION_MS = 1000;
+    private static final long REINTENTO_MS = 200;
+    // Sin recibir nada (ni latidos) durante este tiempo la fuente se da por caída
+    private static final int SILENCIO_MAXIMO_MS = (int) (5 * ReplicadorSubastas.LATIDO_MS);
+
+    private final List<String> fuentes;
+    private final long relevoMs;
+    // Respaldos que siguen a este (puede ser null)
+    private final ReplicadorSubastas reenvio;
+
+    // Estado replicado; también lo lee el hilo emisor del reenvío
+    private final Map<Long, DiarioSubastas.SubastaRecuperada> abiertas = new LinkedHashMap<>();
+    private int numeroMaximo = 0;
+    private long registros = 0;
+
+    RespaldoSubastas(List<String> fuentes, long relevoMs, ReplicadorSubastas reenvio) {
+        this.fuentes = fuentes;
+        this.relevoMs = relevoMs;
+        this.reenvio = reenvio;
+        if (reenvio != null) {
+            reenvio.setEstado(this::capturar);
+        }
+    }
+
+    /**
+     * Sigue a la primera fuente que responda. Vuelve cuando, tras haber
+     * seguido a alguna, ninguna responde durante relevoMs.
+     */
+    void seguir() throws InterruptedException {
+        Bitacora.info("RESPALDO", "Respaldo de " + fuentes + "; relevo tras " + relevoMs + " ms sin fuente");
+        boolean conectado = false;
+        long sinFuenteDesde = System.currentTimeMillis();
+        while (true) {
+            for (String fuente : fuentes) {
+                if (seguirA(fuente)) {
+                    conectado = true;
+                    sinFuenteDesde = System.currentTimeMillis();
+                    break;
+                }
+            }
+            // Sin haber visto nunca al primario no hay estado que continuar
+            if (conectado && System.currentTimeMillis() - sinFuenteDesde >= relevoMs) {
+                return;
+            }
+            Thread.sleep(REINTENTO_MS);
+        }
+    }
+
+    /**
+     * Aplica lo que llegue de la fuente hasta perderla
+     * @return true si llegó a recibir su estado
+     */
+    private boolean seguirA(String fuente) {
+        int separador = fuente.lastIndexOf(':');
+        boolean recibido = false;
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(fuente.substring(0, separador),
+                           Integer.parseInt(fuente.substring(separador + 1))), ESPERA_CONEXION_MS);
+            socket.setSoTimeout(SILENCIO_MAXIMO_MS);
+            DataInputStream entrada = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            CRC32 crc = new CRC32();
+            Bitacora.info("RESPALDO", "Siguiendo a " + fuente);
+
+            while (true) {
+                int longitud = entrada.readInt();
+                int crcEsperado = entrada.readInt();
+                if (longitud <= 0 || longitud > DiarioSubastas.TAMANIO_MAXIMO_REGISTRO) {
+                    throw new IOException("Registro de longitud invalida: " + longitud);
+                }
+                byte[] registro = new byte[DiarioSubastas.CABECERA + longitud];
+                ByteBuffer.wrap(registro).putInt(longitud).putInt(crcEsperado);
+                entrada.readFully(registro, DiarioSubastas.CABECERA, longitud);
+                crc.reset();
+                crc.update(registro, DiarioSubastas.CABECERA, longitud);
+                if ((int) crc.getValue() != crcEsperado) {
+                    throw new IOException("Registro corrupto");
+                }
+
+                byte tipo = registro[DiarioSubastas.CABECERA];
+                if (tipo == ReplicadorSubastas.LATIDO) {
+                    continue;
+                }
+                if (tipo == ReplicadorSubastas.INSTANTANEA) {
+                    recibido = true;
+                }
+                aplicar(tipo, ByteBuffer.wrap(registro, DiarioSubastas.CABECERA, longitud));
+                if (reenvio != null) {
+                    reenvio.enviar(registro);
+                }
+            }
+        } catch (EOFException e) {
+            if (recibido) {
+                Bitacora.aviso("RESPALDO", "La fuente " + fuente + " cerró la conexión (" +
+                               getNumeroSubastas() + " subastas, " + registros + " registros aplicados)");
+            }
+        } catch (IOException | RuntimeException e) {
+            if (recibido) {
+                Bitacora.aviso("RESPALDO", "Perdida la fuente " + fuente + ": " + e.getMessage() +
+                               " (" + getNumeroSubastas() + " subastas, " + registros + " registros aplicados)");
+            }
+        }
+        return recibido;
+    }
+
+    private synchronized void aplicar(byte tipo, ByteBuffer datos) {
+        if (tipo == ReplicadorSubastas.INSTANTANEA) {
+            // La fuente manda su estado completo a continuación
+            abiertas.clear();
+            return;
+        }
+        numeroMaximo = Math.max(numeroMaximo, DiarioSubastas.aplicar(datos, abiertas));
+        registros++;
+    }
+
+    /**
+     * Registros que recrean el estado replicado, para los respaldos que
+     * siguen a este
+     */
+    private synchronized List<byte[]> capturar() {
+        List<byte[]> estado = new ArrayList<>();
+        for (DiarioSubastas.SubastaRecuperada subasta : abiertas.values()) {
+            DiarioSubastas.codificar(subasta, estado);
+        }
+        return estado;
+    }
+
+    private synchronized int getNumeroSubastas() {
+        return abiertas.size();
+    }
+
+    /**
+     * Reanuda en el registro las subastas replicadas. Las que vencieron
+     * mientras no había primario terminan enseguida.
+     */
+    synchronized void tomarRelevo(RegistroSubastas registro) {
+        Bitacora.aviso("RESPALDO", "Tomando el relevo con " + abiertas.size() + " subastas abiertas " +
+                       abiertas.keySet());
+        registro.reanudarNumeracion(numeroMaximo);
+        for (DiarioSubastas.SubastaRecuperada subasta : abiertas.values()) {
+            registro.restaurar(subasta);
+        }
+    }
+}
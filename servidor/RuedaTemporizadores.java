@@ -0,0 +1,262 @@
+package socket.conconexion.servidor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rueda de temporizadores (hashed wheel) compartida por todo el proceso.
+ * Un solo hilo avanza una ranura cada tickMs y ejecuta las tareas vencidas
+ * de esa ranura; una tarea a mas de una vuelta de distancia espera contando
+ * rondas. Programar o cancelar es O(1) y no crea hilos, de modo que miles
+ * de subastas (plazos, broadcasts, latidos) y sesiones comparten el mismo.
+ * Las tareas se ejecutan en el hilo de la rueda y deben ser cortas: solo
+ * encolar mensajes o cambiar estado, nunca esperar a un socket.
+ * @author Sistema de Subasta
+ */
+public final class RuedaTemporizadores {
+    private static final long TICK_MS = 10;
+    private static final int RANURAS = 512; // una vuelta = 5,12 segundos
+
+    private static final class Compartida {
+        static final RuedaTemporizadores RUEDA =
+            new RuedaTemporizadores("temporizadores", TICK_MS, RANURAS);
+    }
+
+    private final long tickMs;
+    private final int mascara;
+    private final long inicio;
+    private final Thread hilo;
+
+    // Cabeza de la lista de cada ranura; solo las toca el hilo de la rueda
+    private final Tarea[] ranuras;
+    private long tickActual = 0;
+
+    // Tareas nuevas o adelantadas, que el hilo de la rueda coloca en su ranura
+    private final ConcurrentLinkedQueue<Tarea> altas = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendientes = new AtomicInteger();
+
+    /**
+     * Tarea programada. Cancelarla o retrasarla solo cambia su estado; la
+     * rueda la quita o la reubica cuando llega a su ranura.
+     */
+    public static final class Tarea {
+        private static final int PENDIENTE = 0;
+        private static final int CANCELADA = 1;
+        private static final int EJECUTADA = 2;
+
+        private final RuedaTemporizadores rueda;
+        private final Runnable accion;
+        private final long periodoMs;
+        private final AtomicInteger estado = new AtomicInteger(PENDIENTE);
+        private volatile long plazo;
+
+        // Posición en la rueda (solo del hilo de la rueda)
+        private long plazoEnRanura;
+        private long rondas;
+        private int ranura = -1;
+        private Tarea anterior;
+        private Tarea siguiente;
+
+        private Tarea(RuedaTemporizadores rueda, Runnable accion, long plazo, long periodoMs) {
+            this.rueda = rueda;
+            this.accion = accion;
+            this.plazo = plazo;
+            this.periodoMs = periodoMs;
+        }
+
+        /**
+         * @return false si ya se había ejecutado o cancelado
+         */
+        public boolean cancelar() {
+            if (estado.compareAndSet(PENDIENTE, CANCELADA)) {
+                rueda.pendientes.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Mueve el plazo a retardoMs desde ahora. Retrasarlo es solo una
+         * escritura; adelantarlo la vuelve a pasar por la cola de altas.
+         * @return false si ya se ejecutó o se canceló
+         */
+        public boolean reprogramar(long retardoMs) {
+            if (estado.get() != PENDIENTE) {
+                return false;
+            }
+            long nuevoPlazo = System.currentTimeMillis() + Math.max(0, retardoMs);
+            long plazoAnterior = plazo;
+            plazo = nuevoPlazo;
+            if (nuevoPlazo < plazoAnterior) {
+                rueda.altas.add(this);
+            }
+            return true;
+        }
+
+        public long getPlazo() {
+            return plazo;
+        }
+
+        public boolean estaPendiente() {
+            return estado.get() == PENDIENTE;
+        }
+    }
+
+    /**
+     * Rueda del proceso, creada al primer uso
+     */
+    public static RuedaTemporizadores compartida() {
+        return Compartida.RUEDA;
+    }
+
+    public RuedaTemporizadores(String nombre, long tickMs, int numeroRanuras) {
+        int tamanio = Integer.highestOneBit(Math.max(1, numeroRanuras - 1)) << 1;
+        this.tickMs = tickMs;
+        this.mascara = tamanio - 1;
+        this.ranuras = new Tarea[tamanio];
+        this.inicio = System.currentTimeMillis();
+        this.hilo = new Thread(this::girar, nombre);
+        this.hilo.setDaemon(true);
+        this.hilo.start();
+    }
+
+    /**
+     * Ejecuta la acción una vez dentro de retardoMs
+     */
+    public Tarea programar(Runnable accion, long retardoMs) {
+        return alta(accion, retardoMs, 0);
+    }
+
+    /**
+     * Ejecuta la acción dentro de retardoMs y después cada periodoMs
+     */
+    public Tarea programarPeriodica(Runnable accion, long retardoMs, long periodoMs) {
+        if (periodoMs <= 0) {
+            throw new IllegalArgumentException("El periodo debe ser mayor que 0");
+        }
+        return alta(accion, retardoMs, periodoMs);
+    }
+
+    private Tarea alta(Runnable accion, long retardoMs, long periodoMs) {
+        Tarea tarea = new Tarea(this, accion,
+            System.currentTimeMillis() + Math.max(0, retardoMs), periodoMs);
+        pendientes.incrementAndGet();
+        altas.add(tarea);
+        return tarea;
+    }
+
+    /**
+     * Tareas programadas que aun no se ejecutaron ni se cancelaron
+     */
+    public int getPendientes() {
+        return pendientes.get();
+    }
+
+    /**
+     * Hilo de la rueda: espera al siguiente tick, coloca las altas y
+     * atiende la ranura que toca
+     */
+    private void girar() {
+        List<Tarea> reubicar = new ArrayList<>();
+        while (true) {
+            long espera = inicio + (tickActual + 1) * tickMs - System.currentTimeMillis();
+            if (espera > 0) {
+                try {
+                    Thread.sleep(espera);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+
+            Tarea alta;
+            while ((alta = altas.poll()) != null) {
+                if (alta.estado.get() == Tarea.PENDIENTE) {
+                    quitar(alta);
+                    colocar(alta);
+                }
+            }
+
+            atenderRanura((int) (tickActual & mascara), System.currentTimeMillis(), reubicar);
+            tickActual++;
+            for (Tarea tarea : reubicar) {
+                colocar(tarea);
+            }
+            reubicar.clear();
+        }
+    }
+
+    private void atenderRanura(int indice, long ahora, List<Tarea> reubicar) {
+        Tarea tarea = ranuras[indice];
+        while (tarea != null) {
+            Tarea siguiente = tarea.siguiente;
+            if (tarea.estado.get() != Tarea.PENDIENTE) {
+                quitar(tarea);
+            } else if (tarea.rondas > 0) {
+                tarea.rondas--;
+            } else {
+                quitar(tarea);
+                if (tarea.plazo > tarea.plazoEnRanura && tarea.plazo > ahora) {
+                    // Se retrasó después de colocarla
+                    reubicar.add(tarea);
+                } else {
+                    ejecutar(tarea, ahora, reubicar);
+                }
+            }
+            tarea = siguiente;
+        }
+    }
+
+    private void ejecutar(Tarea tarea, long ahora, List<Tarea> reubicar) {
+        if (tarea.periodoMs == 0 && !tarea.estado.compareAndSet(Tarea.PENDIENTE, Tarea.EJECUTADA)) {
+            return;
+        }
+        if (tarea.periodoMs == 0) {
+            pendientes.decrementAndGet();
+        }
+        try {
+            tarea.accion.run();
+        } catch (RuntimeException e) {
+            Bitacora.error("ERROR", "Tarea de temporizador: " + e, e);
+        }
+        if (tarea.periodoMs > 0 && tarea.estado.get() == Tarea.PENDIENTE) {
+            tarea.plazo = Math.max(tarea.plazo + tarea.periodoMs, ahora);
+            reubicar.add(tarea);
+        }
+    }
+
+    /**
+     * Pone la tarea en la ranura de su plazo, contando las vueltas que faltan
+     */
+    private void colocar(Tarea tarea) {
+        long plazo = tarea.plazo;
+        long tickPlazo = Math.max(tickActual, (plazo - inicio + tickMs - 1) / tickMs);
+        tarea.plazoEnRanura = plazo;
+        tarea.rondas = (tickPlazo - tickActual) / ranuras.length;
+        tarea.ranura = (int) (tickPlazo & mascara);
+        tarea.anterior = null;
+        tarea.siguiente = ranuras[tarea.ranura];
+        if (tarea.siguiente != null) {
+            tarea.siguiente.anterior = tarea;
+        }
+        ranuras[tarea.ranura] = tarea;
+    }
+
+    private void quitar(Tarea tarea) {
+        if (tarea.ranura < 0) {
+            return;
+        }
+        if (tarea.anterior != null) {
+            tarea.anterior.siguiente = tarea.siguiente;
+        } else {
+            ranuras[tarea.ranura] = tarea.siguiente;
+        }
+        if (tarea.siguiente != null) {
+            tarea.siguiente.anterior = tarea.anterior;
+        }
+        tarea.anterior = null;
+        tarea.siguiente = null;
+        tarea.ranura = -1;
+    }
+}
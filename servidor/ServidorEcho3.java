@@ -1,6 +1,7 @@
 package socket.conconexion.servidor;
 
 import java.net.*;
+import java.util.concurrent.Executor;
 
 /**
  * Este módulo contiene la lógica de aplicación de un servidor Echo
@@ -11,11 +12,13 @@ import java.net.*;
  */
 public class ServidorEcho3 {
 	public static void main(String[] args) {
-		int puertoServidor = 7; // Puerto por defecto
-
-		if (args.length == 1 )
-			puertoServidor = Integer.parseInt(args[0]);
+		// Puerto por defecto 7; --ejecutor y --max-sesiones eligen como se
+		// ejecutan las sesiones (ver EjecutorSesiones)
+		ConfiguracionServidor config = ConfiguracionServidor.desdeArgumentos(args, 7);
+		int puertoServidor = config.getPuerto();
 		try {
+			Executor ejecutor = EjecutorSesiones.crear(
+				config.getEjecutor(), config.getMaxSesiones(), "echo-sesion");
 			// instancia un socket stream para aceptar
 			// las conexiones
 			ServerSocket miSocketConexion = new ServerSocket(puertoServidor);
@@ -26,8 +29,10 @@ public class ServidorEcho3 {
 				MiSocketStream miSocketDatos = new MiSocketStream(miSocketConexion.accept( ));
 				/**/    System.out.println("conexión aceptada");
 				// Arranca un hilo para manejar la sesión de cliente
-				Thread elHilo = new Thread(new HiloServidorEcho(miSocketDatos));
-				elHilo.start();
+				if (!EjecutorSesiones.ejecutar(ejecutor, new HiloServidorEcho(miSocketDatos))) {
+					/**/    System.out.println("Servidor lleno, conexión rechazada");
+					miSocketDatos.close( );
+				}
 				// y continua con el siguiente cliente
 			} // fin de while infinito
 		} // fin de try
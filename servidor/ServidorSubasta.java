@@ -1,340 +1,558 @@
 package socket.conconexion.servidor;
 
 import java.net.*;
-import java.util.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
 import java.util.concurrent.*;
 
 /**
- * Servidor de Subasta que acepta multiples clientes, recibe sus propuestas,
- * espera 2 minutos y notifica a todos los clientes sobre el ganador.
- * Después de cada subasta, se reinicia automáticamente para una nueva sesión.
+ * Servidor de Subasta que acepta multiples clientes y atiende muchas
+ * subastas a la vez en el mismo proceso. Cada cliente se une a una subasta
+ * por su ID (UNIRSE:<id>) o, si empieza directamente a ofertar, a la subasta
+ * por defecto. Cada subasta dura 2 minutos, notifica a sus participantes el
+ * ganador y se reinicia automáticamente con el siguiente participante.
  * @author Sistema de Subasta
  */
 public class ServidorSubasta {
-    // Estados de la subasta
-    private enum EstadoSubasta {
-        ESPERANDO,   // Esperando clientes para iniciar
-        ACTIVA,      // Subasta en curso
-        FINALIZADA   // Subasta terminada, procesando ganador
-    }
+    private static final RegistroSubastas registro = RegistroSubastas.crear();
+    private static final LimitadorPropuestas limitador = new LimitadorPropuestas();
 
-    private static final int TIEMPO_SUBASTA = 120000; // Dos minutos en milisegundos
-    private static List<HiloClienteSubasta> clientes = new CopyOnWriteArrayList<>();
-    private static volatile EstadoSubasta estadoActual = EstadoSubasta.ESPERANDO;
-    private static long tiempoInicio;
-    private static Timer timerSubasta;
-    private static Timer timerBroadcast;
+    // Respuesta a quien intenta abrir una subasta en un nodo que sale del cluster
+    private static final String DRENANDO = "Nodo saliendo del cluster, vuelve a conectar";
+    private static final String SESION_DESCONOCIDA = "Sesion desconocida o caducada";
 
-    // Propuesta más alta actual (thread-safe)
-    private static volatile double propuestaMasAlta = 0.0;
-    private static volatile String ipPropuestaMasAlta = "ninguno";
-    private static final Object lock = new Object();
-    private static int numeroSubasta = 0;
+    // Primera linea de una conexión reenviada por el enrutador: REENVIADO:<clave>:<ip>
+    static final String REENVIADO = "REENVIADO:";
 
-    public static void main(String[] args) {
-        int puertoServidor = 8080; // puerto por defecto para subasta
+    // Ejecutor de las sesiones del motor bloqueante y de sus escritores
+    private static Executor ejecutorSesiones;
+    private static Executor ejecutorEscritores;
 
-        if (args.length == 1)
-            puertoServidor = Integer.parseInt(args[0]);
+    public static void main(String[] args) {
+        ConfiguracionServidor config = ConfiguracionServidor.desdeArgumentos(args);
+        int puertoServidor = config.getPuerto(); // 8080 por defecto para subasta
 
         try {
-            ServerSocket miSocketConexion = new ServerSocket(puertoServidor);
-            System.out.println("===========================================");
-            System.out.println("Servidor de Subasta iniciado en puerto " + puertoServidor);
-            System.out.println("Modo: CONTINUO (multiples sesiones)");
-            System.out.println("===========================================");
-
-            // Loop infinito para manejar multiples sesiones de subasta
-            while (true) {
-                esperarYProcesarSubasta(miSocketConexion);
+            Bitacora.configurar(config.getLogNivel(), config.getLogFormato(), config.getLogArchivo(),
+                                config.getLogMaxMb() * 1024 * 1024, config.getLogArchivos());
+            Bitacora.info("INICIO", "Servidor de Subasta iniciado en puerto " + puertoServidor);
+            Bitacora.info("INICIO", "Modo: CONTINUO (multiples subastas)");
+            Bitacora.info("INICIO", "Motor: " + config.getMotor());
+            Bitacora.info("INICIO", "Broadcast: " + config.getBroadcast());
+            registro.configurarBroadcast(config.getBroadcast(),
+                config.getBroadcastVentanaMs(), config.getLatidoMs());
+            registro.configurarSalida(config.getColaSalida(), config.getPoliticaSalida());
+            limitador.configurar(config.getLimiteSesion(), config.getRafagaSesion(),
+                                 config.getLimiteIp(), config.getRafagaIp());
+            limitador.iniciar();
+            Bitacora.info("INICIO", "Limite de propuestas: " + config.getLimiteSesion() +
+                          "/s por sesion, " + config.getLimiteIp() + "/s por IP");
+            if (config.getAntisnipingSeg() > 0) {
+                registro.configurarAntisniping(config.getAntisnipingSeg() * 1000,
+                                               config.getAntisnipingExtensionSeg() * 1000);
+                Bitacora.info("INICIO", "Anti-sniping: +" + config.getAntisnipingExtensionSeg() +
+                              " s por alta en los ultimos " + config.getAntisnipingSeg() + " s");
+            }
+            registro.getSesiones().configurar(config.getReanudacionSeg() * 1000);
+            Bitacora.info("INICIO", "Sesiones reanudables durante " + config.getReanudacionSeg() +
+                          " s tras perder la conexion");
+            registro.getVigilante().configurar(config.getPingSeg() * 1000, config.getInactividadSeg() * 1000);
+            if (config.getPingSeg() == 0 && config.getInactividadSeg() == 0) {
+                Bitacora.info("INICIO", "Latidos: desactivados");
+            } else {
+                Bitacora.info("INICIO", "Latidos: PING tras " + config.getPingSeg() + " s sin recibir nada, " +
+                              "cierre tras " + config.getInactividadSeg() + " s (0 = nunca)");
+            }
+            Bitacora.info("INICIO", "Cola de salida: " + config.getColaSalida() +
+                          " mensajes (" + config.getPoliticaSalida() + ")");
+            Bitacora.info("INICIO", "Bitacora: nivel " + config.getLogNivel() + ", " +
+                          (config.getLogArchivo() == null ? "consola" : config.getLogArchivo()));
+            registro.getMetricas().publicar(config.getMetricasPuerto());
+
+            ReplicadorSubastas replicador = null;
+            if (config.getReplicacionPuerto() > 0) {
+                replicador = ReplicadorSubastas.abrir(config.getReplicacionInterfaz(),
+                                                      config.getReplicacionPuerto(),
+                                                      ReplicadorSubastas.estadoDe(registro));
             }
 
-        } catch (Exception ex) {
-            ex.printStackTrace();
-        }
-    }
+            // Un respaldo no atiende clientes hasta tomar el relevo del primario
+            if (config.getReplicaDe() != null) {
+                RespaldoSubastas respaldo = new RespaldoSubastas(config.getReplicaDe(),
+                                                                 config.getRelevoMs(), replicador);
+                respaldo.seguir();
+                if (replicador != null) {
+                    DiarioSubastas.replicar(registro, replicador);
+                }
+                respaldo.tomarRelevo(registro);
+            }
 
-    /**
-     * Espera clientes, procesa una sesión de subasta y resetea
-     */
-    private static void esperarYProcesarSubasta(ServerSocket socketConexion) {
-        try {
-            numeroSubasta++;
-            System.out.println("\n╔═══════════════════════════════════════════╗");
-            System.out.println("║  SESION #" + numeroSubasta + " - ESPERANDO PARTICIPANTES   ║");
-            System.out.println("╚═══════════════════════════════════════════╝");
-
-            estadoActual = EstadoSubasta.ESPERANDO;
-
-            // Aceptar clientes
-            while (estadoActual != EstadoSubasta.FINALIZADA) {
-                try {
-                    System.out.println("[ESPERANDO] Aguardando conexiones...");
-                    Socket socketCliente = socketConexion.accept();
-
-                    String ipCliente = socketCliente.getInetAddress().getHostAddress();
-                    System.out.println("[NUEVO CLIENTE] Conectado: " + ipCliente);
-
-                    // Si es el primer cliente y estamos esperando, iniciar subasta
-                    if (estadoActual == EstadoSubasta.ESPERANDO && clientes.isEmpty()) {
-                        iniciarNuevaSubasta();
-                    }
-
-                    // Verificar si aun hay tiempo
-                    if (estadoActual == EstadoSubasta.ACTIVA) {
-                        long tiempoTranscurrido = System.currentTimeMillis() - tiempoInicio;
-                        if (tiempoTranscurrido >= TIEMPO_SUBASTA) {
-                            System.out.println("[RECHAZADO] Subasta cerrada");
-                            MiSocketStream tempSocket = new MiSocketStream(socketCliente);
-                            tempSocket.enviaMensaje("ERROR:Subasta cerrada");
-                            tempSocket.close();
-                            continue;
-                        }
-                    }
-
-                    // Crear hilo para manejar el cliente
-                    HiloClienteSubasta hiloCliente = new HiloClienteSubasta(
-                        new MiSocketStream(socketCliente),
-                        ipCliente
-                    );
-                    clientes.add(hiloCliente);
-
-                    Thread thread = new Thread(hiloCliente);
-                    thread.start();
-
-                    // Notificar al cliente que la subasta ha iniciado
-                    if (estadoActual == EstadoSubasta.ACTIVA) {
-                        hiloCliente.notificarInicioSubasta(getTiempoRestante());
-                    }
-
-                    System.out.println("[INFO] Total participantes: " + clientes.size());
-
-                } catch (SocketException e) {
-                    if (estadoActual == EstadoSubasta.FINALIZADA) {
-                        System.out.println("[INFO] Finalizando sesion...");
-                    }
+            // Reanudar las subastas abiertas antes de aceptar clientes
+            if (config.getDiario() != null) {
+                DiarioSubastas diario = DiarioSubastas.abrir(Paths.get(config.getDiario()),
+                    config.getDiarioFsyncMs(), config.getDiarioFsyncLote(), registro);
+                if (config.getReplicaDe() != null) {
+                    // El diario del respaldo empieza con lo recibido del primario
+                    diario.tomarInstantanea();
                 }
+                diario.programarInstantaneas(config.getDiarioInstantaneaSeg() * 1000);
             }
 
-            // Esperar un poco para asegurar que todos los mensajes se enviaron
-            Thread.sleep(2000);
+            if (replicador != null) {
+                DiarioSubastas.replicar(registro, replicador);
+                replicador.setEstado(ReplicadorSubastas.estadoDe(registro));
+            }
+
+            if (config.getMotor() == ConfiguracionServidor.Motor.NIO) {
+                // Los bucles de eventos mantienen vivo el proceso
+                new MotorNioSubasta(puertoServidor, config.getHilosNio()).iniciar();
+                unirseAlCluster(config);
+                return;
+            }
 
-            // Resetear para la siguiente sesión
-            resetearEstado();
+            Bitacora.info("INICIO", "Ejecutor de sesiones: " + config.getEjecutor());
+            ejecutorSesiones = EjecutorSesiones.crear(
+                config.getEjecutor(), config.getMaxSesiones(), "subasta-sesion");
+            ejecutorEscritores = EjecutorSesiones.crearEscritores(
+                config.getEjecutor(), config.getMaxSesiones(), "subasta-escritor");
+
+            ServerSocket miSocketConexion = new ServerSocket(puertoServidor);
+            unirseAlCluster(config);
+            aceptarClientes(miSocketConexion);
 
         } catch (Exception ex) {
-            ex.printStackTrace();
+            Bitacora.error("ERROR", "Arrancando el servidor: " + ex.getMessage(), ex);
         }
     }
 
     /**
-     * Inicia una nueva sesión de subasta
+     * Con --cluster el nodo se anuncia al enrutador, ya escuchando en su puerto
      */
-    private static void iniciarNuevaSubasta() {
-        estadoActual = EstadoSubasta.ACTIVA;
-        tiempoInicio = System.currentTimeMillis();
-
-        System.out.println("\n*** SUBASTA #" + numeroSubasta + " INICIADA ***");
-        System.out.println("Duracion: " + (TIEMPO_SUBASTA/1000) + " segundos");
-
-        // Cancelar timers anteriores si existen
-        if (timerSubasta != null) {
-            timerSubasta.cancel();
+    private static void unirseAlCluster(ConfiguracionServidor config) {
+        if (config.getCluster() != null) {
+            Bitacora.info("INICIO", "Cluster: enrutador " + config.getCluster() + ", nodo " +
+                          config.getAnunciar() + ", drenado " + config.getDrenadoSeg() + " s");
+            NodoCluster.unirse(config, registro);
         }
-        if (timerBroadcast != null) {
-            timerBroadcast.cancel();
-        }
-
-        // Iniciar temporizador de finalización
-        timerSubasta = new Timer();
-        timerSubasta.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                finalizarSubasta();
-            }
-        }, TIEMPO_SUBASTA);
-
-        // Iniciar broadcast periódico
-        iniciarBroadcastPeriodico();
     }
 
     /**
-     * Inicia un temporizador que envía la oferta ganadora cada 5 segundos
+     * Acepta clientes indefinidamente; cada uno elige su subasta con su
+     * primer mensaje, así que aquí solo se arranca su hilo
      */
-    private static void iniciarBroadcastPeriodico() {
-        timerBroadcast = new Timer();
-        timerBroadcast.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                if (estadoActual != EstadoSubasta.ACTIVA) {
-                    timerBroadcast.cancel();
-                    return;
+    private static void aceptarClientes(ServerSocket socketConexion) {
+        while (true) {
+            try {
+                Bitacora.depuracion("ESPERANDO", "Aguardando conexiones...");
+                Socket socketCliente = socketConexion.accept();
+
+                String ipCliente = socketCliente.getInetAddress().getHostAddress();
+                Bitacora.info("NUEVO CLIENTE", "Conectado: " + ipCliente);
+                registro.getMetricas().sesionAbierta();
+
+                // Crear hilo para manejar el cliente
+                HiloClienteSubasta hiloCliente = new HiloClienteSubasta(
+                    new MiSocketStream(socketCliente),
+                    ipCliente,
+                    registro.crearColaSalida(),
+                    ejecutorEscritores
+                );
+
+                if (!EjecutorSesiones.ejecutar(ejecutorSesiones, hiloCliente)) {
+                    Bitacora.aviso("RECHAZADO", "Servidor lleno: " + ipCliente);
+                    hiloCliente.rechazar("Servidor lleno");
                 }
-                enviarActualizacionPeriodica();
-            }
-        }, 5000, 5000);
 
-        System.out.println("[BROADCAST] Actualizaciones cada 5 segundos");
-    }
-
-    /**
-     * Envía la oferta ganadora actual a todos los clientes conectados
-     */
-    private static void enviarActualizacionPeriodica() {
-        if (clientes.isEmpty()) {
-            return;
-        }
-
-        String update = obtenerPropuestaMasAlta() + ":TIEMPO:" + getTiempoRestante();
-        System.out.println("[BROADCAST] Propuesta mas alta: $" + propuestaMasAlta +
-                         " (" + clientes.size() + " clientes)");
-
-        for (HiloClienteSubasta cliente : clientes) {
-            try {
-                cliente.enviarActualizacion(update);
-            } catch (Exception e) {
-                System.out.println("[ERROR] Al enviar actualizacion a " +
-                                 cliente.getIpCliente());
+            } catch (Exception ex) {
+                Bitacora.error("ERROR", "Aceptando conexion: " + ex.getMessage(), ex);
             }
         }
     }
 
     /**
-     * Finaliza la subasta, determina el ganador y notifica a todos los clientes
+     * Procesa un mensaje de un participante y devuelve la respuesta del
+     * protocolo, o null si no hay nada que responder. La usan tanto el
+     * motor bloqueante como el NIO; "FIN", "PING", "PONG" y el saludo del
+     * protocolo binario los resuelve cada sesión.
+     * <pre>
+     * UNIRSE:&lt;id&gt;  -> SUBASTA_INICIADA:TIEMPO:&lt;seg&gt;:SUBASTA:&lt;id&gt;
+     * SUBASTAS      -> SUBASTAS:&lt;id&gt;,&lt;id&gt;,...
+     * SESION        -> SESION:&lt;idSesion&gt; (ID para reanudar tras perder la conexión)
+     * REANUDAR:&lt;idSesion&gt; -> REANUDADA:&lt;idSesion&gt;:SUBASTA:&lt;id o 0&gt;:TIEMPO:&lt;seg&gt;:PETICION:&lt;n&gt;
+     *                  (antes de unirse: la conexión sigue la sesión anterior, en su
+     *                  subasta si sigue abierta; n = última petición aplicada)
+     * DONDE:&lt;id&gt;   -> NODO: (vacío: aquí mismo; el enrutador del cluster da host:puerto)
+     * CLUSTER:SALIR:&lt;clave&gt; -> OK:SALIR:&lt;abiertas&gt; (lo envía el enrutador: el nodo drena
+     *                  y sale del cluster)
+     * RANKING[:&lt;k&gt;] -> RANKING:&lt;tu_posicion&gt;:&lt;postores&gt;:&lt;ip&gt;=&lt;monto&gt;,...
+     * &lt;monto&gt;       -> RESPUESTA:... (se une a la subasta por defecto si hace falta)
+     *                  o ERROR:LIMITE:&lt;ms&gt;:... si supera el ritmo permitido
+     * PROPUESTA:&lt;n&gt;:&lt;monto&gt; -> la misma respuesta terminada en :PETICION:&lt;n&gt;, para
+     *                  emparejarla con su propuesta cuando hay varias en vuelo. Los
+     *                  números de una sesión son crecientes: si n no supera al último
+     *                  aplicado es un reenvío y se responde el estado sin aplicarla
+     * </pre>
      */
-    private static void finalizarSubasta() {
-        estadoActual = EstadoSubasta.FINALIZADA;
+    public static String procesarMensaje(SesionSubasta sesion, String mensaje) {
+        String texto = mensaje.trim();
 
-        System.out.println("\n╔═══════════════════════════════════════════╗");
-        System.out.println("║     SUBASTA #" + numeroSubasta + " FINALIZADA            ║");
-        System.out.println("╚═══════════════════════════════════════════╝");
+        if (texto.equals("SUBASTAS")) {
+            return "SUBASTAS:" + registro.listar();
+        }
 
-        if (clientes.isEmpty()) {
-            System.out.println("[INFO] No hubo participantes");
-            return;
+        if (texto.equals("SESION")) {
+            return "SESION:" + registro.getSesiones().registrar(sesion);
         }
 
-        // Determinar el ganador (propuesta más alta)
-        HiloClienteSubasta ganador = null;
-        double propuestaGanadora = -1;
+        if (texto.startsWith("REANUDAR:")) {
+            String id = texto.substring(9);
+            String error = reanudar(sesion, id);
+            if (error != null) {
+                return "ERROR:" + error;
+            }
+            Subasta actual = sesion.getSubasta();
+            return "REANUDADA:" + id + ":SUBASTA:" + (actual == null ? 0 : actual.getId()) +
+                   ":TIEMPO:" + (actual == null ? 0 : actual.getTiempoRestante()) +
+                   ":PETICION:" + sesion.getIdentidad().getUltimaPeticion();
+        }
 
-        System.out.println("\nPropuestas recibidas:");
-        for (HiloClienteSubasta cliente : clientes) {
-            double propuesta = cliente.getPropuesta();
-            String ip = cliente.getIpCliente();
-            System.out.println("  - " + ip + ": $" + propuesta);
+        if (texto.startsWith("CLUSTER:SALIR")) {
+            // Orden de administración: solo con la clave que el nodo dio al enrutador
+            if (!texto.startsWith("CLUSTER:SALIR:")) {
+                return "ERROR:CLUSTER:SALIR se pide al puerto de administracion del enrutador";
+            }
+            return NodoCluster.salir(texto.substring(14));
+        }
 
-            if (propuesta > propuestaGanadora) {
-                propuestaGanadora = propuesta;
-                ganador = cliente;
+        if (texto.startsWith("DONDE:")) {
+            // Sin enrutador delante la subasta siempre está en este nodo
+            try {
+                Long.parseLong(texto.substring(6));
+                return "NODO:";
+            } catch (NumberFormatException e) {
+                return "ERROR:ID de subasta invalido";
             }
         }
 
-        if (ganador != null) {
-            System.out.println("\n*** GANADOR: " + ganador.getIpCliente() +
-                             " con $" + propuestaGanadora + " ***");
+        if (texto.startsWith("UNIRSE:")) {
+            try {
+                String error = unirse(sesion, Long.parseLong(texto.substring(7)));
+                return error == null ? null : "ERROR:" + error;
+            } catch (NumberFormatException e) {
+                return "ERROR:ID de subasta invalido";
+            }
+        }
 
-            // Notificar a todos los clientes
-            String mensaje = "GANADOR:" + ganador.getIpCliente() +
-                           ":MONTO:" + propuestaGanadora;
-            notificarTodosClientes(mensaje);
+        if (texto.equals("RANKING") || texto.startsWith("RANKING:")) {
+            Subasta actual = sesion.getSubasta();
+            if (actual == null) {
+                return "ERROR:No participa en ninguna subasta";
+            }
+            try {
+                int k = texto.length() > 8 ? Integer.parseInt(texto.substring(8))
+                                           : Subasta.RANKING_POR_DEFECTO;
+                return actual.obtenerRanking(sesion, k);
+            } catch (NumberFormatException e) {
+                return "ERROR:Tamaño de ranking invalido";
+            }
         }
 
-        // Cerrar todas las conexiones
-        for (HiloClienteSubasta cliente : clientes) {
-            cliente.cerrarConexion();
+        if (texto.startsWith("PROPUESTA:")) {
+            int separador = texto.indexOf(':', 10);
+            long peticion;
+            try {
+                peticion = Long.parseLong(texto.substring(10, separador < 0 ? texto.length() : separador));
+            } catch (NumberFormatException e) {
+                return "ERROR:Numero de peticion invalido";
+            }
+            String monto = separador < 0 ? "" : texto.substring(separador + 1);
+            return procesarPropuesta(sesion, monto, peticion) + ":PETICION:" + peticion;
         }
 
-        System.out.println("[INFO] Conexiones cerradas");
+        return procesarPropuesta(sesion, texto, 0);
     }
 
     /**
-     * Envía un mensaje a todos los clientes conectados
+     * Camino de procesarMensaje para una propuesta de texto: decodifica el
+     * monto y codifica como linea lo que resuelva atenderPropuesta
      */
-    private static void notificarTodosClientes(String mensaje) {
-        for (HiloClienteSubasta cliente : clientes) {
-            try {
-                cliente.enviarResultado(mensaje);
-            } catch (Exception e) {
-                System.out.println("[ERROR] Notificando a " + cliente.getIpCliente());
-            }
+    private static String procesarPropuesta(SesionSubasta sesion, String texto, long peticion) {
+        long monto;
+        try {
+            monto = Monto.parsear(texto);
+        } catch (NumberFormatException e) {
+            Bitacora.depuracion("INVALIDA", "Propuesta invalida de " + sesion.getIpCliente());
+            return "ERROR:Propuesta invalida. Debe ser un numero.";
+        }
+        PropuestaAtendida atendida =
+            atenderPropuesta(sesion, RegistroSubastas.SUBASTA_POR_DEFECTO, monto, peticion);
+        if (atendida.esperaMs > 0) {
+            return "ERROR:LIMITE:" + atendida.esperaMs + ":Demasiadas propuestas, reintenta en " +
+                   atendida.esperaMs + " ms";
         }
+        if (atendida.error != null) {
+            return "ERROR:" + atendida.error;
+        }
+        return Subasta.textoRespuesta(atendida.resultado);
     }
 
     /**
-     * Resetea el estado del servidor para la siguiente subasta
+     * Camino rápido de procesarMensaje para una propuesta de texto ya
+     * decodificada con ProtocoloTexto: escribe la linea de respuesta en
+     * "respuesta" sin pasar por Strings. Las demás lineas, y las propuestas
+     * mal formadas, siguen por procesarMensaje.
      */
-    private static void resetearEstado() {
-        System.out.println("\n[RESET] Preparando para nueva sesion...");
+    public static void procesarPropuesta(SesionSubasta sesion, ProtocoloTexto.Mensaje propuesta,
+                                         ByteBuffer respuesta) {
+        PropuestaAtendida atendida = atenderPropuesta(sesion, RegistroSubastas.SUBASTA_POR_DEFECTO,
+                                                      propuesta.monto, propuesta.peticion);
+        if (atendida.esperaMs > 0) {
+            ProtocoloTexto.escribirLimite(respuesta, atendida.esperaMs, propuesta.peticion);
+        } else if (atendida.error != null) {
+            ProtocoloTexto.escribirError(respuesta, atendida.error, propuesta.peticion);
+        } else {
+            ProtocoloTexto.escribirRespuesta(respuesta, atendida.resultado, propuesta.peticion);
+        }
+    }
 
-        // Cancelar timers
-        if (timerSubasta != null) {
-            timerSubasta.cancel();
-            timerSubasta = null;
+    /**
+     * Lo que resolvió una propuesta, antes de codificarlo en el protocolo
+     * de la sesión: rechazada por el límite, un error o el estado de la
+     * subasta tras aplicarla
+     */
+    private static final class PropuestaAtendida {
+        final long esperaMs;          // > 0 si la rechazó el límite de ritmo
+        final long idSubasta;
+        final String error;           // texto del error, sin el prefijo ERROR:
+        final Subasta.ResultadoPropuesta resultado;
+
+        private PropuestaAtendida(long esperaMs, long idSubasta, String error,
+                                  Subasta.ResultadoPropuesta resultado) {
+            this.esperaMs = esperaMs;
+            this.idSubasta = idSubasta;
+            this.error = error;
+            this.resultado = resultado;
         }
-        if (timerBroadcast != null) {
-            timerBroadcast.cancel();
-            timerBroadcast = null;
+
+        static PropuestaAtendida limitada(long esperaMs) {
+            return new PropuestaAtendida(esperaMs, 0, null, null);
         }
 
-        // Limpiar clientes y propuestas
-        clientes.clear();
+        static PropuestaAtendida error(long idSubasta, String error) {
+            return new PropuestaAtendida(0, idSubasta, error, null);
+        }
 
-        synchronized(lock) {
-            propuestaMasAlta = 0.0;
-            ipPropuestaMasAlta = "ninguno";
+        static PropuestaAtendida aplicada(long idSubasta, Subasta.ResultadoPropuesta resultado) {
+            return new PropuestaAtendida(0, idSubasta, null, resultado);
         }
+    }
 
-        // Volver a estado de espera
-        estadoActual = EstadoSubasta.ESPERANDO;
+    /**
+     * Camino común de una propuesta ya decodificada, sea cual sea su
+     * protocolo: límite de ritmo, petición repetida, unión a la subasta
+     * (idSubasta si la sesión aún no participa en ninguna), la propuesta y
+     * sus métricas
+     */
+    private static PropuestaAtendida atenderPropuesta(SesionSubasta sesion, long idSubasta,
+                                                      long monto, long peticion) {
+        long inicio = System.nanoTime();
+        // El límite se aplica antes de tocar la subasta
+        long esperaMs = limitador.admitir(sesion);
+        if (esperaMs > 0) {
+            registro.getMetricas().propuestaLimitada();
+            return PropuestaAtendida.limitada(esperaMs);
+        }
+        Subasta.ResultadoPropuesta repetida = repetida(sesion, peticion);
+        if (repetida != null) {
+            return PropuestaAtendida.aplicada(sesion.getSubasta().getId(), repetida);
+        }
 
-        System.out.println("[LISTO] Servidor esperando nueva sesion\n");
+        Subasta subasta = sesion.getSubasta();
+        if (subasta == null) {
+            subasta = registro.unir(sesion, idSubasta);
+            if (subasta == null) {
+                return PropuestaAtendida.error(idSubasta, DRENANDO);
+            }
+        }
+        Subasta.ResultadoPropuesta resultado = subasta.ofertar(sesion, monto, peticion);
+        boolean aceptada = resultado != null &&
+                           resultado != Subasta.ResultadoPropuesta.RECHAZADA_FINALIZADA;
+        registro.getMetricas().propuestaAtendida(subasta, inicio, aceptada);
+        if (resultado == null) {
+            return PropuestaAtendida.error(subasta.getId(), "La propuesta debe ser mayor que 0");
+        }
+        if (!aceptada) {
+            return PropuestaAtendida.error(subasta.getId(), "Subasta finalizada");
+        }
+        return PropuestaAtendida.aplicada(subasta.getId(), resultado);
     }
 
     /**
-     * Actualiza la propuesta más alta si la nueva propuesta es mayor
-     * @return true si se actualizó, false si no
+     * Equivalente de procesarMensaje para una trama del protocolo binario:
+     * escribe la trama de respuesta en "respuesta".
+     * @return true si se escribió una respuesta
      */
-    public static boolean actualizarPropuestaMasAlta(double nuevaPropuesta, String ip) {
-        synchronized(lock) {
-            if (nuevaPropuesta > propuestaMasAlta) {
-                propuestaMasAlta = nuevaPropuesta;
-                ipPropuestaMasAlta = ip;
-                System.out.println("[NUEVA ALTA] $" + nuevaPropuesta + " de " + ip);
+    public static boolean procesarTrama(SesionSubasta sesion, ProtocoloBinario.Trama trama,
+                                        ByteBuffer respuesta) {
+        switch (trama.tipo) {
+            case ProtocoloBinario.SUBASTAS:
+                ProtocoloBinario.escribirSubastas(respuesta, registro.getIds());
+                return true;
+
+            case ProtocoloBinario.PING:
+                ProtocoloBinario.escribirSimple(respuesta, ProtocoloBinario.PONG);
+                return true;
+
+            case ProtocoloBinario.PONG:
+                // Solo cuenta como actividad, que la sesión ya anotó al leerla
+                return false;
+
+            case ProtocoloBinario.SESION:
+                ProtocoloBinario.escribirIdSesion(respuesta, registro.getSesiones().registrar(sesion));
+                return true;
+
+            case ProtocoloBinario.REANUDAR: {
+                String id = ProtocoloBinario.leerTexto(trama.datos);
+                String error = reanudar(sesion, id);
+                if (error != null) {
+                    ProtocoloBinario.escribirError(respuesta, 0, 0, error);
+                    return true;
+                }
+                Subasta actual = sesion.getSubasta();
+                ProtocoloBinario.escribirReanudada(respuesta, actual == null ? 0 : actual.getId(),
+                    sesion.getIdentidad().getUltimaPeticion(),
+                    actual == null ? 0 : actual.getTiempoRestante(), id);
+                return true;
+            }
+
+            case ProtocoloBinario.UNIRSE: {
+                String error = unirse(sesion, trama.idSubasta);
+                if (error != null) {
+                    ProtocoloBinario.escribirError(respuesta, trama.idSubasta, 0, error);
+                    return true;
+                }
+                return false;
+            }
+
+            case ProtocoloBinario.RANKING: {
+                Subasta actual = sesion.getSubasta();
+                if (actual == null) {
+                    ProtocoloBinario.escribirError(respuesta, 0, 0, "No participa en ninguna subasta");
+                    return true;
+                }
+                int k = trama.datos.remaining() >= 2 ? trama.datos.getShort()
+                                                     : Subasta.RANKING_POR_DEFECTO;
+                actual.escribirRanking(sesion, k, respuesta);
                 return true;
             }
-            return false;
+
+            case ProtocoloBinario.PROPUESTA: {
+                PropuestaAtendida atendida = atenderPropuesta(sesion,
+                    trama.idSubasta > 0 ? trama.idSubasta : RegistroSubastas.SUBASTA_POR_DEFECTO,
+                    trama.monto, trama.secuencia);
+                if (atendida.esperaMs > 0) {
+                    ProtocoloBinario.escribirError(respuesta, trama.idSubasta, trama.secuencia,
+                        "LIMITE:" + atendida.esperaMs + ":Demasiadas propuestas, reintenta en " +
+                        atendida.esperaMs + " ms");
+                } else if (atendida.error != null) {
+                    ProtocoloBinario.escribirError(respuesta, atendida.idSubasta, trama.secuencia,
+                                                   atendida.error);
+                } else {
+                    ProtocoloBinario.escribirRespuesta(respuesta, atendida.idSubasta,
+                                                       trama.secuencia, atendida.resultado);
+                }
+                return true;
+            }
+
+            default:
+                ProtocoloBinario.escribirError(respuesta, 0, trama.secuencia,
+                                               "Trama desconocida: " + trama.tipo);
+                return true;
         }
     }
 
     /**
-     * Obtiene la información de la propuesta más alta actual
+     * IP real del cliente de una conexión que reenvía el enrutador del
+     * cluster, que la antepone como primera linea. Solo vale con la clave
+     * que el nodo dio al enrutador en su alta: con ella el límite por IP, el
+     * ranking y el líder ven a cada cliente y no a todos con la IP del
+     * enrutador.
+     * @param ipConexion IP de origen de la conexión, solo para la bitácora
+     * @return la IP del cliente, o null si la clave no es la del nodo (la
+     *         sesión se cierra sin contestar)
      */
-    public static String obtenerPropuestaMasAlta() {
-        synchronized(lock) {
-            if (propuestaMasAlta == 0.0) {
-                return "PROPUESTA_ALTA:ninguno:0.0";
-            }
-            return "PROPUESTA_ALTA:" + ipPropuestaMasAlta + ":" + propuestaMasAlta;
+    static String ipReenviada(String linea, String ipConexion) {
+        int separador = linea.indexOf(':', REENVIADO.length());
+        String ip = separador < 0 ? "" : linea.substring(separador + 1).trim();
+        if (ip.isEmpty() || !NodoCluster.claveValida(linea.substring(REENVIADO.length(), separador))) {
+            Bitacora.aviso("SESION", "REENVIADO sin la clave del nodo desde " + ipConexion + ": se cierra");
+            return null;
+        }
+        Bitacora.depuracion("SESION", "Cliente " + ip + " reenviado por el enrutador " + ipConexion);
+        return ip;
+    }
+
+    /**
+     * Une la sesión a la subasta indicada; la confirmación es la
+     * notificación de inicio.
+     * @return texto del error, o null si se unió
+     */
+    private static String unirse(SesionSubasta sesion, long idSubasta) {
+        if (sesion.getSubasta() != null) {
+            return "Ya participa en la subasta " + sesion.getSubasta().getId();
         }
+        if (idSubasta <= 0) {
+            return "ID de subasta invalido";
+        }
+        return registro.unir(sesion, idSubasta) == null ? DRENANDO : null;
     }
 
     /**
-     * Verifica si la subasta sigue activa
+     * REANUDAR: la sesión adopta la identidad con ese ID y, si su subasta
+     * sigue abierta, ocupa en ella el lugar de la conexión anterior, que se
+     * cierra
+     * @return texto del error, o null si se reanudó
      */
-    public static boolean estaActiva() {
-        return estadoActual == EstadoSubasta.ACTIVA;
+    private static String reanudar(SesionSubasta sesion, String id) {
+        if (sesion.getSubasta() != null) {
+            return "Ya participa en la subasta " + sesion.getSubasta().getId();
+        }
+        SesionSubasta anterior = registro.getSesiones().reanudar(id, sesion);
+        if (anterior == null) {
+            return SESION_DESCONOCIDA;
+        }
+        if (anterior != sesion) {
+            Subasta subasta = anterior.getSubasta();
+            if (subasta != null) {
+                subasta.reincorporar(anterior, sesion);
+            }
+            anterior.cerrarConexion();
+        }
+        registro.getMetricas().sesionReanudada();
+        Bitacora.info("SESION", "Cliente " + sesion.getIpCliente() + " reanuda su sesion" +
+                      (sesion.getSubasta() == null ? "" : " en la subasta " + sesion.getSubasta().getId()));
+        return null;
     }
 
     /**
-     * Obtiene el tiempo restante de la subasta en segundos
+     * Una petición que la sesión ya aplicó (un reenvío tras reanudar) no se
+     * vuelve a aplicar
+     * @return el estado actual para responderla, o null si es nueva
      */
-    public static long getTiempoRestante() {
-        if (estadoActual != EstadoSubasta.ACTIVA) {
-            return 0;
+    private static Subasta.ResultadoPropuesta repetida(SesionSubasta sesion, long peticion) {
+        Subasta subasta = sesion.getSubasta();
+        if (subasta == null || !sesion.getIdentidad().peticionAplicada(peticion)) {
+            return null;
         }
-        long transcurrido = System.currentTimeMillis() - tiempoInicio;
-        long restante = (TIEMPO_SUBASTA - transcurrido) / 1000;
-        return Math.max(0, restante);
+        registro.getMetricas().propuestaRepetida();
+        return subasta.consultar(sesion);
+    }
+
+    public static RegistroSubastas getRegistro() {
+        return registro;
+    }
+
+    public static LimitadorPropuestas getLimitador() {
+        return limitador;
     }
 }
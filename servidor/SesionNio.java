@@ -0,0 +1,443 @@
+package socket.conconexion.servidor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sesión de un participante atendido por el motor NIO.
+ * La lectura y la escritura en el canal ocurren solo en el hilo del bucle
+ * de eventos; los demás hilos (broadcast, finalización) encolan mensajes
+ * en la cola de salida acotada y piden al bucle que la vacíe.
+ * Cada lectura cuenta como actividad para el vigilante de inactividad,
+ * que cierra el canal si el cliente deja de responder.
+ * @author Sistema de Subasta
+ */
+class SesionNio implements SesionSubasta, VigilanteInactividad.Conexion {
+    private final SocketChannel canal;
+    private final MotorNioSubasta.BucleEventos bucle;
+    // La del enrutador se sustituye por la del cliente si la conexión llega reenviada
+    private volatile String ipCliente;
+    private SelectionKey clave;
+
+    private final ColaSalida salida;
+    // Mensaje a medio escribir: ya salió de la cola para que la política
+    // no lo descarte (solo lo usa el hilo del bucle)
+    private ByteBuffer enCurso;
+    private final AtomicBoolean vaciadoProgramado = new AtomicBoolean(false);
+    private final AtomicBoolean desconectadoPorLentitud = new AtomicBoolean(false);
+    private volatile boolean cerrarTrasEnviar = false;
+    private final VigilanteInactividad.Actividad actividad = new VigilanteInactividad.Actividad();
+
+    // Acumulador de la linea en curso, su vista para decodificarla y la
+    // respuesta de texto reutilizada (solo los usa el hilo del bucle)
+    private final byte[] linea = new byte[ProtocoloTexto.LONGITUD_MAXIMA_PETICION];
+    private final ByteBuffer vistaLinea = ByteBuffer.wrap(linea);
+    private int longitudLinea = 0;
+    private final ByteBuffer respuestaTexto = ByteBuffer.allocate(ProtocoloTexto.LONGITUD_NOTIFICACION);
+    private final ProtocoloTexto.Mensaje mensaje = new ProtocoloTexto.Mensaje();
+    private boolean retirado = false;
+    private boolean primeraLinea = true;
+
+    // Protocolo binario (tras el saludo): trama en curso y respuesta,
+    // ambas reutilizadas y solo del hilo del bucle
+    private volatile boolean binario = false;
+    private ByteBuffer entradaTrama;
+    private ByteBuffer respuestaTrama;
+    private final ProtocoloBinario.Trama trama = new ProtocoloBinario.Trama();
+
+    private volatile long propuesta = 0;
+    private volatile Subasta subasta;
+    private LimitadorPropuestas.CuboTokens cuboPropuestas;
+    private volatile IdentidadSesion identidad = new IdentidadSesion();
+    private volatile boolean resultadoEnviado = false;
+
+    SesionNio(SocketChannel canal, MotorNioSubasta.BucleEventos bucle, String ip,
+              ColaSalida salida) {
+        this.canal = canal;
+        this.bucle = bucle;
+        this.ipCliente = ip;
+        this.salida = salida;
+    }
+
+    SocketChannel getCanal() {
+        return canal;
+    }
+
+    void setClave(SelectionKey clave) {
+        this.clave = clave;
+    }
+
+    /**
+     * Lee lo disponible en el canal y procesa cada linea completa
+     */
+    void leer(ByteBuffer buffer) {
+        buffer.clear();
+        int leidos;
+        try {
+            leidos = canal.read(buffer);
+        } catch (IOException e) {
+            leidos = -1;
+        }
+
+        if (leidos < 0) {
+            Bitacora.info("SESION", "Cliente " + ipCliente + " desconectado.");
+            cerrarCanal();
+            return;
+        }
+        actividad.recibido();
+
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            if (binario) {
+                leerTramas(buffer);
+                return;
+            }
+            byte b = buffer.get();
+            if (b == '\n') {
+                int fin = (longitudLinea > 0 && linea[longitudLinea - 1] == '\r')
+                    ? longitudLinea - 1 : longitudLinea;
+                longitudLinea = 0;
+                vistaLinea.limit(fin).position(0);
+                procesarLinea();
+                if (!canal.isOpen()) {
+                    return;
+                }
+            } else {
+                if (longitudLinea == linea.length) {
+                    Bitacora.aviso("SESION", "Linea demasiado larga de " + ipCliente);
+                    cerrarCanal();
+                    return;
+                }
+                linea[longitudLinea++] = b;
+            }
+        }
+    }
+
+    /**
+     * Acumula los bytes leídos y atiende cada trama completa
+     */
+    private void leerTramas(ByteBuffer buffer) {
+        while (buffer.hasRemaining() && canal.isOpen()) {
+            int copiar = Math.min(buffer.remaining(), entradaTrama.remaining());
+            int limite = buffer.limit();
+            buffer.limit(buffer.position() + copiar);
+            entradaTrama.put(buffer);
+            buffer.limit(limite);
+
+            entradaTrama.flip();
+            while (entradaTrama.remaining() >= ProtocoloBinario.PREFIJO) {
+                int longitud = entradaTrama.getShort(entradaTrama.position()) & 0xFFFF;
+                if (longitud > ProtocoloBinario.LONGITUD_MAXIMA - ProtocoloBinario.PREFIJO) {
+                    Bitacora.aviso("SESION", "Trama demasiado larga de " + ipCliente);
+                    cerrarCanal();
+                    return;
+                }
+                if (entradaTrama.remaining() < ProtocoloBinario.PREFIJO + longitud) {
+                    break;
+                }
+                int finTrama = entradaTrama.position() + ProtocoloBinario.PREFIJO + longitud;
+                int limiteEntrada = entradaTrama.limit();
+                entradaTrama.position(entradaTrama.position() + ProtocoloBinario.PREFIJO);
+                entradaTrama.limit(finTrama);
+                procesarTrama();
+                entradaTrama.limit(limiteEntrada);
+                entradaTrama.position(finTrama);
+            }
+            entradaTrama.compact();
+        }
+    }
+
+    private void procesarTrama() {
+        if (!ProtocoloBinario.decodificar(entradaTrama, trama) || retirado ||
+                (subasta != null && !subasta.estaActiva())) {
+            return;
+        }
+
+        if (trama.tipo == ProtocoloBinario.FIN) {
+            Bitacora.info("SESION", "Cliente " + ipCliente + " se retiró de la subasta.");
+            retirado = true;
+            return;
+        }
+
+        respuestaTrama.clear();
+        if (ServidorSubasta.procesarTrama(this, trama, respuestaTrama)) {
+            respuestaTrama.flip();
+            ByteBuffer copia = ByteBuffer.allocate(respuestaTrama.remaining());
+            copia.put(respuestaTrama).flip();
+            enviar(copia, false);
+        }
+    }
+
+    /**
+     * Atiende la linea que hay en vistaLinea: las propuestas se decodifican
+     * y responden sobre bytes; el resto pasa a procesarMensaje
+     */
+    private void procesarLinea() {
+        if (Bitacora.depurando()) {
+            Bitacora.depuracion("MENSAJE", "Mensaje de " + ipCliente + ": " +
+                                ProtocoloTexto.comoTexto(vistaLinea));
+        }
+
+        // El enrutador antepone la IP real del cliente; no se contesta
+        if (primeraLinea) {
+            primeraLinea = false;
+            if (ProtocoloTexto.empiezaCon(vistaLinea, ServidorSubasta.REENVIADO)) {
+                String ip = ServidorSubasta.ipReenviada(ProtocoloTexto.comoTexto(vistaLinea), ipCliente);
+                if (ip == null) {
+                    cerrarCanal();
+                } else {
+                    ipCliente = ip;
+                }
+                return;
+            }
+        }
+
+        // Tras FIN o al terminar la subasta solo se espera el resultado final
+        if (retirado || (subasta != null && !subasta.estaActiva())) {
+            return;
+        }
+
+        ProtocoloTexto.decodificar(vistaLinea, mensaje);
+        switch (mensaje.tipo) {
+            case ProtocoloBinario.FIN:
+                Bitacora.info("SESION", "Cliente " + ipCliente + " se retiró de la subasta.");
+                retirado = true;
+                return;
+
+            case ProtocoloBinario.PING:
+                enviar(MensajeDifundido.PONG.paraCanal(false), false);
+                return;
+
+            // Solo cuenta como actividad
+            case ProtocoloBinario.PONG:
+                return;
+
+            case ProtocoloBinario.PROPUESTA:
+                respuestaTexto.clear();
+                ServidorSubasta.procesarPropuesta(this, mensaje, respuestaTexto);
+                respuestaTexto.flip();
+                ByteBuffer copia = ByteBuffer.allocate(respuestaTexto.remaining());
+                copia.put(respuestaTexto).flip();
+                enviar(copia, false);
+                return;
+
+            // Negociación del protocolo binario, antes de unirse
+            case ProtocoloTexto.SALUDO:
+                if (subasta == null) {
+                    enviar(ProtocoloBinario.SALUDO);
+                    entradaTrama = ByteBuffer.allocate(ProtocoloBinario.LONGITUD_MAXIMA);
+                    respuestaTrama = ByteBuffer.allocate(ProtocoloBinario.LONGITUD_MAXIMA);
+                    binario = true;
+                    Bitacora.info("SESION", "Cliente " + ipCliente + " usa el protocolo binario");
+                    return;
+                }
+                break;
+
+            default:
+                break;
+        }
+
+        String respuesta = ServidorSubasta.procesarMensaje(this, ProtocoloTexto.comoTexto(vistaLinea));
+        if (respuesta != null) {
+            enviar(respuesta);
+        }
+    }
+
+    /**
+     * Encola una linea de salida; puede llamarse desde cualquier hilo
+     */
+    private void enviar(String mensaje) {
+        enviar(ByteBuffer.wrap((mensaje + "\n").getBytes(StandardCharsets.UTF_8)), false);
+    }
+
+    /**
+     * Encola bytes ya codificados (lineas o tramas); desde cualquier hilo.
+     * Si la cola se desborda el cliente es demasiado lento y se desconecta.
+     */
+    private void enviar(ByteBuffer datos, boolean reemplazable) {
+        if (!salida.ofrecer(datos, reemplazable)) {
+            // Con la cola cerrada (canal ya cerrado) el mensaje se pierde sin más
+            if (salida.estaDesbordada() && desconectadoPorLentitud.compareAndSet(false, true)) {
+                Bitacora.aviso("LENTO", "Cliente " + ipCliente +
+                                      " desconectado: cola de salida desbordada");
+                ServidorSubasta.getRegistro().getMetricas().desconexionPorLentitud();
+                bucle.ejecutar(this::cerrarCanal);
+            }
+            return;
+        }
+        programarVaciado();
+    }
+
+    private void programarVaciado() {
+        if (vaciadoProgramado.compareAndSet(false, true)) {
+            bucle.ejecutar(this::escribirPendiente);
+        }
+    }
+
+    /**
+     * Escribe lo encolado; si el socket no admite mas, espera a OP_WRITE
+     */
+    void escribirPendiente() {
+        vaciadoProgramado.set(false);
+        if (!canal.isOpen()) {
+            salida.vaciar();
+            enCurso = null;
+            return;
+        }
+        try {
+            while (enCurso != null || (enCurso = salida.sacar()) != null) {
+                canal.write(enCurso);
+                if (enCurso.hasRemaining()) {
+                    clave.interestOps(clave.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+                enCurso = null;
+            }
+
+            if (clave.isValid()) {
+                clave.interestOps(clave.interestOps() & ~SelectionKey.OP_WRITE);
+            }
+            if (cerrarTrasEnviar) {
+                cerrarCanal();
+            }
+        } catch (IOException e) {
+            Bitacora.aviso("SESION", "Error de I/O con cliente " + ipCliente + ": " + e.getMessage());
+            cerrarCanal();
+        }
+    }
+
+    /**
+     * Cierra el canal; solo desde el hilo del bucle
+     */
+    void cerrarCanal() {
+        if (canal.isOpen()) {
+            ServidorSubasta.getRegistro().getMetricas().sesionCerrada();
+            ServidorSubasta.getRegistro().getSesiones().desconectada(this);
+            ServidorSubasta.getRegistro().getVigilante().retirar(this);
+            Subasta actual = subasta;
+            if (actual != null) {
+                actual.retirar(this);
+            }
+        }
+        try {
+            if (clave != null) {
+                clave.cancel();
+            }
+            canal.close();
+        } catch (IOException e) {
+            Bitacora.aviso("SESION", "Error al cerrar conexión con " + ipCliente);
+        }
+        salida.vaciar();
+        enCurso = null;
+    }
+
+    @Override
+    public void notificarInicioSubasta(long idSubasta, long tiempoRestante) {
+        if (binario) {
+            ByteBuffer inicio = ByteBuffer.allocate(ProtocoloBinario.LONGITUD_NOTIFICACION);
+            ProtocoloBinario.escribirIniciada(inicio, idSubasta, tiempoRestante);
+            inicio.flip();
+            enviar(inicio, false);
+        } else {
+            ByteBuffer inicio = ByteBuffer.allocate(ProtocoloTexto.LONGITUD_NOTIFICACION);
+            ProtocoloTexto.escribirIniciada(inicio, idSubasta, tiempoRestante);
+            inicio.flip();
+            enviar(inicio, false);
+        }
+        Bitacora.depuracion("SESION", "Cliente " + ipCliente + " notificado: subasta iniciada");
+    }
+
+    @Override
+    public void enviarActualizacion(MensajeDifundido mensaje) {
+        enviar(mensaje.paraCanal(binario), true);
+    }
+
+    @Override
+    public void enviarResultado(MensajeDifundido resultado) {
+        if (!resultadoEnviado) {
+            resultadoEnviado = true;
+            enviar(resultado.paraCanal(binario), false);
+            Bitacora.depuracion("SESION", "Resultado enviado a " + ipCliente);
+        }
+    }
+
+    @Override
+    public void cerrarConexion() {
+        cerrarTrasEnviar = true;
+        programarVaciado();
+        Bitacora.depuracion("SESION", "Conexión cerrada con " + ipCliente);
+    }
+
+    @Override
+    public void enviarPing() {
+        enviar(MensajeDifundido.PING.paraCanal(binario), false);
+    }
+
+    /**
+     * Sin esperar a la cola de salida: el cliente no está leyendo
+     */
+    @Override
+    public void cerrarPorInactividad() {
+        bucle.ejecutar(this::cerrarCanal);
+    }
+
+    // Getters
+    @Override
+    public VigilanteInactividad.Actividad getActividad() {
+        return actividad;
+    }
+
+    @Override
+    public int getProfundidadSalida() {
+        return salida.getProfundidad();
+    }
+
+    @Override
+    public long getPropuesta() {
+        return propuesta;
+    }
+
+    @Override
+    public void setPropuesta(long propuesta) {
+        this.propuesta = propuesta;
+    }
+
+    @Override
+    public Subasta getSubasta() {
+        return subasta;
+    }
+
+    @Override
+    public void setSubasta(Subasta subasta) {
+        this.subasta = subasta;
+    }
+
+    @Override
+    public LimitadorPropuestas.CuboTokens getCuboPropuestas() {
+        return cuboPropuestas;
+    }
+
+    @Override
+    public void setCuboPropuestas(LimitadorPropuestas.CuboTokens cubo) {
+        this.cuboPropuestas = cubo;
+    }
+
+    @Override
+    public IdentidadSesion getIdentidad() {
+        return identidad;
+    }
+
+    @Override
+    public void setIdentidad(IdentidadSesion identidad) {
+        this.identidad = identidad;
+    }
+
+    @Override
+    public String getIpCliente() {
+        return ipCliente;
+    }
+}
@@ -0,0 +1,71 @@
+package socket.conconexion.servidor;
+
+/**
+ * Participante conectado a la subasta, independiente del motor de red
+ * que lo atiende (un hilo bloqueante por cliente o un bucle de eventos NIO)
+ * y del protocolo que negoció (lineas de texto o tramas binarias).
+ * @author Sistema de Subasta
+ */
+public interface SesionSubasta {
+
+    /**
+     * IP de la conexión; es la que se muestra en el ranking y como líder
+     */
+    String getIpCliente();
+
+    /**
+     * Identidad del participante: su ID de sesión y la última petición
+     * aplicada. Al reanudar, la conexión nueva adopta la de la anterior.
+     */
+    IdentidadSesion getIdentidad();
+
+    void setIdentidad(IdentidadSesion identidad);
+
+    /**
+     * Ultima propuesta aceptada de este participante, en centavos
+     */
+    long getPropuesta();
+
+    void setPropuesta(long propuesta);
+
+    /**
+     * Subasta a la que se unió el participante, o null si aun no se unió
+     */
+    Subasta getSubasta();
+
+    void setSubasta(Subasta subasta);
+
+    /**
+     * Cubo de tokens de las propuestas de esta sesión; lo crea el
+     * limitador con la primera propuesta
+     */
+    LimitadorPropuestas.CuboTokens getCuboPropuestas();
+
+    void setCuboPropuestas(LimitadorPropuestas.CuboTokens cubo);
+
+    /**
+     * Notifica al cliente que la subasta ha iniciado
+     */
+    void notificarInicioSubasta(long idSubasta, long tiempoRestante);
+
+    /**
+     * Envía un mensaje de broadcast (UPDATE o LATIDO) ya codificado; la
+     * sesión escribe los bytes compartidos en el formato que negoció
+     */
+    void enviarActualizacion(MensajeDifundido mensaje);
+
+    /**
+     * Envía el resultado final de la subasta al cliente (una sola vez)
+     */
+    void enviarResultado(MensajeDifundido resultado);
+
+    /**
+     * Mensajes en la cola de salida del cliente, aun sin enviar
+     */
+    int getProfundidadSalida();
+
+    /**
+     * Cierra la conexión con el cliente
+     */
+    void cerrarConexion();
+}
@@ -0,0 +1,137 @@
+package socket.conconexion.servidor;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sesiones que se pueden reanudar, por la huella de su ID (la que guarda el
+ * diario, así que las recuperadas de él se encuentran igual). Entran las de los
+ * participantes que piden su ID (SESION) y las de los postores recuperados
+ * del diario con ID. Al perder la conexión se conservan durante el plazo de
+ * reanudación (--reanudacion-seg); una tarea periódica de la rueda
+ * compartida retira las vencidas, así que el mapa crece con los conectados
+ * y los recién caídos, no con todos los que pasaron por el servidor.
+ * @author Sistema de Subasta
+ */
+final class SesionesReanudables {
+    private static final long PURGA_MINIMA_MS = 1000;
+
+    private final ConcurrentMap<String, IdentidadSesion> sesiones = new ConcurrentHashMap<>();
+    private volatile long plazoMs = 60000;
+    private final AtomicBoolean purgaProgramada = new AtomicBoolean(false);
+
+    void configurar(long plazoMs) {
+        this.plazoMs = plazoMs;
+    }
+
+    long getPlazoMs() {
+        return plazoMs;
+    }
+
+    /**
+     * Da su ID a la sesión y la registra para poder reanudarla
+     */
+    String registrar(SesionSubasta sesion) {
+        IdentidadSesion identidad = sesion.getIdentidad();
+        String id;
+        synchronized (identidad) {
+            id = identidad.asignarId();
+            identidad.conectar(sesion);
+        }
+        sesiones.put(identidad.getHuella(), identidad);
+        programarPurga();
+        return id;
+    }
+
+    /**
+     * Postor recuperado con ID: se puede reanudar durante el plazo, como
+     * si acabara de perder la conexión
+     */
+    void restaurar(SesionSubasta postor) {
+        IdentidadSesion identidad = postor.getIdentidad();
+        synchronized (identidad) {
+            identidad.conectar(postor);
+            identidad.desconectar(System.currentTimeMillis());
+        }
+        sesiones.put(identidad.getHuella(), identidad);
+        programarPurga();
+    }
+
+    /**
+     * Pasa la identidad con ese ID a la conexión nueva; la que la tenía
+     * deja de representar al participante
+     * @return la conexión que la tenía, o null si el ID no existe o venció
+     */
+    SesionSubasta reanudar(String id, SesionSubasta nueva) {
+        String huella = IdentidadSesion.huella(id);
+        IdentidadSesion identidad = sesiones.get(huella);
+        if (identidad == null) {
+            return null;
+        }
+        SesionSubasta anterior;
+        synchronized (identidad) {
+            // La purga pudo retirarla entre la búsqueda y el cerrojo
+            if (sesiones.get(huella) != identidad) {
+                return null;
+            }
+            identidad.confirmarId(id);
+            anterior = identidad.getConexion();
+            identidad.conectar(nueva);
+        }
+
+        IdentidadSesion propia = nueva.getIdentidad();
+        if (propia != identidad && propia.getHuella() != null) {
+            sesiones.remove(propia.getHuella(), propia);
+        }
+        nueva.setIdentidad(identidad);
+        return anterior;
+    }
+
+    /**
+     * La conexión ya no recibe nada del cliente: si representa a una
+     * sesión reanudable empieza a correr su plazo
+     */
+    void desconectada(SesionSubasta sesion) {
+        IdentidadSesion identidad = sesion.getIdentidad();
+        if (identidad.getHuella() == null) {
+            return;
+        }
+        synchronized (identidad) {
+            if (identidad.getConexion() == sesion) {
+                identidad.desconectar(System.currentTimeMillis());
+            }
+        }
+    }
+
+    int getNumero() {
+        return sesiones.size();
+    }
+
+    private void programarPurga() {
+        if (purgaProgramada.compareAndSet(false, true)) {
+            long periodo = Math.max(PURGA_MINIMA_MS, plazoMs / 4);
+            RuedaTemporizadores.compartida().programarPeriodica(this::purgar, periodo, periodo);
+        }
+    }
+
+    /**
+     * Retira las sesiones que llevan sin conexión más que el plazo
+     */
+    private void purgar() {
+        long limite = System.currentTimeMillis() - plazoMs;
+        int retiradas = 0;
+        for (IdentidadSesion identidad : sesiones.values()) {
+            synchronized (identidad) {
+                long desde = identidad.getDesconectadaDesde();
+                if (desde != 0 && desde <= limite && sesiones.remove(identidad.getHuella(), identidad)) {
+                    retiradas++;
+                }
+            }
+        }
+        if (retiradas > 0) {
+            Bitacora.depuracion("SESION", retiradas + " sesiones sin reanudar retiradas; quedan " +
+                                sesiones.size());
+        }
+    }
+}
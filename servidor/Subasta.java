@@ -0,0 +1,675 @@
+package socket.conconexion.servidor;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Una subasta independiente: sus propios participantes, propuestas y plazo.
+ * Empieza con el primer participante, dura TIEMPO_SUBASTA y al terminar
+ * notifica al ganador, cierra las conexiones y se retira del registro.
+ * Sus temporizadores (plazo, broadcast, latidos) son tareas de la rueda
+ * compartida; con anti-sniping una nueva alta en los últimos segundos
+ * retrasa el plazo.
+ * @author Sistema de Subasta
+ */
+public class Subasta {
+    // Estados de la subasta
+    public enum EstadoSubasta {
+        ESPERANDO,   // Esperando clientes para iniciar
+        ACTIVA,      // Subasta en curso
+        FINALIZADA   // Subasta terminada, procesando ganador
+    }
+
+    static final int TIEMPO_SUBASTA = 120000; // Dos minutos en milisegundos
+    static final int RANKING_POR_DEFECTO = 10;   // Postores que devuelve RANKING
+    static final int RANKING_MAXIMO = 100;
+
+    private final long id;
+    private final int numero;
+    private final RegistroSubastas registro;
+    private final ParticipantesSubasta clientes = new ParticipantesSubasta();
+    private volatile EstadoSubasta estadoActual = EstadoSubasta.ESPERANDO;
+    private volatile long tiempoInicio;
+    private volatile long duracion = TIEMPO_SUBASTA;
+    private volatile RuedaTemporizadores.Tarea tareaFin;
+    private volatile RuedaTemporizadores.Tarea tareaBroadcast;
+
+    // Broadcast por eventos: aviso ya programado, último líder avisado y
+    // momento del último envío (para decidir si toca latido)
+    private final AtomicBoolean difusionPendiente = new AtomicBoolean(false);
+    private volatile long secuenciaDifundida = 0;
+    private volatile long ultimaDifusion;
+
+    // Propuesta más alta actual: instantánea inmutable publicada sin bloqueo
+    private final AtomicReference<PropuestaLider> lider =
+        new AtomicReference<>(PropuestaLider.NINGUNA);
+
+    // Historial y ranking de propuestas; la secuencia ordena las llegadas
+    private final LibroPropuestas libro = new LibroPropuestas();
+    private final AtomicLong secuenciaPropuestas = new AtomicLong();
+    private final LongAdder propuestasRecibidas = new LongAdder();
+
+    // Las propuestas en curso comparten la lectura; pasar a FINALIZADA toma
+    // la escritura, así que ninguna se aplica ni se escribe en el diario
+    // después de cerrar. Se toma antes que el monitor de la subasta.
+    private final ReadWriteLock cierre = new ReentrantReadWriteLock();
+
+    /**
+     * Resultado de una propuesta aceptada, independiente del protocolo con
+     * el que se responde al participante
+     */
+    static final class ResultadoPropuesta {
+        final PropuestaLider lider;
+        final long tiempoRestante;
+        final boolean ganando;
+        final int posicion;
+
+        ResultadoPropuesta(PropuestaLider lider, long tiempoRestante, boolean ganando, int posicion) {
+            this.lider = lider;
+            this.tiempoRestante = tiempoRestante;
+            this.ganando = ganando;
+            this.posicion = posicion;
+        }
+
+        /**
+         * Propuesta que llega cuando la subasta ya terminó: no se aplica
+         */
+        static final ResultadoPropuesta RECHAZADA_FINALIZADA =
+            new ResultadoPropuesta(PropuestaLider.NINGUNA, 0, false, 0);
+    }
+
+    Subasta(long id, int numero, RegistroSubastas registro) {
+        this.id = id;
+        this.numero = numero;
+        this.registro = registro;
+    }
+
+    /**
+     * Incorpora un participante. Inicia la subasta con el primero y rechaza
+     * a los que llegan cuando ya no queda tiempo.
+     * @return true si se admitió, false si la subasta ya esta cerrada
+     */
+    synchronized boolean admitir(SesionSubasta sesion) {
+        // Si es el primer cliente y estamos esperando, iniciar subasta
+        if (estadoActual == EstadoSubasta.ESPERANDO) {
+            iniciar();
+        }
+
+        // Verificar si aun hay tiempo
+        if (estadoActual != EstadoSubasta.ACTIVA ||
+                System.currentTimeMillis() - tiempoInicio >= duracion) {
+            return false;
+        }
+
+        clientes.agregar(sesion);
+        sesion.setSubasta(this);
+
+        // Notificar al cliente que la subasta ha iniciado
+        sesion.notificarInicioSubasta(id, getTiempoRestante());
+
+        // Por eventos no hay broadcast completo: el recién llegado recibe el
+        // líder actual y a partir de ahí solo los cambios
+        PropuestaLider actual = lider.get();
+        if (registro.getBroadcast() == ConfiguracionServidor.Broadcast.EVENTOS &&
+                actual != PropuestaLider.NINGUNA) {
+            sesion.enviarActualizacion(MensajeDifundido.actualizacion(id, actual, getTiempoRestante()));
+        }
+
+        Bitacora.info("INFO", "Subasta " + id + " - total participantes: " + clientes.getNumero());
+        return true;
+    }
+
+    /**
+     * La conexión nueva de un participante que reanudó su sesión toma el
+     * lugar de la anterior: su propuesta, su cubo de tokens y su posición en
+     * el libro. No se le notifica el inicio; la respuesta a REANUDAR ya
+     * lleva la subasta y el tiempo.
+     * @return false si la subasta ya terminó
+     */
+    synchronized boolean reincorporar(SesionSubasta anterior, SesionSubasta nueva) {
+        if (estadoActual != EstadoSubasta.ACTIVA) {
+            return false;
+        }
+        nueva.setPropuesta(anterior.getPropuesta());
+        nueva.setCuboPropuestas(anterior.getCuboPropuestas());
+        libro.reemplazar(anterior, nueva);
+        // Misma identidad: ocupa la entrada de la anterior, si aún seguía
+        clientes.agregar(nueva);
+        nueva.setSubasta(this);
+        Bitacora.info("REANUDADA", "Subasta " + id + ": " + anterior.getIpCliente() +
+                      " continua desde " + nueva.getIpCliente());
+        return true;
+    }
+
+    /**
+     * La conexión ya no recibe nada: deja de recibir los broadcasts. Su
+     * propuesta sigue en el libro y la sesión se puede reanudar.
+     */
+    void retirar(SesionSubasta sesion) {
+        clientes.retirar(sesion);
+    }
+
+    /**
+     * Inicia la subasta y sus temporizadores
+     */
+    private void iniciar() {
+        estadoActual = EstadoSubasta.ACTIVA;
+        tiempoInicio = System.currentTimeMillis();
+        registro.getDiario().registrarInicio(id, numero, tiempoInicio, duracion);
+
+        Bitacora.info("INICIADA", "Subasta #" + numero + " (ID " + id + "), duracion: " +
+                      (duracion/1000) + " segundos");
+
+        programarTemporizadores(duracion);
+    }
+
+    /**
+     * Reanuda una subasta recuperada tras un reinicio con su plazo original;
+     * si el plazo venció mientras el servidor estaba caído, termina enseguida
+     */
+    synchronized void reanudar(long inicioOriginal, long duracionOriginal) {
+        estadoActual = EstadoSubasta.ACTIVA;
+        tiempoInicio = inicioOriginal;
+        duracion = duracionOriginal;
+
+        long restante = Math.max(0, tiempoInicio + duracion - System.currentTimeMillis());
+        Bitacora.info("REANUDADA", "Subasta #" + numero + " (ID " + id + "), tiempo restante: " +
+                      (restante/1000) + " segundos");
+
+        programarTemporizadores(restante);
+    }
+
+    /**
+     * Aplica una propuesta recuperada sin volver a registrarla en el diario
+     */
+    void restaurarPropuesta(SesionSubasta postor, long monto, long secuencia) {
+        postor.setSubasta(this);
+        postor.setPropuesta(monto);
+        actualizarPropuestaMasAlta(monto, secuencia, postor.getIpCliente());
+        libro.registrar(postor, monto, secuencia);
+        secuenciaPropuestas.accumulateAndGet(secuencia, Math::max);
+    }
+
+    /**
+     * Continúa la numeración de propuestas tras un reinicio
+     */
+    void restaurarSecuencia(long ultimaSecuencia) {
+        secuenciaPropuestas.accumulateAndGet(ultimaSecuencia, Math::max);
+    }
+
+    /**
+     * Copia el estado de la subasta para una instantánea, o null si no
+     * está activa. Solo bloquea las admisiones a esta subasta y, mientras
+     * se copia el libro, sus propuestas.
+     */
+    synchronized DiarioSubastas.SubastaRecuperada capturar() {
+        if (estadoActual != EstadoSubasta.ACTIVA) {
+            return null;
+        }
+        DiarioSubastas.SubastaRecuperada estado =
+            new DiarioSubastas.SubastaRecuperada(id, numero, tiempoInicio, duracion);
+        libro.exportar(estado);
+        estado.ultimaSecuencia = Math.max(estado.ultimaSecuencia, secuenciaPropuestas.get());
+        return estado;
+    }
+
+    private void programarTemporizadores(long restante) {
+        // Iniciar temporizador de finalización
+        tareaFin = RuedaTemporizadores.compartida().programar(this::vencerPlazo, restante);
+
+        if (registro.getBroadcast() == ConfiguracionServidor.Broadcast.EVENTOS) {
+            iniciarBroadcastPorEventos();
+        } else {
+            // Iniciar broadcast periódico
+            iniciarBroadcastPeriodico();
+        }
+    }
+
+    /**
+     * Inicia un temporizador que envía la oferta ganadora cada 5 segundos
+     */
+    private void iniciarBroadcastPeriodico() {
+        tareaBroadcast = RuedaTemporizadores.compartida().programarPeriodica(() -> {
+            if (estadoActual == EstadoSubasta.ACTIVA) {
+                enviarActualizacionPeriodica();
+            }
+        }, 5000, 5000);
+
+        Bitacora.info("BROADCAST", "Subasta " + id + ": actualizaciones cada 5 segundos");
+    }
+
+    /**
+     * Modo por eventos: los cambios de líder se avisan con programarDifusion()
+     * y este temporizador solo envía un latido cuando lleva latidoMs sin avisos
+     */
+    private void iniciarBroadcastPorEventos() {
+        long latidoMs = registro.getLatidoMs();
+        ultimaDifusion = System.currentTimeMillis();
+        tareaBroadcast = RuedaTemporizadores.compartida().programarPeriodica(() -> {
+            if (estadoActual == EstadoSubasta.ACTIVA &&
+                    System.currentTimeMillis() - ultimaDifusion >= latidoMs) {
+                enviarLatido();
+            }
+        }, latidoMs, latidoMs);
+
+        Bitacora.info("BROADCAST", "Subasta " + id + ": avisos por cambio de lider (ventana " +
+                      registro.getBroadcastVentanaMs() + " ms, latido " + latidoMs + " ms)");
+    }
+
+    /**
+     * Programa el aviso del nuevo líder al cabo de la ventana; los cambios
+     * que lleguen mientras tanto se agrupan en ese mismo aviso
+     */
+    private void programarDifusion() {
+        if (tareaBroadcast == null || registro.getBroadcast() != ConfiguracionServidor.Broadcast.EVENTOS ||
+                !difusionPendiente.compareAndSet(false, true)) {
+            return;
+        }
+        RuedaTemporizadores.compartida().programar(() -> {
+            difusionPendiente.set(false);
+            if (estadoActual == EstadoSubasta.ACTIVA &&
+                    lider.get().getSecuencia() != secuenciaDifundida) {
+                enviarActualizacionPeriodica();
+            }
+        }, registro.getBroadcastVentanaMs());
+    }
+
+    /**
+     * Envía la oferta ganadora actual a todos los clientes conectados
+     */
+    private void enviarActualizacionPeriodica() {
+        PropuestaLider actual = lider.get();
+        secuenciaDifundida = actual.getSecuencia();
+        ultimaDifusion = System.currentTimeMillis();
+        if (clientes.estaVacio()) {
+            return;
+        }
+
+        long inicio = System.nanoTime();
+        // Se codifica una vez y todas las sesiones escriben los mismos bytes
+        MensajeDifundido mensaje = MensajeDifundido.actualizacion(id, actual, getTiempoRestante());
+
+        // Solo se encola; la cola mas profunda indica el cliente mas lento
+        int colaMaxima = 0;
+        int enviados = 0;
+        int fallidos = 0;
+        for (SesionSubasta cliente : clientes) {
+            enviados++;
+            try {
+                cliente.enviarActualizacion(mensaje);
+                colaMaxima = Math.max(colaMaxima, cliente.getProfundidadSalida());
+            } catch (Exception e) {
+                fallidos++;
+            }
+        }
+        registro.getMetricas().difusion(inicio, enviados, colaMaxima);
+        if (fallidos > 0) {
+            Bitacora.error("ERROR", "Subasta " + id + ": actualizacion no enviada a " +
+                           fallidos + " clientes");
+        }
+        Bitacora.info("BROADCAST", "Subasta " + id + " - propuesta mas alta: $" +
+                      Monto.formatear(actual.getMonto()) + " (" + enviados +
+                      " clientes, cola max " + colaMaxima + ")");
+    }
+
+    /**
+     * Envía a todos el latido: último numero de líder y tiempo restante
+     */
+    private void enviarLatido() {
+        ultimaDifusion = System.currentTimeMillis();
+        if (clientes.estaVacio()) {
+            return;
+        }
+        long inicio = System.nanoTime();
+        MensajeDifundido latido = MensajeDifundido.latido(id, secuenciaDifundida, getTiempoRestante());
+        int colaMaxima = 0;
+        int enviados = 0;
+        int fallidos = 0;
+        for (SesionSubasta cliente : clientes) {
+            enviados++;
+            try {
+                cliente.enviarActualizacion(latido);
+                colaMaxima = Math.max(colaMaxima, cliente.getProfundidadSalida());
+            } catch (Exception e) {
+                fallidos++;
+            }
+        }
+        registro.getMetricas().difusion(inicio, enviados, colaMaxima);
+        if (fallidos > 0) {
+            Bitacora.error("ERROR", "Subasta " + id + ": latido no enviado a " +
+                           fallidos + " clientes");
+        }
+    }
+
+    /**
+     * Tarea del plazo: finaliza la subasta salvo que el anti-sniping haya
+     * extendido el plazo justo cuando vencía, en cuyo caso se reprograma.
+     * RegistroSubastas.unir() la adelanta si un cliente llega a una
+     * subasta vencida antes de que la rueda la cierre.
+     */
+    void vencerPlazo() {
+        cierre.writeLock().lock();
+        try {
+            synchronized (this) {
+                if (estadoActual == EstadoSubasta.FINALIZADA) {
+                    return;
+                }
+                long restanteMs = tiempoInicio + duracion - System.currentTimeMillis();
+                if (restanteMs > 0) {
+                    tareaFin = RuedaTemporizadores.compartida().programar(this::vencerPlazo, restanteMs);
+                    return;
+                }
+                estadoActual = EstadoSubasta.FINALIZADA;
+            }
+        } finally {
+            cierre.writeLock().unlock();
+        }
+        cerrar();
+    }
+
+    /**
+     * Anti-sniping: una propuesta que pasa a liderar en los últimos
+     * segundos retrasa el plazo. Fuera de esa ventana no toma el cerrojo.
+     */
+    private void aplicarAntisniping() {
+        long ultimosMs = registro.getAntisnipingUltimosMs();
+        if (ultimosMs <= 0 || tiempoInicio + duracion - System.currentTimeMillis() > ultimosMs) {
+            return;
+        }
+        long extensionMs = registro.getAntisnipingExtensionMs();
+        long restanteMs;
+        synchronized (this) {
+            restanteMs = tiempoInicio + duracion - System.currentTimeMillis();
+            if (estadoActual != EstadoSubasta.ACTIVA || restanteMs <= 0 || restanteMs > ultimosMs) {
+                return;
+            }
+            duracion += extensionMs;
+            restanteMs += extensionMs;
+            // Si la tarea ya salió de la rueda, vencerPlazo() ve el plazo nuevo
+            tareaFin.reprogramar(restanteMs);
+            registro.getDiario().registrarPlazo(id, numero, duracion);
+        }
+        Bitacora.info("ANTISNIPING", "Subasta " + id + ": plazo extendido " +
+                      (extensionMs / 1000) + " s, quedan " + (restanteMs / 1000) + " s");
+    }
+
+    /**
+     * Finaliza la subasta, determina el ganador y notifica a todos los clientes
+     */
+    void finalizar() {
+        cierre.writeLock().lock();
+        try {
+            synchronized (this) {
+                if (estadoActual == EstadoSubasta.FINALIZADA) {
+                    return;
+                }
+                estadoActual = EstadoSubasta.FINALIZADA;
+            }
+        } finally {
+            cierre.writeLock().unlock();
+        }
+        cerrar();
+    }
+
+    private void cerrar() {
+        tareaFin.cancelar();
+        tareaBroadcast.cancelar();
+        // El FIN va al diario antes de retirarla: el INICIO de la ronda
+        // nueva con este ID no puede quedar por delante
+        registro.getDiario().registrarFin(id, numero);
+        // Las nuevas conexiones a este ID abren una subasta nueva
+        registro.retirar(this);
+
+        // Determinar el ganador (primero del ranking del libro)
+        SesionSubasta ganador = libro.getGanador();
+        long propuestaGanadora = libro.getMontoGanador();
+
+        Bitacora.info("FINALIZADA", "Subasta #" + numero + " (ID " + id + "): " +
+                      libro.getNumeroPropuestas() + " propuestas de " +
+                      libro.getNumeroPostores() + " postores");
+        Bitacora.info("FINALIZADA", "Subasta " + id + " mejores: " +
+                      libro.escribirRanking(new StringBuilder(), RANKING_POR_DEFECTO));
+
+        if (ganador != null) {
+            Bitacora.info("GANADOR", "Subasta " + id + ": " + ganador.getIpCliente() +
+                          " con $" + Monto.formatear(propuestaGanadora));
+
+            // Notificar a todos los clientes
+            notificarTodosClientes(ganador, propuestaGanadora);
+        }
+
+        // Cerrar todas las conexiones
+        for (SesionSubasta cliente : clientes) {
+            cliente.cerrarConexion();
+        }
+        clientes.vaciar();
+
+        Bitacora.info("INFO", "Subasta " + id + ": conexiones cerradas");
+    }
+
+    /**
+     * Envía el ganador a todos los clientes conectados. El ganador se
+     * reconoce por su identidad (la misma si reanudó la sesión), no por
+     * el monto: a igual monto gana la propuesta que llegó antes.
+     */
+    private void notificarTodosClientes(SesionSubasta ganador, long montoGanador) {
+        IdentidadSesion identidadGanador = ganador.getIdentidad();
+        MensajeDifundido paraGanador =
+            MensajeDifundido.ganador(id, ganador.getIpCliente(), montoGanador, true);
+        MensajeDifundido paraResto =
+            MensajeDifundido.ganador(id, ganador.getIpCliente(), montoGanador, false);
+        int fallidos = 0;
+        for (SesionSubasta cliente : clientes) {
+            try {
+                cliente.enviarResultado(cliente.getIdentidad() == identidadGanador
+                                        ? paraGanador : paraResto);
+            } catch (Exception e) {
+                fallidos++;
+            }
+        }
+        if (fallidos > 0) {
+            Bitacora.error("ERROR", "Subasta " + id + ": resultado no enviado a " +
+                           fallidos + " clientes");
+        }
+    }
+
+    /**
+     * Respuesta con la propuesta mas alta actual y tiempo restante. Usa el
+     * prefijo RESPUESTA: para diferenciarla de los UPDATEs periódicos.
+     */
+    static String textoRespuesta(ResultadoPropuesta resultado) {
+        return "RESPUESTA:" + resultado.lider.getTextoProtocolo() +
+               ":TIEMPO:" + resultado.tiempoRestante +
+               ":TU_PROPUESTA:" + (resultado.ganando ? "GANANDO" : "PERDIENDO") +
+               ":POSICION:" + resultado.posicion;
+    }
+
+    /**
+     * Aplica una propuesta en centavos: la numera, actualiza el líder y el
+     * libro, anota su numero de petición en la identidad de la sesión y la
+     * registra en el diario. Una propuesta que llega con la subasta ya
+     * finalizada (aunque aún no se haya cerrado) no toca nada.
+     * @return el resultado, null si el monto no es positivo, o
+     *         ResultadoPropuesta.RECHAZADA_FINALIZADA si la subasta terminó
+     */
+    ResultadoPropuesta ofertar(SesionSubasta sesion, long nuevaPropuesta, long peticion) {
+        if (nuevaPropuesta <= 0) {
+            return null;
+        }
+        String ipCliente = sesion.getIpCliente();
+        boolean esLaMasAlta;
+        int posicion;
+
+        cierre.readLock().lock();
+        try {
+            if (estadoActual != EstadoSubasta.ACTIVA) {
+                return ResultadoPropuesta.RECHAZADA_FINALIZADA;
+            }
+
+            // Numero de secuencia del servidor: orden de llegada y desempate
+            long secuencia = secuenciaPropuestas.incrementAndGet();
+            propuestasRecibidas.increment();
+
+            // Actualizar la propuesta del cliente
+            sesion.setPropuesta(nuevaPropuesta);
+            if (Bitacora.depurando()) {
+                Bitacora.depuracion("PROPUESTA", "Cliente " + ipCliente + " ofrece: $" +
+                                    Monto.formatear(nuevaPropuesta) + " (subasta " + id + ")");
+            }
+
+            // Actualizar la propuesta mas alta de la subasta
+            esLaMasAlta = actualizarPropuestaMasAlta(nuevaPropuesta, secuencia, ipCliente);
+            posicion = libro.registrar(sesion, nuevaPropuesta, secuencia);
+            IdentidadSesion identidad = sesion.getIdentidad();
+            identidad.registrarPeticion(peticion);
+            registro.getDiario().registrarPropuesta(id, numero, secuencia, nuevaPropuesta, ipCliente,
+                                                    identidad.getHuella(), identidad.getUltimaPeticion());
+        } finally {
+            cierre.readLock().unlock();
+        }
+        if (esLaMasAlta) {
+            aplicarAntisniping();
+        }
+
+        return new ResultadoPropuesta(lider.get(), getTiempoRestante(), esLaMasAlta, posicion);
+    }
+
+    /**
+     * Estado actual para el participante sin aplicar nada: la respuesta a
+     * una propuesta repetida (reenviada tras reconectar) que ya se aplicó
+     */
+    ResultadoPropuesta consultar(SesionSubasta sesion) {
+        int posicion = libro.getPosicion(sesion);
+        return new ResultadoPropuesta(lider.get(), getTiempoRestante(), posicion == 1, posicion);
+    }
+
+    /**
+     * Construye la respuesta a RANKING: la posición del participante, el
+     * total de postores y los k primeros como ip=monto
+     */
+    String obtenerRanking(SesionSubasta sesion, int k) {
+        int limite = Math.max(1, Math.min(k, RANKING_MAXIMO));
+        StringBuilder sb = new StringBuilder(32 + limite * 24);
+        sb.append("RANKING:").append(libro.getPosicion(sesion))
+          .append(':').append(libro.getNumeroPostores()).append(':');
+        return libro.escribirRanking(sb, limite).toString();
+    }
+
+    /**
+     * Igual que obtenerRanking pero como trama LISTA_RANKING del protocolo
+     * binario
+     */
+    void escribirRanking(SesionSubasta sesion, int k, ByteBuffer destino) {
+        int limite = Math.max(1, Math.min(k, RANKING_MAXIMO));
+        int inicio = ProtocoloBinario.empezar(destino, ProtocoloBinario.LISTA_RANKING, id, 0, 0);
+        destino.putInt(libro.getPosicion(sesion)).putInt(libro.getNumeroPostores());
+        int posicionCantidad = destino.position();
+        destino.putShort((short) 0);
+        int cantidad = libro.recorrerRanking(limite, (posicion, postor, monto) -> {
+            destino.putLong(monto);
+            ProtocoloBinario.escribirTexto(destino, postor.getIpCliente());
+        });
+        destino.putShort(posicionCantidad, (short) cantidad);
+        ProtocoloBinario.terminar(destino, inicio);
+    }
+
+    /**
+     * Actualiza la propuesta más alta si la nueva propuesta es mayor (a igual
+     * monto gana la de menor secuencia, igual que en el libro).
+     * Sin bloqueos: se reintenta el compareAndSet solo si otro hilo publicó
+     * un líder entre la lectura y la escritura, y una propuesta que no
+     * supera al líder se descarta sin escribir nada.
+     * @return true si se actualizó, false si no
+     */
+    public boolean actualizarPropuestaMasAlta(long nuevaPropuesta, long secuencia, String ip) {
+        while (true) {
+            PropuestaLider actual = lider.get();
+            if (!actual.superadaPor(nuevaPropuesta, secuencia)) {
+                return false;
+            }
+            if (lider.compareAndSet(actual, actual.siguiente(nuevaPropuesta, ip, secuencia))) {
+                // El líder se publica en INFO con cada difusión; cada alta solo al depurar
+                if (Bitacora.depurando()) {
+                    Bitacora.depuracion("NUEVA ALTA", "Subasta " + id + ": $" +
+                                        Monto.formatear(nuevaPropuesta) + " de " + ip);
+                }
+                programarDifusion();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Obtiene la información de la propuesta más alta actual
+     */
+    public String obtenerPropuestaMasAlta() {
+        return lider.get().getTextoProtocolo();
+    }
+
+    /**
+     * Instantánea del líder actual (monto, IP, secuencia y texto del protocolo)
+     */
+    public PropuestaLider getLider() {
+        return lider.get();
+    }
+
+    /**
+     * Verifica si la subasta sigue activa
+     */
+    public boolean estaActiva() {
+        return estadoActual == EstadoSubasta.ACTIVA;
+    }
+
+    /**
+     * Obtiene el tiempo restante de la subasta en segundos
+     */
+    public long getTiempoRestante() {
+        if (estadoActual != EstadoSubasta.ACTIVA) {
+            return 0;
+        }
+        long transcurrido = System.currentTimeMillis() - tiempoInicio;
+        long restante = (duracion - transcurrido) / 1000;
+        return Math.max(0, restante);
+    }
+
+    // Getters
+    public long getId() {
+        return id;
+    }
+
+    public int getNumero() {
+        return numero;
+    }
+
+    /**
+     * Participantes conectados (los que perdieron la conexión no cuentan)
+     */
+    public int getNumeroParticipantes() {
+        return clientes.getNumero();
+    }
+
+    /**
+     * Propuestas aceptadas desde que se abrió (no incluye las recuperadas)
+     */
+    public long getPropuestasRecibidas() {
+        return propuestasRecibidas.sum();
+    }
+
+    /**
+     * Cola de salida más profunda entre los participantes
+     */
+    public int getColaSalidaMaxima() {
+        int colaMaxima = 0;
+        for (SesionSubasta cliente : clientes) {
+            colaMaxima = Math.max(colaMaxima, cliente.getProfundidadSalida());
+        }
+        return colaMaxima;
+    }
+}
@@ -0,0 +1,107 @@
+package socket.conconexion.servidor;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Latidos e inactividad de las conexiones de los clientes. Una tarea
+ * periódica de la rueda compartida recorre las conexiones abiertas: a la
+ * que lleva --ping-seg sin enviar nada le manda un PING, y la que llega a
+ * --inactividad-seg sin enviar nada (ni el PONG) se cierra y libera su
+ * hilo, sus buffers y su lugar en la subasta. Una conexión TCP medio
+ * abierta (el cliente desapareció sin cerrarla) ya no dura hasta el final
+ * de la subasta: lo que ocupa el servidor sigue a los postores vivos.
+ * Las conexiones solo anotan cuándo recibieron algo por última vez.
+ * @author Sistema de Subasta
+ */
+final class VigilanteInactividad {
+    private static final long REVISION_MAXIMA_MS = 1000;
+
+    /**
+     * Conexión vigilada; el vigilante la cierra desde el hilo de la rueda
+     */
+    interface Conexion {
+        Actividad getActividad();
+
+        String getIpCliente();
+
+        void enviarPing();
+
+        void cerrarPorInactividad();
+    }
+
+    /**
+     * Última recepción de una conexión y último PING que se le envió
+     */
+    static final class Actividad {
+        private volatile long ultimaRecepcion = System.currentTimeMillis();
+        // Solo lo usa el vigilante
+        private long ultimoPing = 0;
+
+        /**
+         * Llega algo del cliente (cualquier linea o trama, incluido el PONG)
+         */
+        void recibido() {
+            ultimaRecepcion = System.currentTimeMillis();
+        }
+    }
+
+    private final MetricasServidor metricas;
+    private final Set<Conexion> conexiones = ConcurrentHashMap.newKeySet();
+    private volatile long pingMs = 0;
+    private volatile long inactividadMs = 0;
+    private final AtomicBoolean revisionProgramada = new AtomicBoolean(false);
+
+    VigilanteInactividad(MetricasServidor metricas) {
+        this.metricas = metricas;
+    }
+
+    /**
+     * Activa los latidos y el cierre por inactividad (0 = desactivado)
+     */
+    void configurar(long pingMs, long inactividadMs) {
+        this.pingMs = pingMs;
+        this.inactividadMs = inactividadMs;
+        long limite = pingMs == 0 ? inactividadMs
+                    : inactividadMs == 0 ? pingMs : Math.min(pingMs, inactividadMs);
+        if (limite > 0 && revisionProgramada.compareAndSet(false, true)) {
+            long periodo = Math.max(1, Math.min(REVISION_MAXIMA_MS, limite / 2));
+            RuedaTemporizadores.compartida().programarPeriodica(this::revisar, periodo, periodo);
+        }
+    }
+
+    void registrar(Conexion conexion) {
+        if (revisionProgramada.get()) {
+            conexiones.add(conexion);
+        }
+    }
+
+    void retirar(Conexion conexion) {
+        conexiones.remove(conexion);
+    }
+
+    int getNumero() {
+        return conexiones.size();
+    }
+
+    private void revisar() {
+        long ahora = System.currentTimeMillis();
+        long ping = pingMs;
+        long inactividad = inactividadMs;
+        for (Conexion conexion : conexiones) {
+            Actividad actividad = conexion.getActividad();
+            long inactiva = ahora - actividad.ultimaRecepcion;
+            if (inactividad > 0 && inactiva >= inactividad) {
+                conexiones.remove(conexion);
+                metricas.desconexionPorInactividad();
+                Bitacora.aviso("INACTIVA", "Cliente " + conexion.getIpCliente() + " desconectado: " +
+                               (inactiva / 1000) + " s sin recibir nada");
+                conexion.cerrarPorInactividad();
+            } else if (ping > 0 && inactiva >= ping && ahora - actividad.ultimoPing >= ping) {
+                actividad.ultimoPing = ahora;
+                conexion.enviarPing();
+            }
+        }
+    }
+}